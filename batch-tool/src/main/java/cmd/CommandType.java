@@ -20,6 +20,7 @@ public enum CommandType {
     EXPORT,
     IMPORT,
     UPDATE,
-    DELETE
+    DELETE,
+    MIGRATE
 }
 
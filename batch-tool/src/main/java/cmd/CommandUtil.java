@@ -30,6 +30,7 @@ import model.config.ExportConfig;
 import model.config.FileFormat;
 import model.config.FileLineRecord;
 import model.config.GlobalVar;
+import model.config.JobSpec;
 import model.config.QuoteEncloseMode;
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
@@ -44,8 +45,10 @@ import org.slf4j.LoggerFactory;
 import util.FileUtil;
 import util.Version;
 
+import java.io.File;
 import java.nio.charset.Charset;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -103,17 +106,11 @@ public class CommandUtil {
         validateDataSourceArgs(result);
 
         // 判断是否使用负载均衡方式访问
-        DataSourceConfig.DataSourceConfigBuilder configBuilder =
-            new DataSourceConfig.DataSourceConfigBuilder();
+        DataSourceConfig.DataSourceConfigBuilder configBuilder = newDataSourceConfigBuilder(result);
         configBuilder.host(result.getOptionValue(ARG_SHORT_HOST))
             .dbName(result.getOptionValue(ARG_SHORT_DBNAME))
             .username(result.getOptionValue(ARG_SHORT_USERNAME))
-            .password(result.getOptionValue(ARG_SHORT_PASSWORD))
-            .maxConnNumber(getMaxConnNum(result))
-            .minConnNumber(getMinConnNum(result))
-            .maxWait(getMaxWait(result))
-            .connParam(getConnParam(result))
-            .initSqls(getInitSqls(result));
+            .password(result.getOptionValue(ARG_SHORT_PASSWORD));
 
         if (result.hasOption(ARG_SHORT_LOAD_BALANCE)) {
             configBuilder.loadBalanceEnabled(true);
@@ -124,6 +121,24 @@ public class CommandUtil {
         return configBuilder.build();
     }
 
+    /**
+     * 连接池参数 迁移的源端未单独配置时与命令行一致
+     */
+    private static DataSourceConfig.DataSourceConfigBuilder newDataSourceConfigBuilder(CommandLine result) {
+        return new DataSourceConfig.DataSourceConfigBuilder()
+            .maxConnNumber(getMaxConnNum(result))
+            .minConnNumber(getMinConnNum(result))
+            .maxWait(getMaxWait(result))
+            .connParam(getConnParam(result))
+            .initSqls(getInitSqls(result));
+    }
+
+    private static DataSourceConfig getSourceDataSourceConfig(CommandLine result) {
+        DataSourceConfig.DataSourceConfigBuilder configBuilder = newDataSourceConfigBuilder(result);
+        return YamlConfigFileUtil.loadSourceDataSourceConfig(result.getOptionValue(ARG_SHORT_MIGRATE_SOURCE),
+            configBuilder, getDbName(result));
+    }
+
     private static int getMaxWait(CommandLine result) {
         if (result.hasOption(ARG_SHORT_MAX_WAIT)) {
             return Integer.parseInt(result.getOptionValue(ARG_SHORT_MAX_WAIT));
@@ -166,6 +181,7 @@ public class CommandUtil {
     //region 批处理命令解析
     public static BaseOperateCommand getOperateCommandFromCmd(CommandLine result) {
         validateOperateArgs(result);
+        setMetaCacheDir(result);
         BaseOperateCommand command = initCommand(result);
         afterInitCommand(command, result);
         return command;
@@ -195,6 +211,9 @@ public class CommandUtil {
         case DELETE:
             command = parseDeleteCommand(result);
             break;
+        case MIGRATE:
+            command = parseMigrateCommand(result);
+            break;
         default:
             throw new IllegalArgumentException("Unsupported command: " + commandTypeStr);
         }
@@ -239,16 +258,40 @@ public class CommandUtil {
     }
 
     private static BaseOperateCommand parseDeleteCommand(CommandLine result) {
-        requireOnlyOneArg(result, ARG_SHORT_FROM, ARG_SHORT_DIRECTORY);
+        boolean deleteByCondition = isDeleteByCondition(result);
+        if (deleteByCondition) {
+            // 显式指定时才按where条件遍历主键分批删除 避免遗漏文件参数时误删
+            requireArg(result, ARG_SHORT_WHERE);
+            if (result.hasOption(ARG_SHORT_FROM) || result.hasOption(ARG_SHORT_DIRECTORY)) {
+                throw new IllegalArgumentException("Cannot delete by where condition with source files");
+            }
+        } else {
+            requireOnlyOneArg(result, ARG_SHORT_FROM, ARG_SHORT_DIRECTORY);
+        }
 
         ProducerExecutionContext producerExecutionContext = new ProducerExecutionContext();
         ConsumerExecutionContext consumerExecutionContext = new ConsumerExecutionContext();
         configureCommonContext(result, producerExecutionContext, consumerExecutionContext);
 
         consumerExecutionContext.setWhereCondition(getWhereCondition(result));
+        consumerExecutionContext.setDeleteByConditionEnabled(deleteByCondition);
+        setDeleteInBatchSize(result);
         return new DeleteCommand(getDbName(result), producerExecutionContext, consumerExecutionContext);
     }
 
+    private static BaseOperateCommand parseMigrateCommand(CommandLine result) {
+        requireArg(result, ARG_SHORT_MIGRATE_SOURCE);
+
+        ProducerExecutionContext producerExecutionContext = new ProducerExecutionContext();
+        ConsumerExecutionContext consumerExecutionContext = new ConsumerExecutionContext();
+        configureCommonContext(result, producerExecutionContext, consumerExecutionContext);
+        // 源端读出的值未经文件转义 写入时统一转义
+        consumerExecutionContext.setSqlEscapeEnabled(true);
+
+        return new MigrateCommand(getDbName(result), getSourceDataSourceConfig(result),
+            producerExecutionContext, consumerExecutionContext);
+    }
+
     private static BaseOperateCommand parseUpdateCommand(CommandLine result) {
         requireOnlyOneArg(result, ARG_SHORT_FROM, ARG_SHORT_DIRECTORY);
 
@@ -258,6 +301,7 @@ public class CommandUtil {
 
         consumerExecutionContext.setWhereCondition(getWhereCondition(result));
         consumerExecutionContext.setFuncSqlForUpdateEnabled(getFuncEnabled(result));
+        consumerExecutionContext.setStagingUpdateEnabled(getStagingUpdateEnabled(result));
         return new UpdateCommand(getDbName(result), producerExecutionContext, consumerExecutionContext);
     }
     //endregion 批处理命令解析
@@ -338,14 +382,73 @@ public class CommandUtil {
         exportConfig.setCompressMode(getCompressMode(result));
         exportConfig.setParallelism(getProducerParallelism(result));
         exportConfig.setQuoteEncloseMode(getQuoteEncloseMode(result));
+        exportConfig.setSplitNum(getSplitNum(result));
+        exportConfig.setMaxConnPerDn(getMaxConnPerDn(result));
+        exportConfig.setDdlParallelism(getDdlParallelism(result));
+        exportConfig.setDdlFilePerTable(result.hasOption(ARG_SHORT_DDL_FILE_PER_TABLE));
+        setWatermark(result, exportConfig);
         setFilenamePrefix(result, exportConfig);
         setFileNum(result, exportConfig);
         setFileLine(result, exportConfig);
+        setFileSize(result, exportConfig);
         setOrderBy(result, exportConfig);
         exportConfig.validate();
         return new ExportCommand(getDbName(result), tableNames, exportConfig);
     }
 
+    private static int getSplitNum(CommandLine result) {
+        if (result.hasOption(ARG_SHORT_SPLIT_NUM)) {
+            int splitNum = Integer.parseInt(result.getOptionValue(ARG_SHORT_SPLIT_NUM));
+            if (splitNum <= 0) {
+                throw new IllegalArgumentException("Split number should be > 0");
+            }
+            return splitNum;
+        } else {
+            return 1;
+        }
+    }
+
+    private static int getMaxConnPerDn(CommandLine result) {
+        if (result.hasOption(ARG_SHORT_MAX_CONN_PER_DN)) {
+            int maxConnPerDn = Integer.parseInt(result.getOptionValue(ARG_SHORT_MAX_CONN_PER_DN));
+            if (maxConnPerDn <= 0) {
+                throw new IllegalArgumentException("Max connection per data node should be > 0");
+            }
+            return maxConnPerDn;
+        } else {
+            return 0;
+        }
+    }
+
+    private static int getDdlParallelism(CommandLine result) {
+        if (result.hasOption(ARG_SHORT_DDL_PARALLELISM)) {
+            int parallelism = Integer.parseInt(result.getOptionValue(ARG_SHORT_DDL_PARALLELISM));
+            if (parallelism <= 0) {
+                throw new IllegalArgumentException("DDL export parallelism should be > 0");
+            }
+            return parallelism;
+        } else {
+            return DEFAULT_DDL_EXPORT_PARALLELISM;
+        }
+    }
+
+    /**
+     * 增量导出的水位文件前缀与断点文件一样通过 -H 指定
+     */
+    private static void setWatermark(CommandLine result, ExportConfig exportConfig) {
+        if (!result.hasOption(ARG_SHORT_WATERMARK)) {
+            return;
+        }
+        String columnName = result.getOptionValue(ARG_SHORT_WATERMARK).trim();
+        if (columnName.isEmpty()) {
+            throw new IllegalArgumentException("Watermark column name cannot be empty");
+        }
+        exportConfig.setWatermarkColumn(columnName);
+        if (result.hasOption(ARG_SHORT_HISTORY_FILE)) {
+            exportConfig.setWatermarkFilePrefix(result.getOptionValue(ARG_SHORT_HISTORY_FILE));
+        }
+    }
+
     private static void setFilenamePrefix(CommandLine result, ExportConfig exportConfig) {
         if (result.hasOption(ARG_SHORT_PREFIX)) {
             exportConfig.setFilenamePrefix(result.getOptionValue(ARG_SHORT_PREFIX));
@@ -368,6 +471,12 @@ public class CommandUtil {
                 CMD_SEPARATOR));
             exportConfig.setOrderByColumnNameList(columnNameList);
             exportConfig.setParallelMerge(getParaMerge(result));
+            if (result.hasOption(ARG_SHORT_SORT_MEMORY)) {
+                exportConfig.setSortMemoryInMb(Integer.parseInt(result.getOptionValue(ARG_SHORT_SORT_MEMORY)));
+            }
+            if (result.hasOption(ARG_SHORT_SORT_TMP_DIR)) {
+                exportConfig.setSortTmpDir(result.getOptionValue(ARG_SHORT_SORT_TMP_DIR));
+            }
         }
     }
 
@@ -382,6 +491,16 @@ public class CommandUtil {
         }
     }
 
+    private static void setFileSize(CommandLine result, ExportConfig exportConfig) {
+        if (result.hasOption(ARG_SHORT_FILE_SIZE)) {
+            if (exportConfig.getExportWay() != ExportConfig.ExportWay.DEFAULT) {
+                // 只能指定一个导出方式
+                throw new IllegalArgumentException("Export way should be unique");
+            }
+            exportConfig.setMaxFileSizeInMb(Integer.parseInt(result.getOptionValue(ARG_SHORT_FILE_SIZE)));
+        }
+    }
+
     private static void setFileNum(CommandLine result, ExportConfig exportConfig) {
         if (result.hasOption(ARG_SHORT_FILE_NUM)) {
             exportConfig.setExportWay(ExportConfig.ExportWay.FIXED_FILE_NUM);
@@ -436,6 +555,8 @@ public class CommandUtil {
         producerExecutionContext.setMaxErrorCount(getMaxErrorCount(result));
         producerExecutionContext.setHistoryFileAndParse(getHistoryFile(result));
         producerExecutionContext.setQuoteEncloseMode(getQuoteEncloseMode(result));
+        producerExecutionContext.setBlockTransactionEnabled(getBlockTransactionEnabled(result));
+        producerExecutionContext.setDeferIndexParallelism(getDeferIndexParallelism(result));
 
         producerExecutionContext.validate();
     }
@@ -457,6 +578,10 @@ public class CommandUtil {
         consumerExecutionContext.setWhereInEnabled(getWhereInEnabled(result));
         consumerExecutionContext.setWithLastSep(getWithLastSep(result));
         consumerExecutionContext.setTpsLimit(getTpsLimit(result));
+        consumerExecutionContext.setMaxErrorCount(getMaxErrorCount(result));
+        consumerExecutionContext.setBlockTransactionEnabled(getBlockTransactionEnabled(result));
+        consumerExecutionContext.setReadBlockSizeInMb(getReadBlockSizeInMb(result));
+        consumerExecutionContext.setJobSpec(getJobSpec(result));
     }
 
     private static boolean getWhereInEnabled(CommandLine result) {
@@ -538,7 +663,8 @@ public class CommandUtil {
             List<String> filePaths = FileUtil.getFilesAbsPathInDir(dirPathStr);
             return FileLineRecord.fromFilePaths(filePaths);
         }
-        throw new IllegalStateException("cannot get file path list");
+        // 按条件删除无需输入文件
+        return Collections.emptyList();
     }
 
     private static int getTpsLimit(CommandLine result) {
@@ -557,6 +683,34 @@ public class CommandUtil {
         return result.hasOption(ARG_SHORT_IGNORE_AND_RESUME);
     }
 
+    private static int getDeferIndexParallelism(CommandLine result) {
+        if (result.hasOption(ARG_SHORT_DEFER_INDEX)) {
+            int parallelism = Integer.parseInt(result.getOptionValue(ARG_SHORT_DEFER_INDEX));
+            if (parallelism <= 0) {
+                throw new IllegalArgumentException("Index build parallelism should be > 0");
+            }
+            return parallelism;
+        } else {
+            return 0;
+        }
+    }
+
+    private static boolean getBlockTransactionEnabled(CommandLine result) {
+        return result.hasOption(ARG_SHORT_BLOCK_TRANSACTION);
+    }
+
+    private static JobSpec getJobSpec(CommandLine result) {
+        if (result.hasOption(ARG_SHORT_JOB_SPEC)) {
+            return YamlConfigFileUtil.loadJobSpec(result.getOptionValue(ARG_SHORT_JOB_SPEC));
+        } else {
+            return new JobSpec();
+        }
+    }
+
+    private static boolean getStagingUpdateEnabled(CommandLine result) {
+        return result.hasOption(ARG_SHORT_STAGING_UPDATE);
+    }
+
     private static DdlMode getDdlMode(CommandLine result) {
         if (!result.hasOption(ARG_SHORT_WITH_DDL)) {
             return DdlMode.NO_DDL;
@@ -580,6 +734,10 @@ public class CommandUtil {
         }
     }
 
+    private static boolean isDeleteByCondition(CommandLine result) {
+        return result.hasOption(ARG_SHORT_DELETE_BY_WHERE);
+    }
+
     private static String getWhereCondition(CommandLine result) {
         return result.getOptionValue(ARG_SHORT_WHERE);
     }
@@ -610,6 +768,31 @@ public class CommandUtil {
                 result.getOptionValue(ARG_SHORT_BATCH_SIZE));
         }
     }
+
+    private static void setMetaCacheDir(CommandLine result) {
+        if (result.hasOption(ARG_SHORT_META_CACHE)) {
+            File dir = new File(result.getOptionValue(ARG_SHORT_META_CACHE));
+            if (!dir.isDirectory()) {
+                throw new IllegalArgumentException("Meta cache directory does not exist: " + dir.getPath());
+            }
+            GlobalVar.META_CACHE_DIR = dir.getPath();
+        }
+    }
+
+    /**
+     * 使用 delete ... in 且未指定批次大小时
+     * 采用更大的批次 以便将有序主键合并为范围条件
+     */
+    private static void setDeleteInBatchSize(CommandLine result) {
+        if (result.hasOption(ARG_SHORT_BATCH_SIZE)) {
+            return;
+        }
+        boolean shardingEnabled = result.hasOption(ARG_SHORT_ENABLE_SHARDING)
+            && parseFlag(result.getOptionValue(ARG_SHORT_ENABLE_SHARDING));
+        if (result.hasOption(ARG_SHORT_USING_IN) || shardingEnabled || isDeleteByCondition(result)) {
+            GlobalVar.EMIT_BATCH_SIZE = DEFAULT_DELETE_IN_BATCH_SIZE;
+        }
+    }
     //endregion 全局相关设置
 
     //region 命令行参数校验与帮助
@@ -648,7 +831,7 @@ public class CommandUtil {
             .longOpt("operation")
             .hasArg()
             .argName("operation")
-            .desc("Batch operation type: export / import / delete / update.")
+            .desc("Batch operation type: export / import / delete / update / migrate.")
             .build());
         // 添加待操作数据表选项 -t --table
         options.addOption(Option.builder(ARG_SHORT_TABLE)
@@ -692,6 +875,13 @@ public class CommandUtil {
             .argName("filenum")
             .desc("Fixed number of exported files.")
             .build());
+        // 添加导出文件大小限制选项 -size --fileSize
+        options.addOption(Option.builder(ARG_SHORT_FILE_SIZE)
+            .longOpt("fileSize")
+            .hasArg()
+            .argName("file size in MB")
+            .desc("Max size in MB of exported files, after compression and encryption.")
+            .build());
         // 添加导出where条件选项 -w --where
         options.addOption(Option.builder(ARG_SHORT_WHERE)
             .longOpt("where")
@@ -699,12 +889,94 @@ public class CommandUtil {
             .argName("where")
             .desc("Where condition: col1>99 AND col2<100 ...")
             .build());
+        // 添加按条件删除选项 -byWhere --deleteByWhere
+        options.addOption(Option.builder(ARG_SHORT_DELETE_BY_WHERE)
+            .longOpt("deleteByWhere")
+            .desc("Delete all rows matching -w in primary key chunks, without source files.")
+            .build());
         // 添加insert ignore开关选项 -i --ignore
         options.addOption(Option.builder(ARG_SHORT_IGNORE_AND_RESUME)
             .longOpt("ignoreandresume")
             .argName("ignore")
             .desc("Flag of insert ignore and resume breakpoint.")
             .build());
+        // 添加按块事务导入开关选项 -blocktx --blockTransaction
+        options.addOption(Option.builder(ARG_SHORT_BLOCK_TRANSACTION)
+            .longOpt("blockTransaction")
+            .desc("Import each read block in one transaction, committed blocks are skipped when restarted.")
+            .build());
+        // 添加延迟创建二级索引选项 -deferIndex --deferIndex
+        options.addOption(Option.builder(ARG_SHORT_DEFER_INDEX)
+            .longOpt("deferIndex")
+            .hasArg()
+            .argName("parallelism")
+            .desc("Create tables without secondary indexes when importing with ddl, "
+                + "and add them after data is loaded with N tables in parallel.")
+            .build());
+        // 添加多表导入任务配置选项 -jobSpec --jobSpec
+        options.addOption(Option.builder(ARG_SHORT_JOB_SPEC)
+            .longOpt("jobSpec")
+            .hasArg()
+            .argName("file")
+            .desc("Yaml file of per-table settings when importing multiple tables in one pipeline.")
+            .build());
+        // 添加中间表更新开关选项 -staging --stagingUpdate
+        options.addOption(Option.builder(ARG_SHORT_STAGING_UPDATE)
+            .longOpt("stagingUpdate")
+            .desc("Update by loading file into a staging table and joining it per physical shard.")
+            .build());
+        // 添加导出主键范围拆分数选项 -split --splitNum
+        options.addOption(Option.builder(ARG_SHORT_SPLIT_NUM)
+            .longOpt("splitNum")
+            .hasArg()
+            .argName("split num")
+            .desc("Split each physical table into N primary key ranges and export them in parallel, "
+                + "only for single integer primary key, default 1: no split.")
+            .build());
+        // 添加单个存储节点导出并发上限选项 -maxDnConn --maxConnPerDn
+        options.addOption(Option.builder(ARG_SHORT_MAX_CONN_PER_DN)
+            .longOpt("maxConnPerDn")
+            .hasArg()
+            .argName("max connections per DN")
+            .desc("Max concurrent export connections on a single data node (default unlimited).")
+            .build());
+        // 添加建表语句导出并发度选项 -ddlPara --ddlParallelism
+        options.addOption(Option.builder(ARG_SHORT_DDL_PARALLELISM)
+            .longOpt("ddlParallelism")
+            .hasArg()
+            .argName("parallelism")
+            .desc("Connections used to fetch table DDL concurrently when exporting DDL (default "
+                + DEFAULT_DDL_EXPORT_PARALLELISM + ").")
+            .build());
+        // 添加建表语句分表导出选项 -ddlPerTable --ddlFilePerTable
+        options.addOption(Option.builder(ARG_SHORT_DDL_FILE_PER_TABLE)
+            .longOpt("ddlFilePerTable")
+            .desc("Write DDL of each table to its own file named by the table.")
+            .build());
+        // 添加迁移源端配置选项 -source --migrateSource
+        options.addOption(Option.builder(ARG_SHORT_MIGRATE_SOURCE)
+            .longOpt("migrateSource")
+            .hasArg()
+            .argName("file")
+            .desc("Yaml file of the source database when migrating, "
+                + "data is copied into the database given by -h/-P/-D.")
+            .build());
+        // 添加元数据缓存目录选项 -metaCache
+        options.addOption(Option.builder(ARG_SHORT_META_CACHE)
+            .longOpt("metaCache")
+            .hasArg()
+            .argName("directory")
+            .desc("Directory to persist table meta info, reused until tables are created or dropped "
+                + "(default in-process only).")
+            .build());
+        // 添加增量导出水位列选项 -watermark
+        options.addOption(Option.builder(ARG_SHORT_WATERMARK)
+            .longOpt("watermark")
+            .hasArg()
+            .argName("column")
+            .desc("Incremental export by a monotonic column, only rows above the last exported value "
+                + "of each shard are exported.")
+            .build());
         // 添加historyfile文件名配置 -H --historyfile
         options.addOption(Option.builder(ARG_SHORT_HISTORY_FILE)
             .longOpt("historyFile")
@@ -759,6 +1031,20 @@ public class CommandUtil {
             .longOpt("paraMerge")
             .desc("Using parallel merge when doing order by export.")
             .build());
+        // 添加本地归并排序内存上限选项 -sortMem --sortMemory
+        options.addOption(Option.builder(ARG_SHORT_SORT_MEMORY)
+            .longOpt("sortMemory")
+            .hasArg()
+            .argName("memory in MB")
+            .desc("Memory limit in MB of parallel merge, exceeded rows are spilled to temp files (default 256).")
+            .build());
+        // 添加本地归并排序临时文件目录选项 -sortDir --sortTmpDir
+        options.addOption(Option.builder(ARG_SHORT_SORT_TMP_DIR)
+            .longOpt("sortTmpDir")
+            .hasArg()
+            .argName("directory")
+            .desc("Directory of temp files spilled by parallel merge (default java.io.tmpdir).")
+            .build());
         // 添加header是否为字段名选项
         options.addOption(Option.builder(ARG_SHORT_WITH_HEADER)
             .longOpt("header")
@@ -800,13 +1086,13 @@ public class CommandUtil {
         options.addOption(Option.builder(ARG_SHORT_FILE_FORMAT)
             .longOpt("fileformat")
             .hasArg()
-            .desc("File format: NONE / TXT / CSV")
+            .desc("File format: NONE / TXT / CSV / XLSX / BIN / PARQUET")
             .build());
         // 最大错误阈值
         options.addOption(Option.builder(ARG_SHORT_MAX_ERROR)
             .longOpt("max-error")
             .hasArg()
-            .desc("Max error count threshold.")
+            .desc("Max error count threshold, lines failed are written to the error file " + BROKEN_LINE_FILE_NAME)
             .build());
     }
 
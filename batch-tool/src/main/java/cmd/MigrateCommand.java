@@ -0,0 +1,52 @@
+/*
+ * Copyright [2013-2021], Alibaba Group Holding Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package cmd;
+
+import datasource.DataSourceConfig;
+import model.ConsumerExecutionContext;
+import model.ProducerExecutionContext;
+
+import javax.validation.constraints.NotNull;
+
+/**
+ * 表到表的迁移 源端数据直接写入当前连接的库
+ */
+public class MigrateCommand extends WriteDbCommand {
+
+    private final DataSourceConfig sourceDataSourceConfig;
+
+    public MigrateCommand(String dbName,
+                          @NotNull DataSourceConfig sourceDataSourceConfig,
+                          ProducerExecutionContext producerExecutionContext,
+                          ConsumerExecutionContext consumerExecutionContext) {
+        super(dbName, producerExecutionContext, consumerExecutionContext);
+        this.sourceDataSourceConfig = sourceDataSourceConfig;
+    }
+
+    public DataSourceConfig getSourceDataSourceConfig() {
+        return sourceDataSourceConfig;
+    }
+
+    @Override
+    public String toString() {
+        return "MigrateCommand{" +
+            "sourceDataSourceConfig=" + sourceDataSourceConfig +
+            ", " + super.toString() +
+            '}';
+    }
+}
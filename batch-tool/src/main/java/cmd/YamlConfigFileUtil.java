@@ -16,8 +16,219 @@
 
 package cmd;
 
+import datasource.DataSourceConfig;
+import model.config.JobSpec;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
 /**
  * 从 yaml 文件中解析配置
+ * 仅支持以空格缩进的多层键值对与注释 不支持列表与多行文本
  */
 public class YamlConfigFileUtil {
+
+    private static final String KEY_TABLE_PARALLELISM = "tableParallelism";
+    private static final String KEY_TABLES = "tables";
+    private static final String KEY_PARALLELISM = "parallelism";
+
+    private static final String KEY_HOST = "host";
+    private static final String KEY_PORT = "port";
+    private static final String KEY_USER = "user";
+    private static final String KEY_PASSWORD = "password";
+    private static final String KEY_DB_NAME = "dbName";
+    private static final String KEY_MAX_CONN = "maxConn";
+    private static final String DEFAULT_PORT = "3306";
+
+    /**
+     * 解析多表导入的任务配置，格式如下：
+     * <pre>
+     * tableParallelism: 4
+     * tables:
+     *   sbtest1:
+     *     parallelism: 16
+     * </pre>
+     */
+    public static JobSpec loadJobSpec(String filePath) {
+        Map<String, Object> root = parse(filePath);
+        JobSpec jobSpec = new JobSpec();
+        Object defaultParallelism = root.get(KEY_TABLE_PARALLELISM);
+        if (defaultParallelism != null) {
+            jobSpec.setDefaultTableParallelism(parseInt(KEY_TABLE_PARALLELISM, defaultParallelism));
+        }
+        Object tables = root.get(KEY_TABLES);
+        if (tables == null) {
+            return jobSpec;
+        }
+        for (Map.Entry<String, Object> tableEntry : asMap(KEY_TABLES, tables).entrySet()) {
+            Map<String, Object> tableConf = asMap(tableEntry.getKey(), tableEntry.getValue());
+            Object parallelism = tableConf.get(KEY_PARALLELISM);
+            if (parallelism != null) {
+                jobSpec.setTableParallelism(tableEntry.getKey(), parseInt(KEY_PARALLELISM, parallelism));
+            }
+        }
+        return jobSpec;
+    }
+
+    /**
+     * 解析迁移的源端连接配置，格式如下：
+     * <pre>
+     * host: 10.0.0.1
+     * port: 3306
+     * user: root
+     * password: "123456"
+     * dbName: sbtest
+     * maxConn: 64
+     * </pre>
+     *
+     * @param configBuilder 已设置未在文件中配置的连接池参数
+     * @param defaultDbName 未配置 dbName 时与目标库同名
+     */
+    public static DataSourceConfig loadSourceDataSourceConfig(String filePath,
+                                                              DataSourceConfig.DataSourceConfigBuilder configBuilder,
+                                                              String defaultDbName) {
+        Map<String, Object> root = parse(filePath);
+        configBuilder.host(getRequiredString(root, KEY_HOST))
+            .port(getString(root, KEY_PORT, DEFAULT_PORT))
+            .username(getRequiredString(root, KEY_USER))
+            .password(getString(root, KEY_PASSWORD, ""))
+            .dbName(getString(root, KEY_DB_NAME, defaultDbName))
+            .loadBalanceEnabled(false);
+        Object maxConn = root.get(KEY_MAX_CONN);
+        if (maxConn != null) {
+            configBuilder.maxConnNumber(parseInt(KEY_MAX_CONN, maxConn));
+        }
+        return configBuilder.build();
+    }
+
+    /**
+     * @return 值为字符串或嵌套的 Map
+     */
+    public static Map<String, Object> parse(String filePath) {
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(Paths.get(filePath), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Failed to read yaml file " + filePath + ": " + e.getMessage());
+        }
+        return parse(lines);
+    }
+
+    private static Map<String, Object> parse(List<String> lines) {
+        Map<String, Object> root = new LinkedHashMap<>();
+        // 各层的缩进与对应的 Map
+        Deque<Integer> indentStack = new ArrayDeque<>();
+        Deque<Map<String, Object>> mapStack = new ArrayDeque<>();
+        indentStack.push(-1);
+        mapStack.push(root);
+        for (int lineNum = 1; lineNum <= lines.size(); lineNum++) {
+            String line = stripComment(lines.get(lineNum - 1));
+            if (StringUtils.isBlank(line) || "---".equals(line.trim())) {
+                continue;
+            }
+            int indent = 0;
+            while (line.charAt(indent) == ' ') {
+                indent++;
+            }
+            String content = line.trim();
+            if (line.charAt(indent) == '\t' || content.startsWith("- ")) {
+                throw new IllegalArgumentException("Unsupported yaml syntax at line " + lineNum + ": " + content);
+            }
+            int colonIndex = content.indexOf(':');
+            if (colonIndex <= 0) {
+                throw new IllegalArgumentException("Expect 'key: value' at line " + lineNum + ": " + content);
+            }
+            String key = unquote(content.substring(0, colonIndex).trim());
+            String value = content.substring(colonIndex + 1).trim();
+            while (indentStack.peek() >= indent) {
+                indentStack.pop();
+                mapStack.pop();
+            }
+            if (value.isEmpty()) {
+                Map<String, Object> child = new LinkedHashMap<>();
+                mapStack.peek().put(key, child);
+                indentStack.push(indent);
+                mapStack.push(child);
+            } else {
+                mapStack.peek().put(key, unquote(value));
+            }
+        }
+        return root;
+    }
+
+    /**
+     * 去除注释 引号内的 # 保留
+     */
+    private static String stripComment(String line) {
+        char quote = 0;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '\'' || c == '"') {
+                quote = c;
+            } else if (c == '#' && (i == 0 || Character.isWhitespace(line.charAt(i - 1)))) {
+                return line.substring(0, i);
+            }
+        }
+        return line;
+    }
+
+    private static String unquote(String value) {
+        if (value.length() >= 2) {
+            char first = value.charAt(0);
+            if ((first == '\'' || first == '"') && value.charAt(value.length() - 1) == first) {
+                return value.substring(1, value.length() - 1);
+            }
+        }
+        return value;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> asMap(String key, Object value) {
+        if (!(value instanceof Map)) {
+            throw new IllegalArgumentException("Expect nested settings under " + key);
+        }
+        return (Map<String, Object>) value;
+    }
+
+    private static String getString(Map<String, Object> root, String key, String defaultValue) {
+        Object value = root.get(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        if (!(value instanceof String)) {
+            throw new IllegalArgumentException("Expect string value of " + key);
+        }
+        return (String) value;
+    }
+
+    private static String getRequiredString(Map<String, Object> root, String key) {
+        String value = getString(root, key, null);
+        if (StringUtils.isEmpty(value)) {
+            throw new IllegalArgumentException("Missing required setting: " + key);
+        }
+        return value;
+    }
+
+    private static int parseInt(String key, Object value) {
+        if (!(value instanceof String)) {
+            throw new IllegalArgumentException("Expect integer value of " + key);
+        }
+        try {
+            return Integer.parseInt((String) value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Illegal integer value of " + key + ": " + value);
+        }
+    }
 }
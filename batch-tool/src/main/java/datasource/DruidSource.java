@@ -39,22 +39,31 @@ public class DruidSource {
                     if (dataSourceConfig == null) {
                         throw new DataSourceException("Config uninitialized");
                     }
-                    instance = new DruidDataSource();
-                    instance.setAsyncCloseConnectionEnable(true);
-                    instance.setUrl(dataSourceConfig.getUrl());
-                    instance.setUsername(dataSourceConfig.getUsername());
-                    instance.setPassword(dataSourceConfig.getPassword());
-                    instance.setInitialSize(dataSourceConfig.getMinConnectionNum());
-                    instance.setMinIdle(dataSourceConfig.getMinConnectionNum());
-                    instance.setMaxActive(dataSourceConfig.getMaxConnectionNum());
-                    instance.setConnectionInitSqls(initSqlStrToList(dataSourceConfig.getInitSqls()));
-                    instance.setMaxWait(dataSourceConfig.getMaxWait());
+                    instance = create(dataSourceConfig);
                 }
             }
         }
         return instance;
     }
 
+    /**
+     * 创建独立于全局实例的连接池 如迁移时的源端
+     * 由调用方初始化与关闭
+     */
+    public static DruidDataSource create(DataSourceConfig dataSourceConfig) {
+        DruidDataSource dataSource = new DruidDataSource();
+        dataSource.setAsyncCloseConnectionEnable(true);
+        dataSource.setUrl(dataSourceConfig.getUrl());
+        dataSource.setUsername(dataSourceConfig.getUsername());
+        dataSource.setPassword(dataSourceConfig.getPassword());
+        dataSource.setInitialSize(dataSourceConfig.getMinConnectionNum());
+        dataSource.setMinIdle(dataSourceConfig.getMinConnectionNum());
+        dataSource.setMaxActive(dataSourceConfig.getMaxConnectionNum());
+        dataSource.setConnectionInitSqls(initSqlStrToList(dataSourceConfig.getInitSqls()));
+        dataSource.setMaxWait(dataSourceConfig.getMaxWait());
+        return dataSource;
+    }
+
     private static List<String> initSqlStrToList(String initSqls) {
         List<String> initSqlList = new ArrayList<>();
         if (initSqls != null && !StringUtils.isEmpty(initSqls)) {
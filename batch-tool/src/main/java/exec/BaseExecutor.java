@@ -20,6 +20,7 @@ import cmd.BaseOperateCommand;
 import cmd.DeleteCommand;
 import cmd.ExportCommand;
 import cmd.ImportCommand;
+import cmd.MigrateCommand;
 import cmd.UpdateCommand;
 import com.alibaba.druid.pool.DruidDataSource;
 import com.lmax.disruptor.EventFactory;
@@ -37,9 +38,15 @@ import model.config.ExportConfig;
 import model.config.FileLineRecord;
 import model.config.GlobalVar;
 import model.config.QuoteEncloseMode;
+import model.db.PartitionKey;
+import model.db.PrimaryKey;
+import model.db.SchemaCatalog;
+import model.db.TableFieldMetaInfo;
+import model.db.TableTopology;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import util.DbUtil;
+import util.SchemaCatalogCache;
 import worker.MyThreadPool;
 import worker.MyWorkerPool;
 import worker.common.BaseWorkHandler;
@@ -47,13 +54,16 @@ import worker.common.BatchLineEvent;
 import worker.common.ReadFileProducer;
 import worker.common.ReadFileWithBlockProducer;
 import worker.common.ReadFileWithLineProducer;
+import worker.common.TableInFlightLimiter;
 
 import javax.sql.DataSource;
 import java.io.File;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ThreadPoolExecutor;
@@ -66,6 +76,7 @@ public abstract class BaseExecutor {
 
     private final DataSourceConfig dataSourceConfig;
     protected final DataSource dataSource;
+    private SchemaCatalog catalog;
 
     public BaseExecutor(DataSourceConfig dataSourceConfig,
                         DataSource dataSource,
@@ -81,9 +92,15 @@ public abstract class BaseExecutor {
 
     protected void checkTableExists(List<String> tableNames) {
         for (String tableName : tableNames) {
-            try (Connection connection = dataSource.getConnection()) {
-                if (!DbUtil.checkTableExists(connection, tableName)) {
-                    throw new RuntimeException(String.format("Table [%s] does not exist", tableName));
+            try {
+                if (getCatalog().containsTable(tableName)) {
+                    continue;
+                }
+                // 目录中没有时再单独确认
+                try (Connection connection = dataSource.getConnection()) {
+                    if (!DbUtil.checkTableExists(connection, tableName)) {
+                        throw new RuntimeException(String.format("Table [%s] does not exist", tableName));
+                    }
                 }
             } catch (SQLException | DatabaseException e) {
                 e.printStackTrace();
@@ -92,6 +109,84 @@ public abstract class BaseExecutor {
         }
     }
 
+    /**
+     * 当前库的元数据目录 首次使用时获取
+     * 以下获取元数据的方法优先使用目录 目录中没有的表再单独查询
+     */
+    protected synchronized SchemaCatalog getCatalog() {
+        if (catalog == null) {
+            catalog = SchemaCatalogCache.getCatalog(dataSource, getSchemaName());
+        }
+        return catalog;
+    }
+
+    protected TableFieldMetaInfo getTableFieldMetaInfo(String tableName) throws DatabaseException, SQLException {
+        return getTableFieldMetaInfo(tableName, null);
+    }
+
+    /**
+     * @param columnNames 为空时返回所有字段
+     */
+    protected TableFieldMetaInfo getTableFieldMetaInfo(String tableName, List<String> columnNames)
+        throws DatabaseException, SQLException {
+        TableFieldMetaInfo tableFieldMetaInfo = getCatalog().getTableFieldMetaInfo(tableName);
+        if (tableFieldMetaInfo == null) {
+            return DbUtil.getTableFieldMetaInfo(dataSource.getConnection(), getSchemaName(), tableName, columnNames);
+        }
+        return DbUtil.selectColumns(tableFieldMetaInfo, tableName, columnNames);
+    }
+
+    protected List<PrimaryKey> getPkList(String tableName) throws DatabaseException, SQLException {
+        List<PrimaryKey> pkList = getCatalog().getPkList(tableName);
+        if (pkList == null) {
+            return DbUtil.getPkList(dataSource.getConnection(), getSchemaName(), tableName);
+        }
+        if (pkList.isEmpty()) {
+            throw new DatabaseException("Unable to get primary key of table " + tableName);
+        }
+        return pkList;
+    }
+
+    protected List<TableTopology> getTopology(String tableName) throws DatabaseException, SQLException {
+        SchemaCatalog schemaCatalog = getCatalog();
+        List<TableTopology> topologyList = schemaCatalog.getTopology(tableName);
+        if (topologyList == null) {
+            topologyList = DbUtil.getTopology(dataSource.getConnection(), tableName);
+            if (schemaCatalog.containsTable(tableName)) {
+                schemaCatalog.putTopology(tableName, topologyList);
+            }
+        }
+        return topologyList;
+    }
+
+    /**
+     * 多张表的拓扑先并行获取
+     */
+    protected void prefetchTopology(List<String> tableNames) throws DatabaseException, SQLException {
+        SchemaCatalog schemaCatalog = getCatalog();
+        List<String> catalogTables = tableNames.stream()
+            .filter(schemaCatalog::containsTable).collect(Collectors.toList());
+        if (catalogTables.size() > 1) {
+            SchemaCatalogCache.prefetchTopology(dataSource, schemaCatalog, catalogTables);
+        }
+    }
+
+    protected boolean isBroadcast(String tableName) throws DatabaseException, SQLException {
+        Boolean isBroadcast = getCatalog().isBroadcast(tableName);
+        if (isBroadcast == null) {
+            return DbUtil.isBroadCast(dataSource.getConnection(), tableName);
+        }
+        return isBroadcast;
+    }
+
+    protected PartitionKey getPartitionKey(String tableName) throws DatabaseException, SQLException {
+        PartitionKey partitionKey = getCatalog().getPartitionKey(tableName);
+        if (partitionKey == null) {
+            return DbUtil.getPartitionKey(dataSource.getConnection(), getSchemaName(), tableName);
+        }
+        return partitionKey;
+    }
+
     protected abstract void setCommand(BaseOperateCommand baseCommand);
 
     public abstract void execute();
@@ -106,6 +201,8 @@ public abstract class BaseExecutor {
             return new UpdateExecutor(dataSourceConfig, druid, command);
         } else if (command instanceof DeleteCommand) {
             return new DeleteExecutor(dataSourceConfig, druid, command);
+        } else if (command instanceof MigrateCommand) {
+            return new MigrateExecutor(dataSourceConfig, druid, command);
         } else {
             throw new UnsupportedOperationException();
         }
@@ -142,6 +239,59 @@ public abstract class BaseExecutor {
                                                 boolean usingBlockReader) {
         List<FileLineRecord> fileLineRecordList =
             getFileRecordList(producerExecutionContext.getFileLineRecordList(), tableName);
+        runWithFileRecords(clazz, producerExecutionContext, consumerExecutionContext, tableName,
+            fileLineRecordList, usingBlockReader);
+    }
+
+    /**
+     * 多张表共用同一组生产者与消费者 每个批次携带所属的表名
+     * 各表的文件交错排列 使读取线程在各表之间轮转
+     * 每张表的在途批次数受任务配置中的上限限制
+     */
+    protected void configureMultiTableContextAndRun(Class<? extends BaseWorkHandler> clazz,
+                                                    ProducerExecutionContext producerExecutionContext,
+                                                    ConsumerExecutionContext consumerExecutionContext,
+                                                    List<String> tableNames,
+                                                    boolean usingBlockReader) {
+        List<List<FileLineRecord>> tableFileRecordLists = new ArrayList<>(tableNames.size());
+        Map<String, Integer> tableLimits = new HashMap<>();
+        int maxFileCount = 0;
+        for (String tableName : tableNames) {
+            List<FileLineRecord> tableFileRecordList =
+                getFileRecordList(producerExecutionContext.getFileLineRecordList(), tableName);
+            tableFileRecordLists.add(tableFileRecordList);
+            maxFileCount = Math.max(maxFileCount, tableFileRecordList.size());
+            tableLimits.put(tableName, consumerExecutionContext.getJobSpec().getTableParallelism(tableName));
+        }
+        List<FileLineRecord> fileLineRecordList = new ArrayList<>();
+        List<String> fileTableNames = new ArrayList<>();
+        for (int i = 0; i < maxFileCount; i++) {
+            for (int j = 0; j < tableNames.size(); j++) {
+                if (i < tableFileRecordLists.get(j).size()) {
+                    fileLineRecordList.add(tableFileRecordLists.get(j).get(i));
+                    fileTableNames.add(tableNames.get(j));
+                }
+            }
+        }
+        TableInFlightLimiter tableInFlightLimiter = new TableInFlightLimiter(tableLimits);
+        producerExecutionContext.setFileTableNames(fileTableNames);
+        producerExecutionContext.setTableInFlightLimiter(tableInFlightLimiter);
+        consumerExecutionContext.setTableInFlightLimiter(tableInFlightLimiter);
+        logger.info("{} 张表共用导入管道, 共 {} 个文件", tableNames.size(), fileLineRecordList.size());
+
+        runWithFileRecords(clazz, producerExecutionContext, consumerExecutionContext, null,
+            fileLineRecordList, usingBlockReader);
+    }
+
+    /**
+     * @param tableName 多张表共用管道时为 null
+     */
+    private void runWithFileRecords(Class<? extends BaseWorkHandler> clazz,
+                                    ProducerExecutionContext producerExecutionContext,
+                                    ConsumerExecutionContext consumerExecutionContext,
+                                    String tableName,
+                                    List<FileLineRecord> fileLineRecordList,
+                                    boolean usingBlockReader) {
         if (!usingBlockReader) {
             producerExecutionContext.setParallelism(fileLineRecordList.size());
         }
@@ -151,7 +301,7 @@ public abstract class BaseExecutor {
         CountDownLatch countDownLatch = new CountDownLatch(producerExecutionContext.getParallelism());
         AtomicInteger emittedDataCounter = new AtomicInteger(0);
         List<ConcurrentHashMap<Long, AtomicInteger>> eventCounter = new ArrayList<>();
-        for (int i = 0; i < producerExecutionContext.getFileLineRecordList().size(); i++) {
+        for (int i = 0; i < fileLineRecordList.size(); i++) {
             eventCounter.add(new ConcurrentHashMap<>(16));
         }
         producerExecutionContext.setEmittedDataCounter(emittedDataCounter);
@@ -164,6 +314,7 @@ public abstract class BaseExecutor {
         consumerExecutionContext.setEmittedDataCounter(emittedDataCounter);
         consumerExecutionContext.setEventCounter(eventCounter);
         consumerExecutionContext.setUseBlock(usingBlockReader);
+        consumerExecutionContext.setFileRecordList(fileLineRecordList);
 
         consumerExecutionContext.setBatchTpsLimitPerConsumer((double) consumerExecutionContext.getTpsLimit()
             / (consumerNum * GlobalVar.EMIT_BATCH_SIZE));
@@ -172,7 +323,14 @@ public abstract class BaseExecutor {
         ThreadPoolExecutor consumerThreadPool = MyThreadPool.createExecutorWithEnsure(clazz.getName() + "-consumer",
             consumerNum);
         EventFactory<BatchLineEvent> factory = BatchLineEvent::new;
-        RingBuffer<BatchLineEvent> ringBuffer = MyWorkerPool.createRingBuffer(factory);
+        RingBuffer<BatchLineEvent> ringBuffer;
+        if (producerExecutionContext.isBlockTransactionEnabled()) {
+            // 每个事件为一个完整的数据块 限制缓冲的数据块数量
+            ringBuffer = MyWorkerPool.createRingBuffer(factory,
+                Math.min(GlobalVar.DEFAULT_RING_BUFFER_SIZE, Integer.highestOneBit(consumerNum) * 2));
+        } else {
+            ringBuffer = MyWorkerPool.createRingBuffer(factory);
+        }
 
         ReadFileProducer producer;
         if (usingBlockReader) {
@@ -227,7 +385,7 @@ public abstract class BaseExecutor {
         producerThreadPool.shutdown();
     }
 
-    private int getConsumerNum(ConsumerExecutionContext consumerExecutionContext) {
+    protected int getConsumerNum(ConsumerExecutionContext consumerExecutionContext) {
         if (!consumerExecutionContext.isForceParallelism()) {
             return Math.max(consumerExecutionContext.getParallelism(),
                 ConfigConstant.CPU_NUM);
@@ -239,7 +397,7 @@ public abstract class BaseExecutor {
     /**
      * 获取当前导入表对应的文件路径
      */
-    private List<FileLineRecord> getFileRecordList(List<FileLineRecord> allFilePathList, String tableName) {
+    protected List<FileLineRecord> getFileRecordList(List<FileLineRecord> allFilePathList, String tableName) {
         if (allFilePathList == null || allFilePathList.isEmpty()) {
             throw new IllegalArgumentException("File path list cannot be empty");
         }
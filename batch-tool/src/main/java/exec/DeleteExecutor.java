@@ -19,13 +19,27 @@ package exec;
 import cmd.BaseOperateCommand;
 import cmd.DeleteCommand;
 import com.alibaba.druid.pool.DruidDataSource;
+import com.google.common.util.concurrent.RateLimiter;
 import datasource.DataSourceConfig;
+import model.config.ConfigConstant;
+import model.config.GlobalVar;
+import model.db.TableTopology;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import worker.MyThreadPool;
+import worker.delete.ConditionDeleteCheckpoint;
+import worker.delete.ConditionDeleteWorker;
 import worker.delete.DeleteConsumer;
 import worker.delete.DeleteInConsumer;
 import worker.delete.ShardedDeleteInConsumer;
 
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadPoolExecutor;
+
 public class DeleteExecutor extends WriteDbExecutor {
     private static final Logger logger = LoggerFactory.getLogger(DeleteExecutor.class);
 
@@ -45,8 +59,13 @@ public class DeleteExecutor extends WriteDbExecutor {
     @Override
     public void execute() {
         configurePkList();
+        if (consumerExecutionContext.isDeleteByConditionEnabled() && command.isShardingEnabled()) {
+            configureTopology();
+        }
         for (String tableName : tableNames) {
-            if (command.isShardingEnabled()) {
+            if (consumerExecutionContext.isDeleteByConditionEnabled()) {
+                doConditionDelete(tableName);
+            } else if (command.isShardingEnabled()) {
                 doShardingDelete(tableName);
             } else {
                 doDefaultDelete(tableName);
@@ -75,4 +94,54 @@ public class DeleteExecutor extends WriteDbExecutor {
         configureCommonContextAndRun(ShardedDeleteInConsumer.class,
             producerExecutionContext, consumerExecutionContext, tableName);
     }
+
+    /**
+     * 不指定文件 按where条件分批删除
+     * 各分片并行 分片内按主键顺序推进
+     */
+    private void doConditionDelete(String tableName) {
+        List<TableTopology> topologyList;
+        if (command.isShardingEnabled()) {
+            topologyList = consumerExecutionContext.getTopologyList(tableName);
+        } else {
+            topologyList = Collections.singletonList(new TableTopology(tableName));
+        }
+        Queue<TableTopology> shardQueue = new ConcurrentLinkedQueue<>(topologyList);
+        ConditionDeleteCheckpoint checkpoint = new ConditionDeleteCheckpoint(
+            getCheckpointFile(tableName), consumerExecutionContext.getWhereCondition());
+        RateLimiter rateLimiter = null;
+        if (consumerExecutionContext.getTpsLimit() > 0) {
+            rateLimiter = RateLimiter.create(consumerExecutionContext.getTpsLimit());
+        }
+
+        int workerNum = Math.max(1, Math.min(consumerExecutionContext.getParallelism(), topologyList.size()));
+        logger.info("开始按条件删除表 {}, 分片数: {}, 并发度: {}, 每批行数: {}",
+            tableName, topologyList.size(), workerNum, GlobalVar.EMIT_BATCH_SIZE);
+        ThreadPoolExecutor executor = MyThreadPool.createFixedExecutor("condition-delete", workerNum);
+        CountDownLatch countDownLatch = new CountDownLatch(workerNum);
+        for (int i = 0; i < workerNum; i++) {
+            executor.submit(new ConditionDeleteWorker(dataSource, consumerExecutionContext, tableName,
+                shardQueue, checkpoint, rateLimiter, GlobalVar.EMIT_BATCH_SIZE, countDownLatch));
+        }
+        try {
+            countDownLatch.await();
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        } finally {
+            executor.shutdown();
+        }
+        if (consumerExecutionContext.getException() != null) {
+            throw new RuntimeException("按条件删除失败, 可重新执行以从断点继续",
+                consumerExecutionContext.getException());
+        }
+        checkpoint.clear();
+    }
+
+    private String getCheckpointFile(String tableName) {
+        String prefix = producerExecutionContext.getHistoryFile();
+        if (prefix == null) {
+            prefix = ConfigConstant.DEFAULT_DELETE_CHECKPOINT_FILE;
+        }
+        return prefix + "_" + tableName;
+    }
 }
@@ -23,19 +23,31 @@ import datasource.DataSourceConfig;
 import exception.DatabaseException;
 import model.config.ConfigConstant;
 import model.config.DdlMode;
+import model.config.FileFormat;
+import model.config.FileLineRecord;
 import model.config.QuoteEncloseMode;
+import model.db.FieldMetaInfo;
+import model.db.PartitionKey;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import util.BinaryFormatUtil;
 import util.DbUtil;
 import worker.ddl.DdlImporter;
+import worker.insert.BlockTransactionImportConsumer;
 import worker.insert.DirectImportWorker;
 import worker.insert.ImportConsumer;
 import worker.insert.ProcessOnlyImportConsumer;
 import worker.insert.ShardedImportConsumer;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 public class ImportExecutor extends WriteDbExecutor {
     private static final Logger logger = LoggerFactory.getLogger(ImportExecutor.class);
@@ -55,6 +67,10 @@ public class ImportExecutor extends WriteDbExecutor {
 
     @Override
     public void preCheck() {
+        if (producerExecutionContext.isBlockTransactionEnabled() && !useBlockReader()) {
+            throw new IllegalArgumentException("Block transaction import only supports files that can be read "
+                + "by block");
+        }
         if (producerExecutionContext.getDdlMode() != DdlMode.NO_DDL) {
             if (command.isDbOperation()) {
                 checkDbNotExist(command.getDbName());
@@ -106,12 +122,13 @@ public class ImportExecutor extends WriteDbExecutor {
 
     @Override
     public void execute() {
+        DdlImporter ddlImporter = null;
         switch (producerExecutionContext.getDdlMode()) {
         case WITH_DDL:
-            handleDDL();
+            ddlImporter = handleDDL(producerExecutionContext.getDeferIndexParallelism());
             break;
         case DDL_ONLY:
-            handleDDL();
+            handleDDL(0);
             return;
         case NO_DDL:
             break;
@@ -119,9 +136,70 @@ public class ImportExecutor extends WriteDbExecutor {
             throw new UnsupportedOperationException("DDL mode is not supported: " +
                 producerExecutionContext.getDdlMode());
         }
-        configureFieldMetaInfo();
+        if (ddlImporter != null) {
+            ddlImporter.logDeferredIndexes();
+        }
+        try {
+            configureFieldMetaInfo();
+            if (producerExecutionContext.getFileFormat() == FileFormat.BIN) {
+                checkBinaryFileColumns();
+            }
+            importData();
+        } finally {
+            if (ddlImporter != null) {
+                // 数据导入失败时也补建索引 使表结构与导出时一致
+                ddlImporter.buildDeferredIndexes();
+            }
+        }
+    }
+
+    /**
+     * 二进制格式按字段顺序导入 导入前校验各文件头中的字段与目标表一致
+     * 二进制类型字段以十六进制字面量写入 不按字符集解码
+     */
+    private void checkBinaryFileColumns() {
+        Map<String, boolean[]> binaryColumns = new HashMap<>();
         for (String tableName : tableNames) {
-            if (producerExecutionContext.isSingleThread()
+            List<FieldMetaInfo> fieldMetaInfoList = consumerExecutionContext.getTableFieldMetaInfo(tableName)
+                .getFieldMetaInfoList();
+            boolean[] tableBinaryColumns = BinaryFormatUtil.getBinaryColumns(fieldMetaInfoList);
+            if (tableBinaryColumns != null) {
+                if (command.isShardingEnabled()) {
+                    PartitionKey partitionKey = consumerExecutionContext.getTablePartitionKey(tableName);
+                    if (partitionKey != null && partitionKey.getFieldMetaInfo().isBinary()) {
+                        throw new UnsupportedOperationException("Binary partition key is not supported in BIN import: "
+                            + tableName);
+                    }
+                }
+                fieldMetaInfoList.stream().filter(FieldMetaInfo::isBinary)
+                    .forEach(info -> info.setSqlLiteral(true));
+            }
+            for (FileLineRecord fileRecord : getFileRecordList(producerExecutionContext.getFileLineRecordList(),
+                tableName)) {
+                try (RandomAccessFile file = new RandomAccessFile(fileRecord.getFilePath(), "r")) {
+                    BinaryFormatUtil.checkColumns(BinaryFormatUtil.readFileHeader(file), fieldMetaInfoList,
+                        fileRecord.getFilePath());
+                } catch (IOException e) {
+                    logger.error(e.getMessage());
+                    throw new RuntimeException(e);
+                }
+                if (tableBinaryColumns != null) {
+                    binaryColumns.put(new File(fileRecord.getFilePath()).getPath(), tableBinaryColumns);
+                }
+            }
+        }
+        producerExecutionContext.setBinaryColumns(binaryColumns);
+    }
+
+    private void importData() {
+        if (isMultiTableImport()) {
+            doMultiTableImport();
+            return;
+        }
+        for (String tableName : tableNames) {
+            if (producerExecutionContext.isBlockTransactionEnabled()) {
+                doBlockTransactionImport(tableName);
+            } else if (producerExecutionContext.isSingleThread()
                 && consumerExecutionContext.isSingleThread())  {
                 // 使用按行读取insert模式
                 doSingleThreadImport(tableName);
@@ -149,8 +227,10 @@ public class ImportExecutor extends WriteDbExecutor {
 
     /**
      * 同步导入建库建表语句
+     *
+     * @param deferIndexParallelism 大于 0 时建表不带二级索引 由返回的 DdlImporter 在数据导入后补建
      */
-    private void handleDDL() {
+    private DdlImporter handleDDL(int deferIndexParallelism) {
         DdlImporter ddlImporter;
         if (command.isDbOperation()) {
             if (producerExecutionContext.getFileLineRecordList().size() != 1) {
@@ -161,7 +241,56 @@ public class ImportExecutor extends WriteDbExecutor {
         } else {
             ddlImporter = new DdlImporter(command.getTableNames(), dataSource);
         }
+        if (deferIndexParallelism > 0) {
+            ddlImporter.setDeferIndexParallelism(deferIndexParallelism);
+        }
         ddlImporter.doImportSync();
+        return ddlImporter;
+    }
+
+    /**
+     * 多张表时共用一组生产者与消费者
+     * 按块事务导入与单线程导入仍逐表进行
+     */
+    private boolean isMultiTableImport() {
+        if (tableNames.size() <= 1 || producerExecutionContext.isBlockTransactionEnabled()) {
+            return false;
+        }
+        return !(producerExecutionContext.isSingleThread() && consumerExecutionContext.isSingleThread());
+    }
+
+    /**
+     * 所有表的文件由同一组生产者读取 批次携带所属的表名
+     * 省去逐表创建、回收线程池与缓冲区的开销
+     */
+    private void doMultiTableImport() {
+        if (command.isShardingEnabled()) {
+            configurePartitionKey();
+            configureTopology();
+            configureMultiTableContextAndRun(ShardedImportConsumer.class,
+                producerExecutionContext, consumerExecutionContext, tableNames,
+                useBlockReader());
+        } else if (consumerExecutionContext.isReadProcessFileOnly()) {
+            // 测试读取文件的性能
+            configureMultiTableContextAndRun(ProcessOnlyImportConsumer.class,
+                producerExecutionContext, consumerExecutionContext, tableNames, true);
+        } else {
+            configureMultiTableContextAndRun(ImportConsumer.class,
+                producerExecutionContext, consumerExecutionContext, tableNames,
+                useBlockReader());
+        }
+
+        if (producerExecutionContext.getException() != null) {
+            logger.error("导入数据到 {} 失败：{}", tableNames,
+                producerExecutionContext.getException().getMessage());
+            return;
+        }
+        if (consumerExecutionContext.getException() != null) {
+            logger.error("导入数据到 {} 失败：{}", tableNames,
+                consumerExecutionContext.getException().getMessage());
+            return;
+        }
+        logger.info("导入数据到 {} 完成", tableNames);
     }
 
     private void doSingleThreadImport(String tableName) {
@@ -197,7 +326,36 @@ public class ImportExecutor extends WriteDbExecutor {
             useBlockReader());
     }
 
+    /**
+     * 以数据块为单位在事务中导入
+     * 跳过进度表中已提交的数据块
+     */
+    private void doBlockTransactionImport(String tableName) {
+        if (command.isShardingEnabled()) {
+            logger.warn("按块事务导入不使用分片模式");
+        }
+        long blockSize = producerExecutionContext.getReadBlockSizeInMb() * 1024L * 1024;
+        try (Connection conn = dataSource.getConnection()) {
+            DbUtil.createBlockProgressTable(conn);
+            Map<String, Set<Long>> committedBlocks = DbUtil.getCommittedBlocks(conn, tableName, blockSize);
+            if (!committedBlocks.isEmpty()) {
+                logger.info("表 {} 跳过已提交的数据块 {}", tableName, committedBlocks);
+            }
+            producerExecutionContext.setCommittedBlocks(committedBlocks);
+        } catch (SQLException | DatabaseException e) {
+            logger.error(e.getMessage());
+            throw new RuntimeException(e);
+        }
+        configureCommonContextAndRun(BlockTransactionImportConsumer.class,
+            producerExecutionContext, consumerExecutionContext, tableName, true);
+    }
+
     private boolean useBlockReader() {
+        if (producerExecutionContext.getFileFormat() == FileFormat.BIN
+            || producerExecutionContext.getFileFormat() == FileFormat.PARQUET) {
+            // 二进制格式按同步标记分块 parquet 按行组分块 总是并行读取
+            return true;
+        }
         if (producerExecutionContext.getQuoteEncloseMode() == QuoteEncloseMode.FORCE) {
             return false;
         }
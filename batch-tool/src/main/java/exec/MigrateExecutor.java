@@ -0,0 +1,363 @@
+/*
+ * Copyright [2013-2021], Alibaba Group Holding Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package exec;
+
+import cmd.BaseOperateCommand;
+import cmd.MigrateCommand;
+import com.alibaba.druid.pool.DruidDataSource;
+import com.lmax.disruptor.EventFactory;
+import com.lmax.disruptor.RingBuffer;
+import com.lmax.disruptor.WorkerPool;
+import datasource.DataSourceConfig;
+import datasource.DruidSource;
+import exception.DatabaseException;
+import model.config.ConfigConstant;
+import model.config.FileLineRecord;
+import model.config.GlobalVar;
+import model.db.FieldMetaInfo;
+import model.db.PartitionKey;
+import model.db.TableTopology;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import util.DbUtil;
+import worker.MyThreadPool;
+import worker.MyWorkerPool;
+import worker.common.BaseWorkHandler;
+import worker.common.BatchLineEvent;
+import worker.common.TableInFlightLimiter;
+import worker.insert.ImportConsumer;
+import worker.insert.ShardedImportConsumer;
+import worker.migrate.MigrateCheckpoint;
+import worker.migrate.MigrateShard;
+import worker.migrate.MigrateShardReader;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 表到表的迁移 不落地中间文件
+ * 源端各分片的读取线程直接向导入消费者发送批次 消费者写入当前连接的目标库
+ * 断点按源端分片记录 只有完整写入目标端的分片才会跳过
+ */
+public class MigrateExecutor extends WriteDbExecutor {
+    private static final Logger logger = LoggerFactory.getLogger(MigrateExecutor.class);
+
+    private MigrateCommand command;
+    private DruidDataSource sourceDataSource;
+
+    public MigrateExecutor(DataSourceConfig dataSourceConfig,
+                           DruidDataSource druid,
+                           BaseOperateCommand baseCommand) {
+        super(dataSourceConfig, druid, baseCommand);
+    }
+
+    @Override
+    protected void setCommand(BaseOperateCommand baseCommand) {
+        this.command = (MigrateCommand) baseCommand;
+    }
+
+    @Override
+    public void preCheck() {
+        DataSourceConfig sourceConfig = command.getSourceDataSourceConfig();
+        logger.info("迁移源端数据库: {}", getSourceName());
+        this.sourceDataSource = DruidSource.create(sourceConfig);
+        try {
+            sourceDataSource.init();
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to connect to source database: " + e.getMessage(), e);
+        }
+        if (command.isDbOperation()) {
+            try (Connection conn = sourceDataSource.getConnection()) {
+                this.tableNames = DbUtil.getAllTablesInDb(conn, sourceConfig.getDbName());
+            } catch (SQLException | DatabaseException e) {
+                throw new RuntimeException(e);
+            }
+        } else {
+            this.tableNames = command.getTableNames();
+        }
+        // 目标表需预先创建
+        checkTableExists(tableNames);
+    }
+
+    @Override
+    public void execute() {
+        configureFieldMetaInfo();
+        Class<? extends BaseWorkHandler> clazz;
+        if (command.isShardingEnabled()) {
+            // 按目标端的拆分规则路由到物理分片
+            configurePartitionKey();
+            configureTopology();
+            clazz = ShardedImportConsumer.class;
+        } else {
+            clazz = ImportConsumer.class;
+        }
+        configureBinaryFields();
+
+        Map<String, MigrateCheckpoint> checkpoints = new HashMap<>();
+        List<MigrateShard> shards = new ArrayList<>();
+        for (String tableName : tableNames) {
+            MigrateCheckpoint checkpoint = new MigrateCheckpoint(getCheckpointFile(tableName), getSourceName());
+            checkpoints.put(tableName, checkpoint);
+            for (TableTopology topology : getSourceTopology(tableName)) {
+                if (!checkpoint.isFinished(MigrateShard.getShardName(topology))) {
+                    shards.add(new MigrateShard(tableName, topology, shards.size()));
+                }
+            }
+            if (checkpoint.getFinishedCount() > 0) {
+                logger.info("表 {} 已有 {} 个分片迁移完成, 跳过", tableName, checkpoint.getFinishedCount());
+                if (!consumerExecutionContext.isInsertIgnoreAndResumeEnabled()) {
+                    logger.warn("未完成的分片将重新迁移, 建议开启 -i 以忽略已写入的数据");
+                }
+            }
+        }
+        if (!shards.isEmpty()) {
+            migrateShards(clazz, shards, checkpoints);
+        }
+
+        if (producerExecutionContext.getException() != null) {
+            throw new RuntimeException("迁移失败：" + producerExecutionContext.getException().getMessage()
+                + ", 可开启 -i 重新执行以继续迁移");
+        }
+        if (consumerExecutionContext.getException() != null) {
+            throw new RuntimeException("迁移失败：" + consumerExecutionContext.getException().getMessage()
+                + ", 可开启 -i 重新执行以继续迁移");
+        }
+        // 读取线程未记录异常就退出时 断点中仍有未完成的分片 不能删除
+        List<String> unfinishedShards = MigrateShard.getUnfinishedShards(shards, checkpoints);
+        if (!unfinishedShards.isEmpty()) {
+            throw new RuntimeException("迁移未完成, 分片 " + unfinishedShards
+                + " 未全部写入, 可开启 -i 重新执行以继续迁移");
+        }
+        for (MigrateCheckpoint checkpoint : checkpoints.values()) {
+            checkpoint.clear();
+        }
+        logger.info("迁移 {} 完成", tableNames);
+    }
+
+    /**
+     * 二进制字段按字节读取 以十六进制字面量写入 避免字符集转换损坏数据
+     */
+    private void configureBinaryFields() {
+        for (String tableName : tableNames) {
+            if (command.isShardingEnabled()) {
+                PartitionKey partitionKey = consumerExecutionContext.getTablePartitionKey(tableName);
+                if (partitionKey != null && partitionKey.getFieldMetaInfo().isBinary()) {
+                    throw new UnsupportedOperationException("Binary partition key is not supported in migration: "
+                        + tableName);
+                }
+            }
+            for (FieldMetaInfo fieldMetaInfo : consumerExecutionContext.getTableFieldMetaInfo(tableName)
+                .getFieldMetaInfoList()) {
+                if (fieldMetaInfo.isBinary()) {
+                    fieldMetaInfo.setSqlLiteral(true);
+                }
+            }
+        }
+    }
+
+    /**
+     * 源端的物理分片 源端为单机库时只有一个分片
+     * 广播表各分片数据相同 只读取第一个
+     */
+    private List<TableTopology> getSourceTopology(String tableName) {
+        List<TableTopology> topologyList;
+        try {
+            topologyList = DbUtil.getTopology(sourceDataSource.getConnection(), tableName);
+        } catch (DatabaseException e) {
+            logger.info("无法获取源端表 {} 的拓扑, 按单表读取", tableName);
+            return Collections.singletonList(new TableTopology("", tableName));
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+        try {
+            if (topologyList.size() > 1 && DbUtil.isBroadCast(sourceDataSource.getConnection(), tableName)) {
+                return topologyList.subList(0, 1);
+            }
+        } catch (DatabaseException | SQLException e) {
+            logger.error(e.getMessage());
+            throw new RuntimeException(e);
+        }
+        return topologyList;
+    }
+
+    private void migrateShards(Class<? extends BaseWorkHandler> clazz,
+                               List<MigrateShard> shards,
+                               Map<String, MigrateCheckpoint> checkpoints) {
+        int readerNum = Math.min(shards.size(), Math.min(producerExecutionContext.getParallelism(),
+            command.getSourceDataSourceConfig().getMaxConnectionNum()));
+        CountDownLatch countDownLatch = new CountDownLatch(readerNum);
+        AtomicInteger emittedDataCounter = new AtomicInteger(0);
+        List<ConcurrentHashMap<Long, AtomicInteger>> eventCounter = new ArrayList<>(shards.size());
+        List<FileLineRecord> fileRecordList = new ArrayList<>(shards.size());
+        for (MigrateShard shard : shards) {
+            // 每个分片只有一个计数 读取完毕且归零时即为写入完成
+            ConcurrentHashMap<Long, AtomicInteger> shardCounter = new ConcurrentHashMap<>(1);
+            shardCounter.put(0L, new AtomicInteger(0));
+            eventCounter.add(shardCounter);
+            // 错误行按分片名记录
+            fileRecordList.add(new FileLineRecord(shard.getShardName()));
+        }
+        Map<String, Integer> tableLimits = new HashMap<>();
+        for (String tableName : tableNames) {
+            tableLimits.put(tableName, consumerExecutionContext.getJobSpec().getTableParallelism(tableName));
+        }
+        TableInFlightLimiter tableInFlightLimiter = new TableInFlightLimiter(tableLimits);
+        producerExecutionContext.setTableInFlightLimiter(tableInFlightLimiter);
+        producerExecutionContext.setEmittedDataCounter(emittedDataCounter);
+        producerExecutionContext.setCountDownLatch(countDownLatch);
+        producerExecutionContext.setEventCounter(eventCounter);
+
+        int consumerNum = getConsumerNum(consumerExecutionContext);
+        consumerExecutionContext.setParallelism(consumerNum);
+        consumerExecutionContext.setDataSource(dataSource);
+        consumerExecutionContext.setEmittedDataCounter(emittedDataCounter);
+        consumerExecutionContext.setEventCounter(eventCounter);
+        consumerExecutionContext.setUseBlock(true);
+        consumerExecutionContext.setFileRecordList(fileRecordList);
+        consumerExecutionContext.setTableInFlightLimiter(tableInFlightLimiter);
+        consumerExecutionContext.setBatchTpsLimitPerConsumer((double) consumerExecutionContext.getTpsLimit()
+            / (consumerNum * GlobalVar.EMIT_BATCH_SIZE));
+
+        EventFactory<BatchLineEvent> factory = BatchLineEvent::new;
+        RingBuffer<BatchLineEvent> ringBuffer = MyWorkerPool.createRingBuffer(factory);
+        BaseWorkHandler[] consumers = new BaseWorkHandler[consumerNum];
+        try {
+            for (int i = 0; i < consumerNum; i++) {
+                consumers[i] = clazz.newInstance();
+                consumers[i].setConsumerContext(consumerExecutionContext);
+                consumers[i].createTpsLimiter(consumerExecutionContext.getBatchTpsLimitPerConsumer());
+            }
+        } catch (Exception e) {
+            logger.error(e.getMessage());
+            throw new RuntimeException(e);
+        }
+        logger.info("{} 张表共 {} 个分片待迁移, 读取线程 {} 个, 写入线程 {} 个",
+            tableNames.size(), shards.size(), readerNum, consumerNum);
+
+        ThreadPoolExecutor consumerThreadPool = MyThreadPool.createExecutorWithEnsure(clazz.getName() + "-consumer",
+            consumerNum);
+        WorkerPool<BatchLineEvent> workerPool = MyWorkerPool.createWorkerPool(ringBuffer, consumers);
+        workerPool.start(consumerThreadPool);
+
+        // 固定数量的读取线程依次领取分片
+        ConcurrentLinkedQueue<MigrateShard> shardQueue = new ConcurrentLinkedQueue<>(shards);
+        ThreadPoolExecutor readerThreadPool = MyThreadPool.createFixedExecutor("migrate-reader", readerNum);
+        for (int i = 0; i < readerNum; i++) {
+            readerThreadPool.submit(() -> {
+                try {
+                    MigrateShard shard;
+                    while (producerExecutionContext.getException() == null
+                        && consumerExecutionContext.getException() == null
+                        && (shard = shardQueue.poll()) != null) {
+                        new MigrateShardReader(producerExecutionContext, consumerExecutionContext, ringBuffer,
+                            sourceDataSource, shard,
+                            consumerExecutionContext.getTableFieldMetaInfo(shard.getTableName())
+                                .getFieldMetaInfoList()).run();
+                    }
+                } finally {
+                    countDownLatch.countDown();
+                }
+            });
+        }
+
+        // 出现异常后不再记录断点 因此需尽快记录已完成的分片
+        ScheduledThreadPoolExecutor checkpointScheduler = new ScheduledThreadPoolExecutor(1,
+            r -> new Thread(r, "[check-migrate-progress-thread]"));
+        AtomicInteger lastFinishedCount = new AtomicInteger(0);
+        checkpointScheduler.scheduleWithFixedDelay(() -> {
+            int finishedCount = saveFinishedShards(shards, checkpoints);
+            if (lastFinishedCount.getAndSet(finishedCount) != finishedCount) {
+                logger.info("已迁移完成 {}/{} 个分片", finishedCount, shards.size());
+            }
+        }, 1, 1, TimeUnit.SECONDS);
+
+        waitForFinish(countDownLatch, emittedDataCounter, producerExecutionContext, consumerExecutionContext);
+        checkpointScheduler.shutdownNow();
+        workerPool.drainAndHalt();
+        consumerThreadPool.shutdown();
+        readerThreadPool.shutdown();
+        saveFinishedShards(shards, checkpoints);
+    }
+
+    /**
+     * 将已读取完毕且所有批次均已写入的分片记入断点
+     * 出现异常后不再记录 失败批次所属的分片需要重新迁移
+     *
+     * @return 已完成的分片数
+     */
+    private synchronized int saveFinishedShards(List<MigrateShard> shards,
+                                                Map<String, MigrateCheckpoint> checkpoints) {
+        int finishedCount = 0;
+        for (MigrateShard shard : shards) {
+            MigrateCheckpoint checkpoint = checkpoints.get(shard.getTableName());
+            if (checkpoint.isFinished(shard.getShardName())) {
+                finishedCount++;
+                continue;
+            }
+            if (!shard.isWriteFinished(producerExecutionContext.getEventCounter())) {
+                continue;
+            }
+            // 先确认计数归零再检查异常 消费者在计数减一前已设置异常
+            if (producerExecutionContext.getException() != null
+                || consumerExecutionContext.getException() != null) {
+                break;
+            }
+            checkpoint.finish(shard.getShardName());
+            finishedCount++;
+        }
+        return finishedCount;
+    }
+
+    private String getSourceName() {
+        DataSourceConfig sourceConfig = command.getSourceDataSourceConfig();
+        return sourceConfig.getHost() + ":" + sourceConfig.getPort() + "/" + sourceConfig.getDbName();
+    }
+
+    private String getCheckpointFile(String tableName) {
+        String prefix = producerExecutionContext.getHistoryFile();
+        if (prefix == null) {
+            prefix = ConfigConstant.DEFAULT_MIGRATE_CHECKPOINT_FILE;
+        }
+        return prefix + "_" + tableName;
+    }
+
+    @Override
+    protected void onWorkFinished() {
+        // 断点按分片记录 不使用按文件记录的断点
+    }
+
+    @Override
+    public void close() {
+        super.close();
+        if (sourceDataSource != null) {
+            sourceDataSource.close();
+        }
+    }
+}
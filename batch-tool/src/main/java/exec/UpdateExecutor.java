@@ -20,17 +20,39 @@ import cmd.BaseOperateCommand;
 import cmd.UpdateCommand;
 import com.alibaba.druid.pool.DruidDataSource;
 import datasource.DataSourceConfig;
+import exception.DatabaseException;
+import model.config.ConfigConstant;
+import model.config.FileLineRecord;
+import model.db.PartitionKey;
+import model.db.PrimaryKey;
+import model.db.TableTopology;
 import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import util.DbUtil;
+import worker.MyThreadPool;
 import worker.common.BaseWorkHandler;
+import worker.insert.ImportConsumer;
+import worker.insert.ShardedImportConsumer;
 import worker.update.ReplaceConsumer;
 import worker.update.ShardedReplaceConsumer;
+import worker.update.StagingJoinUpdateWorker;
 import worker.update.UpdateConsumer;
 import worker.update.UpdateWithFuncConsumer;
 import worker.update.UpdateWithFuncInConsumer;
 import worker.util.UpdateUtil;
 
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
 public class UpdateExecutor extends WriteDbExecutor {
     private static final Logger logger = LoggerFactory.getLogger(UpdateExecutor.class);
 
@@ -47,11 +69,26 @@ public class UpdateExecutor extends WriteDbExecutor {
         this.command = (UpdateCommand) baseCommand;
     }
 
+    @Override
+    public void preCheck() {
+        if (consumerExecutionContext.isStagingUpdateEnabled()
+            && !StringUtils.isEmpty(consumerExecutionContext.getWhereCondition())) {
+            throw new IllegalArgumentException("Staging update does not support where condition");
+        }
+    }
+
     @Override
     public void execute() {
         configureFieldMetaInfo();
         configurePkList();
 
+        if (consumerExecutionContext.isStagingUpdateEnabled()) {
+            for (String tableName : tableNames) {
+                doStagingUpdate(tableName);
+            }
+            logger.info("更新 {} 数据完成", tableNames);
+            return;
+        }
         if (command.getConsumerExecutionContext().isFuncSqlForUpdateEnabled()) {
             // 启用函数则优先
             doUpdateWithFunc();
@@ -119,4 +156,141 @@ public class UpdateExecutor extends WriteDbExecutor {
                 consumerExecutionContext, tableName);
         }
     }
+
+    /**
+     * 先将文件导入与目标表结构、分区一致的中间表
+     * 再对每个物理分片执行一条关联更新
+     * 仅更新目标表中已存在的行
+     */
+    private void doStagingUpdate(String tableName) {
+        String stagingTableName = ConfigConstant.STAGING_TABLE_PREFIX + tableName;
+        try (Connection conn = dataSource.getConnection()) {
+            DbUtil.createStagingTable(conn, stagingTableName, tableName);
+        } catch (SQLException | DatabaseException e) {
+            throw new RuntimeException(e);
+        }
+        consumerExecutionContext.getTableFieldMetaInfo().put(stagingTableName,
+            consumerExecutionContext.getTableFieldMetaInfo(tableName));
+
+        List<TableTopology> targetShards;
+        List<TableTopology> stagingShards;
+        if (command.isShardingEnabled()) {
+            try {
+                checkStagingPartitionKey(tableName);
+                targetShards = getTopology(tableName);
+                stagingShards = getTopology(stagingTableName);
+            } catch (SQLException | DatabaseException e) {
+                throw new RuntimeException(e);
+            }
+            configureStagingShards(stagingTableName, stagingShards);
+        } else {
+            targetShards = Collections.singletonList(new TableTopology(tableName));
+            stagingShards = Collections.singletonList(new TableTopology(stagingTableName));
+        }
+        if (!isShardAligned(targetShards, stagingShards)) {
+            logger.warn("中间表 {} 与表 {} 的分片无法对应, 将直接关联逻辑表更新", stagingTableName, tableName);
+            targetShards = Collections.singletonList(new TableTopology(tableName));
+            stagingShards = Collections.singletonList(new TableTopology(stagingTableName));
+        }
+
+        logger.info("开始导入中间表 {}", stagingTableName);
+        List<FileLineRecord> allFileRecordList = producerExecutionContext.getFileLineRecordList();
+        producerExecutionContext.setFileLineRecordList(getFileRecordList(allFileRecordList, tableName));
+        try {
+            configureCommonContextAndRun(command.isShardingEnabled() ? ShardedImportConsumer.class :
+                ImportConsumer.class, producerExecutionContext, consumerExecutionContext, stagingTableName);
+        } finally {
+            producerExecutionContext.setFileLineRecordList(allFileRecordList);
+        }
+        if (consumerExecutionContext.getException() != null) {
+            throw new RuntimeException("导入中间表失败", consumerExecutionContext.getException());
+        }
+
+        String setClause = UpdateUtil.getUpdateJoinSetClause(
+            consumerExecutionContext.getTableFieldMetaInfo(tableName).getFieldMetaInfoList(),
+            consumerExecutionContext.getTablePkIndexSet(tableName),
+            consumerExecutionContext.isFuncSqlForUpdateEnabled());
+        int workerNum = Math.max(1, Math.min(consumerExecutionContext.getParallelism(), targetShards.size()));
+        logger.info("开始关联中间表更新 {}, 分片数: {}, 并发度: {}", tableName, targetShards.size(), workerNum);
+        ThreadPoolExecutor executor = MyThreadPool.createFixedExecutor("staging-update", workerNum);
+        CountDownLatch countDownLatch = new CountDownLatch(workerNum);
+        AtomicInteger nextShardIndex = new AtomicInteger(0);
+        AtomicInteger finishedShardCount = new AtomicInteger(0);
+        AtomicLong updatedRowCount = new AtomicLong(0);
+        for (int i = 0; i < workerNum; i++) {
+            executor.submit(new StagingJoinUpdateWorker(dataSource, consumerExecutionContext, tableName,
+                targetShards, stagingShards, setClause, nextShardIndex, finishedShardCount,
+                updatedRowCount, countDownLatch));
+        }
+        try {
+            countDownLatch.await();
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        } finally {
+            executor.shutdown();
+        }
+        if (consumerExecutionContext.getException() != null) {
+            // 保留中间表以便排查
+            throw new RuntimeException(String.format("关联中间表更新失败, 已完成 %d/%d 个分片",
+                finishedShardCount.get(), targetShards.size()), consumerExecutionContext.getException());
+        }
+        logger.info("表 {} 共更新 {} 行", tableName, updatedRowCount.get());
+
+        try (Connection conn = dataSource.getConnection()) {
+            DbUtil.dropTable(conn, stagingTableName);
+        } catch (SQLException | DatabaseException e) {
+            logger.warn("删除中间表 {} 失败: {}", stagingTableName, e.getMessage());
+        }
+    }
+
+    /**
+     * 按分片关联更新时 中间表的行按文件中的分片键值路由
+     * 分片键不是主键时 可能与目标表中的行不在同一分片 且更新分片键会使行留在错误的分片
+     */
+    private void checkStagingPartitionKey(String tableName) throws DatabaseException, SQLException {
+        PartitionKey partitionKey = getPartitionKey(tableName);
+        String partitionKeyName = partitionKey.getFieldMetaInfo().getName();
+        for (PrimaryKey primaryKey : getPkList(tableName)) {
+            if (primaryKey.getName().equalsIgnoreCase(partitionKeyName)) {
+                return;
+            }
+        }
+        throw new UnsupportedOperationException(String.format("Staging update with sharding does not support "
+            + "table %s whose partition key %s is not a primary key", tableName, partitionKeyName));
+    }
+
+    /**
+     * 分片导入中间表时需要其拓扑与分片键
+     */
+    private void configureStagingShards(String stagingTableName, List<TableTopology> stagingShards) {
+        if (consumerExecutionContext.getTopologyList() == null) {
+            consumerExecutionContext.setTopologyList(new HashMap<>());
+        }
+        consumerExecutionContext.getTopologyList().put(stagingTableName, stagingShards);
+        PartitionKey partitionKey;
+        try {
+            partitionKey = DbUtil.getPartitionKey(dataSource.getConnection(), getSchemaName(), stagingTableName);
+        } catch (SQLException | DatabaseException e) {
+            throw new RuntimeException(e);
+        }
+        if (consumerExecutionContext.getTablePartitionKey() == null) {
+            consumerExecutionContext.setTablePartitionKey(new HashMap<>());
+        }
+        consumerExecutionContext.getTablePartitionKey().put(stagingTableName, partitionKey);
+    }
+
+    /**
+     * 两表分区方式一致时 同一下标的物理分片位于同一分库
+     */
+    private boolean isShardAligned(List<TableTopology> targetShards, List<TableTopology> stagingShards) {
+        if (targetShards.size() != stagingShards.size()) {
+            return false;
+        }
+        for (int i = 0; i < targetShards.size(); i++) {
+            if (!Objects.equals(targetShards.get(i).getGroupName(), stagingShards.get(i).getGroupName())) {
+                return false;
+            }
+        }
+        return true;
+    }
 }
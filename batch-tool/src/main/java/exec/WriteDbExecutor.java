@@ -23,14 +23,15 @@ import datasource.DataSourceConfig;
 import exception.DatabaseException;
 import model.ConsumerExecutionContext;
 import model.ProducerExecutionContext;
+import model.config.ConfigConstant;
 import model.db.PartitionKey;
 import model.db.PrimaryKey;
 import model.db.TableFieldMetaInfo;
 import model.db.TableTopology;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import util.DbUtil;
 import worker.common.BaseWorkHandler;
+import worker.common.BrokenLineRecorder;
 import worker.common.ReadFileWithBlockProducer;
 
 import java.sql.SQLException;
@@ -60,6 +61,9 @@ public abstract class WriteDbExecutor extends BaseExecutor {
         this.producerExecutionContext = writeDbCommand.getProducerExecutionContext();
         this.consumerExecutionContext = writeDbCommand.getConsumerExecutionContext();
         this.tableNames = consumerExecutionContext.getTableNames();
+        this.consumerExecutionContext.setBrokenLineRecorder(new BrokenLineRecorder(
+            ConfigConstant.BROKEN_LINE_FILE_NAME, producerExecutionContext.getCharset(),
+            consumerExecutionContext.getMaxErrorCount()));
     }
 
     /**
@@ -70,7 +74,7 @@ public abstract class WriteDbExecutor extends BaseExecutor {
         for (String tableName : tableNames) {
             List<PrimaryKey> pkList = null;
             try {
-                pkList = DbUtil.getPkList(dataSource.getConnection(), getSchemaName(), tableName);
+                pkList = getPkList(tableName);
                 tablePkList.put(tableName, pkList);
             } catch (DatabaseException | SQLException e) {
                 logger.error(e.getMessage());
@@ -85,10 +89,11 @@ public abstract class WriteDbExecutor extends BaseExecutor {
      */
     protected void configureFieldMetaInfo() {
         logger.info("正在获取所有表的元信息...");
-        Map<String, TableFieldMetaInfo> tableFieldMetaInfo = null;
+        Map<String, TableFieldMetaInfo> tableFieldMetaInfo = new HashMap<>();
         try {
-            tableFieldMetaInfo = DbUtil.getDbFieldMetaInfo(dataSource.getConnection(),
-                getSchemaName(), tableNames);
+            for (String tableName : tableNames) {
+                tableFieldMetaInfo.put(tableName, getTableFieldMetaInfo(tableName));
+            }
         } catch (DatabaseException | SQLException e) {
             logger.error(e.getMessage());
             throw new RuntimeException(e);
@@ -102,10 +107,16 @@ public abstract class WriteDbExecutor extends BaseExecutor {
      */
     protected void configureTopology() {
         Map<String, List<TableTopology>> tableTopologyMap = new HashMap<>();
+        try {
+            prefetchTopology(tableNames);
+        } catch (DatabaseException | SQLException e) {
+            logger.error(e.getMessage());
+            throw new RuntimeException(e);
+        }
         for (String tableName : tableNames) {
             List<TableTopology> topologyList = null;
             try {
-                topologyList = DbUtil.getTopology(dataSource.getConnection(), tableName);
+                topologyList = getTopology(tableName);
                 tableTopologyMap.put(tableName, topologyList);
             } catch (DatabaseException | SQLException e) {
                 logger.error(e.getMessage());
@@ -120,8 +131,7 @@ public abstract class WriteDbExecutor extends BaseExecutor {
         for (String tableName : tableNames) {
             PartitionKey partitionKey = null;
             try {
-                partitionKey = DbUtil.getPartitionKey(dataSource.getConnection(),
-                    getSchemaName(), tableName);
+                partitionKey = getPartitionKey(tableName);
                 logger.info("表 {} 使用分片键 {}", tableName, partitionKey);
                 tablePartitionKey.put(tableName, partitionKey);
             } catch (DatabaseException | SQLException e) {
@@ -182,4 +192,17 @@ public abstract class WriteDbExecutor extends BaseExecutor {
         producerExecutionContext.saveToHistoryFile(true);
     }
 
+    @Override
+    public void close() {
+        BrokenLineRecorder brokenLineRecorder = consumerExecutionContext.getBrokenLineRecorder();
+        if (brokenLineRecorder == null) {
+            return;
+        }
+        if (brokenLineRecorder.getErrorCount() > 0) {
+            logger.warn("共有 {} 行数据处理失败，已记录至 {}", brokenLineRecorder.getErrorCount(),
+                brokenLineRecorder.getFilePath());
+        }
+        brokenLineRecorder.close();
+    }
+
 }
@@ -20,11 +20,51 @@ import cmd.BaseOperateCommand;
 import cmd.ExportCommand;
 import com.alibaba.druid.pool.DruidDataSource;
 import datasource.DataSourceConfig;
+import exception.DatabaseException;
 import exec.BaseExecutor;
+import model.config.DdlMode;
 import model.config.ExportConfig;
+import model.config.GlobalVar;
+import model.db.PrimaryKey;
+import model.db.TableFieldMetaInfo;
+import model.db.TableTopology;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import util.ByteBufferPool;
+import util.DbUtil;
+import worker.MyThreadPool;
 import worker.ddl.DdlExportWorker;
+import worker.common.writer.AsyncFileWriter;
+import worker.export.DirectExportWorker;
+import worker.export.ExportWatermark;
+import worker.util.DeleteUtil;
+import worker.util.ExportUtil;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static model.config.ConfigConstant.CPU_NUM;
 
 public abstract class BaseExportExecutor extends BaseExecutor {
+    private static final Logger logger = LoggerFactory.getLogger(BaseExportExecutor.class);
+
+    /**
+     * 并发准备各表元数据的线程数上限
+     */
+    private static final int MAX_SETUP_PARALLELISM = 4;
 
     protected ExportCommand command;
     protected ExportConfig config;
@@ -81,10 +121,302 @@ public abstract class BaseExportExecutor extends BaseExecutor {
         } else {
             ddlExportWorker = new DdlExportWorker(dataSource, command.getDbName(), command.getTableNames());
         }
+        ddlExportWorker.setParallelism(getDdlParallelism());
+        ddlExportWorker.setFilePerTable(config.isDdlFilePerTable());
         Thread ddlThread = new Thread(ddlExportWorker);
         ddlThread.start();
         return ddlThread;
     }
 
     abstract void exportData();
+
+    /**
+     * 与数据同时导出时 建表语句最多占用四分之一的连接
+     */
+    private int getDdlParallelism() {
+        if (config.getDdlMode() == DdlMode.DDL_ONLY) {
+            return Math.min(config.getDdlParallelism(), getMaxConnectionNum());
+        }
+        return Math.max(1, Math.min(config.getDdlParallelism(), getMaxConnectionNum() / 4));
+    }
+
+    /**
+     * 是否按主键范围拆分物理表
+     * 限制单文件行数时各子扫描无法共同切换文件 不进行拆分
+     * 限制单文件大小时由共享的写线程切换文件 可以拆分
+     */
+    protected boolean isSplitEnabled() {
+        if (config.getSplitNum() <= 1) {
+            return false;
+        }
+        if (config.getExportWay() != ExportConfig.ExportWay.DEFAULT
+            && config.getExportWay() != ExportConfig.ExportWay.MAX_BYTES_IN_SINGLE_FILE) {
+            logger.warn("导出方式 {} 不支持按主键范围拆分, 将按物理表导出", config.getExportWay());
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 获取可按范围拆分的单一整型主键
+     *
+     * @return 不满足条件时返回 null
+     */
+    protected String getSplitPkName(String tableName) {
+        try {
+            List<PrimaryKey> pkList = getPkList(tableName);
+            TableFieldMetaInfo tableFieldMetaInfo = getTableFieldMetaInfo(tableName);
+            if (DeleteUtil.isPkRangeSupported(pkList, tableFieldMetaInfo.getFieldMetaInfoList())) {
+                return pkList.get(0).getName();
+            }
+            logger.warn("表 {} 不是单一整型主键, 不进行范围拆分", tableName);
+        } catch (DatabaseException | SQLException e) {
+            logger.warn("表 {} 获取主键失败, 不进行范围拆分: {}", tableName, e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * 根据物理表主键的最小最大值 将当前分片拆分为多个子扫描
+     * 无法拆分时返回原 worker
+     */
+    protected List<DirectExportWorker> splitByPkRange(DirectExportWorker worker,
+                                                      TableTopology topology, String pkName) {
+        if (pkName == null) {
+            return Collections.singletonList(worker);
+        }
+        String sql = ExportUtil.getPkMinMaxSql(topology, pkName);
+        try (Connection conn = dataSource.getConnection();
+            Statement stmt = conn.createStatement();
+            ResultSet resultSet = stmt.executeQuery(sql)) {
+            if (resultSet.next()) {
+                long min = resultSet.getLong(1);
+                // 空表的最小值为 NULL
+                if (!resultSet.wasNull()) {
+                    long max = resultSet.getLong(2);
+                    List<String> rangeConditions = ExportUtil.splitPkRange(pkName, min, max,
+                        config.getSplitNum());
+                    if (rangeConditions.size() > 1) {
+                        logger.info("{} 主键范围 [{}, {}] 拆分为 {} 个子扫描", topology, min, max,
+                            rangeConditions.size());
+                        return worker.splitByRange(rangeConditions);
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            logger.warn("{} 获取主键范围失败, 不进行拆分: {}", topology, e.getMessage());
+        }
+        return Collections.singletonList(worker);
+    }
+
+    /**
+     * 增量导出时加载该表各分片的水位
+     *
+     * @return 未开启增量导出时返回 null
+     */
+    protected ExportWatermark loadWatermark(String tableName) {
+        if (!config.isIncremental()) {
+            return null;
+        }
+        return new ExportWatermark(config.getWatermarkFilePrefix() + "_" + tableName,
+            config.getWatermarkColumn());
+    }
+
+    /**
+     * 查询分片当前水位列的最大值作为本次导出的上界 并将增量范围附加到 worker 的 where 条件
+     * 下界包含上次的上界 边界上的数据可能重复导出 见 {@link ExportUtil#getWatermarkCondition}
+     * 须在按主键范围拆分前调用
+     *
+     * @return 本次导出成功后该分片的新水位 分片无数据时返回 null
+     */
+    protected String applyWatermark(DirectExportWorker worker, TableTopology topology,
+                                    ExportWatermark watermark) throws SQLException {
+        String columnName = config.getWatermarkColumn();
+        String lower = watermark.get(getShardName(topology));
+        String upper;
+        try (Connection conn = dataSource.getConnection();
+            Statement stmt = conn.createStatement();
+            ResultSet resultSet = stmt.executeQuery(ExportUtil.getMaxValueSql(topology, columnName))) {
+            upper = resultSet.next() ? resultSet.getString(1) : null;
+        }
+        if (upper == null || (lower != null && ExportUtil.compareWatermark(upper, lower) < 0)) {
+            // 分片为空或数据被删除时 水位不后退
+            upper = lower;
+        }
+        if (upper == null) {
+            logger.info("{} 无数据", topology);
+            return null;
+        }
+        logger.info("{} 增量导出范围 [{}, {}]", topology, lower == null ? "" : lower, upper);
+        worker.setWhereCondition(ExportUtil.combineWhereCondition(worker.getWhereCondition(),
+            ExportUtil.getWatermarkCondition(columnName, lower, upper)));
+        return upper;
+    }
+
+    /**
+     * 表导出结束后 逐个分片保存新水位
+     * 仅当分片的全部子扫描都成功时才推进水位 失败的分片下次仍从原水位导出
+     *
+     * @param shardWorkers 每个分片拆分后的 worker
+     * @param newValues 每个分片的新水位
+     */
+    protected Runnable commitWatermark(String tableName, ExportWatermark watermark, List<TableTopology> topologyList,
+                                       List<List<DirectExportWorker>> shardWorkers, List<String> newValues) {
+        return () -> {
+            for (int i = 0; i < topologyList.size(); i++) {
+                TableTopology topology = topologyList.get(i);
+                if (!shardWorkers.get(i).stream().allMatch(DirectExportWorker::isSucceeded)) {
+                    logger.warn("{} 导出失败, 不更新水位", topology);
+                    continue;
+                }
+                if (newValues.get(i) != null) {
+                    watermark.update(getShardName(topology), newValues.get(i));
+                }
+            }
+            logger.info("表 {} 的水位已保存", tableName);
+        };
+    }
+
+    private static String getShardName(TableTopology topology) {
+        if (topology.getGroupName() == null || topology.getGroupName().isEmpty()) {
+            return topology.getTableName();
+        }
+        return topology.getGroupName() + "." + topology.getTableName();
+    }
+
+    /**
+     * 导出单张表时 准备该表的元数据并向调度器提交其分片任务
+     */
+    @FunctionalInterface
+    protected interface TableTaskSubmitter {
+        void submit(String tableName, long dataLength, ExportTaskScheduler scheduler,
+                    ByteBufferPool bufferPool) throws DatabaseException, SQLException;
+    }
+
+    /**
+     * 多张表共用一个调度器并发导出
+     * 少量线程按数据量从大到小准备各表的导出任务 准备好后立即提交执行
+     * 其余连接用于执行分片任务
+     */
+    protected void exportTablesConcurrently(List<String> tableNames, TableTaskSubmitter submitter) {
+        if (tableNames.isEmpty()) {
+            return;
+        }
+        Map<String, Long> dataLengthMap = getTableDataLengthMap();
+        List<String> sortedTableNames = new ArrayList<>(tableNames);
+        sortedTableNames.sort(Comparator.comparingLong(
+            (String tableName) -> getDataLength(dataLengthMap, tableName)).reversed());
+
+        int maxConnNum = getMaxConnectionNum();
+        int setupParallelism = Math.max(1, Math.min(Math.min(sortedTableNames.size(), MAX_SETUP_PARALLELISM),
+            maxConnNum / 4));
+        // 另为 DDL 导出预留连接
+        int ddlConnNum = config.getDdlMode() == DdlMode.WITH_DDL ? getDdlParallelism() : 1;
+        int parallelism = Math.max(1, maxConnNum - setupParallelism - ddlConnNum);
+        if (config.getParallelism() > 0) {
+            parallelism = Math.min(parallelism, config.getParallelism());
+        }
+        logger.info("共 {} 张表, 导出并发度 {}, 单节点并发上限 {}", sortedTableNames.size(), parallelism,
+            config.getMaxConnPerDn() > 0 ? config.getMaxConnPerDn() : "不限制");
+
+        // 所有表的任务共用缓冲区 按需分配
+        // 每个运行中的任务最多持有一个正在填充的缓冲区 加上其写线程队列中与正在写入的缓冲区
+        ByteBufferPool bufferPool = new ByteBufferPool(parallelism * (AsyncFileWriter.MAX_HELD_BUFFERS + 1),
+            GlobalVar.DEFAULT_EXPORT_BUFFER_SIZE);
+        ExportTaskScheduler scheduler = new ExportTaskScheduler(parallelism, config.getMaxConnPerDn());
+        scheduler.start();
+        Queue<String> tableQueue = new ConcurrentLinkedQueue<>(sortedTableNames);
+        AtomicReference<Throwable> firstException = new AtomicReference<>();
+        CountDownLatch setupLatch = new CountDownLatch(setupParallelism);
+        ExecutorService setupExecutor = MyThreadPool.createFixedExecutor("export-setup", setupParallelism);
+        for (int i = 0; i < setupParallelism; i++) {
+            setupExecutor.submit(() -> {
+                try {
+                    String tableName;
+                    while ((tableName = tableQueue.poll()) != null) {
+                        try {
+                            submitter.submit(tableName, getDataLength(dataLengthMap, tableName), scheduler,
+                                bufferPool);
+                        } catch (DatabaseException | SQLException | RuntimeException e) {
+                            logger.error("准备导出表 {} 失败: {}", tableName, e.getMessage());
+                            firstException.compareAndSet(null, e);
+                        }
+                    }
+                } finally {
+                    setupLatch.countDown();
+                }
+            });
+        }
+        try {
+            setupLatch.await();
+            scheduler.finishSubmit();
+            scheduler.awaitCompletion();
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        } finally {
+            setupExecutor.shutdown();
+        }
+        if (firstException.get() != null) {
+            throw new RuntimeException(firstException.get());
+        }
+    }
+
+    /**
+     * 提交一张表的全部导出任务 最后一个任务结束时记录该表导出完成
+     *
+     * @param nodes 每个任务所在的存储节点
+     * @param onTableFinish 该表全部任务结束后执行 可为 null
+     */
+    protected void submitTableWorkers(ExportTaskScheduler scheduler, String tableName, long dataLength,
+                                      List<? extends Runnable> workers, List<String> nodes,
+                                      Runnable onTableFinish) {
+        AtomicInteger remaining = new AtomicInteger(workers.size());
+        long sizePerWorker = dataLength / Math.max(1, workers.size());
+        for (int i = 0; i < workers.size(); i++) {
+            Runnable worker = workers.get(i);
+            scheduler.submit(nodes == null ? null : nodes.get(i), sizePerWorker, () -> {
+                try {
+                    worker.run();
+                } finally {
+                    if (remaining.decrementAndGet() == 0) {
+                        logger.info("导出 {} 数据完成", tableName);
+                        if (onTableFinish != null) {
+                            onTableFinish.run();
+                        }
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * 分库名到存储节点的映射
+     * 无法获取时以分库名作为节点
+     */
+    protected Map<String, String> getGroupStorageMap() {
+        try {
+            return DbUtil.getGroupStorageMap(dataSource.getConnection());
+        } catch (DatabaseException | SQLException e) {
+            logger.warn("获取存储节点信息失败, 按分库限制并发: {}", e.getMessage());
+            return Collections.emptyMap();
+        }
+    }
+
+    /**
+     * 元数据目录获取失败时为空 按表名顺序导出
+     */
+    private Map<String, Long> getTableDataLengthMap() {
+        return getCatalog().getDataLengthMap();
+    }
+
+    private static long getDataLength(Map<String, Long> dataLengthMap, String tableName) {
+        return dataLengthMap.getOrDefault(tableName.toLowerCase(), 0L);
+    }
+
+    private int getMaxConnectionNum() {
+        if (dataSource instanceof DruidDataSource) {
+            return ((DruidDataSource) dataSource).getMaxActive();
+        }
+        return CPU_NUM;
+    }
 }
@@ -0,0 +1,200 @@
+/*
+ * Copyright [2013-2021], Alibaba Group Holding Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package exec.export;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import worker.MyThreadPool;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 多表导出任务调度
+ * 所有表的分片任务共用一个队列 由固定数量的线程按估算大小从大到小取出执行
+ * 总并发受连接池大小限制 同一节点上的并发另受单节点上限限制
+ * 可以在执行过程中继续提交任务 提交完毕后调用 finishSubmit
+ */
+public class ExportTaskScheduler {
+    private static final Logger logger = LoggerFactory.getLogger(ExportTaskScheduler.class);
+
+    /**
+     * 不属于任何节点的任务 只受总并发限制
+     */
+    private static final String NO_NODE = "";
+
+    private static final Comparator<Task> BIGGEST_FIRST = (o1, o2) -> {
+        int res = Long.compare(o2.estimatedSize, o1.estimatedSize);
+        return res != 0 ? res : Long.compare(o1.seq, o2.seq);
+    };
+
+    private final int parallelism;
+    /**
+     * 单节点并发上限 0 表示不限制
+     */
+    private final int maxPerNode;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private final Map<String, PriorityQueue<Task>> pendingTasks = new HashMap<>();
+    private final Map<String, Integer> runningCount = new HashMap<>();
+    private int pendingCount = 0;
+    private long seq = 0;
+    private boolean isSubmitFinished = false;
+
+    private ExecutorService executor;
+
+    public ExportTaskScheduler(int parallelism, int maxPerNode) {
+        this.parallelism = parallelism;
+        this.maxPerNode = maxPerNode;
+    }
+
+    public void start() {
+        executor = MyThreadPool.createFixedExecutor("export-scheduler", parallelism);
+        for (int i = 0; i < parallelism; i++) {
+            executor.submit(this::runTasks);
+        }
+    }
+
+    /**
+     * @param node 任务所在的节点 为 null 时只受总并发限制
+     * @param estimatedSize 估算的数据量 越大越先执行
+     */
+    public void submit(String node, long estimatedSize, Runnable runnable) {
+        String key = node == null ? NO_NODE : node;
+        lock.lock();
+        try {
+            pendingTasks.computeIfAbsent(key, k -> new PriorityQueue<>(BIGGEST_FIRST))
+                .offer(new Task(key, estimatedSize, seq++, runnable));
+            pendingCount++;
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void finishSubmit() {
+        lock.lock();
+        try {
+            isSubmitFinished = true;
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 等待所有任务执行完毕
+     */
+    public void awaitCompletion() throws InterruptedException {
+        executor.shutdown();
+        while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+            lock.lock();
+            try {
+                logger.info("导出任务剩余 {} 个未开始", pendingCount);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private void runTasks() {
+        Task task;
+        while ((task = take()) != null) {
+            try {
+                task.runnable.run();
+            } catch (Throwable t) {
+                logger.error("导出任务执行失败: {}", t.getMessage(), t);
+            } finally {
+                release(task);
+            }
+        }
+    }
+
+    /**
+     * 在未达到并发上限的节点中 取出估算大小最大的任务
+     *
+     * @return 全部任务已取完时返回 null
+     */
+    private Task take() {
+        lock.lock();
+        try {
+            while (true) {
+                Task best = null;
+                for (Map.Entry<String, PriorityQueue<Task>> entry : pendingTasks.entrySet()) {
+                    Task head = entry.getValue().peek();
+                    if (head == null || !hasCapacity(entry.getKey())) {
+                        continue;
+                    }
+                    if (best == null || BIGGEST_FIRST.compare(head, best) < 0) {
+                        best = head;
+                    }
+                }
+                if (best != null) {
+                    pendingTasks.get(best.node).poll();
+                    pendingCount--;
+                    runningCount.merge(best.node, 1, Integer::sum);
+                    return best;
+                }
+                if (isSubmitFinished && pendingCount == 0) {
+                    return null;
+                }
+                changed.awaitUninterruptibly();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean hasCapacity(String node) {
+        if (maxPerNode <= 0 || NO_NODE.equals(node)) {
+            return true;
+        }
+        return runningCount.getOrDefault(node, 0) < maxPerNode;
+    }
+
+    private void release(Task task) {
+        lock.lock();
+        try {
+            runningCount.merge(task.node, -1, Integer::sum);
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static class Task {
+        final String node;
+        final long estimatedSize;
+        final long seq;
+        final Runnable runnable;
+
+        Task(String node, long estimatedSize, long seq, Runnable runnable) {
+            this.node = node;
+            this.estimatedSize = estimatedSize;
+            this.seq = seq;
+            this.runnable = runnable;
+        }
+    }
+}
@@ -33,27 +33,33 @@ import util.FileUtil;
 import worker.MyThreadPool;
 import worker.export.DirectExportWorker;
 import worker.export.order.DirectOrderExportWorker;
+import worker.export.order.ExternalRowSorter;
 import worker.export.order.LocalOrderByExportProducer;
-import worker.export.order.OrderByExportEvent;
 import worker.export.order.OrderByExportProducer;
 import worker.export.order.OrderByMergeExportConsumer;
 import worker.export.order.ParallelMergeExportConsumer;
-import worker.export.order.ParallelOrderByExportEvent;
+import worker.export.order.SortKeyEncoder;
+import worker.export.order.SpscBatchQueue;
 import worker.factory.ExportWorkerFactory;
+import worker.util.ExportUtil;
 
+import java.io.File;
 import java.sql.SQLException;
-import java.util.LinkedList;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.atomic.AtomicBoolean;
 
 import static model.config.ConfigConstant.APP_NAME;
 
 public class OrderByExportExecutor extends BaseExportExecutor {
     private static final Logger logger = LoggerFactory.getLogger(OrderByExportExecutor.class);
 
+    /**
+     * 本地归并时每个分片的最小排序内存
+     */
+    private static final long MIN_SORT_MEMORY_PER_SHARD = 1024 * 1024;
+
     private ExportCommand command;
     private ExportConfig config;
 
@@ -104,30 +110,30 @@ public class OrderByExportExecutor extends BaseExportExecutor {
             String filePathPrefix = FileUtil.getFilePathPrefix(config.getPath(),
                 config.getFilenamePrefix(), tableName);
             try {
-                topologyList = DbUtil.getTopology(dataSource.getConnection(), tableName);
-                TableFieldMetaInfo tableFieldMetaInfo = DbUtil.getTableFieldMetaInfo(dataSource.getConnection(),
-                    getSchemaName(), tableName);
+                topologyList = getTopology(tableName);
+                TableFieldMetaInfo tableFieldMetaInfo = getTableFieldMetaInfo(tableName);
                 orderByColumnInfoList = DbUtil.getFieldMetaInfoListByColNames(dataSource.getConnection(), getSchemaName(),
                     tableName, config.getOrderByColumnNameList());
                 // 分片数
                 final int shardSize = topologyList.size();
                 ExecutorService executor = MyThreadPool.createExecutorWithEnsure(APP_NAME, shardSize);
                 OrderByExportProducer orderByExportProducer;
-                LinkedBlockingQueue[] orderedQueues = new LinkedBlockingQueue[shardSize];
-                AtomicBoolean[] finishedList = new AtomicBoolean[shardSize];
+                SpscBatchQueue[] orderedQueues = new SpscBatchQueue[shardSize];
                 for (int i = 0; i < shardSize; i++) {
-                    orderedQueues[i] = new LinkedBlockingQueue<OrderByExportEvent>(GlobalVar.DEFAULT_RING_BUFFER_SIZE);
-                    finishedList[i] = new AtomicBoolean(false);
+                    // 每个分片缓存的行数与 RingBuffer 大小相当
+                    orderedQueues[i] = new SpscBatchQueue(
+                        GlobalVar.DEFAULT_RING_BUFFER_SIZE / GlobalVar.EMIT_BATCH_SIZE, GlobalVar.EMIT_BATCH_SIZE);
                     orderByExportProducer = new OrderByExportProducer(dataSource, topologyList.get(i),
                         tableFieldMetaInfo, orderedQueues[i], i, config.getOrderByColumnNameList(),
-                        finishedList[i]);
+                        new SortKeyEncoder(orderByColumnInfoList, config.isAscending()));
+                    orderByExportProducer.setAscending(config.isAscending());
                     executor.submit(orderByExportProducer);
                 }
                 OrderByMergeExportConsumer consumer;
                 switch (config.getExportWay()) {
                 case MAX_LINE_NUM_IN_SINGLE_FILE:
                     consumer = new OrderByMergeExportConsumer(filePathPrefix,
-                        config.getSeparator(), orderByColumnInfoList, orderedQueues, finishedList, config.getLimitNum());
+                        config.getSeparator(), orderByColumnInfoList, orderedQueues, config.getLimitNum());
                     break;
                 case FIXED_FILE_NUM:
                     // 固定文件数的情况 先拿到全部的行数
@@ -136,20 +142,16 @@ public class OrderByExportExecutor extends BaseExportExecutor {
                     int singleLineLimit = (int) Math.ceil(totalRowCount / fileNum);
                     // 再转为限制单文件行数的形式
                     consumer = new OrderByMergeExportConsumer(filePathPrefix,
-                        config.getSeparator(), orderByColumnInfoList, orderedQueues, finishedList, singleLineLimit);
+                        config.getSeparator(), orderByColumnInfoList, orderedQueues, singleLineLimit);
                     break;
                 case DEFAULT:
                     consumer = new OrderByMergeExportConsumer(filePathPrefix,
-                        config.getSeparator(), orderByColumnInfoList, orderedQueues, finishedList, 0);
+                        config.getSeparator(), orderByColumnInfoList, orderedQueues, 0);
                     break;
                 default:
                     throw new RuntimeException("Unsupported export exception");
                 }
-                try {
-                    consumer.consume();
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                }
+                consumer.consume();
                 executor.shutdown();
                 logger.info("导出 {} 数据完成", tableName);
             } catch (DatabaseException | SQLException e) {
@@ -162,24 +164,16 @@ public class OrderByExportExecutor extends BaseExportExecutor {
 
     /**
      * 带有order by的导出命令处理
-     * 交给DB全局排序
-     * TODO 多线程导出多表
+     * 交给DB全局排序 每张表单线程写入 多张表共用调度队列并发导出
      */
     private void handleExportWithOrderByFromDb() {
-        for (String tableName : command.getTableNames()) {
-            try {
-                TableFieldMetaInfo tableFieldMetaInfo = DbUtil.getTableFieldMetaInfo(dataSource.getConnection(),
-                    getSchemaName(), tableName);
-                DirectOrderExportWorker directOrderByExportWorker = ExportWorkerFactory
-                    .buildDirectOrderExportWorker(dataSource, tableFieldMetaInfo, command, tableName);
-                // 就单线程地写入
-                directOrderByExportWorker.exportSerially();
-                logger.info("导出 {} 数据完成", tableName);
-            } catch (DatabaseException | SQLException e) {
-                e.printStackTrace();
-                logger.error(e.getMessage());
-            }
-        }
+        exportTablesConcurrently(command.getTableNames(), (tableName, dataLength, scheduler, bufferPool) -> {
+            TableFieldMetaInfo tableFieldMetaInfo = getTableFieldMetaInfo(tableName);
+            DirectOrderExportWorker directOrderByExportWorker = ExportWorkerFactory
+                .buildDirectOrderExportWorker(dataSource, tableFieldMetaInfo, command, tableName);
+            submitTableWorkers(scheduler, tableName, dataLength,
+                Collections.<Runnable>singletonList(directOrderByExportWorker::exportSerially), null, null);
+        });
     }
 
     /**
@@ -193,29 +187,33 @@ public class OrderByExportExecutor extends BaseExportExecutor {
             try {
                 String filePathPrefix = FileUtil.getFilePathPrefix(config.getPath(),
                     config.getFilenamePrefix(), tableName);
-                topologyList = DbUtil.getTopology(dataSource.getConnection(), tableName);
-                TableFieldMetaInfo tableFieldMetaInfo = DbUtil.getTableFieldMetaInfo(dataSource.getConnection(),
-                    getSchemaName(),tableName);
+                topologyList = getTopology(tableName);
+                TableFieldMetaInfo tableFieldMetaInfo = getTableFieldMetaInfo(tableName);
                 orderByColumnInfoList = DbUtil.getFieldMetaInfoListByColNames(dataSource.getConnection(), getSchemaName(),
                     tableName, config.getOrderByColumnNameList());
                 // 分片数
                 final int shardSize = topologyList.size();
                 ExecutorService executor = MyThreadPool.createExecutorWithEnsure(APP_NAME, shardSize);
                 LocalOrderByExportProducer orderByExportProducer;
-                LinkedList[] orderedLists = new LinkedList[shardSize];
+                ExternalRowSorter[] sorters = new ExternalRowSorter[shardSize];
                 CountDownLatch countDownLatch = new CountDownLatch(shardSize);
+                // 各分片平分内存上限
+                long sortMemoryPerShard = Math.max(config.getSortMemoryBytes() / shardSize, MIN_SORT_MEMORY_PER_SHARD);
+                File sortTmpDir = new File(config.getSortTmpDir());
                 for (int i = 0; i < shardSize; i++) {
-                    orderedLists[i] = new LinkedList<ParallelOrderByExportEvent>();
+                    sorters[i] = new ExternalRowSorter(ExportUtil.getSortKeyComparator(),
+                        sortMemoryPerShard, sortTmpDir);
                     orderByExportProducer = new LocalOrderByExportProducer(dataSource, topologyList.get(i),
-                        tableFieldMetaInfo, orderedLists[i], config.getOrderByColumnNameList(),
-                        countDownLatch);
+                        tableFieldMetaInfo, sorters[i], config.getOrderByColumnNameList(),
+                        new SortKeyEncoder(orderByColumnInfoList, config.isAscending()), countDownLatch);
+                    orderByExportProducer.setAscending(config.isAscending());
                     executor.submit(orderByExportProducer);
                 }
                 ParallelMergeExportConsumer consumer;
                 switch (config.getExportWay()) {
                 case MAX_LINE_NUM_IN_SINGLE_FILE:
                     consumer = new ParallelMergeExportConsumer(filePathPrefix,
-                        config.getSeparator(), orderByColumnInfoList, orderedLists, config.getLimitNum());
+                        config.getSeparator(), orderByColumnInfoList, sorters, config.getLimitNum());
                     break;
                 case FIXED_FILE_NUM:
                     // 固定文件数的情况 先拿到全部的行数
@@ -224,17 +222,17 @@ public class OrderByExportExecutor extends BaseExportExecutor {
                     int singleLineLimit = (int) Math.ceil(totalRowCount / fileNum);
                     // 再转为限制单文件行数的形式
                     consumer = new ParallelMergeExportConsumer(filePathPrefix,
-                        config.getSeparator(), orderByColumnInfoList, orderedLists, singleLineLimit);
+                        config.getSeparator(), orderByColumnInfoList, sorters, singleLineLimit);
                     break;
                 case DEFAULT:
                     consumer = new ParallelMergeExportConsumer(filePathPrefix,
-                        config.getSeparator(), orderByColumnInfoList, orderedLists, 0);
+                        config.getSeparator(), orderByColumnInfoList, sorters, 0);
                     break;
                 default:
                     throw new RuntimeException("Unsupported export exception");
                 }
                 try {
-                    // 等待生产者把数据全部buffer到内存
+                    // 等待生产者把数据全部写入排序器
                     countDownLatch.await();
                     consumer.consume();
                 } catch (InterruptedException e) {
@@ -23,29 +23,31 @@ import com.lmax.disruptor.RingBuffer;
 import com.lmax.disruptor.WorkerPool;
 import datasource.DataSourceConfig;
 import exception.DatabaseException;
-import model.CyclicAtomicInteger;
 import model.config.FileFormat;
+import model.config.GlobalVar;
 import model.db.TableFieldMetaInfo;
 import model.db.TableTopology;
 import model.encrypt.BaseCipher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import util.ByteBufferPool;
 import util.DbUtil;
 import util.FileUtil;
 import worker.MyThreadPool;
 import worker.MyWorkerPool;
-import worker.export.CollectFragmentWorker;
 import worker.export.DirectExportWorker;
 import worker.export.ExportConsumer;
 import worker.export.ExportEvent;
 import worker.export.ExportProducer;
+import worker.export.ExportWatermark;
 import worker.factory.ExportWorkerFactory;
 
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.Queue;
-import java.util.concurrent.ArrayBlockingQueue;
+import java.util.Map;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Semaphore;
@@ -73,36 +75,99 @@ public class ShardingExportExecutor extends BaseExportExecutor {
                 throw new RuntimeException(e);
             }
         }
-        for (String tableName : tableNames) {
-            doExportWithSharding(tableName);
+        try {
+            prefetchTopology(tableNames);
+        } catch (SQLException | DatabaseException e) {
+            throw new RuntimeException(e);
+        }
+        switch (config.getExportWay()) {
+        case MAX_LINE_NUM_IN_SINGLE_FILE:
+        case MAX_BYTES_IN_SINGLE_FILE:
+        case DEFAULT:
+            Map<String, String> groupStorageMap = getGroupStorageMap();
+            exportTablesConcurrently(tableNames, (tableName, dataLength, scheduler, bufferPool) ->
+                submitShardingTasks(tableName, dataLength, scheduler, bufferPool, groupStorageMap));
+            break;
+        case FIXED_FILE_NUM:
+            // 固定文件数的导出各表自带消费者线程 仍逐表进行
+            for (String tableName : tableNames) {
+                doExportWithFixedFile(tableName);
+            }
+            break;
+        default:
+            throw new RuntimeException("Unsupported export exception: " + config.getExportWay());
         }
     }
 
     /**
-     * 处理分库分表导出命令
+     * 将一张表的各分片作为独立任务提交 同一存储节点上的分片共享单节点并发上限
+     * 各任务的文件在开始运行时才打开
      */
-    private void doExportWithSharding(String tableName) {
+    private void submitShardingTasks(String tableName, long dataLength, ExportTaskScheduler scheduler,
+                                     ByteBufferPool bufferPool, Map<String, String> groupStorageMap)
+        throws DatabaseException, SQLException {
         String filePathPrefix = FileUtil.getFilePathPrefix(config.getPath(),
             config.getFilenamePrefix(), tableName);
-        List<TableTopology> topologyList = null;
+        List<TableTopology> topologyList = getShardTopology(tableName);
+        TableFieldMetaInfo tableFieldMetaInfo = getTableFieldMetaInfo(tableName, command.getColumnNames());
+        String pkName = isSplitEnabled() ? getSplitPkName(tableName) : null;
+        ExportWatermark watermark = loadWatermark(tableName);
+
+        List<DirectExportWorker> workers = new ArrayList<>(topologyList.size());
+        List<String> nodes = new ArrayList<>(topologyList.size());
+        List<List<DirectExportWorker>> workersByShard = new ArrayList<>(topologyList.size());
+        List<String> newWatermarks = new ArrayList<>(topologyList.size());
+        for (int i = 0; i < topologyList.size(); i++) {
+            TableTopology topology = topologyList.get(i);
+            DirectExportWorker directExportWorker = ExportWorkerFactory.buildDefaultDirectExportWorker(dataSource,
+                topology, tableFieldMetaInfo, filePathPrefix + i, config);
+            directExportWorker.setBufferPool(bufferPool);
+            if (watermark != null) {
+                newWatermarks.add(applyWatermark(directExportWorker, topology, watermark));
+            }
+            List<DirectExportWorker> shardWorkers = pkName == null ? Collections.singletonList(directExportWorker)
+                : splitByPkRange(directExportWorker, topology, pkName);
+            workersByShard.add(shardWorkers);
+            String node = groupStorageMap.getOrDefault(topology.getGroupName(), topology.getGroupName());
+            for (DirectExportWorker shardWorker : shardWorkers) {
+                workers.add(shardWorker);
+                nodes.add(node);
+            }
+        }
+        logger.info("开始导出表 {}, 分片数 {}, 任务数 {}", tableName, topologyList.size(), workers.size());
+        Runnable onTableFinish = watermark == null ? null
+            : commitWatermark(tableName, watermark, topologyList, workersByShard, newWatermarks);
+        submitTableWorkers(scheduler, tableName, dataLength, workers, nodes, onTableFinish);
+    }
+
+    /**
+     * 广播表只导出第一个分片
+     */
+    private List<TableTopology> getShardTopology(String tableName) throws DatabaseException, SQLException {
+        List<TableTopology> topologyList;
         try {
-            topologyList = DbUtil.getTopology(dataSource.getConnection(), tableName);
+            topologyList = getTopology(tableName);
         } catch (DatabaseException e) {
             logger.error("{}. Try export with -sharding off", e.getMessage());
-            throw new RuntimeException(e);
-        } catch (SQLException e) {
-            throw new RuntimeException(e);
+            throw e;
         }
+        if (isBroadcast(tableName)) {
+            TableTopology firstTopology = topologyList.get(0);
+            topologyList.clear();
+            topologyList.add(firstTopology);
+        }
+        return topologyList;
+    }
 
+    /**
+     * 处理固定文件数的分库分表导出命令
+     */
+    private void doExportWithFixedFile(String tableName) {
+        String filePathPrefix = FileUtil.getFilePathPrefix(config.getPath(),
+            config.getFilenamePrefix(), tableName);
         try {
-            boolean isBroadCast = DbUtil.isBroadCast(dataSource.getConnection(), tableName);
-            if (isBroadCast) {
-                TableTopology firstTopology = topologyList.get(0);
-                topologyList.clear();
-                topologyList.add(firstTopology);
-            }
-            TableFieldMetaInfo tableFieldMetaInfo = DbUtil.getTableFieldMetaInfo(dataSource.getConnection(),
-                getSchemaName(), tableName, command.getColumnNames());
+            List<TableTopology> topologyList = getShardTopology(tableName);
+            TableFieldMetaInfo tableFieldMetaInfo = getTableFieldMetaInfo(tableName, command.getColumnNames());
             // 分片数
             final int shardSize = topologyList.size();
             int parallelism = config.getParallelism();
@@ -110,36 +175,13 @@ public class ShardingExportExecutor extends BaseExportExecutor {
             Semaphore permitted = new Semaphore(parallelism, true);
 
             ExecutorService executor = MyThreadPool.createExecutorWithEnsure(APP_NAME, shardSize);
-            DirectExportWorker directExportWorker;
             CountDownLatch countDownLatch = new CountDownLatch(shardSize);
-            switch (config.getExportWay()) {
-            case MAX_LINE_NUM_IN_SINGLE_FILE:
-            case DEFAULT:
-                for (int i = 0; i < shardSize; i++) {
-                    directExportWorker = ExportWorkerFactory.buildDefaultDirectExportWorker(dataSource,
-                        topologyList.get(i), tableFieldMetaInfo,
-                        filePathPrefix + i, config);
-                    directExportWorker.setCountDownLatch(countDownLatch);
-                    directExportWorker.setPermitted(permitted);
-                    executor.submit(directExportWorker);
-                }
-                try {
-                    countDownLatch.await();
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                }
-                break;
-            case FIXED_FILE_NUM:
-                shardingExportWithFixedFile(topologyList, tableFieldMetaInfo, shardSize, filePathPrefix,
-                    executor, permitted, countDownLatch);
-                break;
-            default:
-                throw new RuntimeException("Unsupported export exception: " + config.getExportWay());
-            }
+            shardingExportWithFixedFile(topologyList, tableFieldMetaInfo, shardSize, filePathPrefix,
+                executor, parallelism, permitted, countDownLatch);
             executor.shutdown();
             logger.info("导出 {} 数据完成", tableName);
         } catch (DatabaseException | SQLException e) {
-            e.printStackTrace();
+            throw new RuntimeException(e);
         }
     }
 
@@ -148,6 +190,7 @@ public class ShardingExportExecutor extends BaseExportExecutor {
                                              int shardSize,
                                              String filePathPrefix,
                                              ExecutorService executor,
+                                             int parallelism,
                                              Semaphore permitted,
                                              CountDownLatch countDownLatch) {
         BaseCipher cipher = BaseCipher.getCipher(config.getEncryptionConfig(), true);
@@ -162,66 +205,39 @@ public class ShardingExportExecutor extends BaseExportExecutor {
         // 消费者数量与文件数一致 生产者数量和shard数一致
         final int consumerCount = config.getLimitNum(), producerCount = shardSize;
 
+        // 缓冲区数量限制了在途的数据 生产者在缓冲区耗尽时等待消费者归还
+        ByteBufferPool bufferPool = new ByteBufferPool(parallelism * 2 + consumerCount,
+            GlobalVar.DEFAULT_EXPORT_BUFFER_SIZE);
+
         ExportConsumer[] consumers = new ExportConsumer[consumerCount];
-        String[] filePaths = new String[consumerCount];
         for (int i = 0; i < consumers.length; i++) {
-            filePaths[i] = filePathPrefix + i;
+            String filePath = filePathPrefix + i;
             if (config.getFileFormat() != FileFormat.NONE) {
-                filePaths[i] += config.getFileFormat().getSuffix();
+                filePath += config.getFileFormat().getSuffix();
             }
-            consumers[i] = new ExportConsumer(filePaths[i], emittedDataCounter,
+            consumers[i] = new ExportConsumer(filePath, emittedDataCounter,
                 config.isWithHeader(),
                 config.getSeparator().getBytes(),
                 tableFieldMetaInfo, config.getCompressMode(), config.getCharset());
             consumers[i].setCipher(cipher);
+            consumers[i].setBufferPool(bufferPool);
         }
         WorkerPool<ExportEvent> workerPool = MyWorkerPool.createWorkerPool(ringBuffer, consumers);
         workerPool.start(executor);
 
         ExecutorService producerExecutor = MyThreadPool.createExecutorWithEnsure("producer", producerCount);
-        // 每一个生产者最后的碎片数据处理
-        if (producerCount >= consumerCount * 2) {
-            // 当生产者数量略大于消费者时 没必要轮询分配碎片
-            for (TableTopology topology : topologyList) {
-                ExportProducer producer = new ExportProducer(dataSource, topology,
-                    tableFieldMetaInfo, ringBuffer, config.getSeparator(),
-                    countDownLatch, emittedDataCounter, false, config.getQuoteEncloseMode());
-                producer.setPermitted(permitted);
-                producer.setWhereCondition(config.getWhereCondition());
-                producerExecutor.submit(producer);
-            }
-            waitForFinish(countDownLatch, emittedDataCounter);
-            workerPool.drainAndHalt();
-        } else {
-            Queue<ExportEvent> fragmentQueue = new ArrayBlockingQueue<>(producerCount);
-            // 将碎片放入缓冲队列
-            for (TableTopology topology : topologyList) {
-                ExportProducer producer = new ExportProducer(dataSource, topology,
-                    tableFieldMetaInfo, ringBuffer, config.getSeparator(),
-                    countDownLatch, emittedDataCounter,
-                    true, config.getQuoteEncloseMode());
-                producer.setWhereCondition(config.getWhereCondition());
-                producer.setFragmentQueue(fragmentQueue);
-                producer.setPermitted(permitted);
-                producerExecutor.submit(producer);
-            }
-            CyclicAtomicInteger cyclicCounter = new CyclicAtomicInteger(consumerCount);
-            // 待消费者消费结束
-            waitForFinish(countDownLatch, emittedDataCounter);
-            workerPool.drainAndHalt();
-            CountDownLatch fragmentCountLatch = new CountDownLatch(consumerCount);
-            // 再将碎片一次分配给每个文件
-            for (int i = 0; i < consumerCount; i++) {
-                CollectFragmentWorker collectFragmentWorker = new CollectFragmentWorker(
-                    fragmentQueue, filePaths, cyclicCounter, fragmentCountLatch);
-                executor.submit(collectFragmentWorker);
-            }
-            try {
-                fragmentCountLatch.await();
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
+        // 各生产者最后不足一批的数据同样经缓冲区发送 由空闲的消费者写入
+        for (TableTopology topology : topologyList) {
+            ExportProducer producer = new ExportProducer(dataSource, topology,
+                tableFieldMetaInfo, ringBuffer, config.getSeparator(),
+                countDownLatch, emittedDataCounter, config.getQuoteEncloseMode());
+            producer.setPermitted(permitted);
+            producer.setWhereCondition(config.getWhereCondition());
+            producer.setBufferPool(bufferPool);
+            producerExecutor.submit(producer);
         }
+        waitForFinish(countDownLatch, emittedDataCounter);
+        workerPool.drainAndHalt();
         for (ExportConsumer consumer : consumers) {
             consumer.close();
         }
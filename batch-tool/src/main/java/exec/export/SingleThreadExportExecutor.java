@@ -25,19 +25,16 @@ import model.db.TableFieldMetaInfo;
 import model.db.TableTopology;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import util.DbUtil;
+import util.ByteBufferPool;
 import util.FileUtil;
-import worker.MyThreadPool;
 import worker.export.DirectExportWorker;
+import worker.export.ExportWatermark;
 import worker.export.order.DirectOrderExportWorker;
 import worker.factory.ExportWorkerFactory;
 
 import java.sql.SQLException;
+import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.ExecutorService;
-
-import static model.config.ConfigConstant.APP_NAME;
 
 public class SingleThreadExportExecutor extends BaseExportExecutor {
     private static final Logger logger = LoggerFactory.getLogger(SingleThreadExportExecutor.class);
@@ -60,27 +57,31 @@ public class SingleThreadExportExecutor extends BaseExportExecutor {
     }
 
     /**
-     * 使用单条长连接导出数据
+     * 每张表使用单条长连接导出数据 开启拆分时按主键范围拆分为多个子扫描并行导出到同一文件
+     * 所有表的任务共用一个调度队列
      */
     private void doDefaultExport() {
-        List<String> tableNames = command.getTableNames();
-        ExecutorService executor = MyThreadPool.createExecutorWithEnsure(APP_NAME, tableNames.size());
-        for (String tableName : tableNames) {
-            String fileName = FileUtil.getFilePathPrefix(config.getPath(),
-                config.getFilenamePrefix(), tableName) + 0;
-            try {
-                TableFieldMetaInfo tableFieldMetaInfo = DbUtil.getTableFieldMetaInfo(dataSource.getConnection(),
-                    getSchemaName(), tableName, command.getColumnNames());
-                DirectExportWorker directExportWorker = ExportWorkerFactory.buildDefaultDirectExportWorker(dataSource,
-                    new TableTopology("", tableName), tableFieldMetaInfo,
-                    fileName, config);
-                executor.submit(directExportWorker);
-                logger.info("开始导出表 {} 到文件 {}", tableName, fileName);
-            } catch (DatabaseException | SQLException e) {
-                e.printStackTrace();
-                logger.error(e.getMessage());
-            }
-        }
-        executor.shutdown();
+        exportTablesConcurrently(command.getTableNames(), this::submitTableTasks);
+    }
+
+    private void submitTableTasks(String tableName, long dataLength, ExportTaskScheduler scheduler,
+                                  ByteBufferPool bufferPool) throws DatabaseException, SQLException {
+        String fileName = FileUtil.getFilePathPrefix(config.getPath(),
+            config.getFilenamePrefix(), tableName) + 0;
+        TableFieldMetaInfo tableFieldMetaInfo = getTableFieldMetaInfo(tableName, command.getColumnNames());
+        TableTopology topology = new TableTopology("", tableName);
+        DirectExportWorker directExportWorker = ExportWorkerFactory.buildDefaultDirectExportWorker(dataSource,
+            topology, tableFieldMetaInfo, fileName, config);
+        directExportWorker.setBufferPool(bufferPool);
+        ExportWatermark watermark = loadWatermark(tableName);
+        String newWatermark = watermark == null ? null : applyWatermark(directExportWorker, topology, watermark);
+        List<DirectExportWorker> workers = isSplitEnabled()
+            ? splitByPkRange(directExportWorker, topology, getSplitPkName(tableName))
+            : Collections.singletonList(directExportWorker);
+        logger.info("开始导出表 {} 到文件 {}", tableName, fileName);
+        Runnable onTableFinish = watermark == null ? null : commitWatermark(tableName, watermark,
+            Collections.singletonList(topology), Collections.singletonList(workers),
+            Collections.singletonList(newWatermark));
+        submitTableWorkers(scheduler, tableName, dataLength, workers, null, onTableFinish);
     }
 }
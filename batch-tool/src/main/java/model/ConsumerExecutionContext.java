@@ -18,10 +18,14 @@ package model;
 
 import model.config.BaseConfig;
 import model.config.ConfigConstant;
+import model.config.FileLineRecord;
+import model.config.JobSpec;
 import model.db.PartitionKey;
 import model.db.PrimaryKey;
 import model.db.TableFieldMetaInfo;
 import model.db.TableTopology;
+import worker.common.BrokenLineRecorder;
+import worker.common.TableInFlightLimiter;
 
 import javax.sql.DataSource;
 import java.util.HashMap;
@@ -137,6 +141,47 @@ public class ConsumerExecutionContext extends BaseConfig {
 
     private boolean useMagicSeparator = false;
 
+    /**
+     * 允许的最大错误行数
+     * 超过0时失败的批次会被二分重试以定位错误行
+     */
+    private int maxErrorCount = ConfigConstant.DEFAULT_MAX_ERROR_COUNT;
+
+    private BrokenLineRecorder brokenLineRecorder;
+
+    /**
+     * 当前处理表对应的文件列表
+     * 用于定位错误行的来源文件
+     */
+    private List<FileLineRecord> fileRecordList;
+
+    /**
+     * 是否以数据块为单位在事务中导入
+     */
+    private boolean blockTransactionEnabled = false;
+
+    /**
+     * in MB
+     */
+    private int readBlockSizeInMb;
+
+    /**
+     * 未指定文件时 按where条件分批删除
+     */
+    private boolean deleteByConditionEnabled = false;
+
+    /**
+     * 先将文件导入中间表 再按分片关联更新
+     */
+    private boolean stagingUpdateEnabled = false;
+
+    /**
+     * 多表导入的任务配置
+     */
+    private JobSpec jobSpec = new JobSpec();
+
+    private TableInFlightLimiter tableInFlightLimiter;
+
     private volatile Exception exception;
 
     public ConsumerExecutionContext() {
@@ -178,6 +223,10 @@ public class ConsumerExecutionContext extends BaseConfig {
                 pkSet.add(primaryKey.getOrdinalPosition() - 1);
                 stringBuilder.append(primaryKey.getName()).append(",");
             }
+            if (stringBuilder.length() > 0) {
+                // 去除最后一个逗号
+                stringBuilder.setLength(stringBuilder.length() - 1);
+            }
             this.tablePkIndexSet.put(tablePk.getKey(), pkSet);
             this.tablePkName.put(tablePk.getKey(), stringBuilder.toString());
         }
@@ -403,6 +452,92 @@ public class ConsumerExecutionContext extends BaseConfig {
         return this.parallelism == 1;
     }
 
+    public int getMaxErrorCount() {
+        return maxErrorCount;
+    }
+
+    public void setMaxErrorCount(int maxErrorCount) {
+        this.maxErrorCount = maxErrorCount;
+    }
+
+    public boolean isErrorTolerant() {
+        return maxErrorCount > 0 && brokenLineRecorder != null;
+    }
+
+    public BrokenLineRecorder getBrokenLineRecorder() {
+        return brokenLineRecorder;
+    }
+
+    public void setBrokenLineRecorder(BrokenLineRecorder brokenLineRecorder) {
+        this.brokenLineRecorder = brokenLineRecorder;
+    }
+
+    public List<FileLineRecord> getFileRecordList() {
+        return fileRecordList;
+    }
+
+    public void setFileRecordList(List<FileLineRecord> fileRecordList) {
+        this.fileRecordList = fileRecordList;
+    }
+
+    /**
+     * @return 文件序号对应的文件路径
+     */
+    public String getFilePath(int fileIndex) {
+        if (fileRecordList == null || fileIndex < 0 || fileIndex >= fileRecordList.size()) {
+            return null;
+        }
+        return fileRecordList.get(fileIndex).getFilePath();
+    }
+
+    public boolean isBlockTransactionEnabled() {
+        return blockTransactionEnabled;
+    }
+
+    public void setBlockTransactionEnabled(boolean blockTransactionEnabled) {
+        this.blockTransactionEnabled = blockTransactionEnabled;
+    }
+
+    public int getReadBlockSizeInMb() {
+        return readBlockSizeInMb;
+    }
+
+    public void setReadBlockSizeInMb(int readBlockSizeInMb) {
+        this.readBlockSizeInMb = readBlockSizeInMb;
+    }
+
+    public boolean isDeleteByConditionEnabled() {
+        return deleteByConditionEnabled;
+    }
+
+    public void setDeleteByConditionEnabled(boolean deleteByConditionEnabled) {
+        this.deleteByConditionEnabled = deleteByConditionEnabled;
+    }
+
+    public boolean isStagingUpdateEnabled() {
+        return stagingUpdateEnabled;
+    }
+
+    public void setStagingUpdateEnabled(boolean stagingUpdateEnabled) {
+        this.stagingUpdateEnabled = stagingUpdateEnabled;
+    }
+
+    public JobSpec getJobSpec() {
+        return jobSpec;
+    }
+
+    public void setJobSpec(JobSpec jobSpec) {
+        this.jobSpec = jobSpec;
+    }
+
+    public TableInFlightLimiter getTableInFlightLimiter() {
+        return tableInFlightLimiter;
+    }
+
+    public void setTableInFlightLimiter(TableInFlightLimiter tableInFlightLimiter) {
+        this.tableInFlightLimiter = tableInFlightLimiter;
+    }
+
     public Exception getException() {
         return exception;
     }
@@ -18,17 +18,22 @@ package model;
 
 import model.config.BaseConfig;
 import model.config.ConfigConstant;
+import model.config.DdlMode;
 import model.config.FileLineRecord;
 import model.config.QuoteEncloseMode;
 import org.apache.commons.lang.StringUtils;
+import worker.common.TableInFlightLimiter;
 
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ThreadPoolExecutor;
@@ -61,6 +66,37 @@ public class ProducerExecutionContext extends BaseConfig {
 
     private int maxErrorCount;
 
+    /**
+     * 是否以数据块为单位在事务中导入
+     */
+    private boolean blockTransactionEnabled = false;
+
+    /**
+     * 导入DDL时延迟创建二级索引 同时创建索引的表数
+     * 0 表示建表时即创建索引
+     */
+    private int deferIndexParallelism = 0;
+
+    /**
+     * 当前导入表已提交的数据块
+     * 文件标识 -> 块序号集合
+     */
+    private Map<String, Set<Long>> committedBlocks = Collections.emptyMap();
+
+    /**
+     * 二进制格式文件中各字段是否为二进制类型
+     * 文件路径 -> 字段标记 不含二进制字段的文件不在其中
+     */
+    private Map<String, boolean[]> binaryColumns = Collections.emptyMap();
+
+    /**
+     * 多张表共用导入管道时 每个文件对应的表名
+     * 单表导入时为 null
+     */
+    private List<String> fileTableNames = null;
+
+    private TableInFlightLimiter tableInFlightLimiter;
+
     private AtomicInteger emittedDataCounter;
 
     private CountDownLatch countDownLatch;
@@ -111,6 +147,28 @@ public class ProducerExecutionContext extends BaseConfig {
         this.eventCounter = eventCounter;
     }
 
+    public void setFileTableNames(List<String> fileTableNames) {
+        this.fileTableNames = fileTableNames;
+    }
+
+    /**
+     * @return 文件所属的表名 单表导入时为 null
+     */
+    public String getFileTableName(int fileIndex) {
+        if (fileTableNames == null) {
+            return null;
+        }
+        return fileTableNames.get(fileIndex);
+    }
+
+    public TableInFlightLimiter getTableInFlightLimiter() {
+        return tableInFlightLimiter;
+    }
+
+    public void setTableInFlightLimiter(TableInFlightLimiter tableInFlightLimiter) {
+        this.tableInFlightLimiter = tableInFlightLimiter;
+    }
+
     public AtomicInteger getEmittedDataCounter() {
         return emittedDataCounter;
     }
@@ -231,6 +289,46 @@ public class ProducerExecutionContext extends BaseConfig {
         this.maxErrorCount = maxErrorCount;
     }
 
+    public boolean isBlockTransactionEnabled() {
+        return blockTransactionEnabled;
+    }
+
+    public void setBlockTransactionEnabled(boolean blockTransactionEnabled) {
+        this.blockTransactionEnabled = blockTransactionEnabled;
+    }
+
+    public int getDeferIndexParallelism() {
+        return deferIndexParallelism;
+    }
+
+    public void setDeferIndexParallelism(int deferIndexParallelism) {
+        this.deferIndexParallelism = deferIndexParallelism;
+    }
+
+    public boolean isDeferIndex() {
+        return deferIndexParallelism > 0;
+    }
+
+    public void setCommittedBlocks(Map<String, Set<Long>> committedBlocks) {
+        this.committedBlocks = committedBlocks;
+    }
+
+    /**
+     * @param fileKey 见 ImportUtil.getBlockProgressFileKey
+     */
+    public boolean isBlockCommitted(String fileKey, long blockIndex) {
+        Set<Long> blocks = committedBlocks.get(fileKey);
+        return blocks != null && blocks.contains(blockIndex);
+    }
+
+    public void setBinaryColumns(Map<String, boolean[]> binaryColumns) {
+        this.binaryColumns = binaryColumns;
+    }
+
+    public boolean[] getBinaryColumns(String filePath) {
+        return binaryColumns.get(filePath);
+    }
+
     public boolean isUtfCharset() {
         return this.charset.equals(StandardCharsets.UTF_8)
             || this.charset.equals(StandardCharsets.UTF_16);
@@ -250,6 +348,8 @@ public class ProducerExecutionContext extends BaseConfig {
             "filePathList=" + fileRecordList +
             ", parallelism=" + parallelism +
             ", readBlockSizeInMb=" + readBlockSizeInMb +
+            ", blockTransactionEnabled=" + blockTransactionEnabled +
+            ", deferIndexParallelism=" + deferIndexParallelism +
             ", " + super.toString() +
             '}';
     }
@@ -261,5 +361,8 @@ public class ProducerExecutionContext extends BaseConfig {
             // 指定引号转义模式则采用安全的方式执行
             this.parallelism = fileRecordList.size();
         }
+        if (isDeferIndex() && ddlMode != DdlMode.WITH_DDL) {
+            throw new IllegalArgumentException("Deferred index build only works when importing with ddl");
+        }
     }
 }
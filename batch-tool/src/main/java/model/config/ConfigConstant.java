@@ -46,6 +46,7 @@ public class ConfigConstant {
     public static final String ARG_SHORT_FILE_NUM = "F";
     public static final String ARG_SHORT_HISTORY_FILE = "H";
     public static final String ARG_SHORT_WHERE = "w";
+    public static final String ARG_SHORT_DELETE_BY_WHERE = "byWhere";
     public static final String ARG_SHORT_ENABLE_SHARDING = "sharding";
     public static final String ARG_SHORT_WITH_HEADER = "header";
     public static final String ARG_SHORT_DIRECTORY = "dir";
@@ -77,6 +78,20 @@ public class ConfigConstant {
     public static final String ARG_SHORT_KEY = "key";
     public static final String ARG_SHORT_FILE_FORMAT = "format";
     public static final String ARG_SHORT_MAX_ERROR = "error";
+    public static final String ARG_SHORT_BLOCK_TRANSACTION = "blocktx";
+    public static final String ARG_SHORT_STAGING_UPDATE = "staging";
+    public static final String ARG_SHORT_SPLIT_NUM = "split";
+    public static final String ARG_SHORT_FILE_SIZE = "size";
+    public static final String ARG_SHORT_SORT_MEMORY = "sortMem";
+    public static final String ARG_SHORT_SORT_TMP_DIR = "sortDir";
+    public static final String ARG_SHORT_MAX_CONN_PER_DN = "maxDnConn";
+    public static final String ARG_SHORT_JOB_SPEC = "jobSpec";
+    public static final String ARG_SHORT_WATERMARK = "watermark";
+    public static final String ARG_SHORT_META_CACHE = "metaCache";
+    public static final String ARG_SHORT_DEFER_INDEX = "deferIndex";
+    public static final String ARG_SHORT_DDL_PARALLELISM = "ddlPara";
+    public static final String ARG_SHORT_DDL_FILE_PER_TABLE = "ddlPerTable";
+    public static final String ARG_SHORT_MIGRATE_SOURCE = "source";
 
     public static final int CPU_NUM = Runtime.getRuntime().availableProcessors();
     /**
@@ -159,12 +174,62 @@ public class ConfigConstant {
 
     public static final String BROKEN_LINE_FILE_NAME = "err-data";
 
+    /**
+     * 使用 delete ... in 时默认每批的行数
+     * 按主键有序的文件可合并为范围条件
+     */
+    public static final int DEFAULT_DELETE_IN_BATCH_SIZE = 1000;
+
+    /**
+     * 按块事务导入时 记录已提交数据块的进度表
+     */
+    public static final String BLOCK_PROGRESS_TABLE_NAME = "__batch_tool_block_progress__";
+
+    /**
+     * 按条件删除时 记录每个分片已删除到的主键
+     * 实际文件名为 前缀_表名
+     */
+    public static final String DEFAULT_DELETE_CHECKPOINT_FILE = "delete_checkpoint";
+
+    /**
+     * 增量导出时 记录每个分片已导出的水位
+     * 实际文件名为 前缀_表名
+     */
+    public static final String DEFAULT_EXPORT_WATERMARK_FILE = "export_watermark";
+
+    /**
+     * 迁移时 记录每张表已完成的源端分片
+     * 实际文件名为 前缀_表名
+     */
+    public static final String DEFAULT_MIGRATE_CHECKPOINT_FILE = "migrate_checkpoint";
+
+    /**
+     * 导出建表语句的默认并发连接数
+     */
+    public static final int DEFAULT_DDL_EXPORT_PARALLELISM = 4;
+
+    /**
+     * 通过中间表更新时 中间表名的前缀
+     */
+    public static final String STAGING_TABLE_PREFIX = "__bt_stage_";
+
+    /**
+     * 本地归并排序时 所有分片缓冲的行数据默认共用的内存上限
+     * 超出后溢写至临时文件
+     */
+    public static final int DEFAULT_SORT_MEMORY_IN_MB = 256;
+
     public static final String ORDER_BY_TYPE_ASC = "asc";
 
     public static final String ORDER_BY_TYPE_DESC = "desc";
 
     public static final String END_OF_BATCH_LINES = "END_OF_BATCH_LINES";
 
+    /**
+     * 读取时已解析出字段值的行 字段值见 BatchLineEvent#getBatchValues
+     */
+    public static final String DECODED_LINE = "DECODED_LINE";
+
     /**
      * 64KB
      */
@@ -38,7 +38,7 @@ public class ExportConfig extends BaseConfig {
      */
     private ExportWay exportWay;
     /**
-     * 限制行数或文件数
+     * 限制行数、文件数或单个文件大小(MB)
      */
     private int limitNum;
 
@@ -59,10 +59,50 @@ public class ExportConfig extends BaseConfig {
      */
     private int parallelism = 0;
 
+    /**
+     * 每张物理表按主键范围拆分的子扫描数，默认不拆分
+     */
+    private int splitNum = 1;
+
+    /**
+     * 多表并发导出时 单个存储节点上同时导出的分片数上限 默认不限制
+     */
+    private int maxConnPerDn = 0;
+
+    /**
+     * 并发获取建表语句的连接数
+     */
+    private int ddlParallelism = ConfigConstant.DEFAULT_DDL_EXPORT_PARALLELISM;
+
+    /**
+     * 是否每张表的建表语句单独写入一个文件
+     */
+    private boolean ddlFilePerTable = false;
+
+    /**
+     * 增量导出的水位列 为空时全量导出
+     */
+    private String watermarkColumn = null;
+
+    /**
+     * 水位文件的前缀
+     */
+    private String watermarkFilePrefix = ConfigConstant.DEFAULT_EXPORT_WATERMARK_FILE;
+
     private boolean isAscending = true;
     private boolean isLocalMerge = false;
     private boolean isParallelMerge = false;
 
+    /**
+     * 本地归并排序的内存上限(MB)
+     */
+    private int sortMemoryInMb = ConfigConstant.DEFAULT_SORT_MEMORY_IN_MB;
+
+    /**
+     * 本地归并排序溢写临时文件的目录
+     */
+    private String sortTmpDir = System.getProperty("java.io.tmpdir");
+
     public enum ExportWay {
         /**
          * 指定单个文件最大行数
@@ -73,6 +113,11 @@ public class ExportConfig extends BaseConfig {
          * 指定导出文件的总数量
          */
         FIXED_FILE_NUM,
+        /**
+         * 指定单个文件最大大小
+         * 按压缩与加密后落盘的大小计算
+         */
+        MAX_BYTES_IN_SINGLE_FILE,
         /**
          * 默认
          * 分库分表数即为文件数
@@ -113,6 +158,21 @@ public class ExportConfig extends BaseConfig {
         this.limitNum = num;
     }
 
+    public void setMaxFileSizeInMb(int sizeInMb) {
+        if (sizeInMb <= 0) {
+            throw new IllegalArgumentException("Max file size should be a positive integer");
+        }
+        this.exportWay = ExportWay.MAX_BYTES_IN_SINGLE_FILE;
+        this.limitNum = sizeInMb;
+    }
+
+    public long getMaxFileBytes() {
+        if (exportWay != ExportWay.MAX_BYTES_IN_SINGLE_FILE) {
+            return 0;
+        }
+        return limitNum * 1024L * 1024;
+    }
+
     public String getFilenamePrefix() {
         return filenamePrefix;
     }
@@ -196,6 +256,77 @@ public class ExportConfig extends BaseConfig {
         this.parallelism = parallelism;
     }
 
+    public int getSplitNum() {
+        return splitNum;
+    }
+
+    public void setSplitNum(int splitNum) {
+        this.splitNum = splitNum;
+    }
+
+    public int getMaxConnPerDn() {
+        return maxConnPerDn;
+    }
+
+    public void setMaxConnPerDn(int maxConnPerDn) {
+        this.maxConnPerDn = maxConnPerDn;
+    }
+
+    public int getDdlParallelism() {
+        return ddlParallelism;
+    }
+
+    public void setDdlParallelism(int ddlParallelism) {
+        this.ddlParallelism = ddlParallelism;
+    }
+
+    public boolean isDdlFilePerTable() {
+        return ddlFilePerTable;
+    }
+
+    public void setDdlFilePerTable(boolean ddlFilePerTable) {
+        this.ddlFilePerTable = ddlFilePerTable;
+    }
+
+    public String getWatermarkColumn() {
+        return watermarkColumn;
+    }
+
+    public void setWatermarkColumn(String watermarkColumn) {
+        this.watermarkColumn = watermarkColumn;
+    }
+
+    public boolean isIncremental() {
+        return watermarkColumn != null;
+    }
+
+    public String getWatermarkFilePrefix() {
+        return watermarkFilePrefix;
+    }
+
+    public void setWatermarkFilePrefix(String watermarkFilePrefix) {
+        this.watermarkFilePrefix = watermarkFilePrefix;
+    }
+
+    public long getSortMemoryBytes() {
+        return sortMemoryInMb * 1024L * 1024;
+    }
+
+    public void setSortMemoryInMb(int sortMemoryInMb) {
+        if (sortMemoryInMb <= 0) {
+            throw new IllegalArgumentException("Sort memory should be a positive integer");
+        }
+        this.sortMemoryInMb = sortMemoryInMb;
+    }
+
+    public String getSortTmpDir() {
+        return sortTmpDir;
+    }
+
+    public void setSortTmpDir(String sortTmpDir) {
+        this.sortTmpDir = sortTmpDir;
+    }
+
     private String getParallelismConfig() {
         if (this.parallelism > 0) {
             return String.valueOf(this.parallelism);
@@ -211,6 +342,22 @@ public class ExportConfig extends BaseConfig {
             throw new UnsupportedOperationException(String.format("Export with format [%s] by [%s] is "
                 + "not supported yet", fileFormat, exportWay));
         }
+        if (this.exportWay == ExportWay.MAX_BYTES_IN_SINGLE_FILE && this.orderByColumnNameList != null) {
+            throw new UnsupportedOperationException("Export with max file size in order is not supported yet");
+        }
+        if ((this.fileFormat == FileFormat.BIN || this.fileFormat == FileFormat.PARQUET)
+            && this.orderByColumnNameList != null) {
+            throw new UnsupportedOperationException(String.format("Export with format [%s] in order is "
+                + "not supported yet", fileFormat));
+        }
+        if (this.splitNum > 1 && this.exportWay == ExportWay.MAX_LINE_NUM_IN_SINGLE_FILE) {
+            throw new UnsupportedOperationException("Split export with max line in single file "
+                + "is not supported yet");
+        }
+        if (isIncremental() && (this.orderByColumnNameList != null || this.exportWay == ExportWay.FIXED_FILE_NUM)) {
+            throw new UnsupportedOperationException("Incremental export in order or with fixed-number files "
+                + "is not supported yet");
+        }
     }
 
     @Override
@@ -226,7 +373,14 @@ public class ExportConfig extends BaseConfig {
             ", isAscending=" + isAscending +
             ", isLocalMerge=" + isLocalMerge +
             ", isParallelMerge=" + isParallelMerge +
+            ", sortMemoryInMb=" + sortMemoryInMb +
+            ", sortTmpDir='" + sortTmpDir + '\'' +
             ", parallelism=" + getParallelismConfig() +
+            ", splitNum=" + splitNum +
+            ", maxConnPerDn=" + maxConnPerDn +
+            ", ddlParallelism=" + ddlParallelism +
+            ", ddlFilePerTable=" + ddlFilePerTable +
+            ", watermarkColumn='" + watermarkColumn + '\'' +
             "} " + super.toString();
     }
 }
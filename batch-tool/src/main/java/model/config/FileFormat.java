@@ -23,7 +23,16 @@ public enum FileFormat {
     LOG(".log", true),
     XLSX(".xlsx", false),
     ET(".et", false),
-    XLS(".xls", false);
+    XLS(".xls", false),
+    /**
+     * 自带字段信息的二进制行格式
+     * 按同步标记分块 不使用定长文本块
+     */
+    BIN(".bin", false),
+    /**
+     * 按行组分块的列存格式
+     */
+    PARQUET(".parquet", false);
 
     private final String suffix;
 
@@ -53,6 +62,10 @@ public enum FileFormat {
             return ET;
         case "XLS":
             return XLS;
+        case "BIN":
+            return BIN;
+        case "PARQUET":
+            return PARQUET;
         default:
             throw new IllegalArgumentException("Unrecognized file format: " + compressMode);
         }
@@ -33,4 +33,22 @@ public class GlobalVar {
      * 4K
      */
     public static int DEFAULT_DIRECT_BUFFER_SIZE_PER_WORKER = 1024 * 4;
+
+    /**
+     * 导出时编码数据行的堆外缓冲区大小
+     * 256K
+     */
+    public static int DEFAULT_EXPORT_BUFFER_SIZE = 1024 * 256;
+
+    /**
+     * parquet 格式每个行组缓存的估算字节数
+     * 32M
+     */
+    public static long DEFAULT_PARQUET_ROW_GROUP_SIZE = 1024 * 1024 * 32;
+
+    /**
+     * 元数据缓存文件所在目录
+     * 为 null 时只在进程内缓存
+     */
+    public static String META_CACHE_DIR = null;
 }
@@ -0,0 +1,61 @@
+/*
+ * Copyright [2013-2021], Alibaba Group Holding Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package model.config;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 多表导入的任务配置
+ * 表名不区分大小写
+ */
+public class JobSpec {
+    /**
+     * 未单独配置的表的在途批次上限
+     * 0 表示不限制
+     */
+    private int defaultTableParallelism = 0;
+
+    private final Map<String, Integer> tableParallelism = new HashMap<>();
+
+    public int getDefaultTableParallelism() {
+        return defaultTableParallelism;
+    }
+
+    public void setDefaultTableParallelism(int defaultTableParallelism) {
+        this.defaultTableParallelism = defaultTableParallelism;
+    }
+
+    public void setTableParallelism(String tableName, int parallelism) {
+        tableParallelism.put(tableName.toLowerCase(), parallelism);
+    }
+
+    /**
+     * @return 表在共用导入管道中的在途批次上限 0 表示不限制
+     */
+    public int getTableParallelism(String tableName) {
+        return tableParallelism.getOrDefault(tableName.toLowerCase(), defaultTableParallelism);
+    }
+
+    @Override
+    public String toString() {
+        return "JobSpec{" +
+            "defaultTableParallelism=" + defaultTableParallelism +
+            ", tableParallelism=" + tableParallelism +
+            '}';
+    }
+}
@@ -22,10 +22,22 @@ public class FieldMetaInfo {
 
     private String name;
     private Type type;
+    /**
+     * 小写的原始字段类型 如 datetime
+     */
+    private String dataType;
+    /**
+     * 整数类型是否为 UNSIGNED
+     */
+    private boolean unsigned = false;
     /**
      * 从0开始
      */
     private int index;
+    /**
+     * 值已是 SQL 字面量 如迁移时二进制字段的 X'..' 写入时不加引号
+     */
+    private boolean sqlLiteral = false;
 
     // todo 类型有待补充(blob)
     public static final ImmutableSet<String> STRING_TYPE_SET = ImmutableSet.of(
@@ -62,6 +74,18 @@ public class FieldMetaInfo {
         "timestamp"
     );
 
+    /**
+     * 按字符串读取会因字符集转换而损坏的类型
+     */
+    public static final ImmutableSet<String> BINARY_TYPE_SET = ImmutableSet.of(
+        "binary",
+        "varbinary",
+        "tinyblob",
+        "blob",
+        "mediumblob",
+        "longblob"
+    );
+
     public enum Type {
         STRING,
         INT,
@@ -83,7 +107,41 @@ public class FieldMetaInfo {
         return type;
     }
 
+    public String getDataType() {
+        return dataType;
+    }
+
+    public boolean isUnsigned() {
+        return unsigned;
+    }
+
+    public void setUnsigned(boolean unsigned) {
+        this.unsigned = unsigned;
+    }
+
+    /**
+     * @param columnType 完整的字段类型 如 bigint(20) unsigned
+     */
+    public void setUnsigned(String columnType) {
+        this.unsigned = columnType != null && columnType.toLowerCase().contains("unsigned");
+    }
+
+    public boolean isBinary() {
+        return dataType != null && BINARY_TYPE_SET.contains(dataType);
+    }
+
+    public boolean isSqlLiteral() {
+        return sqlLiteral;
+    }
+
+    public void setSqlLiteral(boolean sqlLiteral) {
+        this.sqlLiteral = sqlLiteral;
+    }
+
     public boolean needQuote() {
+        if (sqlLiteral) {
+            return false;
+        }
         switch (type) {
         case STRING:
         case DATE:
@@ -111,6 +169,7 @@ public class FieldMetaInfo {
 
     public void setType(String typeStr) {
         typeStr = typeStr.toLowerCase();
+        this.dataType = typeStr;
         if (STRING_TYPE_SET.contains(typeStr)) {
             this.type = Type.STRING;
         } else if (NUMBER_INT_TYPE_SET.contains(typeStr)) {
@@ -0,0 +1,337 @@
+/*
+ * Copyright [2013-2021], Alibaba Group Holding Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package model.db;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 一个库的元数据目录
+ * 包括表、字段、主键与分库分表规则 表名不区分大小写
+ * 每次获取时返回新的对象 调用方可以修改
+ */
+@ThreadSafe
+public class SchemaCatalog {
+    private static final Logger logger = LoggerFactory.getLogger(SchemaCatalog.class);
+
+    private static final String FIELD_SEP = "\t";
+    private static final String VERSION_TAG = "V";
+    private static final String TABLE_TAG = "T";
+    private static final String COLUMN_TAG = "C";
+    private static final String RULE_TAG = "R";
+
+    private final String schemaName;
+    /**
+     * 库中各表的名字、建表时间与字段生成的摘要 变化时目录失效
+     */
+    private volatile String version;
+
+    /**
+     * 小写表名 -> 原表名
+     */
+    private final Map<String, String> tableNames = new LinkedHashMap<>();
+    private final Map<String, List<Column>> tableColumns = new HashMap<>();
+    private final Map<String, Rule> tableRules = new HashMap<>();
+    /**
+     * 每次加载时重新获取
+     */
+    private volatile Map<String, Long> dataLengthMap = Collections.emptyMap();
+    /**
+     * 物理拓扑可能随扩缩容变化 只在进程内缓存
+     */
+    private final Map<String, List<TableTopology>> tableTopologies = new ConcurrentHashMap<>();
+
+    public SchemaCatalog(String schemaName) {
+        this.schemaName = schemaName;
+    }
+
+    public String getSchemaName() {
+        return schemaName;
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    public void setVersion(String version) {
+        this.version = version;
+    }
+
+    public synchronized void addTable(String tableName) {
+        tableNames.put(tableName.toLowerCase(), tableName);
+    }
+
+    public synchronized void addColumn(String tableName, String columnName, String dataType,
+                                       int ordinalPosition, boolean isPrimaryKey, boolean isUnsigned) {
+        tableColumns.computeIfAbsent(tableName.toLowerCase(), k -> new ArrayList<>())
+            .add(new Column(columnName, dataType, ordinalPosition, isPrimaryKey, isUnsigned));
+    }
+
+    public synchronized void addRule(String tableName, boolean isBroadcast, String dbPartitionKey,
+                                     int dbPartitionCount, int tbPartitionCount) {
+        tableRules.put(tableName.toLowerCase(),
+            new Rule(isBroadcast, dbPartitionKey, dbPartitionCount, tbPartitionCount));
+    }
+
+    /**
+     * 按字段顺序排列
+     */
+    public synchronized void sortColumns() {
+        for (List<Column> columns : tableColumns.values()) {
+            columns.sort(Comparator.comparingInt(column -> column.ordinalPosition));
+        }
+    }
+
+    public synchronized boolean containsTable(String tableName) {
+        return tableNames.containsKey(tableName.toLowerCase());
+    }
+
+    public synchronized List<String> getTableNames() {
+        return new ArrayList<>(tableNames.values());
+    }
+
+    public Map<String, Long> getDataLengthMap() {
+        return dataLengthMap;
+    }
+
+    /**
+     * @param dataLengthMap 表名统一为小写
+     */
+    public void setDataLengthMap(Map<String, Long> dataLengthMap) {
+        this.dataLengthMap = dataLengthMap;
+    }
+
+    /**
+     * @return 表不存在时返回 null
+     */
+    public synchronized TableFieldMetaInfo getTableFieldMetaInfo(String tableName) {
+        List<Column> columns = tableColumns.get(tableName.toLowerCase());
+        if (columns == null) {
+            return null;
+        }
+        List<FieldMetaInfo> fieldMetaInfoList = new ArrayList<>(columns.size());
+        for (Column column : columns) {
+            fieldMetaInfoList.add(column.toFieldMetaInfo());
+        }
+        TableFieldMetaInfo tableFieldMetaInfo = new TableFieldMetaInfo();
+        tableFieldMetaInfo.setFieldMetaInfoList(fieldMetaInfoList);
+        return tableFieldMetaInfo;
+    }
+
+    /**
+     * @return 表不存在时返回 null 没有主键时返回空列表
+     */
+    public synchronized List<PrimaryKey> getPkList(String tableName) {
+        List<Column> columns = tableColumns.get(tableName.toLowerCase());
+        if (columns == null) {
+            return null;
+        }
+        List<PrimaryKey> pkList = new ArrayList<>(1);
+        for (Column column : columns) {
+            if (column.isPrimaryKey) {
+                pkList.add(new PrimaryKey(column.ordinalPosition, column.name));
+            }
+        }
+        return pkList;
+    }
+
+    /**
+     * @return 没有规则信息时返回 null
+     */
+    public synchronized Boolean isBroadcast(String tableName) {
+        Rule rule = tableRules.get(tableName.toLowerCase());
+        return rule == null ? null : rule.isBroadcast;
+    }
+
+    /**
+     * @return 没有规则信息或找不到划分键字段时返回 null
+     */
+    public synchronized PartitionKey getPartitionKey(String tableName) {
+        Rule rule = tableRules.get(tableName.toLowerCase());
+        List<Column> columns = tableColumns.get(tableName.toLowerCase());
+        if (rule == null || rule.dbPartitionKey == null || columns == null) {
+            return null;
+        }
+        for (Column column : columns) {
+            if (column.name.equalsIgnoreCase(rule.dbPartitionKey)) {
+                PartitionKey partitionKey = new PartitionKey();
+                partitionKey.setDbPartitionCount(rule.dbPartitionCount);
+                partitionKey.setTbPartitionCount(rule.tbPartitionCount);
+                FieldMetaInfo fieldMetaInfo = column.toFieldMetaInfo();
+                fieldMetaInfo.setName(rule.dbPartitionKey);
+                partitionKey.setFieldMetaInfo(fieldMetaInfo);
+                return partitionKey;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return 未缓存时返回 null
+     */
+    public List<TableTopology> getTopology(String tableName) {
+        List<TableTopology> topologyList = tableTopologies.get(tableName.toLowerCase());
+        return topologyList == null ? null : new ArrayList<>(topologyList);
+    }
+
+    public void putTopology(String tableName, List<TableTopology> topologyList) {
+        tableTopologies.put(tableName.toLowerCase(), new ArrayList<>(topologyList));
+    }
+
+    /**
+     * 保存表、字段与规则 不保存数据量与拓扑
+     * 先写临时文件再替换
+     */
+    public synchronized void save(File file) throws IOException {
+        File tmpFile = new File(file.getPath() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(tmpFile.toPath(), StandardCharsets.UTF_8)) {
+            writeLine(writer, VERSION_TAG, schemaName, version);
+            for (String tableName : tableNames.values()) {
+                writeLine(writer, TABLE_TAG, tableName);
+            }
+            for (Map.Entry<String, List<Column>> entry : tableColumns.entrySet()) {
+                for (Column column : entry.getValue()) {
+                    writeLine(writer, COLUMN_TAG, entry.getKey(), column.name, column.dataType,
+                        String.valueOf(column.ordinalPosition), column.isPrimaryKey ? "1" : "0",
+                        column.isUnsigned ? "1" : "0");
+                }
+            }
+            for (Map.Entry<String, Rule> entry : tableRules.entrySet()) {
+                Rule rule = entry.getValue();
+                writeLine(writer, RULE_TAG, entry.getKey(), rule.isBroadcast ? "1" : "0",
+                    rule.dbPartitionKey == null ? "" : rule.dbPartitionKey,
+                    String.valueOf(rule.dbPartitionCount), String.valueOf(rule.tbPartitionCount));
+            }
+        }
+        Files.move(tmpFile.toPath(), file.toPath(),
+            StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void writeLine(BufferedWriter writer, String... fields) throws IOException {
+        for (String field : fields) {
+            if (field.contains(FIELD_SEP) || field.contains("\n") || field.contains("\r")) {
+                throw new IOException("Unsupported name in catalog: " + field);
+            }
+        }
+        writer.write(String.join(FIELD_SEP, fields));
+        writer.newLine();
+    }
+
+    /**
+     * @return 文件不存在或格式错误时返回 null
+     */
+    public static SchemaCatalog load(File file) {
+        if (!file.exists()) {
+            return null;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String[] header = reader.readLine().split(FIELD_SEP, -1);
+            if (header.length != 3 || !VERSION_TAG.equals(header[0])) {
+                throw new IOException("Missing catalog version");
+            }
+            SchemaCatalog catalog = new SchemaCatalog(header[1]);
+            catalog.setVersion(header[2]);
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split(FIELD_SEP, -1);
+                switch (fields[0]) {
+                case TABLE_TAG:
+                    catalog.addTable(fields[1]);
+                    break;
+                case COLUMN_TAG:
+                    // 旧版本的缓存没有 unsigned 标记 读取失败后重新获取
+                    catalog.addColumn(fields[1], fields[2], fields[3], Integer.parseInt(fields[4]),
+                        "1".equals(fields[5]), "1".equals(fields[6]));
+                    break;
+                case RULE_TAG:
+                    catalog.addRule(fields[1], "1".equals(fields[2]), fields[3].isEmpty() ? null : fields[3],
+                        Integer.parseInt(fields[4]), Integer.parseInt(fields[5]));
+                    break;
+                default:
+                    throw new IOException("Unknown catalog line: " + line);
+                }
+            }
+            catalog.sortColumns();
+            return catalog;
+        } catch (IOException | RuntimeException e) {
+            logger.warn("元数据缓存文件 {} 无法读取, 将重新获取: {}", file.getPath(), e.getMessage());
+            return null;
+        }
+    }
+
+    private static class Column {
+        final String name;
+        final String dataType;
+        /**
+         * 从1开始
+         */
+        final int ordinalPosition;
+        final boolean isPrimaryKey;
+        final boolean isUnsigned;
+
+        Column(String name, String dataType, int ordinalPosition, boolean isPrimaryKey, boolean isUnsigned) {
+            this.name = name;
+            this.dataType = dataType;
+            this.ordinalPosition = ordinalPosition;
+            this.isPrimaryKey = isPrimaryKey;
+            this.isUnsigned = isUnsigned;
+        }
+
+        FieldMetaInfo toFieldMetaInfo() {
+            FieldMetaInfo fieldMetaInfo = new FieldMetaInfo();
+            fieldMetaInfo.setName(name);
+            fieldMetaInfo.setType(dataType);
+            fieldMetaInfo.setIndex(ordinalPosition - 1);
+            fieldMetaInfo.setUnsigned(isUnsigned);
+            return fieldMetaInfo;
+        }
+    }
+
+    private static class Rule {
+        final boolean isBroadcast;
+        /**
+         * 单表与广播表为 null
+         */
+        final String dbPartitionKey;
+        final int dbPartitionCount;
+        final int tbPartitionCount;
+
+        Rule(boolean isBroadcast, String dbPartitionKey, int dbPartitionCount, int tbPartitionCount) {
+            this.isBroadcast = isBroadcast;
+            this.dbPartitionKey = dbPartitionKey;
+            this.dbPartitionCount = dbPartitionCount;
+            this.tbPartitionCount = tbPartitionCount;
+        }
+    }
+}
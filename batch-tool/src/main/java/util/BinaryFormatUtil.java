@@ -0,0 +1,264 @@
+/*
+ * Copyright [2013-2021], Alibaba Group Holding Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package util;
+
+import model.db.FieldMetaInfo;
+import worker.util.ImportUtil;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 二进制行格式
+ * 文件头: 魔数 版本 字段数 各字段名与类型 同步标记
+ * 数据块: 同步标记 行数 数据长度 数据
+ * 每行: NULL 位图 各非 NULL 字段的变长长度与数据库返回的原始字节
+ * 数据块以同步标记开头 可从文件任意位置向后查找到下一个数据块 以便按块并行读取
+ */
+public class BinaryFormatUtil {
+
+    private static final byte[] MAGIC = {'B', 'T', 'B', 'F'};
+    private static final byte VERSION = 1;
+
+    public static final int SYNC_MARKER_LENGTH = 16;
+
+    /**
+     * 同步标记 + 行数 + 数据长度
+     */
+    public static final int BLOCK_HEADER_LENGTH = SYNC_MARKER_LENGTH + 4 + 4;
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    public static class FileHeader {
+        private final String[] columnNames;
+        private final FieldMetaInfo.Type[] columnTypes;
+        private final byte[] syncMarker;
+        private final long headerLength;
+
+        private FileHeader(String[] columnNames, FieldMetaInfo.Type[] columnTypes,
+                           byte[] syncMarker, long headerLength) {
+            this.columnNames = columnNames;
+            this.columnTypes = columnTypes;
+            this.syncMarker = syncMarker;
+            this.headerLength = headerLength;
+        }
+
+        public String[] getColumnNames() {
+            return columnNames;
+        }
+
+        public FieldMetaInfo.Type[] getColumnTypes() {
+            return columnTypes;
+        }
+
+        public int getColumnCount() {
+            return columnNames.length;
+        }
+
+        public byte[] getSyncMarker() {
+            return syncMarker;
+        }
+
+        /**
+         * 首个数据块的起始位置
+         */
+        public long getHeaderLength() {
+            return headerLength;
+        }
+    }
+
+    /**
+     * 每个文件使用随机的同步标记 避免与数据内容冲突
+     */
+    public static byte[] newSyncMarker() {
+        byte[] syncMarker = new byte[SYNC_MARKER_LENGTH];
+        RANDOM.nextBytes(syncMarker);
+        return syncMarker;
+    }
+
+    public static byte[] getFileHeaderBytes(List<FieldMetaInfo> fieldMetaInfoList, byte[] syncMarker) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + fieldMetaInfoList.size() * 16);
+        try (DataOutputStream output = new DataOutputStream(bytes)) {
+            output.write(MAGIC);
+            output.writeByte(VERSION);
+            output.writeInt(fieldMetaInfoList.size());
+            for (FieldMetaInfo fieldMetaInfo : fieldMetaInfoList) {
+                byte[] name = fieldMetaInfo.getName().getBytes(StandardCharsets.UTF_8);
+                output.writeShort(name.length);
+                output.write(name);
+                output.writeByte(fieldMetaInfo.getType().ordinal());
+            }
+            output.write(syncMarker);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    public static FileHeader readFileHeader(RandomAccessFile file) throws IOException {
+        file.seek(0);
+        byte[] magic = new byte[MAGIC.length];
+        file.readFully(magic);
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw new IllegalArgumentException("Not a binary format file");
+        }
+        byte version = file.readByte();
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported binary format version: " + version);
+        }
+        int columnCount = file.readInt();
+        String[] columnNames = new String[columnCount];
+        FieldMetaInfo.Type[] columnTypes = new FieldMetaInfo.Type[columnCount];
+        FieldMetaInfo.Type[] allTypes = FieldMetaInfo.Type.values();
+        for (int i = 0; i < columnCount; i++) {
+            byte[] name = new byte[file.readUnsignedShort()];
+            file.readFully(name);
+            columnNames[i] = new String(name, StandardCharsets.UTF_8);
+            columnTypes[i] = allTypes[file.readUnsignedByte()];
+        }
+        byte[] syncMarker = new byte[SYNC_MARKER_LENGTH];
+        file.readFully(syncMarker);
+        return new FileHeader(columnNames, columnTypes, syncMarker, file.getFilePointer());
+    }
+
+    /**
+     * 校验文件头中的字段与目标表的字段一致
+     */
+    public static void checkColumns(FileHeader header, List<FieldMetaInfo> fieldMetaInfoList, String filePath) {
+        String[] columnNames = header.getColumnNames();
+        boolean matched = columnNames.length == fieldMetaInfoList.size();
+        for (int i = 0; matched && i < columnNames.length; i++) {
+            matched = columnNames[i].equalsIgnoreCase(fieldMetaInfoList.get(i).getName());
+        }
+        if (!matched) {
+            String[] tableColumnNames = fieldMetaInfoList.stream()
+                .map(FieldMetaInfo::getName).toArray(String[]::new);
+            throw new IllegalArgumentException(String.format("Columns %s of %s do not match the table columns %s",
+                Arrays.toString(columnNames), filePath, Arrays.toString(tableColumnNames)));
+        }
+    }
+
+    /**
+     * @return 各字段是否为二进制类型 没有二进制字段时返回 null
+     */
+    public static boolean[] getBinaryColumns(List<FieldMetaInfo> fieldMetaInfoList) {
+        boolean[] binaryColumns = new boolean[fieldMetaInfoList.size()];
+        boolean hasBinary = false;
+        for (int i = 0; i < binaryColumns.length; i++) {
+            binaryColumns[i] = fieldMetaInfoList.get(i).isBinary();
+            hasBinary |= binaryColumns[i];
+        }
+        return hasBinary ? binaryColumns : null;
+    }
+
+    /**
+     * 解析 data[pos[0]] 处的一行 并将 pos[0] 移至其后
+     * NULL 字段解析为 null 二进制字段不解码 转为十六进制字面量
+     *
+     * @param binaryColumns 各字段是否为二进制类型 可为 null
+     */
+    public static String[] decodeRow(byte[] data, int[] pos, int columnCount, Charset charset,
+                                     boolean[] binaryColumns) {
+        int bitmapPos = pos[0];
+        pos[0] += getNullBitmapLength(columnCount);
+        String[] values = new String[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            if ((data[bitmapPos + (i >>> 3)] & (1 << (i & 7))) != 0) {
+                continue;
+            }
+            int len = getVarInt(data, pos);
+            if (binaryColumns != null && binaryColumns[i]) {
+                values[i] = ImportUtil.toHexLiteral(Arrays.copyOfRange(data, pos[0], pos[0] + len));
+            } else {
+                values[i] = new String(data, pos[0], len, charset);
+            }
+            pos[0] += len;
+        }
+        return values;
+    }
+
+    /**
+     * 查找同步标记在 data[from, to) 中首次出现的位置
+     *
+     * @return 未找到时返回 -1
+     */
+    public static int indexOfSyncMarker(byte[] data, int from, int to, byte[] syncMarker) {
+        int last = to - SYNC_MARKER_LENGTH;
+        byte first = syncMarker[0];
+        outer:
+        for (int i = from; i <= last; i++) {
+            if (data[i] != first) {
+                continue;
+            }
+            for (int j = 1; j < SYNC_MARKER_LENGTH; j++) {
+                if (data[i + j] != syncMarker[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    public static int getNullBitmapLength(int columnCount) {
+        return (columnCount + 7) >>> 3;
+    }
+
+    public static int getVarIntLength(int value) {
+        int length = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            length++;
+        }
+        return length;
+    }
+
+    /**
+     * 按 7 位一组写入非负整数
+     */
+    public static void putVarInt(ByteBuffer buffer, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    /**
+     * 读取 data[pos[0]] 处的变长整数 并将 pos[0] 移至其后
+     */
+    public static int getVarInt(byte[] data, int[] pos) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = data[pos[0]++];
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright [2013-2021], Alibaba Group Holding Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package util;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.nio.ByteBuffer;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 固定数量的堆外缓冲区池
+ * 缓冲区按需分配 达到上限后获取方需等待其他缓冲区归还
+ */
+@ThreadSafe
+public class ByteBufferPool {
+
+    private final int poolSize;
+    private final int bufferSize;
+    private final BlockingQueue<ByteBuffer> freeBuffers;
+    private final AtomicInteger allocatedCount = new AtomicInteger(0);
+
+    public ByteBufferPool(int poolSize, int bufferSize) {
+        if (poolSize <= 0 || bufferSize <= 0) {
+            throw new IllegalArgumentException("Illegal buffer pool size: " + poolSize + ", " + bufferSize);
+        }
+        this.poolSize = poolSize;
+        this.bufferSize = bufferSize;
+        this.freeBuffers = new LinkedBlockingQueue<>(poolSize);
+    }
+
+    public ByteBuffer acquire() {
+        ByteBuffer buffer = freeBuffers.poll();
+        if (buffer != null) {
+            return buffer;
+        }
+        if (allocatedCount.incrementAndGet() <= poolSize) {
+            return ByteBuffer.allocateDirect(bufferSize);
+        }
+        allocatedCount.decrementAndGet();
+        try {
+            return freeBuffers.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * 容量与池中不一致的临时缓冲区不回收
+     */
+    public void release(ByteBuffer buffer) {
+        if (buffer == null || buffer.capacity() != bufferSize) {
+            return;
+        }
+        buffer.clear();
+        freeBuffers.offer(buffer);
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+}
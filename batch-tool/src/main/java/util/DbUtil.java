@@ -17,25 +17,34 @@
 package util;
 
 import com.alibaba.druid.util.JdbcUtils;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 import exception.DatabaseException;
 import model.db.FieldMetaInfo;
 import model.db.PartitionKey;
 import model.db.PrimaryKey;
+import model.db.SchemaCatalog;
 import model.db.TableFieldMetaInfo;
 import model.db.TableTopology;
 import org.apache.commons.collections.CollectionUtils;
+import org.apache.commons.lang.StringEscapeUtils;
 import org.apache.commons.lang.StringUtils;
 
+import java.nio.charset.StandardCharsets;
 import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
+import static model.config.ConfigConstant.BLOCK_PROGRESS_TABLE_NAME;
+
 public class DbUtil {
 
     private static final String PK_INDEX_SQL_PATTERN =
@@ -47,11 +56,11 @@ public class DbUtil {
             + "WHERE TABLE_SCHEMA='%s' and TABLE_NAME='%s' and COLUMN_KEY='PRI';";
 
     private static final String FIELD_INFO_SQL_PATTERN =
-        "SELECT COLUMN_NAME,DATA_TYPE,ORDINAL_POSITION from INFORMATION_SCHEMA.COLUMNS WHERE TABLE_SCHEMA='%s' and TABLE_NAME='%s'\n"
+        "SELECT COLUMN_NAME,DATA_TYPE,ORDINAL_POSITION,COLUMN_TYPE from INFORMATION_SCHEMA.COLUMNS WHERE TABLE_SCHEMA='%s' and TABLE_NAME='%s'\n"
             + "ORDER BY ORDINAL_POSITION;";
 
     private static final String DB_FIELD_INFO_SQL_PATTERN =
-        "SELECT COLUMN_NAME,DATA_TYPE,ORDINAL_POSITION,TABLE_NAME from INFORMATION_SCHEMA.COLUMNS WHERE TABLE_SCHEMA='%s'\n"
+        "SELECT COLUMN_NAME,DATA_TYPE,ORDINAL_POSITION,TABLE_NAME,COLUMN_TYPE from INFORMATION_SCHEMA.COLUMNS WHERE TABLE_SCHEMA='%s'\n"
             + "ORDER BY TABLE_NAME,ORDINAL_POSITION;";
 
     private static final String SINGLE_FIELD_INFO_SQL_PATTERN =
@@ -59,17 +68,52 @@ public class DbUtil {
             + "WHERE TABLE_SCHEMA='%s' and TABLE_NAME='%s' and COLUMN_NAME='%s';";
 
     private static final String MULTI_FIELD_INFO_SQL_PATTERN =
-        "SELECT COLUMN_NAME,DATA_TYPE,ORDINAL_POSITION from INFORMATION_SCHEMA.COLUMNS "
+        "SELECT COLUMN_NAME,DATA_TYPE,ORDINAL_POSITION,COLUMN_TYPE from INFORMATION_SCHEMA.COLUMNS "
             + "WHERE TABLE_SCHEMA='%s' and TABLE_NAME='%s' and COLUMN_NAME in (%s);";
 
     private static final String PARTITION_KEY_SQL_PATTERN = "SHOW RULE FROM `%s`;";
 
     private static final String ROW_COUNT_SQL_PATTERN = "SELECT COUNT(*) FROM `%s`;";
 
+    private static final String TABLE_DATA_LENGTH_SQL_PATTERN =
+        "SELECT TABLE_NAME,DATA_LENGTH from INFORMATION_SCHEMA.TABLES WHERE TABLE_SCHEMA='%s';";
+
     private static final String PARTITION_KEY_INFO_SQL_PATTERN =
         "SELECT DATA_TYPE,ORDINAL_POSITION from INFORMATION_SCHEMA.COLUMNS WHERE "
             + "TABLE_SCHEMA='%s' and TABLE_NAME='%s' and COLUMN_NAME = '%s'";
 
+    private static final String SCHEMA_TABLES_SQL_PATTERN =
+        "SELECT TABLE_NAME,CREATE_TIME,DATA_LENGTH from INFORMATION_SCHEMA.TABLES WHERE TABLE_SCHEMA='%s' "
+            + "ORDER BY TABLE_NAME;";
+
+    private static final String SCHEMA_COLUMNS_SQL_PATTERN =
+        "SELECT TABLE_NAME,COLUMN_NAME,DATA_TYPE,ORDINAL_POSITION,COLUMN_KEY,COLUMN_TYPE from INFORMATION_SCHEMA.COLUMNS "
+            + "WHERE TABLE_SCHEMA='%s';";
+
+    /**
+     * 原地变更 (如 INSTANT 加列、改列名) 不会改变建表时间 需要由字段生成摘要
+     * 逐行读取字段 不在库中聚合 以免等长的改名、改类型或主键变更得到相同的摘要
+     */
+    private static final String SCHEMA_COLUMN_DIGEST_SQL_PATTERN =
+        "SELECT TABLE_NAME,COLUMN_NAME,COLUMN_TYPE,ORDINAL_POSITION,COLUMN_KEY from INFORMATION_SCHEMA.COLUMNS "
+            + "WHERE TABLE_SCHEMA='%s' ORDER BY TABLE_NAME,ORDINAL_POSITION;";
+
+    private static final String ALL_RULES_SQL = "SHOW RULE;";
+
+    private static final String CREATE_BLOCK_PROGRESS_TABLE_SQL =
+        "CREATE TABLE IF NOT EXISTS `" + BLOCK_PROGRESS_TABLE_NAME + "` (\n"
+            + "  `table_name` varchar(64) NOT NULL,\n"
+            + "  `file_name` varchar(255) NOT NULL,\n"
+            + "  `block_size` bigint NOT NULL,\n"
+            + "  `block_index` bigint NOT NULL,\n"
+            + "  `gmt_create` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP,\n"
+            + "  PRIMARY KEY (`table_name`, `file_name`, `block_size`, `block_index`)\n"
+            + ");";
+
+    private static final String COMMITTED_BLOCKS_SQL_PATTERN =
+        "SELECT file_name,block_size,block_index FROM `" + BLOCK_PROGRESS_TABLE_NAME + "` "
+            + "WHERE table_name='%s';";
+
     /**
      * 获取数据表
      * 分库分表的拓扑结构
@@ -170,6 +214,7 @@ public class DbUtil {
                     // 只添加要求的两种类型
                     fieldMetaInfo.setName(resultSet.getString(1));
                     fieldMetaInfo.setIndex(resultSet.getInt(3) - 1);
+                    fieldMetaInfo.setUnsigned(resultSet.getString(4));
                     fieldMetaInfoList.add(fieldMetaInfo);
                 }
             }
@@ -219,6 +264,7 @@ public class DbUtil {
                 fieldMetaInfo.setType(resultSet.getString(2));
                 fieldMetaInfo.setName(resultSet.getString(1));
                 fieldMetaInfo.setIndex(resultSet.getInt(3) - 1);
+                fieldMetaInfo.setUnsigned(resultSet.getString(4));
                 fieldMetaInfoList.add(fieldMetaInfo);
             }
             tableFieldMetaInfo.setFieldMetaInfoList(fieldMetaInfoList);
@@ -255,6 +301,7 @@ public class DbUtil {
                 fieldMetaInfo.setName(resultSet.getString(1));
                 fieldMetaInfo.setType(resultSet.getString(2));
                 fieldMetaInfo.setIndex(resultSet.getInt(3) - 1);
+                fieldMetaInfo.setUnsigned(resultSet.getString(4));
                 fieldMetaInfoList.add(fieldMetaInfo);
             }
             tableFieldMetaInfo.setFieldMetaInfoList(fieldMetaInfoList);
@@ -297,6 +344,7 @@ public class DbUtil {
                 fieldMetaInfo.setName(resultSet.getString(1));
                 fieldMetaInfo.setType(resultSet.getString(2));
                 fieldMetaInfo.setIndex(resultSet.getInt(3) - 1);
+                fieldMetaInfo.setUnsigned(resultSet.getString(5));
                 metaInfo.getFieldMetaInfoList().add(fieldMetaInfo);
             }
             return resultMap;
@@ -315,6 +363,16 @@ public class DbUtil {
                                                            List<String> columnNames) throws DatabaseException {
 
         TableFieldMetaInfo tableFieldMetaInfo = getTableFieldMetaInfo(conn, schemaName, tableName);
+        return selectColumns(tableFieldMetaInfo, tableName, columnNames);
+    }
+
+    /**
+     * 只保留指定的字段 并按指定顺序排列
+     *
+     * @param columnNames 为空时保留所有字段
+     */
+    public static TableFieldMetaInfo selectColumns(TableFieldMetaInfo tableFieldMetaInfo, String tableName,
+                                                   List<String> columnNames) {
         if (CollectionUtils.isEmpty(columnNames)) {
             return tableFieldMetaInfo;
         }
@@ -387,6 +445,10 @@ public class DbUtil {
      */
     @Deprecated
     public static int getPartitionIndex(String value, PartitionKey partitionKey) {
+        if (value == null) {
+            // NULL 仍按转义值计算 与此前的分片结果保持一致
+            value = FileUtil.NULL_ESC_STR;
+        }
         int partitionSize = partitionKey.getPartitionSize();
         switch (partitionKey.getFieldMetaInfo().getType()) {
         case STRING:
@@ -452,6 +514,7 @@ public class DbUtil {
                         foundColCount++;
                         fieldMetaInfo.setType(resultSet.getString(2));
                         fieldMetaInfo.setIndex(resultSet.getInt(3) - 1);
+                        fieldMetaInfo.setUnsigned(resultSet.getString(4));
                     }
                 }
             }
@@ -489,6 +552,45 @@ public class DbUtil {
         }
     }
 
+    /**
+     * 获取库中各表的估算数据量
+     * 表名统一为小写
+     */
+    public static Map<String, Long> getTableDataLengthMap(Connection conn, String schemaName)
+        throws DatabaseException {
+        String sql = String.format(TABLE_DATA_LENGTH_SQL_PATTERN, schemaName);
+        Map<String, Long> dataLengthMap = new HashMap<>();
+        try (Statement stmt = conn.createStatement();
+            ResultSet resultSet = stmt.executeQuery(sql)) {
+            while (resultSet.next()) {
+                dataLengthMap.put(resultSet.getString(1).toLowerCase(), resultSet.getLong(2));
+            }
+            return dataLengthMap;
+        } catch (SQLException e) {
+            throw new DatabaseException("Cannot get data length of tables in " + schemaName, e);
+        } finally {
+            JdbcUtils.close(conn);
+        }
+    }
+
+    /**
+     * 获取各分库所在的存储节点
+     */
+    public static Map<String, String> getGroupStorageMap(Connection conn) throws DatabaseException {
+        Map<String, String> groupStorageMap = new HashMap<>();
+        try (Statement stmt = conn.createStatement();
+            ResultSet resultSet = stmt.executeQuery("SHOW DS")) {
+            while (resultSet.next()) {
+                groupStorageMap.put(resultSet.getString("GROUP"), resultSet.getString("STORAGE_INST_ID"));
+            }
+            return groupStorageMap;
+        } catch (SQLException e) {
+            throw new DatabaseException("Cannot get storage of groups", e);
+        } finally {
+            JdbcUtils.close(conn);
+        }
+    }
+
     public static void useDb(Connection conn, String dbName) throws SQLException {
         try (Statement stmt = conn.createStatement()) {
             stmt.execute("use " + dbName);
@@ -595,4 +697,156 @@ public class DbUtil {
             JdbcUtils.close(conn);
         }
     }
+
+    /**
+     * 一次查询库中所有表的表名与数据量 并由表名、建表时间与各表字段的摘要生成目录版本
+     */
+    public static void loadCatalogTables(Connection conn, SchemaCatalog catalog) throws DatabaseException {
+        String schemaName = catalog.getSchemaName();
+        String sql = String.format(SCHEMA_TABLES_SQL_PATTERN, schemaName);
+        List<String> tableNames = new ArrayList<>();
+        Map<String, Long> dataLengthMap = new HashMap<>();
+        Hasher hasher = Hashing.sha256().newHasher();
+        try {
+            try (Statement stmt = conn.createStatement();
+                ResultSet resultSet = stmt.executeQuery(sql)) {
+                while (resultSet.next()) {
+                    String tableName = resultSet.getString(1);
+                    tableNames.add(tableName);
+                    dataLengthMap.put(tableName.toLowerCase(), resultSet.getLong(3));
+                    hasher.putString(tableName, StandardCharsets.UTF_8).putByte((byte) 0)
+                        .putString(String.valueOf(resultSet.getString(2)), StandardCharsets.UTF_8).putByte((byte) 0);
+                }
+            } catch (SQLException e) {
+                throw new DatabaseException("Cannot get tables in " + schemaName, e);
+            }
+            sql = String.format(SCHEMA_COLUMN_DIGEST_SQL_PATTERN, schemaName);
+            try (Statement stmt = conn.createStatement();
+                ResultSet resultSet = stmt.executeQuery(sql)) {
+                while (resultSet.next()) {
+                    putColumnDigest(hasher, resultSet.getString(1), resultSet.getString(2),
+                        resultSet.getString(3), resultSet.getInt(4), resultSet.getString(5));
+                }
+            } catch (SQLException e) {
+                throw new DatabaseException("Cannot get column digest of tables in " + schemaName, e);
+            }
+        } finally {
+            JdbcUtils.close(conn);
+        }
+        tableNames.forEach(catalog::addTable);
+        catalog.setDataLengthMap(dataLengthMap);
+        catalog.setVersion(hasher.hash().toString());
+    }
+
+    /**
+     * 字段的各属性以 0 分隔 避免相邻属性拼接后相同
+     */
+    public static void putColumnDigest(Hasher hasher, String tableName, String columnName, String columnType,
+                                       int ordinalPosition, String columnKey) {
+        hasher.putString(tableName, StandardCharsets.UTF_8).putByte((byte) 0)
+            .putString(columnName, StandardCharsets.UTF_8).putByte((byte) 0)
+            .putString(columnType, StandardCharsets.UTF_8).putByte((byte) 0)
+            .putInt(ordinalPosition)
+            .putString(columnKey == null ? "" : columnKey, StandardCharsets.UTF_8).putByte((byte) 0);
+    }
+
+    /**
+     * 一次查询库中所有表的字段与主键
+     */
+    public static void loadCatalogColumns(Connection conn, SchemaCatalog catalog) throws DatabaseException {
+        String sql = String.format(SCHEMA_COLUMNS_SQL_PATTERN, catalog.getSchemaName());
+        try (Statement stmt = conn.createStatement();
+            ResultSet resultSet = stmt.executeQuery(sql)) {
+            while (resultSet.next()) {
+                catalog.addColumn(resultSet.getString(1), resultSet.getString(2), resultSet.getString(3),
+                    resultSet.getInt(4), "PRI".equalsIgnoreCase(resultSet.getString(5)),
+                    resultSet.getString(6).toLowerCase().contains("unsigned"));
+            }
+            catalog.sortColumns();
+        } catch (SQLException e) {
+            throw new DatabaseException("Unable to get meta info of columns in DB: " + catalog.getSchemaName(), e);
+        } finally {
+            JdbcUtils.close(conn);
+        }
+    }
+
+    /**
+     * 一次查询库中所有表的分库分表规则
+     */
+    public static void loadCatalogRules(Connection conn, SchemaCatalog catalog) throws DatabaseException {
+        try (Statement stmt = conn.createStatement();
+            ResultSet resultSet = stmt.executeQuery(ALL_RULES_SQL)) {
+            while (resultSet.next()) {
+                String dbPartitionKey = resultSet.getString("DB_PARTITION_KEY");
+                catalog.addRule(resultSet.getString("TABLE_NAME"), resultSet.getBoolean("BROADCAST"),
+                    StringUtils.isEmpty(dbPartitionKey) ? null : dbPartitionKey,
+                    resultSet.getInt("DB_PARTITION_COUNT"), resultSet.getInt("TB_PARTITION_COUNT"));
+            }
+        } catch (SQLException e) {
+            throw new DatabaseException("Unable to get rules in DB: " + catalog.getSchemaName(), e);
+        } finally {
+            JdbcUtils.close(conn);
+        }
+    }
+
+    /**
+     * 创建按块事务导入的进度表
+     */
+    public static void createBlockProgressTable(Connection conn) throws DatabaseException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute(CREATE_BLOCK_PROGRESS_TABLE_SQL);
+        } catch (SQLException e) {
+            throw new DatabaseException("Failed to create block progress table", e);
+        }
+    }
+
+    /**
+     * 获取数据表已提交的数据块
+     *
+     * @param blockSize 当前读取块大小 与已提交记录不一致时块序号无法对应
+     * @return 文件标识 -> 块序号集合
+     */
+    public static Map<String, Set<Long>> getCommittedBlocks(Connection conn, String tableName,
+                                                            long blockSize) throws DatabaseException {
+        Map<String, Set<Long>> committedBlocks = new HashMap<>();
+        String sql = String.format(COMMITTED_BLOCKS_SQL_PATTERN, StringEscapeUtils.escapeSql(tableName));
+        try (Statement stmt = conn.createStatement();
+            ResultSet rs = stmt.executeQuery(sql)) {
+            while (rs.next()) {
+                String fileName = rs.getString(1);
+                long committedBlockSize = rs.getLong(2);
+                if (committedBlockSize != blockSize) {
+                    throw new DatabaseException(String.format("Blocks of %s in table %s were committed with "
+                            + "block size %d, but current block size is %d", fileName, tableName,
+                        committedBlockSize, blockSize));
+                }
+                committedBlocks.computeIfAbsent(fileName, k -> new HashSet<>()).add(rs.getLong(3));
+            }
+        } catch (SQLException e) {
+            throw new DatabaseException("Failed to get committed blocks of " + tableName, e);
+        }
+        return committedBlocks;
+    }
+
+    /**
+     * 按目标表结构创建中间表 已存在时先删除
+     * 分区方式与目标表一致 使两表的物理分片一一对应
+     */
+    public static void createStagingTable(Connection conn, String stagingTableName,
+                                          String tableName) throws DatabaseException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute(String.format("DROP TABLE IF EXISTS `%s`", stagingTableName));
+            stmt.execute(String.format("CREATE TABLE `%s` LIKE `%s`", stagingTableName, tableName));
+        } catch (SQLException e) {
+            throw new DatabaseException("Failed to create staging table " + stagingTableName, e);
+        }
+    }
+
+    public static void dropTable(Connection conn, String tableName) throws DatabaseException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute(String.format("DROP TABLE IF EXISTS `%s`", tableName));
+        } catch (SQLException e) {
+            throw new DatabaseException("Failed to drop table " + tableName, e);
+        }
+    }
 }
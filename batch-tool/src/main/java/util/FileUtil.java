@@ -81,14 +81,15 @@ public class FileUtil {
     private static void writeWithQuoteEscape(ByteArrayOutputStream os, byte[] value) {
         // ascii字符为一字节
         byte quoteByte = DOUBLE_QUOTE_BYTE[0];
-        for (byte b : value) {
-            if (b == quoteByte) {
+        int runStart = 0;
+        for (int i = 0; i < value.length; i++) {
+            if (value[i] == quoteByte) {
+                os.write(value, runStart, i + 1 - runStart);
                 os.write(quoteByte);
-                os.write(quoteByte);
-            } else {
-                os.write(b);
+                runStart = i + 1;
             }
         }
+        os.write(value, runStart, value.length - runStart);
     }
 
     /**
@@ -99,18 +100,17 @@ public class FileUtil {
         // ascii字符为一字节
         byte quoteByte = DOUBLE_QUOTE_BYTE[0];
         byte backSlashByte = BACK_SLASH_BYTE[0];
-
-        for (byte b : value) {
-            if (b == quoteByte) {
-                os.write(quoteByte);
-                os.write(quoteByte);
-            } else if (b == backSlashByte) {
-                os.write(backSlashByte);
-                os.write(backSlashByte);
-            } else {
+        int runStart = 0;
+        for (int i = 0; i < value.length; i++) {
+            byte b = value[i];
+            if (b == quoteByte || b == backSlashByte) {
+                // 连同当前字节整段写入后再写一次当前字节
+                os.write(value, runStart, i + 1 - runStart);
                 os.write(b);
+                runStart = i + 1;
             }
         }
+        os.write(value, runStart, value.length - runStart);
     }
 
     public static void writeToByteArrayStreamWithQuote(ByteArrayOutputStream os, byte[] value) throws IOException {
@@ -144,6 +144,19 @@ public class FileUtil {
     }
 
 
+    /**
+     * 将文本中表示 NULL 的转义值替换为 null
+     * 之后字段值中的 null 表示 NULL 其余均为字面值
+     */
+    public static String[] replaceNullEscape(String[] values) {
+        for (int i = 0; i < values.length; i++) {
+            if (NULL_ESC_STR.equals(values[i])) {
+                values[i] = null;
+            }
+        }
+        return values;
+    }
+
     public static String[] split(String line, String sep, boolean withLastSep, boolean hasEscapedQuote) {
         ArrayList<String> values = splitWithQuoteEscape(line, sep, withLastSep, 10, hasEscapedQuote);
         return values.toArray(new String[values.size()]);
@@ -293,50 +306,6 @@ public class FileUtil {
         return (len < chars.length) ? s.substring(0, len) : s;
     }
 
-    /**
-     * 判断原字节数组中是否包含特殊字符
-     *
-     * @param targetList 特殊字符列表
-     */
-    public static boolean containsSpecialBytes(byte[] source, List<byte[]> targetList) {
-        if (source == null || source.length == 0) {
-            return false;
-        }
-
-        int specialCharCount = targetList.size();
-
-        final int minTargetLen = 1;
-
-        int max = source.length - minTargetLen;
-        byte[] cur;
-        byte first;
-        int targetLen;
-        for (int src_i = 0; src_i <= max; src_i++) {
-            // 找到第一个匹配的字符
-            for (int n = 0; n < specialCharCount; n++) {
-                cur = targetList.get(n);
-                first = cur[0];
-                targetLen = cur.length;
-                if (source[src_i] != first) {
-                    continue;
-                }
-
-                // 匹配剩余字符
-                int src_j = src_i + 1;
-                int end = src_j + targetLen - 1;
-                for (int k = 1; src_j < end && source[src_j] == cur[k]; src_j++, k++) {
-
-                }
-
-                if (src_j == end) {
-                    // 匹配成功
-                    return true;
-                }
-            }
-        }
-        return false;
-    }
-
     public static String getFilePathPrefix(String path, String filenamePrefix, String tableName) {
         return String.format("%s%s%s_", path, filenamePrefix, tableName);
     }
@@ -0,0 +1,204 @@
+/*
+ * Copyright [2013-2021], Alibaba Group Holding Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package util;
+
+import exception.DatabaseException;
+import model.config.GlobalVar;
+import model.db.SchemaCatalog;
+import model.db.TableTopology;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import worker.MyThreadPool;
+
+import javax.sql.DataSource;
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 元数据目录的缓存
+ * 进程内按库缓存 指定缓存目录时同时保存到本地文件 供后续命令复用
+ * 每次获取时只查询一次库中的表与字段摘要 有变化时并行重新获取字段与规则
+ * 批量查询失败时返回空目录 由调用方逐表查询
+ */
+public class SchemaCatalogCache {
+    private static final Logger logger = LoggerFactory.getLogger(SchemaCatalogCache.class);
+
+    /**
+     * 并行查询的线程数上限
+     */
+    private static final int MAX_PARALLELISM = 8;
+
+    private static final Map<String, SchemaCatalog> CATALOGS = new ConcurrentHashMap<>();
+
+    @FunctionalInterface
+    private interface CatalogLoader {
+        void load(Connection conn) throws DatabaseException, SQLException;
+    }
+
+    public static synchronized SchemaCatalog getCatalog(DataSource dataSource, String schemaName) {
+        try {
+            return loadCatalog(dataSource, schemaName);
+        } catch (DatabaseException | SQLException | RuntimeException e) {
+            logger.warn("批量获取库 {} 的元数据失败, 改为逐表查询: {}", schemaName, e.getMessage());
+            return new SchemaCatalog(schemaName);
+        }
+    }
+
+    private static SchemaCatalog loadCatalog(DataSource dataSource, String schemaName)
+        throws DatabaseException, SQLException {
+        SchemaCatalog cached = CATALOGS.get(schemaName);
+        File cacheFile = getCacheFile(schemaName);
+        if (cached == null && cacheFile != null) {
+            cached = SchemaCatalog.load(cacheFile);
+        }
+        SchemaCatalog catalog = new SchemaCatalog(schemaName);
+        long startTime = System.currentTimeMillis();
+        if (cached == null) {
+            // 没有缓存时三类查询同时进行
+            runInParallel(dataSource, "catalog",
+                conn -> DbUtil.loadCatalogTables(conn, catalog),
+                conn -> DbUtil.loadCatalogColumns(conn, catalog),
+                conn -> loadRules(conn, catalog));
+        } else {
+            DbUtil.loadCatalogTables(dataSource.getConnection(), catalog);
+            if (catalog.getVersion().equals(cached.getVersion())) {
+                cached.setDataLengthMap(catalog.getDataLengthMap());
+                CATALOGS.put(schemaName, cached);
+                logger.info("库 {} 的元数据未变化, 使用缓存", schemaName);
+                return cached;
+            }
+            logger.info("库 {} 的表结构已变化, 重新获取元数据", schemaName);
+            runInParallel(dataSource, "catalog",
+                conn -> DbUtil.loadCatalogColumns(conn, catalog),
+                conn -> loadRules(conn, catalog));
+        }
+        logger.info("获取库 {} 的元数据完毕, 共 {} 张表, 耗时 {} ms", schemaName, catalog.getTableNames().size(),
+            System.currentTimeMillis() - startTime);
+        CATALOGS.put(schemaName, catalog);
+        if (cacheFile != null) {
+            try {
+                catalog.save(cacheFile);
+            } catch (IOException e) {
+                logger.warn("保存元数据缓存文件 {} 失败: {}", cacheFile.getPath(), e.getMessage());
+            }
+        }
+        return catalog;
+    }
+
+    /**
+     * 并行获取尚未缓存的表拓扑 失败的表留待使用时再获取
+     */
+    public static void prefetchTopology(DataSource dataSource, SchemaCatalog catalog, List<String> tableNames) {
+        List<String> missingTables = new ArrayList<>();
+        for (String tableName : tableNames) {
+            if (catalog.getTopology(tableName) == null) {
+                missingTables.add(tableName);
+            }
+        }
+        if (missingTables.isEmpty()) {
+            return;
+        }
+        CatalogLoader[] loaders = new CatalogLoader[missingTables.size()];
+        for (int i = 0; i < loaders.length; i++) {
+            String tableName = missingTables.get(i);
+            loaders[i] = conn -> {
+                List<TableTopology> topologyList = DbUtil.getTopology(conn, tableName);
+                catalog.putTopology(tableName, topologyList);
+            };
+        }
+        try {
+            runInParallel(dataSource, "topology", loaders);
+        } catch (DatabaseException | SQLException e) {
+            logger.warn("预先获取拓扑失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 非分库分表的库不支持查询规则
+     */
+    private static void loadRules(Connection conn, SchemaCatalog catalog) {
+        try {
+            DbUtil.loadCatalogRules(conn, catalog);
+        } catch (DatabaseException e) {
+            logger.info("库 {} 没有分库分表规则: {}", catalog.getSchemaName(), e.getMessage());
+        }
+    }
+
+    private static File getCacheFile(String schemaName) {
+        if (GlobalVar.META_CACHE_DIR == null) {
+            return null;
+        }
+        return new File(GlobalVar.META_CACHE_DIR, "catalog_" + schemaName);
+    }
+
+    /**
+     * 固定数量的线程依次取出任务 每个任务使用单独的连接
+     * 全部结束后抛出第一个异常
+     */
+    private static void runInParallel(DataSource dataSource, String name, CatalogLoader... loaders)
+        throws DatabaseException, SQLException {
+        int parallelism = Math.min(loaders.length, MAX_PARALLELISM);
+        Queue<CatalogLoader> loaderQueue = new ConcurrentLinkedQueue<>(Arrays.asList(loaders));
+        ExecutorService executor = MyThreadPool.createFixedExecutor(name, parallelism);
+        CountDownLatch countDownLatch = new CountDownLatch(parallelism);
+        AtomicReference<Throwable> firstException = new AtomicReference<>();
+        for (int i = 0; i < parallelism; i++) {
+            executor.submit(() -> {
+                try {
+                    CatalogLoader loader;
+                    while ((loader = loaderQueue.poll()) != null) {
+                        try {
+                            loader.load(dataSource.getConnection());
+                        } catch (DatabaseException | SQLException | RuntimeException e) {
+                            firstException.compareAndSet(null, e);
+                        }
+                    }
+                } finally {
+                    countDownLatch.countDown();
+                }
+            });
+        }
+        try {
+            countDownLatch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DatabaseException("Interrupted while loading meta info", e);
+        } finally {
+            executor.shutdown();
+        }
+        Throwable e = firstException.get();
+        if (e instanceof DatabaseException) {
+            throw (DatabaseException) e;
+        } else if (e instanceof SQLException) {
+            throw (SQLException) e;
+        } else if (e != null) {
+            throw (RuntimeException) e;
+        }
+    }
+}
@@ -20,11 +20,12 @@ import com.alibaba.druid.util.JdbcUtils;
 import com.alibaba.druid.util.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import util.FileUtil;
 
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
 
 import static model.config.ConfigConstant.END_OF_BATCH_LINES;
 
@@ -48,20 +49,37 @@ public abstract class BaseDefaultConsumer extends BaseWorkHandler {
         try {
             String[] lines = event.getBatchLines();
             StringBuilder stringBuilder = new StringBuilder(lines.length * 10);
-            for (String line : lines) {
+            boolean errorTolerant = consumerContext.isErrorTolerant();
+            // 已填充至缓冲区的行序号 用于失败后二分重试
+            List<Integer> filledLineIndexes = errorTolerant ? new ArrayList<>(lines.length) : null;
+            for (int i = 0; i < lines.length; i++) {
+                String line = lines[i];
                 if (StringUtils.isEmpty(line)) {
                     continue;
                 }
                 if (line == END_OF_BATCH_LINES) {
                     break;
                 }
-                String[] values = FileUtil.split(line, sep,
-                    consumerContext.isWithLastSep(), hasEscapedQuote);
-                fillLocalBuffer(stringBuilder, values);
+                if (!errorTolerant) {
+                    fillLocalBuffer(stringBuilder, getLineValues(event, i));
+                    continue;
+                }
+                int prevLength = stringBuilder.length();
+                try {
+                    fillLocalBuffer(stringBuilder, getLineValues(event, i));
+                    filledLineIndexes.add(i);
+                } catch (Exception e) {
+                    stringBuilder.setLength(prevLength);
+                    handleBrokenLine(event, i, e);
+                }
             }
 
             if (stringBuilder.length() > 0) {
-                execSql(stringBuilder);
+                if (errorTolerant) {
+                    execSqlWithBisect(event, stringBuilder, filledLineIndexes);
+                } else {
+                    execSql(stringBuilder);
+                }
             }
         } catch (Exception e) {
             consumerContext.setException(e);
@@ -77,24 +95,94 @@ public abstract class BaseDefaultConsumer extends BaseWorkHandler {
         }
     }
 
+    /**
+     * 在事务中执行整批数据
+     * 失败时将批次二分后分别重试 直至定位到单个错误行
+     * 临时错误重试后仍失败时直接抛出 不进行二分
+     *
+     * @param lineIndexes data 中包含的行在批次中的序号
+     */
+    private void execSqlWithBisect(BatchLineEvent event, StringBuilder data,
+                                   List<Integer> lineIndexes) throws SQLException {
+        // getSql 会修改缓冲区 重试时复用同一条语句
+        String sql = getSql(data);
+        try {
+            if (sql != null) {
+                execWithTransientRetry(() -> execSql(sql, true));
+            }
+            return;
+        } catch (SQLException e) {
+            if (isTransientError(e)) {
+                throw e;
+            }
+            if (lineIndexes.size() == 1) {
+                handleBrokenLine(event, lineIndexes.get(0), e);
+                return;
+            }
+            logger.debug("Retry batch of {} lines in table [{}], due to {}",
+                lineIndexes.size(), tableName, e.getMessage());
+        }
+        int mid = lineIndexes.size() / 2;
+        bisect(event, lineIndexes.subList(0, mid));
+        bisect(event, lineIndexes.subList(mid, lineIndexes.size()));
+    }
+
+    private void bisect(BatchLineEvent event, List<Integer> lineIndexes) throws SQLException {
+        StringBuilder stringBuilder = new StringBuilder(lineIndexes.size() * 10);
+        for (int lineIndex : lineIndexes) {
+            fillLocalBuffer(stringBuilder, getLineValues(event, lineIndex));
+        }
+        execSqlWithBisect(event, stringBuilder, lineIndexes);
+    }
+
     protected abstract void fillLocalBuffer(StringBuilder stringBuilder, String[] values);
 
+    /**
+     * @return 为null时表示本批数据无需执行
+     */
     protected abstract String getSql(StringBuilder data);
 
     protected void execSql(StringBuilder data) throws SQLException {
+        execSql(data, false);
+    }
+
+    /**
+     * @param inTransaction 是否在单个事务中执行
+     * 批次中可能包含多条语句 需要整体回滚后才能安全地重试
+     */
+    protected void execSql(StringBuilder data, boolean inTransaction) throws SQLException {
+        String sql = getSql(data);
+        if (sql != null) {
+            execSql(sql, inTransaction);
+        }
+    }
+
+    private void execSql(String sql, boolean inTransaction) throws SQLException {
         Connection conn = null;
         Statement stmt = null;
-        String sql = null;
         try {
             conn = consumerContext.getDataSource().getConnection();
+            if (inTransaction) {
+                conn.setAutoCommit(false);
+            }
             stmt = conn.createStatement();
-            sql = getSql(data);
             stmt.execute(sql);
+            if (inTransaction) {
+                conn.commit();
+            }
         } catch (SQLException e) {
-//            logger.error(sql);
+            if (inTransaction && conn != null) {
+                try {
+                    conn.rollback();
+                } catch (SQLException rollbackException) {
+                    // 连接已断开时回滚失败 保留原始异常
+                    e.addSuppressed(rollbackException);
+                }
+            }
             throw e;
         } finally {
             JdbcUtils.close(stmt);
+            // 归还连接池时会重置autocommit
             JdbcUtils.close(conn);
         }
     }
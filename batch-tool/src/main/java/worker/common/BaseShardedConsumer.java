@@ -24,11 +24,11 @@ import model.db.TableTopology;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import util.DbUtil;
-import util.FileUtil;
 
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
 import java.util.List;
 
 import static model.config.ConfigConstant.END_OF_BATCH_LINES;
@@ -45,6 +45,10 @@ public abstract class BaseShardedConsumer extends BaseWorkHandler {
 
     @Override
     public void onProxyEvent(BatchLineEvent event) {
+        if (consumerContext.getException() != null) {
+            // fail fast on exception
+            return;
+        }
         initLocalVars();
         try {
             List<TableTopology> topologyList = consumerContext.getTopologyList(tableName);
@@ -54,46 +58,53 @@ public abstract class BaseShardedConsumer extends BaseWorkHandler {
             // 分片序号
             int partitionIndex;
             PartitionKey partitionKey = consumerContext.getTablePartitionKey(tableName);
+            boolean errorTolerant = consumerContext.isErrorTolerant();
             StringBuilder[] dataBuffers = new StringBuilder[shardCount];
+            // 各分片已填充的行序号 用于失败后二分重试
+            List<List<Integer>> shardLineIndexes = new ArrayList<>(shardCount);
             for (int i = 0; i < shardCount; i++) {
                 dataBuffers[i] = new StringBuilder();
+                shardLineIndexes.add(new ArrayList<>());
             }
             StringBuilder localBuffer = new StringBuilder();
             String[] lines = event.getBatchLines();
-            String partitionFieldValue;
-            for (String line : lines) {
+            for (int i = 0; i < lines.length; i++) {
+                String line = lines[i];
                 if (StringUtils.isEmpty(line)) {
                     continue;
                 }
                 if (line == END_OF_BATCH_LINES) {
                     break;
                 }
-                String[] values = FileUtil.split(line, sep,
-                    consumerContext.isWithLastSep(), hasEscapedQuote);
-                partitionFieldValue = values[partitionKey.getFieldMetaInfo().getIndex()];
-                partitionIndex = DbUtil.getPartitionIndex(partitionFieldValue, partitionKey);
-
                 try {
+                    String[] values = getLineValues(event, i);
+                    partitionIndex = getPartitionIndex(values, partitionKey);
                     fillLocalBuffer(localBuffer, values, fieldMetaInfoList);
                 } catch (Throwable e) {
-                    logger.error("{} at line: {}", e.getMessage(), line);
-                    // 清空 继续处理下一行数据
+                    // 清空 记录错误行后继续处理下一行数据
                     localBuffer.setLength(0);
+                    handleBrokenLine(event, i, e);
                     continue;
                 }
                 dataBuffers[partitionIndex].append(localBuffer);
+                shardLineIndexes.get(partitionIndex).add(i);
                 localBuffer.setLength(0);
             }
             for (int i = 0; i < shardCount; i++) {
                 if (dataBuffers[i].length() != 0) {
-                    execSqlWithShardingHint(topologyList.get(i), dataBuffers[i]);
+                    if (errorTolerant) {
+                        execSqlWithBisect(event, topologyList.get(i), dataBuffers[i],
+                            shardLineIndexes.get(i), fieldMetaInfoList);
+                    } else {
+                        execSqlWithShardingHint(topologyList.get(i), dataBuffers[i]);
+                    }
                 }
             }
         } catch (Exception e) {
-            e.printStackTrace();
-            logger.error(e.getMessage());
+            consumerContext.setException(e);
+            logger.error("Failed in table [{}], due to {}", tableName, e.getMessage());
             // 认为无法恢复
-            System.exit(1);
+            throw new RuntimeException(e);
         } finally {
             consumerContext.getEmittedDataCounter().getAndDecrement();
             if (consumerContext.isUseBlock()) {
@@ -103,6 +114,56 @@ public abstract class BaseShardedConsumer extends BaseWorkHandler {
         }
     }
 
+    private int getPartitionIndex(String[] values, PartitionKey partitionKey) {
+        String partitionFieldValue = values[partitionKey.getFieldMetaInfo().getIndex()];
+        return DbUtil.getPartitionIndex(partitionFieldValue, partitionKey);
+    }
+
+    /**
+     * 对单个分片的数据进行执行
+     * 失败时将数据二分后分别重试 直至定位到单个错误行
+     * 临时错误重试后仍失败时直接抛出 不进行二分
+     *
+     * @param lineIndexes data 中包含的行在批次中的序号
+     */
+    private void execSqlWithBisect(BatchLineEvent event, TableTopology topology, StringBuilder data,
+                                   List<Integer> lineIndexes,
+                                   List<FieldMetaInfo> fieldMetaInfoList) throws SQLException {
+        // getSqlWithHint 会修改缓冲区 重试时复用同一条语句
+        String sql = getSqlWithHint(topology, data);
+        try {
+            execWithTransientRetry(() -> execSql(sql));
+            return;
+        } catch (SQLException e) {
+            if (isTransientError(e)) {
+                throw e;
+            }
+            if (lineIndexes.size() == 1) {
+                handleBrokenLine(event, lineIndexes.get(0), e);
+                return;
+            }
+            logger.debug("Retry batch of {} lines in [{}], due to {}",
+                lineIndexes.size(), topology.getTableName(), e.getMessage());
+        }
+        int mid = lineIndexes.size() / 2;
+        bisect(event, topology, lineIndexes.subList(0, mid), fieldMetaInfoList);
+        bisect(event, topology, lineIndexes.subList(mid, lineIndexes.size()), fieldMetaInfoList);
+    }
+
+    private void bisect(BatchLineEvent event, TableTopology topology, List<Integer> lineIndexes,
+                        List<FieldMetaInfo> fieldMetaInfoList) throws SQLException {
+        StringBuilder dataBuffer = new StringBuilder();
+        try {
+            for (int lineIndex : lineIndexes) {
+                fillLocalBuffer(dataBuffer, getLineValues(event, lineIndex), fieldMetaInfoList);
+            }
+        } catch (Throwable e) {
+            // 首次填充时已成功 不应出现
+            throw new RuntimeException(e);
+        }
+        execSqlWithBisect(event, topology, dataBuffer, lineIndexes, fieldMetaInfoList);
+    }
+
     /**
      * 根据切分出的字段值
      * 按照格式填充localBuffer
@@ -111,21 +172,22 @@ public abstract class BaseShardedConsumer extends BaseWorkHandler {
                                             List<FieldMetaInfo> fieldMetaInfoList) throws Throwable;
 
     /**
+     * 每条语句只作用于单个物理分片 失败时整体回滚
+     *
      * @param topology 表的分片逻辑
      * @param data 根据fillLocalBuffer得到的缓冲区数据
      */
-    protected void execSqlWithShardingHint(TableTopology topology, StringBuilder data) {
+    protected void execSqlWithShardingHint(TableTopology topology, StringBuilder data) throws SQLException {
+        execSql(getSqlWithHint(topology, data));
+    }
+
+    private void execSql(String sql) throws SQLException {
         Connection conn = null;
         Statement stmt = null;
         try {
             conn = consumerContext.getDataSource().getConnection();
             stmt = conn.createStatement();
-            String sql = getSqlWithHint(topology, data);
             stmt.execute(sql);
-        } catch (SQLException e) {
-            e.printStackTrace();
-            logger.error(e.getMessage());
-            System.exit(1);
         } finally {
             JdbcUtils.close(stmt);
             JdbcUtils.close(conn);
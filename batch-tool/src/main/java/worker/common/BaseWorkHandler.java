@@ -20,11 +20,27 @@ import com.google.common.util.concurrent.RateLimiter;
 import com.lmax.disruptor.WorkHandler;
 import model.ConsumerExecutionContext;
 import model.config.ConfigConstant;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import util.FileUtil;
+
+import java.sql.SQLException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTransientException;
 
 /**
  * 限流代理类
  */
 public abstract class BaseWorkHandler implements WorkHandler<BatchLineEvent> {
+    private static final Logger logger = LoggerFactory.getLogger(BaseWorkHandler.class);
+
+    /**
+     * 连接断开、锁等待超时、死锁等错误的重试次数
+     */
+    private static final int TRANSIENT_RETRY_TIMES = 3;
+    private static final long TRANSIENT_RETRY_INTERVAL_MS = 1000;
+    private static final int ER_LOCK_WAIT_TIMEOUT = 1205;
+    private static final int ER_LOCK_DEADLOCK = 1213;
 
     protected ConsumerExecutionContext consumerContext;
     private RateLimiter rateLimiter = null;
@@ -61,15 +77,107 @@ public abstract class BaseWorkHandler implements WorkHandler<BatchLineEvent> {
 
     @Override
     public void onEvent(BatchLineEvent event) {
-        // 保守起见，使用阻塞锁，不自旋
-        if (rateLimiter != null) {
-            rateLimiter.acquire(1);
+        String eventTableName = event.getTableName();
+        if (eventTableName != null) {
+            // 多张表共用导入管道 按批次切换当前表
+            this.tableName = eventTableName;
+        }
+        try {
+            // 保守起见，使用阻塞锁，不自旋
+            if (rateLimiter != null) {
+                rateLimiter.acquire(1);
+            }
+            onProxyEvent(event);
+        } finally {
+            if (eventTableName != null) {
+                consumerContext.getTableInFlightLimiter().release(eventTableName);
+            }
         }
-        onProxyEvent(event);
     }
 
     /**
      * 实际的事件处理函数
      */
     public abstract void onProxyEvent(BatchLineEvent event);
+
+    /**
+     * 获取批次中一行的字段值 值为 null 表示 NULL
+     * 读取时已解析出字段值的格式无需再按分隔符拆分
+     */
+    protected String[] getLineValues(BatchLineEvent event, int lineIndex) {
+        String[][] batchValues = event.getBatchValues();
+        if (batchValues != null) {
+            return batchValues[lineIndex];
+        }
+        return FileUtil.replaceNullEscape(FileUtil.split(event.getBatchLines()[lineIndex], sep,
+            consumerContext.isWithLastSep(), hasEscapedQuote));
+    }
+
+    protected interface SqlAction {
+        void run() throws SQLException;
+    }
+
+    /**
+     * 遇到与数据无关的临时错误时重试
+     * 重试后仍失败则抛出 不应将批次中的行视为错误行
+     */
+    protected void execWithTransientRetry(SqlAction action) throws SQLException {
+        for (int retry = 0; ; retry++) {
+            try {
+                action.run();
+                return;
+            } catch (SQLException e) {
+                if (!isTransientError(e) || retry >= TRANSIENT_RETRY_TIMES) {
+                    throw e;
+                }
+                logger.warn("Retry batch in table [{}] for the {} time, due to {}",
+                    tableName, retry + 1, e.getMessage());
+                try {
+                    Thread.sleep(TRANSIENT_RETRY_INTERVAL_MS * (retry + 1));
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * 连接异常(08xxx)、事务回滚(40xxx)、锁等待超时与死锁
+     */
+    public static boolean isTransientError(SQLException e) {
+        if (e instanceof SQLTransientException || e instanceof SQLRecoverableException) {
+            return true;
+        }
+        if (e.getErrorCode() == ER_LOCK_WAIT_TIMEOUT || e.getErrorCode() == ER_LOCK_DEADLOCK) {
+            return true;
+        }
+        String sqlState = e.getSQLState();
+        return sqlState != null && (sqlState.startsWith("08") || sqlState.startsWith("40"));
+    }
+
+    /**
+     * 记录批次中的错误行
+     * 超过最大错误行数时抛出异常
+     *
+     * @param lineIndex 错误行在批次中的序号
+     */
+    protected void handleBrokenLine(BatchLineEvent event, int lineIndex, Throwable cause) {
+        BrokenLineRecorder recorder = consumerContext.getBrokenLineRecorder();
+        String line = event.getBatchValues() != null
+            ? String.join(ConfigConstant.MAGIC_CSV_SEP, event.getBatchValues()[lineIndex])
+            : event.getBatchLines()[lineIndex];
+        if (recorder == null) {
+            throw new RuntimeException(String.format("Failed at line: %s, due to %s", line, cause.getMessage()),
+                cause);
+        }
+        boolean tolerable = recorder.record(tableName,
+            consumerContext.getFilePath(event.getLocalProcessingFileIndex()),
+            event.getLocalProcessingBlockIndex(), event.getStartLineIndex() + lineIndex + 1,
+            line, cause.getMessage());
+        if (!tolerable) {
+            throw new RuntimeException(String.format("Error count exceeds max error count %d, last error: %s",
+                recorder.getMaxErrorCount(), cause.getMessage()), cause);
+        }
+    }
 }
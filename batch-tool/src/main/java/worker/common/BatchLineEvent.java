@@ -19,8 +19,22 @@ package worker.common;
 public class BatchLineEvent {
 
     private String[] batchLines;
+    /**
+     * 读取时已解析好的字段值 与 batchLines 按下标对应
+     * 为 null 时需按分隔符拆分 batchLines
+     */
+    private String[][] batchValues;
     private int localProcessingFileIndex = -1;
     private long localProcessingBlockIndex = -1;
+    /**
+     * 本批次首行在当前块（按行读取时为当前文件）中的行序号
+     */
+    private long startLineIndex = 0;
+    /**
+     * 多张表共用导入管道时本批次所属的表
+     * 为 null 时属于消费者自身的表
+     */
+    private String tableName = null;
 
     public String[] getBatchLines() {
         return batchLines;
@@ -42,7 +56,31 @@ public class BatchLineEvent {
         return localProcessingBlockIndex;
     }
 
+    public long getStartLineIndex() {
+        return startLineIndex;
+    }
+
+    public void setStartLineIndex(long startLineIndex) {
+        this.startLineIndex = startLineIndex;
+    }
+
     public void setBatchLines(String[] batchLines) {
         this.batchLines = batchLines;
     }
+
+    public String getTableName() {
+        return tableName;
+    }
+
+    public void setTableName(String tableName) {
+        this.tableName = tableName;
+    }
+
+    public String[][] getBatchValues() {
+        return batchValues;
+    }
+
+    public void setBatchValues(String[][] batchValues) {
+        this.batchValues = batchValues;
+    }
 }
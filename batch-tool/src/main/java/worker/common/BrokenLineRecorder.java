@@ -0,0 +1,115 @@
+/*
+ * Copyright [2013-2021], Alibaba Group Holding Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package worker.common;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import util.IOUtil;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.Charset;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 记录无法写入数据库的错误行
+ * 每行格式为：表名 \t 来源文件 \t 块序号 \t 行序号 \t 错误原因 \t 原始数据
+ * 原始数据位于最后一列，可通过 cut -f6- 取出后重新导入
+ */
+@ThreadSafe
+public class BrokenLineRecorder {
+    private static final Logger logger = LoggerFactory.getLogger(BrokenLineRecorder.class);
+
+    private static final char FIELD_SEP = '\t';
+
+    private final String filePath;
+    private final Charset charset;
+    private final int maxErrorCount;
+    private final AtomicInteger errorCount = new AtomicInteger(0);
+
+    /**
+     * 出现第一条错误行时才创建文件
+     */
+    private BufferedWriter writer = null;
+
+    public BrokenLineRecorder(String filePath, Charset charset, int maxErrorCount) {
+        this.filePath = filePath;
+        this.charset = charset;
+        this.maxErrorCount = maxErrorCount;
+    }
+
+    /**
+     * @return 错误行数是否仍在允许范围内
+     */
+    public boolean record(String tableName, String sourceFile, long blockIndex, long lineIndex,
+                          String line, String reason) {
+        int curErrorCount = errorCount.incrementAndGet();
+        logger.error("表 {} 错误行, 文件: {}, 块: {}, 行: {}, 当前错误数: {}, 原因: {}",
+            tableName, sourceFile, blockIndex, lineIndex, curErrorCount, reason);
+        synchronized (this) {
+            try {
+                if (writer == null) {
+                    writer = new BufferedWriter(new OutputStreamWriter(
+                        new FileOutputStream(filePath, true), charset));
+                }
+                writer.append(tableName).append(FIELD_SEP)
+                    .append(String.valueOf(sourceFile)).append(FIELD_SEP)
+                    .append(String.valueOf(blockIndex)).append(FIELD_SEP)
+                    .append(String.valueOf(lineIndex)).append(FIELD_SEP)
+                    .append(formatReason(reason)).append(FIELD_SEP)
+                    .append(line);
+                writer.newLine();
+                // 错误行很少 直接刷盘 避免异常退出时丢失
+                writer.flush();
+            } catch (IOException e) {
+                logger.error("Failed to write broken line to {}: {}", filePath, e.getMessage());
+            }
+        }
+        return curErrorCount <= maxErrorCount;
+    }
+
+    /**
+     * 去除错误原因中的换行与制表符 保证一条记录占一行
+     */
+    private static String formatReason(String reason) {
+        if (reason == null) {
+            return "";
+        }
+        return StringUtils.replaceChars(reason, "\t\r\n", "   ");
+    }
+
+    public int getErrorCount() {
+        return errorCount.get();
+    }
+
+    public int getMaxErrorCount() {
+        return maxErrorCount;
+    }
+
+    public String getFilePath() {
+        return filePath;
+    }
+
+    public synchronized void close() {
+        IOUtil.close(writer);
+        writer = null;
+    }
+}
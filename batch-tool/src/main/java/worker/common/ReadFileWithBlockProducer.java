@@ -20,10 +20,14 @@ import com.lmax.disruptor.RingBuffer;
 import model.ProducerExecutionContext;
 import model.config.CompressMode;
 import model.config.FileBlockListRecord;
+import model.config.FileFormat;
 import model.config.FileLineRecord;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import worker.common.reader.BinaryBlockReader;
 import worker.common.reader.BlockReader;
+import worker.common.reader.FileBufferedBatchReader;
+import worker.common.reader.ParquetReader;
 
 import java.util.List;
 import java.util.concurrent.ThreadPoolExecutor;
@@ -48,9 +52,15 @@ public class ReadFileWithBlockProducer extends ReadFileProducer {
     public void produce() {
         int parallelism = context.getParallelism();
         ThreadPoolExecutor threadPool = context.getProducerExecutor();
-        BlockReader readFileWorker = null;
+        FileBufferedBatchReader readFileWorker = null;
         for (int i = 0; i < parallelism; i++) {
-            readFileWorker = new BlockReader(context, fileBlockListRecord, ringBuffer, compressMode);
+            if (context.getFileFormat() == FileFormat.BIN) {
+                readFileWorker = new BinaryBlockReader(context, fileBlockListRecord, ringBuffer);
+            } else if (context.getFileFormat() == FileFormat.PARQUET) {
+                readFileWorker = new ParquetReader(context, fileBlockListRecord, ringBuffer);
+            } else {
+                readFileWorker = new BlockReader(context, fileBlockListRecord, ringBuffer, compressMode);
+            }
             threadPool.submit(readFileWorker);
         }
     }
@@ -81,6 +81,10 @@ public class ReadFileWithLineProducer extends ReadFileProducer {
         case LOG:
         case TXT:
             return new CsvReader(context, fileList, workerIndex, ringBuffer);
+        case BIN:
+            throw new IllegalArgumentException("Should use BinaryBlockReader with binary format");
+        case PARQUET:
+            throw new IllegalArgumentException("Should use ParquetReader with parquet format");
         case NONE:
             // do nothing
             break;
@@ -0,0 +1,58 @@
+/*
+ * Copyright [2013-2021], Alibaba Group Holding Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package worker.common;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+
+/**
+ * 多张表共用导入管道时 限制每张表在途的批次数
+ * 生产者发送批次前获取 消费者处理完毕后归还
+ * 避免单张表占满缓冲区与全部消费者
+ */
+@ThreadSafe
+public class TableInFlightLimiter {
+
+    private final Map<String, Semaphore> tablePermits = new HashMap<>();
+
+    /**
+     * @param tableLimits 表名 -> 在途批次上限 不大于0时不限制
+     */
+    public TableInFlightLimiter(Map<String, Integer> tableLimits) {
+        for (Map.Entry<String, Integer> entry : tableLimits.entrySet()) {
+            if (entry.getValue() > 0) {
+                tablePermits.put(entry.getKey(), new Semaphore(entry.getValue()));
+            }
+        }
+    }
+
+    public void acquire(String tableName) {
+        Semaphore permits = tablePermits.get(tableName);
+        if (permits != null) {
+            permits.acquireUninterruptibly();
+        }
+    }
+
+    public void release(String tableName) {
+        Semaphore permits = tablePermits.get(tableName);
+        if (permits != null) {
+            permits.release();
+        }
+    }
+}
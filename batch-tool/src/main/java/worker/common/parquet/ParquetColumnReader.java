@@ -0,0 +1,246 @@
+/*
+ * Copyright [2013-2021], Alibaba Group Holding Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package worker.common.parquet;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+
+import static worker.common.parquet.ParquetMetadata.CODEC_GZIP;
+import static worker.common.parquet.ParquetMetadata.CODEC_UNCOMPRESSED;
+import static worker.common.parquet.ParquetMetadata.CONVERTED_TYPE_DATE;
+import static worker.common.parquet.ParquetMetadata.CONVERTED_TYPE_TIMESTAMP_MICROS;
+import static worker.common.parquet.ParquetMetadata.CONVERTED_TYPE_TIMESTAMP_MILLIS;
+import static worker.common.parquet.ParquetMetadata.CONVERTED_TYPE_UINT_64;
+import static worker.common.parquet.ParquetMetadata.ENCODING_PLAIN;
+import static worker.common.parquet.ParquetMetadata.ENCODING_PLAIN_DICTIONARY;
+import static worker.common.parquet.ParquetMetadata.ENCODING_RLE;
+import static worker.common.parquet.ParquetMetadata.ENCODING_RLE_DICTIONARY;
+import static worker.common.parquet.ParquetMetadata.PAGE_TYPE_DATA;
+import static worker.common.parquet.ParquetMetadata.PAGE_TYPE_DICTIONARY;
+import static worker.common.parquet.ParquetMetadata.REPETITION_OPTIONAL;
+
+/**
+ * 将一个列块解码为字符串值
+ * 支持 v1 数据页的 PLAIN 与字典编码 以及不压缩与 GZIP 压缩
+ */
+public class ParquetColumnReader {
+
+    private static final DateTimeFormatter TIMESTAMP_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    /**
+     * @param chunk 列块的全部字节
+     * @return 各行的值 空值为 null
+     */
+    public static String[] readColumnChunk(byte[] chunk, ParquetMetadata.SchemaColumn column,
+                                           ParquetMetadata.ColumnChunk columnChunk, int rowCount) {
+        String[] values = new String[rowCount];
+        String[] dictionary = null;
+        int valueCount = 0;
+        int offset = 0;
+        while (valueCount < rowCount && offset < chunk.length) {
+            ThriftCompactReader reader = new ThriftCompactReader(chunk, offset);
+            ParquetMetadata.PageHeader pageHeader = ParquetMetadata.parsePageHeader(reader);
+            int pageStart = reader.getPosition();
+            offset = pageStart + pageHeader.compressedSize;
+            switch (pageHeader.type) {
+            case PAGE_TYPE_DICTIONARY:
+                byte[] dictionaryPage = decompress(chunk, pageStart, pageHeader, columnChunk.codec);
+                dictionary = new String[pageHeader.numValues];
+                readPlainValues(dictionaryPage, new int[] {0}, column, dictionary, 0, dictionary.length);
+                break;
+            case PAGE_TYPE_DATA:
+                byte[] dataPage = decompress(chunk, pageStart, pageHeader, columnChunk.codec);
+                readDataPage(dataPage, pageHeader, column, dictionary, values, valueCount);
+                valueCount += pageHeader.numValues;
+                break;
+            default:
+                // 索引页等 跳过
+                break;
+            }
+        }
+        if (valueCount != rowCount) {
+            throw new IllegalStateException(String.format("Column %s expected %d values, got %d",
+                column.name, rowCount, valueCount));
+        }
+        return values;
+    }
+
+    private static byte[] decompress(byte[] chunk, int pageStart, ParquetMetadata.PageHeader pageHeader,
+                                     int codec) {
+        switch (codec) {
+        case CODEC_UNCOMPRESSED:
+            byte[] page = new byte[pageHeader.compressedSize];
+            System.arraycopy(chunk, pageStart, page, 0, page.length);
+            return page;
+        case CODEC_GZIP:
+            byte[] uncompressed = new byte[pageHeader.uncompressedSize];
+            try (GZIPInputStream in = new GZIPInputStream(
+                new ByteArrayInputStream(chunk, pageStart, pageHeader.compressedSize))) {
+                IOUtils.readFully(in, uncompressed);
+            } catch (IOException e) {
+                throw new IllegalStateException("Failed to decompress parquet page: " + e.getMessage(), e);
+            }
+            return uncompressed;
+        default:
+            throw new UnsupportedOperationException("Unsupported parquet compression codec: " + codec);
+        }
+    }
+
+    private static void readDataPage(byte[] page, ParquetMetadata.PageHeader pageHeader,
+                                     ParquetMetadata.SchemaColumn column, String[] dictionary,
+                                     String[] values, int valueOffset) {
+        int count = pageHeader.numValues;
+        int[] defLevels = new int[count];
+        int[] pos = {0};
+        if (column.repetition == REPETITION_OPTIONAL) {
+            if (pageHeader.definitionLevelEncoding != ENCODING_RLE) {
+                throw new UnsupportedOperationException("Unsupported definition level encoding: "
+                    + pageHeader.definitionLevelEncoding);
+            }
+            int length = readIntLittleEndian(page, 0);
+            pos[0] = 4;
+            RleHybridCodec.decode(page, pos, 1, count, defLevels);
+            pos[0] = 4 + length;
+        } else {
+            Arrays.fill(defLevels, 1);
+        }
+        int nonNullCount = 0;
+        for (int defLevel : defLevels) {
+            nonNullCount += defLevel;
+        }
+
+        String[] nonNullValues = new String[nonNullCount];
+        switch (pageHeader.encoding) {
+        case ENCODING_PLAIN:
+            readPlainValues(page, pos, column, nonNullValues, 0, nonNullCount);
+            break;
+        case ENCODING_PLAIN_DICTIONARY:
+        case ENCODING_RLE_DICTIONARY:
+            if (dictionary == null) {
+                throw new IllegalStateException("Missing dictionary page of column " + column.name);
+            }
+            int bitWidth = page[pos[0]++] & 0xFF;
+            int[] indices = new int[nonNullCount];
+            RleHybridCodec.decode(page, pos, bitWidth, nonNullCount, indices);
+            for (int i = 0; i < nonNullCount; i++) {
+                nonNullValues[i] = dictionary[indices[i]];
+            }
+            break;
+        default:
+            throw new UnsupportedOperationException("Unsupported parquet encoding: " + pageHeader.encoding);
+        }
+
+        for (int i = 0, j = 0; i < count; i++) {
+            values[valueOffset + i] = defLevels[i] == 1 ? nonNullValues[j++] : null;
+        }
+    }
+
+    private static void readPlainValues(byte[] page, int[] pos, ParquetMetadata.SchemaColumn column,
+                                        String[] out, int offset, int count) {
+        int type = column.type;
+        int p = pos[0];
+        for (int i = 0; i < count; i++) {
+            String value;
+            switch (type) {
+            case ParquetMetadata.TYPE_BOOLEAN:
+                // 按位存储
+                value = ((page[pos[0] + (i >>> 3)] >>> (i & 7)) & 1) == 1 ? "1" : "0";
+                break;
+            case ParquetMetadata.TYPE_INT32:
+                int intValue = readIntLittleEndian(page, p);
+                value = column.convertedType == CONVERTED_TYPE_DATE
+                    ? LocalDate.ofEpochDay(intValue).toString() : Integer.toString(intValue);
+                p += 4;
+                break;
+            case ParquetMetadata.TYPE_INT64:
+                long longValue = readLongLittleEndian(page, p);
+                if (column.convertedType == CONVERTED_TYPE_TIMESTAMP_MICROS) {
+                    value = formatTimestamp(longValue, 1000_000L);
+                } else if (column.convertedType == CONVERTED_TYPE_TIMESTAMP_MILLIS) {
+                    value = formatTimestamp(longValue, 1000L);
+                } else if (column.convertedType == CONVERTED_TYPE_UINT_64) {
+                    value = Long.toUnsignedString(longValue);
+                } else {
+                    value = Long.toString(longValue);
+                }
+                p += 8;
+                break;
+            case ParquetMetadata.TYPE_FLOAT:
+                value = Float.toString(Float.intBitsToFloat(readIntLittleEndian(page, p)));
+                p += 4;
+                break;
+            case ParquetMetadata.TYPE_DOUBLE:
+                value = Double.toString(Double.longBitsToDouble(readLongLittleEndian(page, p)));
+                p += 8;
+                break;
+            case ParquetMetadata.TYPE_BYTE_ARRAY:
+                int length = readIntLittleEndian(page, p);
+                value = new String(page, p + 4, length, StandardCharsets.UTF_8);
+                p += 4 + length;
+                break;
+            default:
+                throw new UnsupportedOperationException("Unsupported parquet physical type: " + type);
+            }
+            out[offset + i] = value;
+        }
+        if (type == ParquetMetadata.TYPE_BOOLEAN) {
+            p += (count + 7) >>> 3;
+        }
+        pos[0] = p;
+    }
+
+    /**
+     * 按 UTC 格式化为 yyyy-MM-dd HH:mm:ss[.ffffff]
+     *
+     * @param unitsPerSecond 每秒的时间单位数
+     */
+    private static String formatTimestamp(long value, long unitsPerSecond) {
+        long seconds = Math.floorDiv(value, unitsPerSecond);
+        int nanos = (int) (Math.floorMod(value, unitsPerSecond) * (1000_000_000L / unitsPerSecond));
+        LocalDateTime dateTime = LocalDateTime.ofEpochSecond(seconds, nanos, ZoneOffset.UTC);
+        String text = dateTime.format(TIMESTAMP_FORMATTER);
+        if (nanos == 0) {
+            return text;
+        }
+        String fraction = String.format("%09d", nanos);
+        int end = fraction.length();
+        while (fraction.charAt(end - 1) == '0') {
+            end--;
+        }
+        return text + "." + fraction.substring(0, end);
+    }
+
+    private static int readIntLittleEndian(byte[] data, int pos) {
+        return (data[pos] & 0xFF) | (data[pos + 1] & 0xFF) << 8
+            | (data[pos + 2] & 0xFF) << 16 | (data[pos + 3] & 0xFF) << 24;
+    }
+
+    private static long readLongLittleEndian(byte[] data, int pos) {
+        return (readIntLittleEndian(data, pos) & 0xFFFFFFFFL)
+            | (long) readIntLittleEndian(data, pos + 4) << 32;
+    }
+}
@@ -0,0 +1,395 @@
+/*
+ * Copyright [2013-2021], Alibaba Group Holding Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package worker.common.parquet;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static worker.common.parquet.ThriftCompactWriter.TYPE_BINARY;
+import static worker.common.parquet.ThriftCompactWriter.TYPE_I32;
+import static worker.common.parquet.ThriftCompactWriter.TYPE_STRUCT;
+
+/**
+ * parquet 文件元数据中用到的部分
+ * 字段编号与枚举值来自 parquet-format 的 parquet.thrift
+ * 只支持单层的表结构
+ */
+public class ParquetMetadata {
+
+    public static final byte[] MAGIC = {'P', 'A', 'R', '1'};
+
+    public static final int TYPE_BOOLEAN = 0;
+    public static final int TYPE_INT32 = 1;
+    public static final int TYPE_INT64 = 2;
+    public static final int TYPE_INT96 = 3;
+    public static final int TYPE_FLOAT = 4;
+    public static final int TYPE_DOUBLE = 5;
+    public static final int TYPE_BYTE_ARRAY = 6;
+    public static final int TYPE_FIXED_LEN_BYTE_ARRAY = 7;
+
+    public static final int CONVERTED_TYPE_UTF8 = 0;
+    public static final int CONVERTED_TYPE_DATE = 6;
+    public static final int CONVERTED_TYPE_TIMESTAMP_MILLIS = 9;
+    public static final int CONVERTED_TYPE_TIMESTAMP_MICROS = 10;
+    public static final int CONVERTED_TYPE_UINT_64 = 14;
+
+    public static final int REPETITION_REQUIRED = 0;
+    public static final int REPETITION_OPTIONAL = 1;
+
+    public static final int ENCODING_PLAIN = 0;
+    public static final int ENCODING_PLAIN_DICTIONARY = 2;
+    public static final int ENCODING_RLE = 3;
+    public static final int ENCODING_RLE_DICTIONARY = 8;
+
+    public static final int CODEC_UNCOMPRESSED = 0;
+    public static final int CODEC_GZIP = 2;
+
+    public static final int PAGE_TYPE_DATA = 0;
+    public static final int PAGE_TYPE_DICTIONARY = 2;
+
+    private static final byte[] CREATED_BY = "batch-tool".getBytes(StandardCharsets.UTF_8);
+
+    public static class SchemaColumn {
+        public String name;
+        public int type;
+        public int repetition = REPETITION_OPTIONAL;
+        /**
+         * 未设置时为 -1
+         */
+        public int convertedType = -1;
+        public int numChildren = 0;
+    }
+
+    public static class ColumnChunk {
+        public int type;
+        public String name;
+        public List<Integer> encodings = new ArrayList<>(3);
+        public int codec = CODEC_UNCOMPRESSED;
+        public long numValues;
+        public long totalSize;
+        public long dataPageOffset;
+        /**
+         * 无字典页时为 -1
+         */
+        public long dictionaryPageOffset = -1;
+
+        /**
+         * 列数据的起始位置
+         */
+        public long getStartOffset() {
+            return dictionaryPageOffset >= 0 ? dictionaryPageOffset : dataPageOffset;
+        }
+    }
+
+    public static class RowGroup {
+        public List<ColumnChunk> columns = new ArrayList<>();
+        public long totalByteSize;
+        public long numRows;
+    }
+
+    public static class FileMeta {
+        public List<SchemaColumn> columns = new ArrayList<>();
+        public List<RowGroup> rowGroups = new ArrayList<>();
+        public long numRows;
+    }
+
+    public static class PageHeader {
+        public int type;
+        public int uncompressedSize;
+        public int compressedSize;
+        public int numValues;
+        public int encoding;
+        public int definitionLevelEncoding = ENCODING_RLE;
+    }
+
+    public static byte[] serializeFileMeta(FileMeta fileMeta) {
+        ThriftCompactWriter writer = new ThriftCompactWriter();
+        writer.structBegin();
+        writer.i32Field(1, 1);
+        // 根节点之后依次为各字段
+        writer.listField(2, TYPE_STRUCT, fileMeta.columns.size() + 1);
+        writer.structBegin();
+        writer.binaryField(4, "schema".getBytes(StandardCharsets.UTF_8));
+        writer.i32Field(5, fileMeta.columns.size());
+        writer.structEnd();
+        for (SchemaColumn column : fileMeta.columns) {
+            writer.structBegin();
+            writer.i32Field(1, column.type);
+            writer.i32Field(3, column.repetition);
+            writer.binaryField(4, column.name.getBytes(StandardCharsets.UTF_8));
+            if (column.convertedType >= 0) {
+                writer.i32Field(6, column.convertedType);
+            }
+            writer.structEnd();
+        }
+        writer.i64Field(3, fileMeta.numRows);
+        writer.listField(4, TYPE_STRUCT, fileMeta.rowGroups.size());
+        for (RowGroup rowGroup : fileMeta.rowGroups) {
+            writeRowGroup(writer, rowGroup);
+        }
+        writer.binaryField(6, CREATED_BY);
+        writer.structEnd();
+        return writer.toByteArray();
+    }
+
+    private static void writeRowGroup(ThriftCompactWriter writer, RowGroup rowGroup) {
+        writer.structBegin();
+        writer.listField(1, TYPE_STRUCT, rowGroup.columns.size());
+        for (ColumnChunk column : rowGroup.columns) {
+            writer.structBegin();
+            writer.i64Field(2, column.getStartOffset());
+            writer.structField(3);
+            writer.structBegin();
+            writer.i32Field(1, column.type);
+            writer.listField(2, TYPE_I32, column.encodings.size());
+            for (int encoding : column.encodings) {
+                writer.i32(encoding);
+            }
+            writer.listField(3, TYPE_BINARY, 1);
+            writer.binary(column.name.getBytes(StandardCharsets.UTF_8));
+            writer.i32Field(4, column.codec);
+            writer.i64Field(5, column.numValues);
+            writer.i64Field(6, column.totalSize);
+            writer.i64Field(7, column.totalSize);
+            writer.i64Field(9, column.dataPageOffset);
+            if (column.dictionaryPageOffset >= 0) {
+                writer.i64Field(11, column.dictionaryPageOffset);
+            }
+            writer.structEnd();
+            writer.structEnd();
+        }
+        writer.i64Field(2, rowGroup.totalByteSize);
+        writer.i64Field(3, rowGroup.numRows);
+        writer.structEnd();
+    }
+
+    public static byte[] serializePageHeader(PageHeader pageHeader) {
+        ThriftCompactWriter writer = new ThriftCompactWriter();
+        writer.structBegin();
+        writer.i32Field(1, pageHeader.type);
+        writer.i32Field(2, pageHeader.uncompressedSize);
+        writer.i32Field(3, pageHeader.compressedSize);
+        if (pageHeader.type == PAGE_TYPE_DATA) {
+            writer.structField(5);
+            writer.structBegin();
+            writer.i32Field(1, pageHeader.numValues);
+            writer.i32Field(2, pageHeader.encoding);
+            writer.i32Field(3, pageHeader.definitionLevelEncoding);
+            writer.i32Field(4, ENCODING_RLE);
+            writer.structEnd();
+        } else {
+            writer.structField(7);
+            writer.structBegin();
+            writer.i32Field(1, pageHeader.numValues);
+            writer.i32Field(2, pageHeader.encoding);
+            writer.structEnd();
+        }
+        writer.structEnd();
+        return writer.toByteArray();
+    }
+
+    public static FileMeta parseFileMeta(byte[] data) {
+        ThriftCompactReader reader = new ThriftCompactReader(data, 0);
+        FileMeta fileMeta = new FileMeta();
+        reader.structBegin();
+        int fieldId;
+        while ((fieldId = reader.readFieldId()) != -1) {
+            switch (fieldId) {
+            case 2:
+                int schemaSize = reader.readListHeader();
+                for (int i = 0; i < schemaSize; i++) {
+                    SchemaColumn column = parseSchemaElement(reader);
+                    if (i == 0) {
+                        if (column.numChildren != schemaSize - 1) {
+                            throw new UnsupportedOperationException("Nested parquet schema is not supported");
+                        }
+                        continue;
+                    }
+                    fileMeta.columns.add(column);
+                }
+                break;
+            case 3:
+                fileMeta.numRows = reader.readI64();
+                break;
+            case 4:
+                int rowGroupSize = reader.readListHeader();
+                for (int i = 0; i < rowGroupSize; i++) {
+                    fileMeta.rowGroups.add(parseRowGroup(reader));
+                }
+                break;
+            default:
+                reader.skip();
+            }
+        }
+        reader.structEnd();
+        return fileMeta;
+    }
+
+    private static SchemaColumn parseSchemaElement(ThriftCompactReader reader) {
+        SchemaColumn column = new SchemaColumn();
+        reader.structBegin();
+        int fieldId;
+        while ((fieldId = reader.readFieldId()) != -1) {
+            switch (fieldId) {
+            case 1:
+                column.type = reader.readI32();
+                break;
+            case 3:
+                column.repetition = reader.readI32();
+                break;
+            case 4:
+                column.name = new String(reader.readBinary(), StandardCharsets.UTF_8);
+                break;
+            case 5:
+                column.numChildren = reader.readI32();
+                break;
+            case 6:
+                column.convertedType = reader.readI32();
+                break;
+            default:
+                reader.skip();
+            }
+        }
+        reader.structEnd();
+        return column;
+    }
+
+    private static RowGroup parseRowGroup(ThriftCompactReader reader) {
+        RowGroup rowGroup = new RowGroup();
+        reader.structBegin();
+        int fieldId;
+        while ((fieldId = reader.readFieldId()) != -1) {
+            switch (fieldId) {
+            case 1:
+                int columnSize = reader.readListHeader();
+                for (int i = 0; i < columnSize; i++) {
+                    rowGroup.columns.add(parseColumnChunk(reader));
+                }
+                break;
+            case 2:
+                rowGroup.totalByteSize = reader.readI64();
+                break;
+            case 3:
+                rowGroup.numRows = reader.readI64();
+                break;
+            default:
+                reader.skip();
+            }
+        }
+        reader.structEnd();
+        return rowGroup;
+    }
+
+    private static ColumnChunk parseColumnChunk(ThriftCompactReader reader) {
+        ColumnChunk column = null;
+        reader.structBegin();
+        int fieldId;
+        while ((fieldId = reader.readFieldId()) != -1) {
+            if (fieldId == 3) {
+                column = parseColumnMeta(reader);
+            } else {
+                reader.skip();
+            }
+        }
+        reader.structEnd();
+        if (column == null) {
+            throw new UnsupportedOperationException("Parquet column chunk without inline meta data");
+        }
+        return column;
+    }
+
+    private static ColumnChunk parseColumnMeta(ThriftCompactReader reader) {
+        ColumnChunk column = new ColumnChunk();
+        reader.structBegin();
+        int fieldId;
+        while ((fieldId = reader.readFieldId()) != -1) {
+            switch (fieldId) {
+            case 1:
+                column.type = reader.readI32();
+                break;
+            case 4:
+                column.codec = reader.readI32();
+                break;
+            case 5:
+                column.numValues = reader.readI64();
+                break;
+            case 7:
+                column.totalSize = reader.readI64();
+                break;
+            case 9:
+                column.dataPageOffset = reader.readI64();
+                break;
+            case 11:
+                column.dictionaryPageOffset = reader.readI64();
+                break;
+            default:
+                reader.skip();
+            }
+        }
+        reader.structEnd();
+        return column;
+    }
+
+    /**
+     * 解析后 reader 位于页数据的起始位置
+     */
+    public static PageHeader parsePageHeader(ThriftCompactReader reader) {
+        PageHeader pageHeader = new PageHeader();
+        reader.structBegin();
+        int fieldId;
+        while ((fieldId = reader.readFieldId()) != -1) {
+            switch (fieldId) {
+            case 1:
+                pageHeader.type = reader.readI32();
+                break;
+            case 2:
+                pageHeader.uncompressedSize = reader.readI32();
+                break;
+            case 3:
+                pageHeader.compressedSize = reader.readI32();
+                break;
+            case 5:
+            case 7:
+                reader.structBegin();
+                int subFieldId;
+                while ((subFieldId = reader.readFieldId()) != -1) {
+                    switch (subFieldId) {
+                    case 1:
+                        pageHeader.numValues = reader.readI32();
+                        break;
+                    case 2:
+                        pageHeader.encoding = reader.readI32();
+                        break;
+                    case 3:
+                        pageHeader.definitionLevelEncoding = reader.readI32();
+                        break;
+                    default:
+                        reader.skip();
+                    }
+                }
+                reader.structEnd();
+                break;
+            default:
+                reader.skip();
+            }
+        }
+        reader.structEnd();
+        return pageHeader;
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright [2013-2021], Alibaba Group Holding Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package worker.common.parquet;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * parquet 的 RLE 与 bit-packing 混合编码
+ * 重复 8 次及以上的值使用 RLE 其余按 8 个一组 bit-packing
+ * 用于定义级别与字典序号
+ */
+public class RleHybridCodec {
+
+    private static final int MIN_RLE_RUN = 8;
+
+    /**
+     * 编码 values[0, count)
+     */
+    public static void encode(int[] values, int count, int bitWidth, ByteArrayOutputStream out) {
+        int packedStart = 0;
+        int i = 0;
+        while (i < count) {
+            int runEnd = i + 1;
+            while (runEnd < count && values[runEnd] == values[i]) {
+                runEnd++;
+            }
+            int pendingCount = i - packedStart;
+            if (pendingCount % MIN_RLE_RUN != 0) {
+                // 先补齐未满一组的 bit-packing 值 组中间不能填充
+                i += Math.min(runEnd - i, MIN_RLE_RUN - pendingCount % MIN_RLE_RUN);
+                continue;
+            }
+            if (runEnd - i >= MIN_RLE_RUN) {
+                writeBitPacked(values, packedStart, pendingCount, bitWidth, out);
+                writeRle(values[i], runEnd - i, bitWidth, out);
+                packedStart = runEnd;
+            }
+            i = runEnd;
+        }
+        // 结尾的最后一组可以填充 读取方按值个数截断
+        writeBitPacked(values, packedStart, count - packedStart, bitWidth, out);
+    }
+
+    private static void writeRle(int value, int runLength, int bitWidth, ByteArrayOutputStream out) {
+        writeVarInt(runLength << 1, out);
+        for (int byteWidth = (bitWidth + 7) >>> 3; byteWidth > 0; byteWidth--) {
+            out.write(value & 0xFF);
+            value >>>= 8;
+        }
+    }
+
+    private static void writeBitPacked(int[] values, int start, int count, int bitWidth,
+                                       ByteArrayOutputStream out) {
+        if (count == 0) {
+            return;
+        }
+        int groupCount = (count + MIN_RLE_RUN - 1) / MIN_RLE_RUN;
+        writeVarInt((groupCount << 1) | 1, out);
+        // 从每个字节的低位开始依次写入
+        long buffer = 0;
+        int bufferedBits = 0;
+        for (int i = 0; i < groupCount * MIN_RLE_RUN; i++) {
+            long value = i < count ? values[start + i] : 0;
+            buffer |= value << bufferedBits;
+            bufferedBits += bitWidth;
+            while (bufferedBits >= 8) {
+                out.write((int) (buffer & 0xFF));
+                buffer >>>= 8;
+                bufferedBits -= 8;
+            }
+        }
+        if (bufferedBits > 0) {
+            out.write((int) (buffer & 0xFF));
+        }
+    }
+
+    /**
+     * 解码 count 个值至 out
+     *
+     * @param pos 起始位置 解码后移至已读取数据之后
+     */
+    public static void decode(byte[] data, int[] pos, int bitWidth, int count, int[] out) {
+        int n = 0;
+        int byteWidth = (bitWidth + 7) >>> 3;
+        long mask = (1L << bitWidth) - 1;
+        while (n < count) {
+            int header = readVarInt(data, pos);
+            if ((header & 1) == 0) {
+                int runLength = header >>> 1;
+                int value = 0;
+                for (int b = 0; b < byteWidth; b++) {
+                    value |= (data[pos[0]++] & 0xFF) << (8 * b);
+                }
+                int end = Math.min(count, n + runLength);
+                while (n < end) {
+                    out[n++] = value;
+                }
+            } else {
+                int valueCount = (header >>> 1) * MIN_RLE_RUN;
+                int start = pos[0];
+                long bitPos = 0;
+                for (int i = 0; i < valueCount; i++, bitPos += bitWidth) {
+                    if (n < count) {
+                        out[n++] = (int) (readBits(data, start, bitPos, bitWidth) & mask);
+                    }
+                }
+                pos[0] = start + (int) ((valueCount * (long) bitWidth + 7) >>> 3);
+            }
+        }
+    }
+
+    private static long readBits(byte[] data, int start, long bitPos, int bitWidth) {
+        if (bitWidth == 0) {
+            return 0;
+        }
+        int byteIndex = start + (int) (bitPos >>> 3);
+        int shift = (int) (bitPos & 7);
+        long value = 0;
+        int bytes = (shift + bitWidth + 7) >>> 3;
+        for (int b = 0; b < bytes; b++) {
+            value |= (long) (data[byteIndex + b] & 0xFF) << (8 * b);
+        }
+        return value >>> shift;
+    }
+
+    /**
+     * 表示 [0, maxValue] 所需的位数
+     */
+    public static int getBitWidth(int maxValue) {
+        return 32 - Integer.numberOfLeadingZeros(maxValue);
+    }
+
+    static void writeVarInt(int value, ByteArrayOutputStream out) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    static int readVarInt(byte[] data, int[] pos) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = data[pos[0]++];
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+}
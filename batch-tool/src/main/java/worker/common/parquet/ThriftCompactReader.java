@@ -0,0 +1,210 @@
+/*
+ * Copyright [2013-2021], Alibaba Group Holding Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package worker.common.parquet;
+
+import static worker.common.parquet.ThriftCompactWriter.TYPE_BINARY;
+import static worker.common.parquet.ThriftCompactWriter.TYPE_BOOLEAN_FALSE;
+import static worker.common.parquet.ThriftCompactWriter.TYPE_BOOLEAN_TRUE;
+import static worker.common.parquet.ThriftCompactWriter.TYPE_BYTE;
+import static worker.common.parquet.ThriftCompactWriter.TYPE_DOUBLE;
+import static worker.common.parquet.ThriftCompactWriter.TYPE_I16;
+import static worker.common.parquet.ThriftCompactWriter.TYPE_I32;
+import static worker.common.parquet.ThriftCompactWriter.TYPE_I64;
+import static worker.common.parquet.ThriftCompactWriter.TYPE_LIST;
+import static worker.common.parquet.ThriftCompactWriter.TYPE_MAP;
+import static worker.common.parquet.ThriftCompactWriter.TYPE_SET;
+import static worker.common.parquet.ThriftCompactWriter.TYPE_STOP;
+import static worker.common.parquet.ThriftCompactWriter.TYPE_STRUCT;
+
+/**
+ * Thrift compact protocol 解码
+ * 调用方按字段编号读取需要的字段 其余字段通过 skip 跳过
+ */
+public class ThriftCompactReader {
+
+    private final byte[] data;
+    private int pos;
+
+    private int lastFieldId = 0;
+    private final int[] lastFieldIdStack = new int[64];
+    private int stackDepth = 0;
+
+    private int fieldType;
+    private boolean boolValue;
+
+    public ThriftCompactReader(byte[] data, int offset) {
+        this.data = data;
+        this.pos = offset;
+    }
+
+    public int getPosition() {
+        return pos;
+    }
+
+    public void structBegin() {
+        lastFieldIdStack[stackDepth++] = lastFieldId;
+        lastFieldId = 0;
+    }
+
+    public void structEnd() {
+        lastFieldId = lastFieldIdStack[--stackDepth];
+    }
+
+    /**
+     * 读取下一个字段头
+     *
+     * @return 字段编号 结构体结束时返回 -1
+     */
+    public int readFieldId() {
+        int header = data[pos++] & 0xFF;
+        int type = header & 0x0F;
+        if (type == TYPE_STOP) {
+            return -1;
+        }
+        int delta = header >>> 4;
+        int fieldId = delta == 0 ? (int) unzigzag(readVarLong()) : lastFieldId + delta;
+        lastFieldId = fieldId;
+        if (type == TYPE_BOOLEAN_TRUE || type == TYPE_BOOLEAN_FALSE) {
+            boolValue = type == TYPE_BOOLEAN_TRUE;
+        }
+        fieldType = type;
+        return fieldId;
+    }
+
+    public int getFieldType() {
+        return fieldType;
+    }
+
+    public boolean readBool() {
+        return boolValue;
+    }
+
+    public int readI32() {
+        return (int) unzigzag(readVarLong());
+    }
+
+    public long readI64() {
+        return unzigzag(readVarLong());
+    }
+
+    public byte[] readBinary() {
+        int len = (int) readVarLong();
+        byte[] value = new byte[len];
+        System.arraycopy(data, pos, value, 0, len);
+        pos += len;
+        return value;
+    }
+
+    /**
+     * @return 列表长度 元素类型见 getFieldType
+     */
+    public int readListHeader() {
+        int header = data[pos++] & 0xFF;
+        fieldType = header & 0x0F;
+        int size = header >>> 4;
+        if (size == 15) {
+            size = (int) readVarLong();
+        }
+        return size;
+    }
+
+    /**
+     * 跳过当前字段
+     */
+    public void skip() {
+        skip(fieldType);
+    }
+
+    private void skip(int type) {
+        switch (type) {
+        case TYPE_BOOLEAN_TRUE:
+        case TYPE_BOOLEAN_FALSE:
+            // 字段中的布尔值已在字段头中
+            break;
+        case TYPE_BYTE:
+            pos++;
+            break;
+        case TYPE_I16:
+        case TYPE_I32:
+        case TYPE_I64:
+            readVarLong();
+            break;
+        case TYPE_DOUBLE:
+            pos += 8;
+            break;
+        case TYPE_BINARY:
+            int length = (int) readVarLong();
+            pos += length;
+            break;
+        case TYPE_LIST:
+        case TYPE_SET:
+            int size = readListHeader();
+            int elementType = fieldType;
+            for (int i = 0; i < size; i++) {
+                skipElement(elementType);
+            }
+            break;
+        case TYPE_MAP:
+            int mapSize = (int) readVarLong();
+            if (mapSize > 0) {
+                int kvType = data[pos++] & 0xFF;
+                for (int i = 0; i < mapSize; i++) {
+                    skipElement(kvType >>> 4);
+                    skipElement(kvType & 0x0F);
+                }
+            }
+            break;
+        case TYPE_STRUCT:
+            structBegin();
+            while (readFieldId() != -1) {
+                skip();
+            }
+            structEnd();
+            break;
+        default:
+            throw new IllegalStateException("Unknown thrift compact type: " + type);
+        }
+    }
+
+    /**
+     * 容器中的布尔值各占一个字节
+     */
+    private void skipElement(int type) {
+        if (type == TYPE_BOOLEAN_TRUE || type == TYPE_BOOLEAN_FALSE) {
+            pos++;
+        } else {
+            skip(type);
+        }
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private long readVarLong() {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = data[pos++];
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright [2013-2021], Alibaba Group Holding Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package worker.common.parquet;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Thrift compact protocol 编码
+ * 仅包含 parquet 元数据所需的类型
+ */
+public class ThriftCompactWriter {
+
+    static final int TYPE_STOP = 0;
+    static final int TYPE_BOOLEAN_TRUE = 1;
+    static final int TYPE_BOOLEAN_FALSE = 2;
+    static final int TYPE_BYTE = 3;
+    static final int TYPE_I16 = 4;
+    static final int TYPE_I32 = 5;
+    static final int TYPE_I64 = 6;
+    static final int TYPE_DOUBLE = 7;
+    static final int TYPE_BINARY = 8;
+    static final int TYPE_LIST = 9;
+    static final int TYPE_SET = 10;
+    static final int TYPE_MAP = 11;
+    static final int TYPE_STRUCT = 12;
+
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+    private final Deque<Integer> lastFieldIdStack = new ArrayDeque<>();
+    private int lastFieldId = 0;
+
+    public void structBegin() {
+        lastFieldIdStack.push(lastFieldId);
+        lastFieldId = 0;
+    }
+
+    public void structEnd() {
+        out.write(TYPE_STOP);
+        lastFieldId = lastFieldIdStack.pop();
+    }
+
+    /**
+     * 字段类型为结构体 之后需调用 structBegin
+     */
+    public void structField(int fieldId) {
+        fieldHeader(fieldId, TYPE_STRUCT);
+    }
+
+    public void i32Field(int fieldId, int value) {
+        fieldHeader(fieldId, TYPE_I32);
+        writeVarLong(zigzag(value));
+    }
+
+    public void i64Field(int fieldId, long value) {
+        fieldHeader(fieldId, TYPE_I64);
+        writeVarLong(zigzag(value));
+    }
+
+    public void binaryField(int fieldId, byte[] value) {
+        fieldHeader(fieldId, TYPE_BINARY);
+        binary(value);
+    }
+
+    public void listField(int fieldId, int elementType, int size) {
+        fieldHeader(fieldId, TYPE_LIST);
+        if (size < 15) {
+            out.write((size << 4) | elementType);
+        } else {
+            out.write(0xF0 | elementType);
+            writeVarLong(size);
+        }
+    }
+
+    /**
+     * 列表中的 i32 元素
+     */
+    public void i32(int value) {
+        writeVarLong(zigzag(value));
+    }
+
+    /**
+     * 列表中的 binary 元素
+     */
+    public void binary(byte[] value) {
+        writeVarLong(value.length);
+        out.write(value, 0, value.length);
+    }
+
+    public byte[] toByteArray() {
+        return out.toByteArray();
+    }
+
+    private void fieldHeader(int fieldId, int type) {
+        int delta = fieldId - lastFieldId;
+        if (delta > 0 && delta <= 15) {
+            out.write((delta << 4) | type);
+        } else {
+            out.write(type);
+            writeVarLong(zigzag(fieldId));
+        }
+        lastFieldId = fieldId;
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private void writeVarLong(long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright [2013-2021], Alibaba Group Holding Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package worker.common.reader;
+
+import com.lmax.disruptor.RingBuffer;
+import model.ProducerExecutionContext;
+import model.config.FileBlockListRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import util.BinaryFormatUtil;
+import util.FileUtil;
+import util.IOUtil;
+import worker.common.BatchLineEvent;
+import worker.util.ImportUtil;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static util.BinaryFormatUtil.BLOCK_HEADER_LENGTH;
+import static util.BinaryFormatUtil.SYNC_MARKER_LENGTH;
+
+/**
+ * 按定长范围并行读取二进制格式文件
+ * 每个范围从其中第一个同步标记开始 读取起始于该范围内的所有数据块
+ * 跨越范围末尾的数据块由起始所在范围的读取线程完整读取
+ */
+public class BinaryBlockReader extends FileBufferedBatchReader {
+    private static final Logger logger = LoggerFactory.getLogger(BinaryBlockReader.class);
+
+    /**
+     * 每次查找同步标记读取的长度
+     * 数据块不超过导出缓冲区大小 通常在第一个窗口内即可找到
+     */
+    private static final int SCAN_CHUNK_SIZE = 64 * 1024;
+
+    /**
+     * 默认2MB
+     */
+    private final long readBlockSize;
+    /**
+     * 字段值为导出时数据库返回的原始字节 按 -charset 解码
+     */
+    private final Charset charset;
+    private final FileBlockListRecord fileBlockListRecord;
+
+    private RandomAccessFile curRandomAccessFile;
+    private BinaryFormatUtil.FileHeader curFileHeader;
+    private boolean[] curBinaryColumns;
+    private long curFileLength;
+
+    /**
+     * 查找同步标记的窗口
+     */
+    private final byte[] scanBuffer;
+    private final byte[] blockHeaderBuffer = new byte[BLOCK_HEADER_LENGTH];
+    private byte[] payloadBuffer = new byte[1024 * 256];
+    private final int[] payloadPos = new int[1];
+
+    public BinaryBlockReader(ProducerExecutionContext context,
+                             FileBlockListRecord fileBlockListRecord,
+                             RingBuffer<BatchLineEvent> ringBuffer) {
+        super(context, fileBlockListRecord.getFileList(), ringBuffer);
+        this.readBlockSize = context.getReadBlockSizeInMb() * 1024L * 1024;
+        this.charset = context.getCharset();
+        this.localProcessingFileIndex = fileBlockListRecord.getCurrentFileIndex().get();
+        this.fileBlockListRecord = fileBlockListRecord;
+        this.scanBuffer = new byte[SCAN_CHUNK_SIZE + SYNC_MARKER_LENGTH - 1];
+        this.emitByBlock = context.isBlockTransactionEnabled();
+        openFile();
+    }
+
+    private void openFile() {
+        this.curRandomAccessFile = FileUtil.openRafForRead(fileList.get(localProcessingFileIndex));
+        try {
+            this.curFileLength = curRandomAccessFile.length();
+            this.curFileHeader = BinaryFormatUtil.readFileHeader(curRandomAccessFile);
+            this.curBinaryColumns = context.getBinaryColumns(fileList.get(localProcessingFileIndex).getPath());
+        } catch (IOException e) {
+            logger.error(e.getMessage());
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    protected void readData() {
+        while (true) {
+            try {
+                localProcessingBlockIndex = fileBlockListRecord.getStartPosArr()[localProcessingFileIndex].getAndIncrement();
+                String fileKey = ImportUtil.getBlockProgressFileKey(fileList.get(localProcessingFileIndex));
+                if (context.isBlockCommitted(fileKey, localProcessingBlockIndex)) {
+                    // 该数据块已在之前的导入中提交
+                    continue;
+                }
+                long pos = localProcessingBlockIndex * readBlockSize;
+                // 首次进入该block，开始处理 : counter++
+                context.getEventCounter().get(localProcessingFileIndex)
+                    .putIfAbsent(localProcessingBlockIndex, new AtomicInteger(0));
+                context.getEventCounter().get(localProcessingFileIndex)
+                    .get(localProcessingBlockIndex).incrementAndGet();
+                localProcessingLineIndex = 0;
+
+                if (pos >= curFileLength) {
+                    if (!nextFile()) {
+                        // 没有再下一个要处理的文件了, 结束
+                        break;
+                    }
+                    continue;
+                }
+                long end = pos + readBlockSize;
+                long blockPos = findFirstBlock(Math.max(pos, curFileHeader.getHeaderLength()), end);
+                while (blockPos >= 0 && blockPos < end && blockPos < curFileLength) {
+                    blockPos = readBlock(blockPos);
+                }
+                // 每批数据只属于同一个block 以便准确记录断点与错误行的来源
+                flushLineBuffer();
+                // 正常处理完本block数据 : counter--
+                context.getEventCounter().get(localProcessingFileIndex)
+                    .get(localProcessingBlockIndex).getAndDecrement();
+            } catch (Exception e) {
+                e.printStackTrace();
+                logger.error(e.getMessage());
+                throw new RuntimeException(e);
+            }
+        }
+        // 发送剩余数据
+        if (bufferedLineCount != 0) {
+            emitLineBuffer();
+        }
+    }
+
+    /**
+     * 查找起始于 [from, end) 内的第一个数据块
+     *
+     * @return 未找到时返回 -1
+     */
+    private long findFirstBlock(long from, long end) throws IOException {
+        for (long chunkStart = from; chunkStart < end; chunkStart += SCAN_CHUNK_SIZE) {
+            // 相邻窗口重叠 SYNC_MARKER_LENGTH - 1 字节 避免标记被截断
+            int len = (int) Math.min(Math.min(SCAN_CHUNK_SIZE, end - chunkStart) + SYNC_MARKER_LENGTH - 1,
+                curFileLength - chunkStart);
+            if (len < SYNC_MARKER_LENGTH) {
+                return -1;
+            }
+            curRandomAccessFile.seek(chunkStart);
+            curRandomAccessFile.readFully(scanBuffer, 0, len);
+            int index = BinaryFormatUtil.indexOfSyncMarker(scanBuffer, 0, len, curFileHeader.getSyncMarker());
+            if (index >= 0) {
+                return chunkStart + index;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 读取并解析一个数据块
+     *
+     * @return 下一个数据块的起始位置
+     */
+    private long readBlock(long blockPos) throws IOException {
+        curRandomAccessFile.seek(blockPos);
+        curRandomAccessFile.readFully(blockHeaderBuffer);
+        if (BinaryFormatUtil.indexOfSyncMarker(blockHeaderBuffer, 0, SYNC_MARKER_LENGTH,
+            curFileHeader.getSyncMarker()) != 0) {
+            throw new IllegalStateException(String.format("Corrupted block at %d of %s",
+                blockPos, fileList.get(localProcessingFileIndex).getPath()));
+        }
+        ByteBuffer blockHeader = ByteBuffer.wrap(blockHeaderBuffer, SYNC_MARKER_LENGTH, 8);
+        int rowCount = blockHeader.getInt();
+        int payloadLength = blockHeader.getInt();
+        if (payloadBuffer.length < payloadLength) {
+            payloadBuffer = new byte[Integer.highestOneBit(payloadLength) << 1];
+        }
+        curRandomAccessFile.readFully(payloadBuffer, 0, payloadLength);
+        decodeRows(rowCount);
+        return blockPos + BLOCK_HEADER_LENGTH + payloadLength;
+    }
+
+    private void decodeRows(int rowCount) {
+        int columnCount = curFileHeader.getColumnCount();
+        payloadPos[0] = 0;
+        for (int row = 0; row < rowCount; row++) {
+            appendToValueBuffer(BinaryFormatUtil.decodeRow(payloadBuffer, payloadPos, columnCount, charset,
+                curBinaryColumns));
+        }
+    }
+
+    private boolean nextFile() {
+        if (fileBlockListRecord.getFileDoneList()[localProcessingFileIndex].compareAndSet(false, true)) {
+            logger.info("{} 读取完毕", fileList.get(localProcessingFileIndex).getPath());
+        }
+        // 未处理足一个block就进入下一个文件 : counter--
+        context.getEventCounter().get(localProcessingFileIndex)
+            .get(localProcessingBlockIndex).getAndDecrement();
+        // 进入下一个文件
+        if (localProcessingFileIndex < fileList.size() - 1) {
+            fileBlockListRecord.getCurrentFileIndex().compareAndSet(localProcessingFileIndex, localProcessingFileIndex + 1);
+            localProcessingFileIndex++;
+            localProcessingBlockIndex = -1;
+            IOUtil.close(curRandomAccessFile);
+            openFile();
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    protected void beforePublish() {
+        context.getEmittedDataCounter().getAndIncrement();
+        context.getEventCounter().get(localProcessingFileIndex).
+            get(localProcessingBlockIndex).getAndIncrement();
+    }
+
+    @Override
+    protected void close() {
+        IOUtil.close(this.curRandomAccessFile);
+    }
+}
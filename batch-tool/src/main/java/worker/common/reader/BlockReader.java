@@ -27,6 +27,7 @@ import org.slf4j.LoggerFactory;
 import util.FileUtil;
 import util.IOUtil;
 import worker.common.BatchLineEvent;
+import worker.util.ImportUtil;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
@@ -116,6 +117,7 @@ public class BlockReader extends FileBufferedBatchReader {
         }
         this.byteBuffer = new BlockByteBuffer((int) (readBlockSize + READ_PADDING));
         this.posMarker = new BlockPosMarker();
+        this.emitByBlock = context.isBlockTransactionEnabled();
     }
 
     @Override
@@ -124,12 +126,18 @@ public class BlockReader extends FileBufferedBatchReader {
         while (true) {
             try {
                 localProcessingBlockIndex = fileBlockListRecord.getStartPosArr()[localProcessingFileIndex].getAndIncrement();
+                String fileKey = ImportUtil.getBlockProgressFileKey(fileList.get(localProcessingFileIndex));
+                if (context.isBlockCommitted(fileKey, localProcessingBlockIndex)) {
+                    // 该数据块已在之前的导入中提交
+                    continue;
+                }
                 long pos = localProcessingBlockIndex * readBlockSize;
                 // 首次进入该block，开始处理 : counter++
                 context.getEventCounter().get(localProcessingFileIndex)
                     .putIfAbsent(localProcessingBlockIndex, new AtomicInteger(0));
                 context.getEventCounter().get(localProcessingFileIndex)
                     .get(localProcessingBlockIndex).incrementAndGet();
+                localProcessingLineIndex = 0;
                 // 跳过第一个换行符
                 boolean skipFirst = (pos != 0);
                 seekAndRead(pos);
@@ -175,6 +183,8 @@ public class BlockReader extends FileBufferedBatchReader {
                     // Dealing last line.
                     handleLine(pos == 0);
                 }
+                // 每批数据只属于同一个block 以便准确记录断点与错误行的来源
+                flushLineBuffer();
                 // 正常处理完本block数据 : counter--
                 context.getEventCounter().get(localProcessingFileIndex)
                     .get(localProcessingBlockIndex).getAndDecrement();
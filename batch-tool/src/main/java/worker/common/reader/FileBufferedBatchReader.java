@@ -23,6 +23,7 @@ import model.config.ConfigConstant;
 import worker.common.BatchLineEvent;
 
 import java.io.File;
+import java.util.Arrays;
 import java.util.List;
 
 import static model.config.GlobalVar.EMIT_BATCH_SIZE;
@@ -32,8 +33,22 @@ public abstract class FileBufferedBatchReader implements Runnable {
     protected final RingBuffer<BatchLineEvent> ringBuffer;
     protected int bufferedLineCount = 0;
     protected String[] lineBuffer;
+    /**
+     * 已解析的字段值 与 lineBuffer 按下标对应
+     * 仅用于自带字段边界的格式
+     */
+    protected String[][] valuesBuffer = null;
     protected volatile int localProcessingFileIndex;
     protected long localProcessingBlockIndex = -1;
+    /**
+     * 当前块（按行读取时为当前文件）中已读取的行数
+     */
+    protected long localProcessingLineIndex = 0;
+    private long batchStartLineIndex = 0;
+    /**
+     * 是否将一个数据块的所有行作为一个批次发送
+     */
+    protected boolean emitByBlock = false;
     protected final CompressMode compressMode;
     protected final ProducerExecutionContext context;
     protected final List<File> fileList;
@@ -55,26 +70,66 @@ public abstract class FileBufferedBatchReader implements Runnable {
     }
 
     protected void appendToLineBuffer(String line) {
+        if (bufferedLineCount == 0) {
+            batchStartLineIndex = localProcessingLineIndex;
+        }
+        localProcessingLineIndex++;
+        if (emitByBlock && bufferedLineCount == lineBuffer.length) {
+            lineBuffer = Arrays.copyOf(lineBuffer, lineBuffer.length * 2);
+        }
         lineBuffer[bufferedLineCount++] = line;
-        if (bufferedLineCount == EMIT_BATCH_SIZE) {
-            emitLineBuffer();
-            lineBuffer = new String[EMIT_BATCH_SIZE];
-            bufferedLineCount = 0;
+        if (!emitByBlock && bufferedLineCount == EMIT_BATCH_SIZE) {
+            flushLineBuffer();
+        }
+    }
+
+    /**
+     * 添加已解析出字段值的一行 消费者无需再拆分
+     */
+    protected void appendToValueBuffer(String[] values) {
+        if (valuesBuffer == null) {
+            valuesBuffer = new String[lineBuffer.length][];
+        } else if (emitByBlock && bufferedLineCount == valuesBuffer.length) {
+            valuesBuffer = Arrays.copyOf(valuesBuffer, valuesBuffer.length * 2);
         }
+        valuesBuffer[bufferedLineCount] = values;
+        appendToLineBuffer(ConfigConstant.DECODED_LINE);
+    }
+
+    /**
+     * 发送缓冲区中已有的数据 并重置缓冲区
+     */
+    protected void flushLineBuffer() {
+        if (bufferedLineCount == 0) {
+            return;
+        }
+        emitLineBuffer();
+        lineBuffer = new String[EMIT_BATCH_SIZE];
+        if (valuesBuffer != null) {
+            valuesBuffer = new String[EMIT_BATCH_SIZE][];
+        }
+        bufferedLineCount = 0;
     }
 
     protected void emitLineBuffer() {
+        String tableName = context.getFileTableName(localProcessingFileIndex);
+        if (tableName != null) {
+            context.getTableInFlightLimiter().acquire(tableName);
+        }
         long sequence = ringBuffer.next();
         BatchLineEvent event;
         try {
             event = ringBuffer.get(sequence);
-            if (bufferedLineCount < EMIT_BATCH_SIZE) {
+            if (bufferedLineCount < lineBuffer.length) {
                 // 插入结束标志
                 lineBuffer[bufferedLineCount] = ConfigConstant.END_OF_BATCH_LINES;
             }
             event.setBatchLines(lineBuffer);
+            event.setBatchValues(valuesBuffer);
             event.setLocalProcessingFileIndex(localProcessingFileIndex);
             event.setLocalProcessingBlockIndex(localProcessingBlockIndex);
+            event.setStartLineIndex(batchStartLineIndex);
+            event.setTableName(tableName);
         } finally {
             beforePublish();
             ringBuffer.publish(sequence);
@@ -0,0 +1,190 @@
+/*
+ * Copyright [2013-2021], Alibaba Group Holding Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package worker.common.reader;
+
+import com.lmax.disruptor.RingBuffer;
+import model.ProducerExecutionContext;
+import model.config.FileBlockListRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import util.FileUtil;
+import util.IOUtil;
+import worker.common.BatchLineEvent;
+import worker.common.parquet.ParquetColumnReader;
+import worker.common.parquet.ParquetMetadata;
+import worker.util.ImportUtil;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 按行组并行读取 parquet 文件
+ * 每个行组作为一个数据块 块序号即行组序号
+ */
+public class ParquetReader extends FileBufferedBatchReader {
+    private static final Logger logger = LoggerFactory.getLogger(ParquetReader.class);
+
+    /**
+     * 文件末尾的元数据长度与 magic
+     */
+    private static final int FOOTER_TAIL_LENGTH = 8;
+
+    private final FileBlockListRecord fileBlockListRecord;
+
+    private RandomAccessFile curRandomAccessFile;
+    private ParquetMetadata.FileMeta curFileMeta;
+
+    public ParquetReader(ProducerExecutionContext context,
+                         FileBlockListRecord fileBlockListRecord,
+                         RingBuffer<BatchLineEvent> ringBuffer) {
+        super(context, fileBlockListRecord.getFileList(), ringBuffer);
+        this.localProcessingFileIndex = fileBlockListRecord.getCurrentFileIndex().get();
+        this.fileBlockListRecord = fileBlockListRecord;
+        this.emitByBlock = context.isBlockTransactionEnabled();
+        openFile();
+    }
+
+    private void openFile() {
+        String path = fileList.get(localProcessingFileIndex).getPath();
+        this.curRandomAccessFile = FileUtil.openRafForRead(fileList.get(localProcessingFileIndex));
+        try {
+            long fileLength = curRandomAccessFile.length();
+            byte[] tail = new byte[FOOTER_TAIL_LENGTH];
+            if (fileLength < ParquetMetadata.MAGIC.length + FOOTER_TAIL_LENGTH) {
+                throw new IllegalArgumentException("Not a parquet file: " + path);
+            }
+            curRandomAccessFile.seek(fileLength - FOOTER_TAIL_LENGTH);
+            curRandomAccessFile.readFully(tail);
+            if (!Arrays.equals(Arrays.copyOfRange(tail, 4, FOOTER_TAIL_LENGTH), ParquetMetadata.MAGIC)) {
+                throw new IllegalArgumentException("Not a parquet file: " + path);
+            }
+            int footerLength = (tail[0] & 0xFF) | (tail[1] & 0xFF) << 8
+                | (tail[2] & 0xFF) << 16 | (tail[3] & 0xFF) << 24;
+            byte[] footer = new byte[footerLength];
+            curRandomAccessFile.seek(fileLength - FOOTER_TAIL_LENGTH - footerLength);
+            curRandomAccessFile.readFully(footer);
+            this.curFileMeta = ParquetMetadata.parseFileMeta(footer);
+        } catch (IOException e) {
+            logger.error(e.getMessage());
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    protected void readData() {
+        while (true) {
+            try {
+                localProcessingBlockIndex = fileBlockListRecord.getStartPosArr()[localProcessingFileIndex].getAndIncrement();
+                String fileKey = ImportUtil.getBlockProgressFileKey(fileList.get(localProcessingFileIndex));
+                if (context.isBlockCommitted(fileKey, localProcessingBlockIndex)) {
+                    // 该数据块已在之前的导入中提交
+                    continue;
+                }
+                // 首次进入该block，开始处理 : counter++
+                context.getEventCounter().get(localProcessingFileIndex)
+                    .putIfAbsent(localProcessingBlockIndex, new AtomicInteger(0));
+                context.getEventCounter().get(localProcessingFileIndex)
+                    .get(localProcessingBlockIndex).incrementAndGet();
+                localProcessingLineIndex = 0;
+
+                if (localProcessingBlockIndex >= curFileMeta.rowGroups.size()) {
+                    if (!nextFile()) {
+                        // 没有再下一个要处理的文件了, 结束
+                        break;
+                    }
+                    continue;
+                }
+                readRowGroup(curFileMeta.rowGroups.get((int) localProcessingBlockIndex));
+                // 每批数据只属于同一个block 以便准确记录断点与错误行的来源
+                flushLineBuffer();
+                // 正常处理完本block数据 : counter--
+                context.getEventCounter().get(localProcessingFileIndex)
+                    .get(localProcessingBlockIndex).getAndDecrement();
+            } catch (Exception e) {
+                e.printStackTrace();
+                logger.error(e.getMessage());
+                throw new RuntimeException(e);
+            }
+        }
+        // 发送剩余数据
+        if (bufferedLineCount != 0) {
+            emitLineBuffer();
+        }
+    }
+
+    /**
+     * 按列读取一个行组 再按行发送
+     */
+    private void readRowGroup(ParquetMetadata.RowGroup rowGroup) throws IOException {
+        int columnCount = curFileMeta.columns.size();
+        int rowCount = (int) rowGroup.numRows;
+        String[][] columnValues = new String[columnCount][];
+        for (int i = 0; i < columnCount; i++) {
+            ParquetMetadata.ColumnChunk columnChunk = rowGroup.columns.get(i);
+            if (columnChunk.totalSize > Integer.MAX_VALUE) {
+                throw new UnsupportedOperationException("Too large parquet column chunk: "
+                    + columnChunk.totalSize);
+            }
+            byte[] chunk = new byte[(int) columnChunk.totalSize];
+            curRandomAccessFile.seek(columnChunk.getStartOffset());
+            curRandomAccessFile.readFully(chunk);
+            columnValues[i] = ParquetColumnReader.readColumnChunk(chunk, curFileMeta.columns.get(i),
+                columnChunk, rowCount);
+        }
+        for (int row = 0; row < rowCount; row++) {
+            String[] values = new String[columnCount];
+            for (int i = 0; i < columnCount; i++) {
+                values[i] = columnValues[i][row];
+            }
+            appendToValueBuffer(values);
+        }
+    }
+
+    private boolean nextFile() {
+        if (fileBlockListRecord.getFileDoneList()[localProcessingFileIndex].compareAndSet(false, true)) {
+            logger.info("{} 读取完毕", fileList.get(localProcessingFileIndex).getPath());
+        }
+        // 未处理足一个block就进入下一个文件 : counter--
+        context.getEventCounter().get(localProcessingFileIndex)
+            .get(localProcessingBlockIndex).getAndDecrement();
+        // 进入下一个文件
+        if (localProcessingFileIndex < fileList.size() - 1) {
+            fileBlockListRecord.getCurrentFileIndex().compareAndSet(localProcessingFileIndex, localProcessingFileIndex + 1);
+            localProcessingFileIndex++;
+            localProcessingBlockIndex = -1;
+            IOUtil.close(curRandomAccessFile);
+            openFile();
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    protected void beforePublish() {
+        context.getEmittedDataCounter().getAndIncrement();
+        context.getEventCounter().get(localProcessingFileIndex).
+            get(localProcessingBlockIndex).getAndIncrement();
+    }
+
+    @Override
+    protected void close() {
+        IOUtil.close(this.curRandomAccessFile);
+    }
+}
@@ -36,6 +36,7 @@ import java.io.InputStream;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.StringJoiner;
 
 public class XlsxReader extends FileBufferedBatchReader {
     private static final Logger logger = LoggerFactory.getLogger(XlsxReader.class);
@@ -74,20 +75,39 @@ public class XlsxReader extends FileBufferedBatchReader {
 
             private void appendData(Collection<String> values) {
                 localProcessingBlockIndex++;
-                String line = String.join(ConfigConstant.MAGIC_CSV_SEP, values);
-                appendToLineBuffer(line);
+                appendToLineBuffer(toLine(values));
             }
 
             @Override
             public void doAfterAllAnalysed(AnalysisContext analysisContext) {
-                emitLineBuffer();
+                // 每个工作表读完时都会回调 全部读完后再提交
             }
         };
 
-        EasyExcel.read(inputStream, listener).sheet().doRead();
+        // 超过单个工作表行数上限的导出文件包含多个工作表 每个工作表首行均为字段名
+        readAll(inputStream, listener);
+        emitLineBuffer();
         logger.info("{} 读取完毕", fileList.get(localProcessingFileIndex).getPath());
     }
 
+    /**
+     * 读取所有工作表 保留单元格首尾的空白与全为空字符串的行
+     */
+    public static void readAll(InputStream inputStream, ReadListener<?> listener) {
+        EasyExcel.read(inputStream, listener).autoTrim(false).ignoreEmptyRow(false).doReadAll();
+    }
+
+    /**
+     * 空单元格为空字符串 空值在导出时已写为 \N 按文本格式处理
+     */
+    public static String toLine(Collection<String> values) {
+        StringJoiner line = new StringJoiner(ConfigConstant.MAGIC_CSV_SEP);
+        for (String value : values) {
+            line.add(value == null ? "" : value);
+        }
+        return line.toString();
+    }
+
     @Override
     protected void close() {
         IOUtil.close(inputStream);
@@ -0,0 +1,239 @@
+/*
+ * Copyright [2013-2021], Alibaba Group Holding Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package worker.common.writer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import worker.MyThreadPool;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.nio.ByteBuffer;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Consumer;
+
+/**
+ * 异步写入文件
+ * 调用方的缓冲区直接交给写线程 由写线程完成压缩与落盘后归还 不再额外复制
+ * 在途的写入数量固定 队列满时调用方等待 以此限制内存占用
+ * 每次写入的数据不会被拆分 保证按字符集转码时不会截断字符
+ */
+@NotThreadSafe
+public class AsyncFileWriter implements IFileWriter {
+    private static final Logger logger = LoggerFactory.getLogger(AsyncFileWriter.class);
+
+    /**
+     * 三缓冲 一个填充 一个写入 一个等待写入
+     */
+    private static final int DEFAULT_QUEUE_SIZE = 3;
+
+    /**
+     * 默认队列大小下 写线程最多持有的调用方缓冲区数 队列中的与正在写入的
+     */
+    public static final int MAX_HELD_BUFFERS = DEFAULT_QUEUE_SIZE + 1;
+
+    private final IFileWriter delegate;
+    private final BlockingQueue<WriteTask> taskQueue;
+
+    /**
+     * 首次写入时才启动写线程
+     */
+    private ExecutorService writerExecutor = null;
+    private Future<?> writerFuture = null;
+    private volatile Throwable writeException = null;
+    private boolean closed = false;
+
+    public AsyncFileWriter(IFileWriter delegate) {
+        this(delegate, DEFAULT_QUEUE_SIZE);
+    }
+
+    public AsyncFileWriter(IFileWriter delegate, int queueSize) {
+        if (!delegate.produceByBlock()) {
+            throw new IllegalArgumentException(delegate.getClass() + " does not support write raw bytes");
+        }
+        this.delegate = delegate;
+        this.taskQueue = new LinkedBlockingQueue<>(queueSize);
+    }
+
+    @Override
+    public void nextFile(String fileName) {
+        checkException();
+        if (writerExecutor == null) {
+            delegate.nextFile(fileName);
+            return;
+        }
+        submit(new WriteTask(TaskType.NEXT_FILE, null, null, fileName));
+    }
+
+    /**
+     * 调用方不再使用该数组 直接交给写线程
+     */
+    @Override
+    public void write(byte[] data) {
+        if (data.length == 0) {
+            return;
+        }
+        writeAndRelease(ByteBuffer.wrap(data), null);
+    }
+
+    /**
+     * 调用方可能复用该缓冲区 需复制后再交给写线程
+     * 可以交出缓冲区时应使用 {@link #writeAndRelease}
+     */
+    @Override
+    public void write(ByteBuffer data) {
+        byte[] bytes = new byte[data.remaining()];
+        data.get(bytes);
+        write(bytes);
+    }
+
+    @Override
+    public void writeAndRelease(ByteBuffer data, Consumer<ByteBuffer> release) {
+        try {
+            checkException();
+        } catch (RuntimeException e) {
+            if (release != null) {
+                release.accept(data);
+            }
+            throw e;
+        }
+        startWriterIfAbsent();
+        submit(new WriteTask(TaskType.WRITE, data, release, null));
+    }
+
+    @Override
+    public boolean produceByBlock() {
+        return true;
+    }
+
+    /**
+     * 等待已提交的数据全部写完后关闭
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (writerExecutor == null) {
+            delegate.close();
+        } else {
+            submit(new WriteTask(TaskType.CLOSE, null, null, null));
+            try {
+                writerFuture.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            } catch (ExecutionException e) {
+                writeException = e.getCause();
+            } finally {
+                writerExecutor.shutdown();
+            }
+        }
+        checkException();
+    }
+
+    private void startWriterIfAbsent() {
+        if (writerExecutor != null) {
+            return;
+        }
+        writerExecutor = MyThreadPool.createFixedExecutor("async-file-writer", 1);
+        writerFuture = writerExecutor.submit(this::runWriter);
+    }
+
+    private void submit(WriteTask task) {
+        try {
+            // 队列满时在此等待
+            taskQueue.put(task);
+        } catch (InterruptedException e) {
+            task.release();
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void runWriter() {
+        while (true) {
+            WriteTask task;
+            try {
+                task = taskQueue.take();
+            } catch (InterruptedException e) {
+                writeException = e;
+                return;
+            }
+            try {
+                // 出错后不再写入 但继续归还缓冲区 避免调用方阻塞
+                if (writeException == null || task.type == TaskType.CLOSE) {
+                    switch (task.type) {
+                    case WRITE:
+                        delegate.write(task.buffer);
+                        break;
+                    case NEXT_FILE:
+                        delegate.nextFile(task.fileName);
+                        break;
+                    case CLOSE:
+                        delegate.close();
+                        break;
+                    }
+                }
+            } catch (Throwable t) {
+                logger.error("Failed to write file: {}", t.getMessage());
+                writeException = t;
+            } finally {
+                task.release();
+            }
+            if (task.type == TaskType.CLOSE) {
+                return;
+            }
+        }
+    }
+
+    private void checkException() {
+        if (writeException != null) {
+            throw new RuntimeException("Async file writer failed", writeException);
+        }
+    }
+
+    private enum TaskType {
+        WRITE,
+        NEXT_FILE,
+        CLOSE
+    }
+
+    private static class WriteTask {
+        private final TaskType type;
+        private final ByteBuffer buffer;
+        private final Consumer<ByteBuffer> releaser;
+        private final String fileName;
+
+        private WriteTask(TaskType type, ByteBuffer buffer, Consumer<ByteBuffer> releaser, String fileName) {
+            this.type = type;
+            this.buffer = buffer;
+            this.releaser = releaser;
+            this.fileName = fileName;
+        }
+
+        private void release() {
+            if (releaser != null) {
+                releaser.accept(buffer);
+            }
+        }
+    }
+}
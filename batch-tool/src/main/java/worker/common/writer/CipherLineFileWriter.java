@@ -59,10 +59,10 @@ public class CipherLineFileWriter implements IFileWriter {
         }
         try {
             ByteArrayOutputStream os = new ByteArrayOutputStream(values.length * 16);
-            FileUtil.writeToByteArrayStream(os, values[0].getBytes());
+            FileUtil.writeToByteArrayStream(os, getValueBytes(values[0]));
             for (int i = 1; i < values.length; i++) {
                 os.write(separator);
-                FileUtil.writeToByteArrayStream(os, values[i].getBytes());
+                FileUtil.writeToByteArrayStream(os, getValueBytes(values[i]));
             }
             byte[] data = os.toByteArray();
             byte[] crypto = cipher.encrypt(data);
@@ -83,6 +83,13 @@ public class CipherLineFileWriter implements IFileWriter {
 
     }
 
+    /**
+     * 空值为 null 写入时转为 \N
+     */
+    private static byte[] getValueBytes(String value) {
+        return value == null ? null : value.getBytes();
+    }
+
     private void writeHeader(ByteBuffer byteBuffer, int length) {
         if (length < 0) {
             throw new IllegalArgumentException("Length cannot be negative");
@@ -16,6 +16,9 @@
 
 package worker.common.writer;
 
+import java.nio.ByteBuffer;
+import java.util.function.Consumer;
+
 public interface IFileWriter {
 
     void nextFile(String fileName);
@@ -24,11 +27,57 @@ public interface IFileWriter {
         throw new UnsupportedOperationException(getClass() + " does not support write raw bytes");
     }
 
+    /**
+     * 写入缓冲区中 position 至 limit 的数据
+     * 默认复制为字节数组写入
+     */
+    default void write(ByteBuffer data) {
+        byte[] bytes = new byte[data.remaining()];
+        data.get(bytes);
+        write(bytes);
+    }
+
+    /**
+     * 写入后由写入方通过 release 归还缓冲区 调用方之后不能再使用该缓冲区
+     * 默认同步写入后立即归还
+     */
+    default void writeAndRelease(ByteBuffer data, Consumer<ByteBuffer> release) {
+        try {
+            write(data);
+        } finally {
+            if (release != null) {
+                release.accept(data);
+            }
+        }
+    }
+
     default void writeLine(String[] values) {
         throw new UnsupportedOperationException(getClass() + " does not support write line with values");
     }
 
     boolean produceByBlock();
 
+    /**
+     * 当前文件已落盘的字节数
+     * 压缩时不含压缩器中尚未输出的部分
+     */
+    default long getCurrentFileSize() {
+        throw new UnsupportedOperationException(getClass() + " does not support get current file size");
+    }
+
+    /**
+     * 再写入 length 字节并全部落盘后当前文件大小的上限
+     * 包括压缩器中尚未输出的部分
+     */
+    default long getMaxFileSizeAfterWrite(int length) {
+        return getCurrentFileSize() + length;
+    }
+
+    /**
+     * 将缓存的数据全部落盘
+     */
+    default void flush() {
+    }
+
     void close();
 }
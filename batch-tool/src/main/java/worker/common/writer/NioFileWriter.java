@@ -22,16 +22,16 @@ import util.IOUtil;
 import javax.annotation.concurrent.NotThreadSafe;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
 import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
-import java.util.zip.GZIPOutputStream;
 
 @NotThreadSafe
 public class NioFileWriter implements IFileWriter {
 
     private FileChannel appendChannel = null;
-    private GZIPOutputStream gzipOutputStream = null;
+    private ParallelGzipOutputStream gzipOutputStream = null;
     private final CompressMode compressMode;
     private boolean closed = false;
     private final Charset charset;
@@ -70,11 +70,60 @@ public class NioFileWriter implements IFileWriter {
         writeNio(data);
     }
 
+    /**
+     * 无需压缩与转码时直接写入文件通道
+     */
+    @Override
+    public void write(ByteBuffer data) {
+        if (compressMode != CompressMode.NONE || charset != StandardCharsets.UTF_8) {
+            IFileWriter.super.write(data);
+            return;
+        }
+        try {
+            while (data.hasRemaining()) {
+                appendChannel.write(data);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            throw new RuntimeException(e);
+        }
+    }
+
     @Override
     public boolean produceByBlock() {
         return true;
     }
 
+    @Override
+    public long getCurrentFileSize() {
+        try {
+            return appendChannel.size();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public long getMaxFileSizeAfterWrite(int length) {
+        if (compressMode == CompressMode.GZIP) {
+            return getCurrentFileSize() + gzipOutputStream.getMaxPendingOutputBytes(length);
+        }
+        return getCurrentFileSize() + length;
+    }
+
+    @Override
+    public void flush() {
+        if (compressMode != CompressMode.GZIP) {
+            return;
+        }
+        try {
+            gzipOutputStream.flush();
+        } catch (IOException e) {
+            e.printStackTrace();
+            throw new RuntimeException(e);
+        }
+    }
+
     @Override
     public void close() {
         if (closed) {
@@ -87,7 +136,8 @@ public class NioFileWriter implements IFileWriter {
     private void openFileChannel(String fileName) {
         this.appendChannel = IOUtil.createEmptyFileAndOpenChannel(fileName);
         if (compressMode == CompressMode.GZIP) {
-            this.gzipOutputStream = IOUtil.createGzipOutputStream(appendChannel);
+            // 分块并行压缩 不受写入线程单核压缩速度的限制
+            this.gzipOutputStream = new ParallelGzipOutputStream(Channels.newOutputStream(appendChannel));
         }
     }
 
@@ -118,7 +168,6 @@ public class NioFileWriter implements IFileWriter {
         if (compressMode == CompressMode.NONE) {
             IOUtil.close(appendChannel);
         } else {
-            IOUtil.finish(gzipOutputStream);
             IOUtil.close(gzipOutputStream);
         }
     }
@@ -0,0 +1,234 @@
+/*
+ * Copyright [2013-2021], Alibaba Group Holding Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package worker.common.writer;
+
+import model.config.ConfigConstant;
+import worker.NamedThreadFactory;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * 并行 gzip 压缩
+ * 将数据按定长分块 每块在线程池中独立压缩为一个完整的 gzip member
+ * 再按顺序写出 多个 member 顺序拼接仍是合法的 gzip 文件
+ */
+@NotThreadSafe
+public class ParallelGzipOutputStream extends OutputStream {
+
+    /**
+     * 每块压缩前的大小
+     * 块之间不共享字典 块越大压缩率越接近单线程压缩
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 256 * 1024;
+
+    /**
+     * 所有文件共用的压缩线程池
+     * 队列满时由写入线程自行压缩 以此限制等待压缩的数据量
+     */
+    private static final ExecutorService COMPRESS_EXECUTOR = new ThreadPoolExecutor(
+        ConfigConstant.CPU_NUM, ConfigConstant.CPU_NUM,
+        0L, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<>(ConfigConstant.CPU_NUM * 2),
+        new NamedThreadFactory("gzip", true),
+        new ThreadPoolExecutor.CallerRunsPolicy());
+
+    private static final byte[] MEMBER_HEADER = {
+        0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff
+    };
+
+    /**
+     * 每个 member 除压缩数据外的字节数上限
+     * 包括头部、末尾的 CRC32 与长度 以及 zlib deflateBound 中的常数项
+     */
+    private static final int MEMBER_OVERHEAD = MEMBER_HEADER.length + 8 + 13;
+
+    private final OutputStream out;
+    private final int blockSize;
+    /**
+     * 每个文件最多同时在途的块数
+     */
+    private final int maxPendingBlocks;
+    private final Deque<Future<byte[]>> pendingBlocks = new ArrayDeque<>();
+    /**
+     * 在途各块压缩前的字节数
+     */
+    private final Deque<Integer> pendingLengths = new ArrayDeque<>();
+    private long pendingBlockBytes = 0;
+
+    private byte[] block;
+    private int blockLength = 0;
+    private boolean finished = false;
+
+    public ParallelGzipOutputStream(OutputStream out) {
+        this(out, DEFAULT_BLOCK_SIZE, ConfigConstant.CPU_NUM);
+    }
+
+    public ParallelGzipOutputStream(OutputStream out, int blockSize, int maxPendingBlocks) {
+        this.out = out;
+        this.blockSize = blockSize;
+        this.maxPendingBlocks = maxPendingBlocks;
+        this.block = new byte[blockSize];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (finished) {
+            throw new IOException("Write after finish");
+        }
+        while (len > 0) {
+            int n = Math.min(len, blockSize - blockLength);
+            System.arraycopy(b, off, block, blockLength, n);
+            blockLength += n;
+            off += n;
+            len -= n;
+            if (blockLength == blockSize) {
+                submitBlock();
+            }
+        }
+    }
+
+    /**
+     * 再写入 length 字节后 尚未写出的数据压缩后的字节数上限
+     * 包括在途的块与当前块 调用 flush 后全部写出
+     */
+    public long getMaxPendingOutputBytes(int length) {
+        long bytes = pendingBlockBytes + blockLength + length;
+        long members = pendingBlocks.size() + ((long) blockLength + length + blockSize - 1) / blockSize;
+        // 不可压缩的数据压缩后略大于原始长度 按各块之和计算不会小于逐块计算
+        return bytes + (bytes >> 12) + (bytes >> 14) + (bytes >> 25) + members * MEMBER_OVERHEAD;
+    }
+
+    /**
+     * 压缩并写出已缓存的全部数据
+     */
+    @Override
+    public void flush() throws IOException {
+        submitBlock();
+        while (!pendingBlocks.isEmpty()) {
+            writeFirstPendingBlock();
+        }
+        out.flush();
+    }
+
+    /**
+     * 写完所有数据 但不关闭底层输出流
+     */
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        if (blockLength == 0 && pendingBlocks.isEmpty()) {
+            // 空文件也写入一个空的 member
+            pendingBlocks.add(COMPRESS_EXECUTOR.submit(() -> compress(new byte[0], 0)));
+        }
+        flush();
+        finished = true;
+        block = null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            out.close();
+        }
+    }
+
+    private void submitBlock() throws IOException {
+        if (blockLength == 0) {
+            return;
+        }
+        final byte[] data = block;
+        final int length = blockLength;
+        pendingBlocks.add(COMPRESS_EXECUTOR.submit(() -> compress(data, length)));
+        pendingLengths.add(length);
+        pendingBlockBytes += length;
+        block = new byte[blockSize];
+        blockLength = 0;
+        while (pendingBlocks.size() > maxPendingBlocks) {
+            writeFirstPendingBlock();
+        }
+    }
+
+    private void writeFirstPendingBlock() throws IOException {
+        Future<byte[]> future = pendingBlocks.poll();
+        Integer length = pendingLengths.poll();
+        pendingBlockBytes -= length == null ? 0 : length;
+        byte[] member;
+        try {
+            member = future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to compress block", e.getCause());
+        }
+        out.write(member);
+    }
+
+    /**
+     * 压缩为一个完整的 gzip member
+     */
+    private static byte[] compress(byte[] data, int length) {
+        ByteArrayOutputStream member = new ByteArrayOutputStream(length / 2 + 64);
+        member.write(MEMBER_HEADER, 0, MEMBER_HEADER.length);
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        try {
+            deflater.setInput(data, 0, length);
+            deflater.finish();
+            byte[] buffer = new byte[ConfigConstant.DEFAULT_COMPRESS_BUFFER_SIZE];
+            while (!deflater.finished()) {
+                int n = deflater.deflate(buffer);
+                member.write(buffer, 0, n);
+            }
+        } finally {
+            deflater.end();
+        }
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, length);
+        writeIntLittleEndian((int) crc.getValue(), member);
+        writeIntLittleEndian(length, member);
+        return member.toByteArray();
+    }
+
+    private static void writeIntLittleEndian(int value, ByteArrayOutputStream out) {
+        out.write(value);
+        out.write(value >>> 8);
+        out.write(value >>> 16);
+        out.write(value >>> 24);
+    }
+}
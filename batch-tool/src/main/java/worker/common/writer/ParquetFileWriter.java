@@ -0,0 +1,420 @@
+/*
+ * Copyright [2013-2021], Alibaba Group Holding Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package worker.common.writer;
+
+import model.config.GlobalVar;
+import model.db.FieldMetaInfo;
+import util.IOUtil;
+import worker.common.parquet.ParquetMetadata;
+import worker.common.parquet.RleHybridCodec;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static worker.common.parquet.ParquetMetadata.CONVERTED_TYPE_DATE;
+import static worker.common.parquet.ParquetMetadata.CONVERTED_TYPE_TIMESTAMP_MICROS;
+import static worker.common.parquet.ParquetMetadata.CONVERTED_TYPE_UINT_64;
+import static worker.common.parquet.ParquetMetadata.CONVERTED_TYPE_UTF8;
+import static worker.common.parquet.ParquetMetadata.ENCODING_PLAIN;
+import static worker.common.parquet.ParquetMetadata.ENCODING_PLAIN_DICTIONARY;
+import static worker.common.parquet.ParquetMetadata.ENCODING_RLE;
+import static worker.common.parquet.ParquetMetadata.PAGE_TYPE_DATA;
+import static worker.common.parquet.ParquetMetadata.PAGE_TYPE_DICTIONARY;
+import static worker.common.parquet.ParquetMetadata.TYPE_BYTE_ARRAY;
+import static worker.common.parquet.ParquetMetadata.TYPE_DOUBLE;
+import static worker.common.parquet.ParquetMetadata.TYPE_FLOAT;
+import static worker.common.parquet.ParquetMetadata.TYPE_INT32;
+import static worker.common.parquet.ParquetMetadata.TYPE_INT64;
+
+/**
+ * parquet 列存格式
+ * 按行缓存 累计到行组大小后按列编码写出
+ * 每个列块包含可选的字典页与一个数据页 页数据不压缩
+ * 所有字段均为 OPTIONAL 整数映射为 INT64 bigint unsigned 映射为 UINT_64
+ * float 与 double 映射为 FLOAT 与 DOUBLE
+ * date 映射为 DATE datetime 与 timestamp 按 UTC 映射为 TIMESTAMP_MICROS
+ * decimal 等其余类型均为 BYTE_ARRAY 以免丢失精度
+ */
+@NotThreadSafe
+public class ParquetFileWriter implements IFileWriter {
+
+    /**
+     * 字典超过以下限制时退回 PLAIN 编码
+     */
+    private static final int MAX_DICTIONARY_SIZE = 64 * 1024;
+    private static final int MAX_DICTIONARY_BYTES = 1024 * 1024;
+
+    /**
+     * 估算缓存字节数时每个值的额外开销
+     */
+    private static final int VALUE_OVERHEAD = 8;
+
+    private final List<ParquetMetadata.SchemaColumn> schema;
+    private final long rowGroupSize;
+
+    private FileChannel channel = null;
+    private long position;
+    private ParquetMetadata.FileMeta fileMeta;
+
+    private List<String[]> bufferedRows = new ArrayList<>();
+    private long bufferedBytes = 0;
+
+    public ParquetFileWriter(List<FieldMetaInfo> fieldMetaInfoList) {
+        this(fieldMetaInfoList, GlobalVar.DEFAULT_PARQUET_ROW_GROUP_SIZE);
+    }
+
+    /**
+     * @param rowGroupSize 每个行组缓存的估算字节数
+     */
+    public ParquetFileWriter(List<FieldMetaInfo> fieldMetaInfoList, long rowGroupSize) {
+        this.schema = new ArrayList<>(fieldMetaInfoList.size());
+        for (FieldMetaInfo fieldMetaInfo : fieldMetaInfoList) {
+            ParquetMetadata.SchemaColumn column = new ParquetMetadata.SchemaColumn();
+            column.name = fieldMetaInfo.getName();
+            setColumnType(column, fieldMetaInfo);
+            schema.add(column);
+        }
+        this.rowGroupSize = rowGroupSize;
+    }
+
+    private static void setColumnType(ParquetMetadata.SchemaColumn column, FieldMetaInfo fieldMetaInfo) {
+        switch (fieldMetaInfo.getType()) {
+        case INT:
+            column.type = TYPE_INT64;
+            if (fieldMetaInfo.isUnsigned() && "bigint".equals(fieldMetaInfo.getDataType())) {
+                // 超过 Long.MAX_VALUE 的值按无符号存储
+                column.convertedType = CONVERTED_TYPE_UINT_64;
+            }
+            return;
+        case OTHER:
+            // 可能为二进制数据
+            column.type = TYPE_BYTE_ARRAY;
+            return;
+        default:
+            break;
+        }
+        String dataType = fieldMetaInfo.getDataType();
+        if ("float".equals(dataType)) {
+            column.type = TYPE_FLOAT;
+        } else if ("double".equals(dataType)) {
+            column.type = TYPE_DOUBLE;
+        } else if ("date".equals(dataType)) {
+            column.type = TYPE_INT32;
+            column.convertedType = CONVERTED_TYPE_DATE;
+        } else if ("datetime".equals(dataType) || "timestamp".equals(dataType)) {
+            column.type = TYPE_INT64;
+            column.convertedType = CONVERTED_TYPE_TIMESTAMP_MICROS;
+        } else {
+            // decimal 也按字符串保存 避免丢失精度
+            column.type = TYPE_BYTE_ARRAY;
+            column.convertedType = CONVERTED_TYPE_UTF8;
+        }
+    }
+
+    @Override
+    public void nextFile(String fileName) {
+        closeCurFile();
+        this.channel = IOUtil.createEmptyFileAndOpenChannel(fileName);
+        this.position = 0;
+        this.fileMeta = new ParquetMetadata.FileMeta();
+        fileMeta.columns = schema;
+        writeToChannel(ParquetMetadata.MAGIC);
+    }
+
+    /**
+     * @param values 空值为 null
+     */
+    @Override
+    public void writeLine(String[] values) {
+        if (values.length != schema.size()) {
+            throw new IllegalArgumentException(String.format("Expected %d values, got %d",
+                schema.size(), values.length));
+        }
+        bufferedRows.add(values);
+        for (String value : values) {
+            bufferedBytes += (value == null ? 0 : value.length()) + VALUE_OVERHEAD;
+        }
+        if (bufferedBytes >= rowGroupSize) {
+            flushRowGroup();
+        }
+    }
+
+    @Override
+    public boolean produceByBlock() {
+        return false;
+    }
+
+    @Override
+    public void close() {
+        closeCurFile();
+    }
+
+    private void closeCurFile() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            flushRowGroup();
+            byte[] footer = ParquetMetadata.serializeFileMeta(fileMeta);
+            writeToChannel(footer);
+            writeToChannel(ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN)
+                .putInt(footer.length).array());
+            writeToChannel(ParquetMetadata.MAGIC);
+        } finally {
+            IOUtil.close(channel);
+            this.channel = null;
+        }
+    }
+
+    private void flushRowGroup() {
+        if (bufferedRows.isEmpty()) {
+            return;
+        }
+        ParquetMetadata.RowGroup rowGroup = new ParquetMetadata.RowGroup();
+        rowGroup.numRows = bufferedRows.size();
+        for (int i = 0; i < schema.size(); i++) {
+            ParquetMetadata.ColumnChunk columnChunk = writeColumnChunk(i);
+            rowGroup.totalByteSize += columnChunk.totalSize;
+            rowGroup.columns.add(columnChunk);
+        }
+        fileMeta.rowGroups.add(rowGroup);
+        fileMeta.numRows += rowGroup.numRows;
+        this.bufferedRows = new ArrayList<>();
+        this.bufferedBytes = 0;
+    }
+
+    private ParquetMetadata.ColumnChunk writeColumnChunk(int columnIndex) {
+        ParquetMetadata.SchemaColumn column = schema.get(columnIndex);
+        int rowCount = bufferedRows.size();
+        int[] defLevels = new int[rowCount];
+        List<Object> nonNullValues = new ArrayList<>(rowCount);
+        for (int row = 0; row < rowCount; row++) {
+            String value = bufferedRows.get(row)[columnIndex];
+            if (value == null) {
+                continue;
+            }
+            defLevels[row] = 1;
+            nonNullValues.add(parseValue(column, value));
+        }
+
+        ParquetMetadata.ColumnChunk columnChunk = new ParquetMetadata.ColumnChunk();
+        columnChunk.type = column.type;
+        columnChunk.name = column.name;
+        columnChunk.numValues = rowCount;
+        long startPosition = position;
+
+        // 先尝试字典编码
+        Map<Object, Integer> dictionary = new HashMap<>();
+        List<Object> dictionaryValues = new ArrayList<>();
+        int[] indices = new int[nonNullValues.size()];
+        long dictionaryBytes = 0;
+        boolean useDictionary = !nonNullValues.isEmpty();
+        for (int i = 0; i < indices.length && useDictionary; i++) {
+            Object value = nonNullValues.get(i);
+            Integer index = dictionary.get(value);
+            if (index == null) {
+                index = dictionaryValues.size();
+                dictionary.put(value, index);
+                dictionaryValues.add(value);
+                dictionaryBytes += getPlainLength(value);
+                useDictionary = dictionaryValues.size() <= MAX_DICTIONARY_SIZE
+                    && dictionaryBytes <= MAX_DICTIONARY_BYTES;
+            }
+            indices[i] = index;
+        }
+
+        ByteArrayOutputStream pageData = new ByteArrayOutputStream();
+        writeDefinitionLevels(defLevels, pageData);
+        if (useDictionary) {
+            ByteArrayOutputStream dictionaryData = new ByteArrayOutputStream();
+            for (Object value : dictionaryValues) {
+                writePlain(value, dictionaryData);
+            }
+            columnChunk.dictionaryPageOffset = position;
+            writePage(PAGE_TYPE_DICTIONARY, ENCODING_PLAIN_DICTIONARY, dictionaryValues.size(), dictionaryData);
+
+            int bitWidth = RleHybridCodec.getBitWidth(dictionaryValues.size() - 1);
+            pageData.write(bitWidth);
+            RleHybridCodec.encode(indices, indices.length, bitWidth, pageData);
+            columnChunk.dataPageOffset = position;
+            writePage(PAGE_TYPE_DATA, ENCODING_PLAIN_DICTIONARY, rowCount, pageData);
+            columnChunk.encodings.add(ENCODING_PLAIN_DICTIONARY);
+        } else {
+            for (Object value : nonNullValues) {
+                writePlain(value, pageData);
+            }
+            columnChunk.dataPageOffset = position;
+            writePage(PAGE_TYPE_DATA, ENCODING_PLAIN, rowCount, pageData);
+            columnChunk.encodings.add(ENCODING_PLAIN);
+        }
+        columnChunk.encodings.add(ENCODING_RLE);
+        columnChunk.totalSize = position - startPosition;
+        return columnChunk;
+    }
+
+    private static Object parseValue(ParquetMetadata.SchemaColumn column, String value) {
+        try {
+            switch (column.type) {
+            case TYPE_INT32:
+                // 仅用于 DATE
+                return (int) LocalDate.parse(value).toEpochDay();
+            case TYPE_INT64:
+                if (column.convertedType == CONVERTED_TYPE_TIMESTAMP_MICROS) {
+                    LocalDateTime dateTime = LocalDateTime.parse(value.replace(' ', 'T'));
+                    return dateTime.toEpochSecond(ZoneOffset.UTC) * 1000_000L + dateTime.getNano() / 1000;
+                }
+                if (column.convertedType == CONVERTED_TYPE_UINT_64) {
+                    return Long.parseUnsignedLong(value);
+                }
+                return Long.parseLong(value);
+            case TYPE_FLOAT:
+                return Float.parseFloat(value);
+            case TYPE_DOUBLE:
+                return Double.parseDouble(value);
+            default:
+                return new ByteArrayKey(value.getBytes(StandardCharsets.UTF_8));
+            }
+        } catch (NumberFormatException | DateTimeParseException e) {
+            throw new IllegalArgumentException(String.format("Column %s value %s is not a valid %s",
+                column.name, value, getTypeName(column)));
+        }
+    }
+
+    private static String getTypeName(ParquetMetadata.SchemaColumn column) {
+        switch (column.type) {
+        case TYPE_INT32:
+            return "DATE";
+        case TYPE_INT64:
+            if (column.convertedType == CONVERTED_TYPE_TIMESTAMP_MICROS) {
+                return "TIMESTAMP";
+            }
+            return column.convertedType == CONVERTED_TYPE_UINT_64 ? "UINT64" : "INT64";
+        case TYPE_FLOAT:
+            return "FLOAT";
+        case TYPE_DOUBLE:
+            return "DOUBLE";
+        default:
+            return "BYTE_ARRAY";
+        }
+    }
+
+    private static int getPlainLength(Object value) {
+        if (value instanceof Integer || value instanceof Float) {
+            return 4;
+        }
+        if (value instanceof Long || value instanceof Double) {
+            return 8;
+        }
+        return 4 + ((ByteArrayKey) value).bytes.length;
+    }
+
+    private static void writePlain(Object value, ByteArrayOutputStream out) {
+        if (value instanceof Integer) {
+            writeIntLittleEndian((Integer) value, out);
+        } else if (value instanceof Float) {
+            writeIntLittleEndian(Float.floatToIntBits((Float) value), out);
+        } else if (value instanceof Long) {
+            writeLongLittleEndian((Long) value, out);
+        } else if (value instanceof Double) {
+            writeLongLittleEndian(Double.doubleToLongBits((Double) value), out);
+        } else {
+            byte[] bytes = ((ByteArrayKey) value).bytes;
+            writeIntLittleEndian(bytes.length, out);
+            out.write(bytes, 0, bytes.length);
+        }
+    }
+
+    /**
+     * 定义级别前带 4 字节长度
+     */
+    private static void writeDefinitionLevels(int[] defLevels, ByteArrayOutputStream out) {
+        ByteArrayOutputStream levels = new ByteArrayOutputStream();
+        RleHybridCodec.encode(defLevels, defLevels.length, 1, levels);
+        writeIntLittleEndian(levels.size(), out);
+        out.write(levels.toByteArray(), 0, levels.size());
+    }
+
+    private static void writeIntLittleEndian(int value, ByteArrayOutputStream out) {
+        out.write(value);
+        out.write(value >>> 8);
+        out.write(value >>> 16);
+        out.write(value >>> 24);
+    }
+
+    private static void writeLongLittleEndian(long value, ByteArrayOutputStream out) {
+        for (int i = 0; i < 8; i++) {
+            out.write((int) (value >>> (8 * i)));
+        }
+    }
+
+    private void writePage(int pageType, int encoding, int numValues, ByteArrayOutputStream data) {
+        ParquetMetadata.PageHeader pageHeader = new ParquetMetadata.PageHeader();
+        pageHeader.type = pageType;
+        pageHeader.encoding = encoding;
+        pageHeader.numValues = numValues;
+        pageHeader.uncompressedSize = data.size();
+        pageHeader.compressedSize = data.size();
+        writeToChannel(ParquetMetadata.serializePageHeader(pageHeader));
+        writeToChannel(data.toByteArray());
+    }
+
+    private void writeToChannel(byte[] data) {
+        try {
+            IOUtil.writeNio(channel, data);
+        } catch (IOException e) {
+            e.printStackTrace();
+            throw new RuntimeException(e);
+        }
+        position += data.length;
+    }
+
+    /**
+     * 字节数组本身不能作为字典的键
+     */
+    private static class ByteArrayKey {
+        private final byte[] bytes;
+
+        private ByteArrayKey(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof ByteArrayKey && Arrays.equals(bytes, ((ByteArrayKey) o).bytes);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(bytes);
+        }
+    }
+}
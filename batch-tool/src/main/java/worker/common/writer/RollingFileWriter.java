@@ -0,0 +1,134 @@
+/*
+ * Copyright [2013-2021], Alibaba Group Holding Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package worker.common.writer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.nio.ByteBuffer;
+import java.util.function.IntFunction;
+
+/**
+ * 按文件大小滚动写入
+ * 每次写入的数据均为完整的若干行 因此只在两次写入之间切换文件
+ * 大小按落盘后的字节数计算 压缩与加密后同样有效
+ * 压缩时在途的块尚未落盘 可能超出限制时先全部落盘再按实际大小判断
+ * 因此除单次写入本身超出限制外 文件不会超出限制
+ */
+@NotThreadSafe
+public class RollingFileWriter implements IFileWriter {
+    private static final Logger logger = LoggerFactory.getLogger(RollingFileWriter.class);
+
+    private final IFileWriter delegate;
+    private final long maxFileBytes;
+    /**
+     * 根据文件序号生成文件名
+     */
+    private final IntFunction<String> fileNameGenerator;
+    /**
+     * 每个文件开头的字段名 可为空
+     */
+    private final byte[] header;
+
+    private int curFileSeq = 0;
+    private String curFileName;
+    /**
+     * 当前文件是否已写入数据行
+     * 保证单次写入超出限制时也不会产生空文件
+     */
+    private boolean hasData = false;
+
+    public RollingFileWriter(IFileWriter delegate, long maxFileBytes,
+                             IntFunction<String> fileNameGenerator, byte[] header) {
+        if (!delegate.produceByBlock()) {
+            throw new IllegalArgumentException(delegate.getClass() + " does not support write raw bytes");
+        }
+        this.delegate = delegate;
+        this.maxFileBytes = maxFileBytes;
+        this.fileNameGenerator = fileNameGenerator;
+        this.header = header;
+    }
+
+    @Override
+    public void nextFile(String fileName) {
+        delegate.nextFile(fileName);
+        this.curFileName = fileName;
+        this.hasData = false;
+        if (header != null) {
+            delegate.write(header);
+        }
+    }
+
+    @Override
+    public void write(byte[] data) {
+        rollIfNeeded(data.length);
+        delegate.write(data);
+        hasData = true;
+    }
+
+    @Override
+    public void write(ByteBuffer data) {
+        rollIfNeeded(data.remaining());
+        delegate.write(data);
+        hasData = true;
+    }
+
+    private void rollIfNeeded(int length) {
+        if (!hasData) {
+            return;
+        }
+        if (delegate.getMaxFileSizeAfterWrite(length) <= maxFileBytes) {
+            return;
+        }
+        // 接近限制时才落盘 其余时候不影响并行压缩
+        delegate.flush();
+        if (delegate.getMaxFileSizeAfterWrite(length) <= maxFileBytes) {
+            return;
+        }
+        long curFileSize = delegate.getCurrentFileSize();
+        String nextFileName = fileNameGenerator.apply(++curFileSeq);
+        logger.info("文件 {} 已写入 {} 字节, 切换至 {}", curFileName, curFileSize, nextFileName);
+        nextFile(nextFileName);
+    }
+
+    @Override
+    public boolean produceByBlock() {
+        return true;
+    }
+
+    @Override
+    public long getCurrentFileSize() {
+        return delegate.getCurrentFileSize();
+    }
+
+    @Override
+    public long getMaxFileSizeAfterWrite(int length) {
+        return delegate.getMaxFileSizeAfterWrite(length);
+    }
+
+    @Override
+    public void flush() {
+        delegate.flush();
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright [2013-2021], Alibaba Group Holding Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package worker.common.writer;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * 多个工作线程共同写入同一个文件
+ * 每次写入互斥 写入的数据需为完整的行
+ * 由最后一个关闭的使用者关闭实际的文件
+ */
+@ThreadSafe
+public class SharedFileWriter implements IFileWriter {
+
+    private final IFileWriter delegate;
+    private final AtomicInteger refCount;
+
+    /**
+     * @param refCount 共享该文件的使用者数量
+     */
+    public SharedFileWriter(IFileWriter delegate, int refCount) {
+        if (refCount <= 0) {
+            throw new IllegalArgumentException("Reference count should be > 0");
+        }
+        this.delegate = delegate;
+        this.refCount = new AtomicInteger(refCount);
+    }
+
+    /**
+     * 共享的文件由创建者打开 使用者不能切换文件
+     */
+    @Override
+    public void nextFile(String fileName) {
+        throw new UnsupportedOperationException("Cannot switch file of a shared writer");
+    }
+
+    @Override
+    public synchronized void write(byte[] data) {
+        delegate.write(data);
+    }
+
+    @Override
+    public synchronized void write(ByteBuffer data) {
+        delegate.write(data);
+    }
+
+    @Override
+    public synchronized void writeAndRelease(ByteBuffer data, Consumer<ByteBuffer> release) {
+        delegate.writeAndRelease(data, release);
+    }
+
+    @Override
+    public synchronized void writeLine(String[] values) {
+        delegate.writeLine(values);
+    }
+
+    @Override
+    public boolean produceByBlock() {
+        return delegate.produceByBlock();
+    }
+
+    @Override
+    public void close() {
+        if (refCount.decrementAndGet() == 0) {
+            synchronized (this) {
+                delegate.close();
+            }
+        }
+    }
+}
@@ -16,55 +16,144 @@
 
 package worker.common.writer;
 
-import org.apache.commons.io.FileUtils;
-import org.apache.poi.ss.usermodel.Cell;
-import org.apache.poi.ss.usermodel.Row;
-import org.apache.poi.ss.usermodel.Sheet;
-import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import model.config.ConfigConstant;
+import model.db.FieldMetaInfo;
 import util.IOUtil;
+import worker.NamedThreadFactory;
+import worker.common.xlsx.XlsxRowEncoder;
+import worker.common.xlsx.ZipStreamWriter;
 
+import javax.annotation.concurrent.NotThreadSafe;
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
 
 /**
  * Excel的xlsx表格
  * 或 WPS的et表格
+ * 直接流式写出 zip 容器 各工作表按行分块 在线程池中并行编码为 xml 并压缩
+ * 写入线程只负责按顺序计算校验和与落盘
+ * 超过单个工作表的行数上限时在同一文件中新建工作表 开启 header 时每个工作表首行均为字段名
  */
+@NotThreadSafe
 public class XlsxFileWriter implements IFileWriter {
 
-    private SXSSFWorkbook wb;
-    private OutputStream outputStream;
+    /**
+     * Excel 单个工作表的最大行数
+     */
+    public static final int MAX_ROWS_PER_SHEET = 1048576;
 
-    private Sheet sheet;
+    /**
+     * 每块的行数
+     * 块之间不共享压缩字典
+     */
+    private static final int CHUNK_ROWS = 4096;
 
-    private int curLine = 0;
+    /**
+     * 所有文件共用的编码线程池
+     * 队列满时由写入线程自行编码 以此限制在途的数据量
+     */
+    private static final ExecutorService ENCODE_EXECUTOR = new ThreadPoolExecutor(
+        ConfigConstant.CPU_NUM, ConfigConstant.CPU_NUM,
+        0L, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<>(ConfigConstant.CPU_NUM * 2),
+        new NamedThreadFactory("xlsx", true),
+        new ThreadPoolExecutor.CallerRunsPolicy());
+
+    private static final String SHEET_HEADER = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n"
+        + "<worksheet xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\"><sheetData>";
+    private static final String SHEET_FOOTER = "</sheetData></worksheet>";
+
+    private final FieldMetaInfo.Type[] types;
+    /**
+     * 为 null 时不写入字段名
+     */
+    private final String[] headerValues;
+    private final int maxRowsPerSheet;
+    /**
+     * 每个文件最多同时在途的块数
+     */
+    private final int maxPendingChunks;
+
+    private OutputStream outputStream = null;
+    private ZipStreamWriter zipWriter;
+    private int sheetCount;
+    private boolean isSheetOpen;
+    /**
+     * 当前工作表已写入的行数 含字段名
+     */
+    private int sheetRowCount;
+    private final CRC32 sheetCrc = new CRC32();
+    private long sheetSize;
+
+    private List<String[]> chunkRows = new ArrayList<>(CHUNK_ROWS);
+    private int chunkStartRowNum;
+    private String chunkPrefix;
+    private final Deque<Future<EncodedChunk>> pendingChunks = new ArrayDeque<>();
+
+    /**
+     * @param headerValues 为 null 时不写入字段名
+     */
+    public XlsxFileWriter(List<FieldMetaInfo> fieldMetaInfoList, String[] headerValues) {
+        this(fieldMetaInfoList, headerValues, MAX_ROWS_PER_SHEET);
+    }
+
+    public XlsxFileWriter(List<FieldMetaInfo> fieldMetaInfoList, String[] headerValues, int maxRowsPerSheet) {
+        this.types = fieldMetaInfoList.stream().map(FieldMetaInfo::getType).toArray(FieldMetaInfo.Type[]::new);
+        this.headerValues = headerValues;
+        if (maxRowsPerSheet <= (headerValues == null ? 0 : 1)) {
+            throw new IllegalArgumentException("Illegal max rows per sheet: " + maxRowsPerSheet);
+        }
+        this.maxRowsPerSheet = maxRowsPerSheet;
+        this.maxPendingChunks = ConfigConstant.CPU_NUM * 2;
+    }
 
     @Override
     public void nextFile(String fileName) {
-        // streaming write XLSX
-        this.wb = new SXSSFWorkbook();
-        this.wb.setCompressTempFiles(true);
-        this.sheet = wb.createSheet();
-
+        closeCurFile();
         File file = new File(fileName);
-        FileUtils.deleteQuietly(file);
         try {
-            outputStream = new BufferedOutputStream(new FileOutputStream(file.getAbsolutePath()), 32 * 1024);
+            outputStream = new BufferedOutputStream(new FileOutputStream(file.getAbsolutePath()), 256 * 1024);
         } catch (IOException e) {
             throw new RuntimeException(e.getMessage());
         }
+        zipWriter = new ZipStreamWriter(outputStream);
+        sheetCount = 0;
+        isSheetOpen = false;
     }
 
     @Override
     public void writeLine(String[] values) {
-        Row row = sheet.createRow(curLine++);
-        for (int i = 0; i < values.length; i++) {
-            String value = values[i];
-            Cell cell = row.createCell(i);
-            cell.setCellValue(value);
+        try {
+            if (!isSheetOpen) {
+                beginSheet();
+            } else if (sheetRowCount == maxRowsPerSheet) {
+                endSheet();
+                beginSheet();
+            }
+            chunkRows.add(values);
+            sheetRowCount++;
+            if (chunkRows.size() == CHUNK_ROWS) {
+                submitChunk(false);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e.getMessage(), e);
         }
     }
 
@@ -75,14 +164,217 @@ public class XlsxFileWriter implements IFileWriter {
 
     @Override
     public void close() {
+        closeCurFile();
+    }
+
+    private void closeCurFile() {
+        if (outputStream == null) {
+            return;
+        }
         try {
-            wb.write(outputStream);
+            if (!isSheetOpen && sheetCount == 0) {
+                // 没有数据时也保留一个工作表
+                beginSheet();
+            }
+            if (isSheetOpen) {
+                endSheet();
+            }
+            writeWorkbookParts();
+            zipWriter.finish();
         } catch (IOException e) {
-            throw new RuntimeException(e.getMessage());
+            throw new RuntimeException(e.getMessage(), e);
+        } finally {
+            pendingChunks.forEach(future -> future.cancel(false));
+            pendingChunks.clear();
+            IOUtil.close(outputStream);
+            outputStream = null;
+            zipWriter = null;
+        }
+    }
+
+    private void beginSheet() throws IOException {
+        sheetCount++;
+        zipWriter.beginEntry("xl/worksheets/sheet" + sheetCount + ".xml");
+        isSheetOpen = true;
+        sheetRowCount = 0;
+        sheetCrc.reset();
+        sheetSize = 0;
+        chunkStartRowNum = 1;
+        StringBuilder prefix = new StringBuilder(SHEET_HEADER);
+        if (headerValues != null) {
+            XlsxRowEncoder.appendStringRow(prefix, 1, headerValues);
+            sheetRowCount = 1;
+            chunkStartRowNum = 2;
+        }
+        chunkPrefix = prefix.toString();
+    }
+
+    private void endSheet() throws IOException {
+        submitChunk(true);
+        while (!pendingChunks.isEmpty()) {
+            writeFirstPendingChunk();
+        }
+        zipWriter.endEntry(sheetCrc.getValue(), sheetSize);
+        isSheetOpen = false;
+    }
+
+    /**
+     * @param isLast 是否为当前工作表的最后一块 最后一块结束压缩流
+     */
+    private void submitChunk(boolean isLast) throws IOException {
+        final List<String[]> rows = chunkRows;
+        final int startRowNum = chunkStartRowNum;
+        final String prefix = chunkPrefix;
+        final String suffix = isLast ? SHEET_FOOTER : null;
+        pendingChunks.add(ENCODE_EXECUTOR.submit(() -> encode(rows, startRowNum, prefix, suffix, types)));
+        chunkStartRowNum += rows.size();
+        chunkRows = new ArrayList<>(CHUNK_ROWS);
+        chunkPrefix = null;
+        while (pendingChunks.size() > maxPendingChunks) {
+            writeFirstPendingChunk();
+        }
+    }
+
+    private void writeFirstPendingChunk() throws IOException {
+        Future<EncodedChunk> future = pendingChunks.poll();
+        EncodedChunk chunk;
+        try {
+            chunk = future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to encode rows", e.getCause());
+        }
+        sheetCrc.update(chunk.xml, 0, chunk.xml.length);
+        sheetSize += chunk.xml.length;
+        zipWriter.writeDeflated(chunk.deflated, 0, chunk.deflated.length);
+    }
+
+    /**
+     * 编码为 xml 并压缩为 raw deflate 数据
+     * 非最后一块以 SYNC_FLUSH 结束 多块按顺序拼接后仍是一个完整的压缩流
+     */
+    private static EncodedChunk encode(List<String[]> rows, int startRowNum, String prefix, String suffix,
+                                       FieldMetaInfo.Type[] types) {
+        StringBuilder sb = new StringBuilder(rows.size() * types.length * 16 + 256);
+        if (prefix != null) {
+            sb.append(prefix);
+        }
+        int rowNum = startRowNum;
+        for (String[] values : rows) {
+            XlsxRowEncoder.appendRow(sb, rowNum++, values, types);
+        }
+        if (suffix != null) {
+            sb.append(suffix);
+        }
+        byte[] xml = sb.toString().getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream deflated = new ByteArrayOutputStream(xml.length / 4 + 64);
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        try {
+            deflater.setInput(xml);
+            byte[] buffer = new byte[ConfigConstant.DEFAULT_COMPRESS_BUFFER_SIZE];
+            if (suffix != null) {
+                deflater.finish();
+                while (!deflater.finished()) {
+                    int n = deflater.deflate(buffer);
+                    deflated.write(buffer, 0, n);
+                }
+            } else {
+                int n;
+                do {
+                    n = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+                    deflated.write(buffer, 0, n);
+                } while (n == buffer.length);
+            }
+        } finally {
+            deflater.end();
+        }
+        return new EncodedChunk(xml, deflated.toByteArray());
+    }
+
+    private void writeWorkbookParts() throws IOException {
+        StringBuilder contentTypes = new StringBuilder(1024);
+        contentTypes.append("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n")
+            .append("<Types xmlns=\"http://schemas.openxmlformats.org/package/2006/content-types\">")
+            .append("<Default Extension=\"rels\" ")
+            .append("ContentType=\"application/vnd.openxmlformats-package.relationships+xml\"/>")
+            .append("<Default Extension=\"xml\" ContentType=\"application/xml\"/>")
+            .append("<Override PartName=\"/xl/workbook.xml\" ContentType=\"application/")
+            .append("vnd.openxmlformats-officedocument.spreadsheetml.sheet.main+xml\"/>")
+            .append("<Override PartName=\"/xl/styles.xml\" ContentType=\"application/")
+            .append("vnd.openxmlformats-officedocument.spreadsheetml.styles+xml\"/>");
+        for (int i = 1; i <= sheetCount; i++) {
+            contentTypes.append("<Override PartName=\"/xl/worksheets/sheet").append(i)
+                .append(".xml\" ContentType=\"application/")
+                .append("vnd.openxmlformats-officedocument.spreadsheetml.worksheet+xml\"/>");
+        }
+        contentTypes.append("</Types>");
+        writeXmlEntry("[Content_Types].xml", contentTypes);
+
+        writeXmlEntry("_rels/.rels", new StringBuilder()
+            .append("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n")
+            .append("<Relationships xmlns=\"http://schemas.openxmlformats.org/package/2006/relationships\">")
+            .append("<Relationship Id=\"rId1\" Type=\"http://schemas.openxmlformats.org/officeDocument/")
+            .append("2006/relationships/officeDocument\" Target=\"xl/workbook.xml\"/>")
+            .append("</Relationships>"));
+
+        StringBuilder workbook = new StringBuilder(512);
+        workbook.append("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n")
+            .append("<workbook xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\" ")
+            .append("xmlns:r=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships\"><sheets>");
+        for (int i = 1; i <= sheetCount; i++) {
+            workbook.append("<sheet name=\"Sheet").append(i).append("\" sheetId=\"").append(i)
+                .append("\" r:id=\"rId").append(i).append("\"/>");
+        }
+        workbook.append("</sheets></workbook>");
+        writeXmlEntry("xl/workbook.xml", workbook);
+
+        StringBuilder workbookRels = new StringBuilder(512);
+        workbookRels.append("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n")
+            .append("<Relationships xmlns=\"http://schemas.openxmlformats.org/package/2006/relationships\">");
+        for (int i = 1; i <= sheetCount; i++) {
+            workbookRels.append("<Relationship Id=\"rId").append(i)
+                .append("\" Type=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships/worksheet\"")
+                .append(" Target=\"worksheets/sheet").append(i).append(".xml\"/>");
+        }
+        workbookRels.append("<Relationship Id=\"rId").append(sheetCount + 1)
+            .append("\" Type=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships/styles\"")
+            .append(" Target=\"styles.xml\"/>")
+            .append("</Relationships>");
+        writeXmlEntry("xl/_rels/workbook.xml.rels", workbookRels);
+
+        // cellXfs 的序号与 XlsxRowEncoder 中的样式一致
+        writeXmlEntry("xl/styles.xml", new StringBuilder()
+            .append("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n")
+            .append("<styleSheet xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\">")
+            .append("<numFmts count=\"1\"><numFmt numFmtId=\"164\" formatCode=\"yyyy-mm-dd hh:mm:ss\"/></numFmts>")
+            .append("<fonts count=\"1\"><font><sz val=\"11\"/><name val=\"Calibri\"/></font></fonts>")
+            .append("<fills count=\"2\"><fill><patternFill patternType=\"none\"/></fill>")
+            .append("<fill><patternFill patternType=\"gray125\"/></fill></fills>")
+            .append("<borders count=\"1\"><border><left/><right/><top/><bottom/><diagonal/></border></borders>")
+            .append("<cellStyleXfs count=\"1\"><xf numFmtId=\"0\" fontId=\"0\" fillId=\"0\" borderId=\"0\"/>")
+            .append("</cellStyleXfs>")
+            .append("<cellXfs count=\"3\"><xf numFmtId=\"0\" fontId=\"0\" fillId=\"0\" borderId=\"0\" xfId=\"0\"/>")
+            .append("<xf numFmtId=\"14\" fontId=\"0\" fillId=\"0\" borderId=\"0\" xfId=\"0\" ")
+            .append("applyNumberFormat=\"1\"/>")
+            .append("<xf numFmtId=\"164\" fontId=\"0\" fillId=\"0\" borderId=\"0\" xfId=\"0\" ")
+            .append("applyNumberFormat=\"1\"/></cellXfs>")
+            .append("<cellStyles count=\"1\"><cellStyle name=\"Normal\" xfId=\"0\" builtinId=\"0\"/></cellStyles>")
+            .append("</styleSheet>"));
+    }
+
+    private void writeXmlEntry(String name, StringBuilder content) throws IOException {
+        zipWriter.writeEntry(name, content.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static class EncodedChunk {
+        final byte[] xml;
+        final byte[] deflated;
+
+        EncodedChunk(byte[] xml, byte[] deflated) {
+            this.xml = xml;
+            this.deflated = deflated;
         }
-        IOUtil.close(outputStream);
-        wb.dispose();
-        IOUtil.close(wb);
-        this.sheet = null;
     }
 }
@@ -0,0 +1,281 @@
+/*
+ * Copyright [2013-2021], Alibaba Group Holding Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package worker.common.xlsx;
+
+import model.db.FieldMetaInfo;
+import util.FileUtil;
+
+import java.time.DateTimeException;
+import java.time.LocalDate;
+
+/**
+ * 将数据行编码为 worksheet 中的 row 元素
+ * 整数、小数按数值写入 日期与时间按带格式的日期序列号写入
+ * 无法按类型写入的值 如超过 Excel 精度的数字 退回为内联字符串
+ * 空值写为内容为 \N 的字符串 空字符串写为空单元格 导入时据此区分
+ */
+public class XlsxRowEncoder {
+
+    /**
+     * Excel 数值的有效位数
+     */
+    private static final int MAX_NUMBER_DIGITS = 15;
+    /**
+     * 单元格最多字符数 超出部分截断
+     */
+    private static final int MAX_CELL_CHARS = 32767;
+    /**
+     * 1899-12-30 距 1970-01-01 的天数
+     * 从 1900-03-01 起日期序列号与实际日期一致
+     */
+    private static final long EXCEL_EPOCH_OFFSET_DAYS = 25569;
+    private static final int MIN_DATE_YEAR = 1901;
+    private static final int SECONDS_PER_DAY = 86400;
+
+    /**
+     * styles.xml 中 cellXfs 的序号
+     */
+    public static final int STYLE_DATE = 1;
+    public static final int STYLE_DATETIME = 2;
+
+    /**
+     * @param rowNum 从1开始的行号
+     */
+    public static void appendRow(StringBuilder sb, int rowNum, String[] values, FieldMetaInfo.Type[] types) {
+        sb.append("<row r=\"").append(rowNum).append("\">");
+        for (int i = 0; i < values.length; i++) {
+            appendCell(sb, values[i], types[i]);
+        }
+        sb.append("</row>");
+    }
+
+    /**
+     * 字段名等全部按字符串写入的行
+     */
+    public static void appendStringRow(StringBuilder sb, int rowNum, String[] values) {
+        sb.append("<row r=\"").append(rowNum).append("\">");
+        for (String value : values) {
+            appendStringCell(sb, value);
+        }
+        sb.append("</row>");
+    }
+
+    private static void appendCell(StringBuilder sb, String value, FieldMetaInfo.Type type) {
+        if (value == null) {
+            appendStringCell(sb, FileUtil.NULL_ESC_STR);
+            return;
+        }
+        switch (type) {
+        case INT:
+        case FLOAT:
+            if (isExcelNumber(value)) {
+                sb.append("<c><v>").append(value).append("</v></c>");
+                return;
+            }
+            break;
+        case DATE:
+        case DATETIME:
+            if (appendDateCell(sb, value)) {
+                return;
+            }
+            break;
+        default:
+            break;
+        }
+        appendStringCell(sb, value);
+    }
+
+    private static void appendStringCell(StringBuilder sb, String value) {
+        if (value.isEmpty()) {
+            sb.append("<c/>");
+            return;
+        }
+        sb.append("<c t=\"inlineStr\"><is><t");
+        if (Character.isWhitespace(value.charAt(0)) || Character.isWhitespace(value.charAt(value.length() - 1))) {
+            sb.append(" xml:space=\"preserve\"");
+        }
+        sb.append('>');
+        appendEscaped(sb, value);
+        sb.append("</t></is></c>");
+    }
+
+    private static void appendEscaped(StringBuilder sb, String value) {
+        int length = Math.min(value.length(), MAX_CELL_CHARS);
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            switch (c) {
+            case '&':
+                sb.append("&amp;");
+                break;
+            case '<':
+                sb.append("&lt;");
+                break;
+            case '>':
+                sb.append("&gt;");
+                break;
+            case '\t':
+            case '\n':
+            case '\r':
+                sb.append(c);
+                break;
+            default:
+                if (c >= 0x20 && c != 0xFFFE && c != 0xFFFF) {
+                    sb.append(c);
+                }
+                // xml 中不允许出现的控制字符直接丢弃
+            }
+        }
+    }
+
+    /**
+     * 形如 -123.45 或 1.5E10 且有效位数不超过 Excel 精度的数字
+     */
+    private static boolean isExcelNumber(String value) {
+        int length = value.length();
+        int i = 0;
+        if (i < length && (value.charAt(i) == '-' || value.charAt(i) == '+')) {
+            i++;
+        }
+        int digits = 0;
+        int intDigits = 0;
+        boolean leadingZero = true;
+        for (; i < length && isDigit(value.charAt(i)); i++, intDigits++) {
+            if (leadingZero && value.charAt(i) == '0') {
+                continue;
+            }
+            leadingZero = false;
+            digits++;
+        }
+        if (i < length && value.charAt(i) == '.') {
+            i++;
+            int fracDigits = 0;
+            for (; i < length && isDigit(value.charAt(i)); i++, fracDigits++) {
+                if (leadingZero && value.charAt(i) == '0') {
+                    continue;
+                }
+                leadingZero = false;
+                digits++;
+            }
+            if (fracDigits == 0 && intDigits == 0) {
+                return false;
+            }
+        } else if (intDigits == 0) {
+            return false;
+        }
+        if (i < length && (value.charAt(i) == 'e' || value.charAt(i) == 'E')) {
+            i++;
+            if (i < length && (value.charAt(i) == '-' || value.charAt(i) == '+')) {
+                i++;
+            }
+            int expStart = i;
+            for (; i < length && isDigit(value.charAt(i)); i++) {
+                if (i - expStart >= 3) {
+                    return false;
+                }
+            }
+            if (i == expStart) {
+                return false;
+            }
+        }
+        return i == length && digits <= MAX_NUMBER_DIGITS;
+    }
+
+    /**
+     * 写入 yyyy-MM-dd 或 yyyy-MM-dd HH:mm:ss[.SSS] 格式的日期
+     *
+     * @return 格式不符或超出 Excel 日期范围时返回 false
+     */
+    private static boolean appendDateCell(StringBuilder sb, String value) {
+        int length = value.length();
+        if (length < 10 || !isDatePart(value)) {
+            return false;
+        }
+        int year = parseDigits(value, 0, 4);
+        int month = parseDigits(value, 5, 2);
+        int day = parseDigits(value, 8, 2);
+        if (year < MIN_DATE_YEAR || month < 1 || month > 12 || day < 1 || day > 31) {
+            return false;
+        }
+        long epochDay;
+        try {
+            epochDay = LocalDate.of(year, month, day).toEpochDay();
+        } catch (DateTimeException e) {
+            return false;
+        }
+        long serialDay = epochDay + EXCEL_EPOCH_OFFSET_DAYS;
+        if (length == 10) {
+            sb.append("<c s=\"").append(STYLE_DATE).append("\"><v>").append(serialDay).append("</v></c>");
+            return true;
+        }
+        if (length < 19 || value.charAt(10) != ' ' || !isTimePart(value, 11)) {
+            return false;
+        }
+        int hour = parseDigits(value, 11, 2);
+        int minute = parseDigits(value, 14, 2);
+        int second = parseDigits(value, 17, 2);
+        if (hour > 23 || minute > 59 || second > 59) {
+            return false;
+        }
+        double fraction = 0;
+        if (length > 19) {
+            if (value.charAt(19) != '.' || length == 20) {
+                return false;
+            }
+            for (int i = 20; i < length; i++) {
+                if (!isDigit(value.charAt(i))) {
+                    return false;
+                }
+            }
+            fraction = Double.parseDouble(value.substring(19));
+        }
+        double seconds = hour * 3600 + minute * 60 + second + fraction;
+        sb.append("<c s=\"").append(STYLE_DATETIME).append("\"><v>")
+            .append(serialDay + seconds / SECONDS_PER_DAY).append("</v></c>");
+        return true;
+    }
+
+    private static boolean isDatePart(String value) {
+        return isDigits(value, 0, 4) && value.charAt(4) == '-'
+            && isDigits(value, 5, 2) && value.charAt(7) == '-' && isDigits(value, 8, 2);
+    }
+
+    private static boolean isTimePart(String value, int start) {
+        return isDigits(value, start, 2) && value.charAt(start + 2) == ':'
+            && isDigits(value, start + 3, 2) && value.charAt(start + 5) == ':' && isDigits(value, start + 6, 2);
+    }
+
+    private static boolean isDigits(String value, int start, int count) {
+        for (int i = start; i < start + count; i++) {
+            if (!isDigit(value.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int parseDigits(String value, int start, int count) {
+        int result = 0;
+        for (int i = start; i < start + count; i++) {
+            result = result * 10 + (value.charAt(i) - '0');
+        }
+        return result;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright [2013-2021], Alibaba Group Holding Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package worker.common.xlsx;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * 流式写出 zip 容器
+ * 条目数据为调用方压缩好的 raw deflate 数据 大小与校验和写在数据描述符中
+ * 因此条目可以边压缩边写出 无需临时文件
+ * 不支持 zip64 单个条目与整个文件均不能超过 4GB
+ */
+@NotThreadSafe
+public class ZipStreamWriter {
+
+    private static final int LOCAL_HEADER_SIG = 0x04034b50;
+    private static final int DATA_DESCRIPTOR_SIG = 0x08074b50;
+    private static final int CENTRAL_HEADER_SIG = 0x02014b50;
+    private static final int END_OF_CENTRAL_DIR_SIG = 0x06054b50;
+    private static final int VERSION = 20;
+    /**
+     * 使用数据描述符 文件名为 UTF-8
+     */
+    private static final int FLAGS = 0x0808;
+    private static final int METHOD_DEFLATED = 8;
+    private static final long MAX_ZIP32_VALUE = 0xFFFFFFFFL;
+
+    private final OutputStream out;
+    private final int dosTime;
+    private final List<Entry> entries = new ArrayList<>();
+    private final byte[] headerBuffer = new byte[46];
+
+    private long written = 0;
+    private Entry curEntry = null;
+
+    public ZipStreamWriter(OutputStream out) {
+        this.out = out;
+        this.dosTime = toDosTime(LocalDateTime.now());
+    }
+
+    /**
+     * 开始一个条目 之后通过 writeDeflated 写入压缩数据
+     */
+    public void beginEntry(String name) throws IOException {
+        if (curEntry != null) {
+            throw new IllegalStateException("Entry " + curEntry.name + " is not ended");
+        }
+        curEntry = new Entry(name.getBytes(StandardCharsets.UTF_8), written);
+        writeInt(headerBuffer, 0, LOCAL_HEADER_SIG);
+        writeShort(headerBuffer, 4, VERSION);
+        writeShort(headerBuffer, 6, FLAGS);
+        writeShort(headerBuffer, 8, METHOD_DEFLATED);
+        writeInt(headerBuffer, 10, dosTime);
+        // 校验和与大小写在数据描述符中
+        writeInt(headerBuffer, 14, 0);
+        writeInt(headerBuffer, 18, 0);
+        writeInt(headerBuffer, 22, 0);
+        writeShort(headerBuffer, 26, curEntry.name.length);
+        writeShort(headerBuffer, 28, 0);
+        write(headerBuffer, 0, 30);
+        write(curEntry.name, 0, curEntry.name.length);
+    }
+
+    /**
+     * 写入当前条目的一段 raw deflate 数据
+     */
+    public void writeDeflated(byte[] data, int offset, int length) throws IOException {
+        write(data, offset, length);
+    }
+
+    /**
+     * @param crc 压缩前数据的校验和
+     * @param size 压缩前数据的大小
+     */
+    public void endEntry(long crc, long size) throws IOException {
+        Entry entry = curEntry;
+        entry.crc = crc;
+        entry.size = size;
+        entry.compressedSize = written - entry.offset - 30 - entry.name.length;
+        if (size > MAX_ZIP32_VALUE || entry.compressedSize > MAX_ZIP32_VALUE) {
+            throw new IOException("Zip entry " + new String(entry.name, StandardCharsets.UTF_8)
+                + " exceeds 4GB");
+        }
+        writeInt(headerBuffer, 0, DATA_DESCRIPTOR_SIG);
+        writeInt(headerBuffer, 4, (int) crc);
+        writeInt(headerBuffer, 8, (int) entry.compressedSize);
+        writeInt(headerBuffer, 12, (int) size);
+        write(headerBuffer, 0, 16);
+        entries.add(entry);
+        curEntry = null;
+    }
+
+    /**
+     * 压缩并写入一个完整的小条目
+     */
+    public void writeEntry(String name, byte[] content) throws IOException {
+        beginEntry(name);
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        try {
+            deflater.setInput(content);
+            deflater.finish();
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                int n = deflater.deflate(buffer);
+                writeDeflated(buffer, 0, n);
+            }
+        } finally {
+            deflater.end();
+        }
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        endEntry(crc.getValue(), content.length);
+    }
+
+    /**
+     * 写出中央目录 不关闭底层输出流
+     */
+    public void finish() throws IOException {
+        if (curEntry != null) {
+            throw new IllegalStateException("Entry " + new String(curEntry.name, StandardCharsets.UTF_8)
+                + " is not ended");
+        }
+        long centralDirOffset = written;
+        for (Entry entry : entries) {
+            writeInt(headerBuffer, 0, CENTRAL_HEADER_SIG);
+            writeShort(headerBuffer, 4, VERSION);
+            writeShort(headerBuffer, 6, VERSION);
+            writeShort(headerBuffer, 8, FLAGS);
+            writeShort(headerBuffer, 10, METHOD_DEFLATED);
+            writeInt(headerBuffer, 12, dosTime);
+            writeInt(headerBuffer, 16, (int) entry.crc);
+            writeInt(headerBuffer, 20, (int) entry.compressedSize);
+            writeInt(headerBuffer, 24, (int) entry.size);
+            writeShort(headerBuffer, 28, entry.name.length);
+            // 扩展字段、注释长度、磁盘号、内部与外部属性
+            writeShort(headerBuffer, 30, 0);
+            writeShort(headerBuffer, 32, 0);
+            writeShort(headerBuffer, 34, 0);
+            writeShort(headerBuffer, 36, 0);
+            writeInt(headerBuffer, 38, 0);
+            writeInt(headerBuffer, 42, (int) entry.offset);
+            write(headerBuffer, 0, 46);
+            write(entry.name, 0, entry.name.length);
+        }
+        long centralDirSize = written - centralDirOffset;
+        if (written > MAX_ZIP32_VALUE || entries.size() > 0xFFFF) {
+            throw new IOException("Zip file exceeds 4GB or 65535 entries");
+        }
+        writeInt(headerBuffer, 0, END_OF_CENTRAL_DIR_SIG);
+        writeShort(headerBuffer, 4, 0);
+        writeShort(headerBuffer, 6, 0);
+        writeShort(headerBuffer, 8, entries.size());
+        writeShort(headerBuffer, 10, entries.size());
+        writeInt(headerBuffer, 12, (int) centralDirSize);
+        writeInt(headerBuffer, 16, (int) centralDirOffset);
+        writeShort(headerBuffer, 20, 0);
+        write(headerBuffer, 0, 22);
+        out.flush();
+    }
+
+    private void write(byte[] data, int offset, int length) throws IOException {
+        out.write(data, offset, length);
+        written += length;
+    }
+
+    private static void writeShort(byte[] buffer, int pos, int value) {
+        buffer[pos] = (byte) value;
+        buffer[pos + 1] = (byte) (value >>> 8);
+    }
+
+    private static void writeInt(byte[] buffer, int pos, int value) {
+        buffer[pos] = (byte) value;
+        buffer[pos + 1] = (byte) (value >>> 8);
+        buffer[pos + 2] = (byte) (value >>> 16);
+        buffer[pos + 3] = (byte) (value >>> 24);
+    }
+
+    private static int toDosTime(LocalDateTime time) {
+        return (time.getYear() - 1980) << 25 | time.getMonthValue() << 21 | time.getDayOfMonth() << 16
+            | time.getHour() << 11 | time.getMinute() << 5 | time.getSecond() >> 1;
+    }
+
+    private static class Entry {
+        final byte[] name;
+        final long offset;
+        long crc;
+        long size;
+        long compressedSize;
+
+        Entry(byte[] name, long offset) {
+            this.name = name;
+            this.offset = offset;
+        }
+    }
+}
@@ -21,6 +21,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import util.DbUtil;
 import util.IOUtil;
+import worker.MyThreadPool;
 
 import javax.sql.DataSource;
 import java.io.BufferedWriter;
@@ -28,12 +29,22 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import static model.config.ConfigConstant.DDL_FILE_SUFFIX;
 
+/**
+ * 导出建库建表语句
+ * 多个连接并发获取各表的建表语句 按表的顺序写入文件
+ */
 public class DdlExportWorker implements Runnable {
 
     private static final Logger logger = LoggerFactory.getLogger(DdlExportWorker.class);
@@ -47,6 +58,14 @@ public class DdlExportWorker implements Runnable {
      * 是否导出整个数据库与其中的所有表
      */
     private final boolean isExportWholeDb;
+    /**
+     * 并发获取建表语句的连接数
+     */
+    private int parallelism = 1;
+    /**
+     * 是否每张表单独写入一个文件
+     */
+    private boolean filePerTable = false;
 
     private static final Pattern DB_MODE_PATTERN = Pattern.compile("/\\* MODE = '(.*)' \\*/$");
 
@@ -70,10 +89,24 @@ public class DdlExportWorker implements Runnable {
         this.filename = dbName + DDL_FILE_SUFFIX;
     }
 
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * 每张表的建表语句写入 表名.ddl 可按表导入
+     * 导出整库时库结构仍写入 库名.ddl
+     */
+    public void setFilePerTable(boolean filePerTable) {
+        this.filePerTable = filePerTable;
+    }
+
     @Override
     public void run() {
         try {
-            beforeRun();
+            if (isExportWholeDb || !filePerTable) {
+                beforeRun();
+            }
             exportDdl();
         } catch (Throwable t) {
             t.printStackTrace();
@@ -84,13 +117,62 @@ public class DdlExportWorker implements Runnable {
     }
 
     private void exportDdl() throws Throwable {
-        try (Connection conn = druid.getConnection()) {
-            if (isExportWholeDb) {
+        if (isExportWholeDb) {
+            try (Connection conn = druid.getConnection()) {
                 logger.info("库：{} 开始导出库结构", dbName);
                 exportDatabaseStructure(conn, dbName);
             }
-            for (String tableName : tableNames) {
-                exportTableStructure(conn, tableName);
+        }
+        if (tableNames.isEmpty()) {
+            return;
+        }
+        int threadNum = Math.max(1, Math.min(parallelism, tableNames.size()));
+        logger.info("开始导出 {} 张表的表结构, 并发度 {}", tableNames.size(), threadNum);
+        List<CompletableFuture<String>> tableDdlList = new ArrayList<>(tableNames.size());
+        for (int i = 0; i < tableNames.size(); i++) {
+            tableDdlList.add(new CompletableFuture<>());
+        }
+        AtomicInteger nextTableIndex = new AtomicInteger(0);
+        AtomicBoolean isAborted = new AtomicBoolean(false);
+        ExecutorService executor = MyThreadPool.createFixedExecutor("DDL-exporter", threadNum);
+        for (int i = 0; i < threadNum; i++) {
+            executor.submit(() -> fetchTableDdl(tableDdlList, nextTableIndex, isAborted));
+        }
+        try {
+            // 按表的顺序等待并写入 输出与串行导出一致
+            for (int i = 0; i < tableNames.size(); i++) {
+                String tableDdl;
+                try {
+                    tableDdl = tableDdlList.get(i).get();
+                } catch (ExecutionException e) {
+                    throw e.getCause();
+                }
+                exportTableStructure(tableNames.get(i), tableDdl);
+            }
+        } finally {
+            isAborted.set(true);
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * 每个线程使用一个连接 依次领取下一张表
+     */
+    private void fetchTableDdl(List<CompletableFuture<String>> tableDdlList, AtomicInteger nextTableIndex,
+                               AtomicBoolean isAborted) {
+        int index;
+        try (Connection conn = druid.getConnection()) {
+            while (!isAborted.get() && (index = nextTableIndex.getAndIncrement()) < tableDdlList.size()) {
+                try {
+                    tableDdlList.get(index).complete(DbUtil.getShowCreateTable(conn, tableNames.get(index)));
+                } catch (DatabaseException e) {
+                    tableDdlList.get(index).completeExceptionally(e);
+                }
+            }
+        } catch (SQLException e) {
+            // 无法获取连接时 剩余的表均失败 避免写入线程一直等待
+            while ((index = nextTableIndex.getAndIncrement()) < tableDdlList.size()) {
+                tableDdlList.get(index).completeExceptionally(e);
             }
         }
     }
@@ -109,13 +191,23 @@ public class DdlExportWorker implements Runnable {
         writeLine("");
     }
 
-    private void exportTableStructure(Connection conn, String tableName) throws IOException, DatabaseException {
-        logger.info("表：{} 开始导出表结构", tableName);
+    private void exportTableStructure(String tableName, String tableDdl) throws IOException {
+        logger.info("表：{} 导出表结构", tableName);
+        if (!filePerTable) {
+            writeTableStructure(bufferedWriter, tableName, tableDdl);
+            return;
+        }
+        try (BufferedWriter tableWriter = new BufferedWriter(new FileWriter(tableName + DDL_FILE_SUFFIX))) {
+            writeTableStructure(tableWriter, tableName, tableDdl);
+        }
+    }
 
-        writeCommentForTable(tableName);
-        String tableDdl = DbUtil.getShowCreateTable(conn, tableName);
-        writeLine(tableDdl + ";");
-        writeLine("");
+    private void writeTableStructure(BufferedWriter writer, String tableName, String tableDdl) throws IOException {
+        writeLine(writer, "--");
+        writeLine(writer, "-- Table structure for table `" + tableName + "`");
+        writeLine(writer, "--");
+        writeLine(writer, tableDdl + ";");
+        writeLine(writer, "");
     }
 
     private void writeCommentForDatabase(String dbName) throws IOException {
@@ -124,15 +216,13 @@ public class DdlExportWorker implements Runnable {
         writeLine("--");
     }
 
-    private void writeCommentForTable(String tableName) throws IOException {
-        writeLine("--");
-        writeLine("-- Table structure for table `" + tableName + "`");
-        writeLine("--");
+    private void writeLine(String line) throws IOException {
+        writeLine(bufferedWriter, line);
     }
 
-    private void writeLine(String line) throws IOException {
-        bufferedWriter.write(line);
-        bufferedWriter.newLine();
+    private static void writeLine(BufferedWriter writer, String line) throws IOException {
+        writer.write(line);
+        writer.newLine();
     }
 
     private void beforeRun() throws Exception {
@@ -51,6 +51,7 @@ public class DdlImporter {
     private final ExecutorService ddlThreadPool = MyThreadPool.createFixedExecutor("DDL-importer", DDL_PARALLELISM);
     private final AtomicInteger taskCount = new AtomicInteger(0);
     private volatile String useDbSql = null;
+    private DeferredIndexBuilder deferredIndexBuilder = null;
 
     public DdlImporter(String filename, DataSource dataSource) {
         this.dataSource = dataSource;
@@ -70,6 +71,33 @@ public class DdlImporter {
         }
     }
 
+    /**
+     * 建表时去除二级索引 数据导入后通过 buildDeferredIndexes 补建
+     *
+     * @param parallelism 同时创建索引的表数
+     */
+    public void setDeferIndexParallelism(int parallelism) {
+        this.deferredIndexBuilder = new DeferredIndexBuilder(dataSource, parallelism);
+    }
+
+    /**
+     * 输出待补建的二级索引语句
+     */
+    public void logDeferredIndexes() {
+        if (deferredIndexBuilder != null) {
+            deferredIndexBuilder.logPendingDdl();
+        }
+    }
+
+    /**
+     * 补建导入DDL时去除的二级索引
+     */
+    public void buildDeferredIndexes() {
+        if (deferredIndexBuilder != null) {
+            deferredIndexBuilder.buildIndexes(useDbSql);
+        }
+    }
+
     /**
      * 异步导入DDL建表语句
      */
@@ -97,6 +125,8 @@ public class DdlImporter {
                             importDDL(sql);
                         } else if (useDbSql == null && (sql.startsWith("use"))) {
                             useDbSql = sql;
+                        } else if (deferredIndexBuilder != null) {
+                            submitDDL(deferredIndexBuilder.stripIndexes(sql));
                         } else {
                             submitDDL(sql);
                         }
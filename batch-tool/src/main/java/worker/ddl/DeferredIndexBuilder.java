@@ -0,0 +1,353 @@
+/*
+ * Copyright [2013-2021], Alibaba Group Holding Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package worker.ddl;
+
+import com.alibaba.druid.util.JdbcUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import worker.MyThreadPool;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 延迟创建二级索引
+ * 建表时去除普通二级索引与全局二级索引 数据导入完成后再按表并发补建
+ * 唯一索引仍在建表时创建 以保持导入时的去重语义
+ */
+public class DeferredIndexBuilder {
+
+    private static final Logger logger = LoggerFactory.getLogger(DeferredIndexBuilder.class);
+
+    private static final Pattern CREATE_TABLE_PATTERN = Pattern.compile(
+        "^\\s*CREATE\\s+(?:PARTITION\\s+|BROADCAST\\s+|SINGLE\\s+)?TABLE\\s+(?:IF\\s+NOT\\s+EXISTS\\s+)?",
+        Pattern.CASE_INSENSITIVE);
+    private static final Pattern WHITESPACE_PATTERN = Pattern.compile("\\s+");
+
+    /**
+     * 可以在数据导入后补建的索引定义前缀
+     */
+    private static final String[] LOCAL_INDEX_PREFIXES = {
+        "KEY ", "INDEX ", "SPATIAL ", "LOCAL KEY ", "LOCAL INDEX "};
+    private static final String FULLTEXT_INDEX_PREFIX = "FULLTEXT ";
+    private static final String[] GLOBAL_INDEX_PREFIXES = {
+        "GLOBAL KEY ", "GLOBAL INDEX ", "CLUSTERED KEY ", "CLUSTERED INDEX "};
+
+    /**
+     * 建表时由数据库自动维护的索引 仍随建表语句创建
+     */
+    private static final String[] SYSTEM_INDEX_NAME_PREFIXES = {"auto_shard_key_", "_local_"};
+
+    private static final long PROGRESS_INTERVAL_SECONDS = 10;
+
+    private final DataSource dataSource;
+    private final int parallelism;
+    /**
+     * 表名 -> 补建索引的语句
+     */
+    private final Map<String, List<String>> tableIndexDdl = new LinkedHashMap<>();
+
+    public DeferredIndexBuilder(DataSource dataSource, int parallelism) {
+        this.dataSource = dataSource;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * 去除建表语句中可延迟创建的索引 并记录对应的补建语句
+     *
+     * @return 去除索引后的建表语句 非建表语句或无需延迟时原样返回
+     */
+    public synchronized String stripIndexes(String sql) {
+        Matcher matcher = CREATE_TABLE_PATTERN.matcher(sql);
+        if (!matcher.find()) {
+            return sql;
+        }
+        int openIndex = sql.indexOf('(', matcher.end());
+        if (openIndex < 0) {
+            return sql;
+        }
+        String tableName = sql.substring(matcher.end(), openIndex).trim();
+        List<String> definitions = new ArrayList<>();
+        int closeIndex = splitDefinitions(sql, openIndex, definitions);
+        if (closeIndex < 0 || tableName.isEmpty()) {
+            return sql;
+        }
+
+        Set<String> autoIncrementColumns = getAutoIncrementColumns(definitions);
+        List<String> keptDefinitions = new ArrayList<>(definitions.size());
+        List<String> localIndexes = new ArrayList<>();
+        List<String> indexDdlList = new ArrayList<>();
+        int deferredCount = 0;
+        for (String definition : definitions) {
+            String normalized = WHITESPACE_PATTERN.matcher(definition).replaceAll(" ")
+                .toUpperCase(Locale.ROOT) + " ";
+            if (startsWithAny(normalized, GLOBAL_INDEX_PREFIXES) && !isSystemIndex(definition)) {
+                // 全局二级索引单独补建
+                indexDdlList.add("ALTER TABLE " + tableName + " ADD " + definition + ";");
+                deferredCount++;
+            } else if (normalized.startsWith(FULLTEXT_INDEX_PREFIX)) {
+                // InnoDB 一条语句只能创建一个全文索引
+                indexDdlList.add("ALTER TABLE " + tableName + " ADD " + definition + ";");
+                deferredCount++;
+            } else if (startsWithAny(normalized, LOCAL_INDEX_PREFIXES) && !isSystemIndex(definition)
+                && !autoIncrementColumns.contains(getFirstIndexColumn(definition))) {
+                localIndexes.add("ADD " + definition);
+                deferredCount++;
+            } else {
+                // 主键、唯一键、字段、自增列依赖的索引及系统索引保留在建表语句中
+                keptDefinitions.add(definition);
+            }
+        }
+        if (deferredCount == 0) {
+            return sql;
+        }
+        if (!localIndexes.isEmpty()) {
+            // 同一张表的局部索引合并为一条语句 只需扫描一次数据
+            indexDdlList.add(0, "ALTER TABLE " + tableName + " " + String.join(",\n  ", localIndexes) + ";");
+        }
+        tableIndexDdl.computeIfAbsent(tableName, k -> new ArrayList<>()).addAll(indexDdlList);
+        logger.info("表 {} 的 {} 个二级索引将在数据导入后创建", tableName, deferredCount);
+        return sql.substring(0, openIndex + 1) + "\n  " + String.join(",\n  ", keptDefinitions)
+            + "\n" + sql.substring(closeIndex);
+    }
+
+    public synchronized boolean isEmpty() {
+        return tableIndexDdl.isEmpty();
+    }
+
+    /**
+     * @return 尚未执行的补建语句 按表的顺序排列
+     */
+    public synchronized List<String> getPendingDdl() {
+        List<String> pendingDdl = new ArrayList<>();
+        tableIndexDdl.values().forEach(pendingDdl::addAll);
+        return pendingDdl;
+    }
+
+    /**
+     * 数据导入前输出所有补建语句 导入被中断时可据此手动补建
+     */
+    public synchronized void logPendingDdl() {
+        if (tableIndexDdl.isEmpty()) {
+            return;
+        }
+        List<String> pendingDdl = getPendingDdl();
+        logger.info("以下 {} 条语句将在数据导入后执行, 导入中断时需手动执行:\n{}",
+            pendingDdl.size(), String.join("\n", pendingDdl));
+    }
+
+    /**
+     * 按表并发补建索引 同一张表的语句依次执行
+     * 失败的语句在结束时汇总输出 不中断其他表
+     *
+     * @param useDbSql 执行前切换库的语句 可为空
+     */
+    public synchronized void buildIndexes(String useDbSql) {
+        if (tableIndexDdl.isEmpty()) {
+            return;
+        }
+        final int tableCount = tableIndexDdl.size();
+        final int threadNum = Math.min(parallelism, tableCount);
+        logger.info("开始创建 {} 张表的二级索引, 并发度 {}", tableCount, threadNum);
+        Queue<Map.Entry<String, List<String>>> tableQueue = new ConcurrentLinkedQueue<>(tableIndexDdl.entrySet());
+        Queue<String> failedDdl = new ConcurrentLinkedQueue<>();
+        AtomicInteger finishedCount = new AtomicInteger(0);
+        CountDownLatch countDownLatch = new CountDownLatch(threadNum);
+        ExecutorService executor = MyThreadPool.createFixedExecutor("index-builder", threadNum);
+        long startTime = System.currentTimeMillis();
+        for (int i = 0; i < threadNum; i++) {
+            executor.submit(() -> {
+                try {
+                    Map.Entry<String, List<String>> entry;
+                    while ((entry = tableQueue.poll()) != null) {
+                        buildTableIndexes(entry.getKey(), entry.getValue(), useDbSql, failedDdl);
+                        logger.info("表 {} 索引创建结束, 进度 {}/{}", entry.getKey(),
+                            finishedCount.incrementAndGet(), tableCount);
+                    }
+                } finally {
+                    countDownLatch.countDown();
+                }
+            });
+        }
+        try {
+            while (!countDownLatch.await(PROGRESS_INTERVAL_SECONDS, TimeUnit.SECONDS)) {
+                logger.info("等待索引创建结束, 已完成 {}/{} 张表", finishedCount.get(), tableCount);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } finally {
+            executor.shutdown();
+        }
+        tableIndexDdl.clear();
+        long elapsedSeconds = (System.currentTimeMillis() - startTime) / 1000;
+        if (failedDdl.isEmpty()) {
+            logger.info("二级索引创建完毕, 耗时 {} 秒", elapsedSeconds);
+        } else {
+            logger.error("二级索引创建完毕, 耗时 {} 秒, 以下 {} 条语句执行失败, 需手动执行:\n{}",
+                elapsedSeconds, failedDdl.size(), String.join("\n", failedDdl));
+        }
+    }
+
+    private void buildTableIndexes(String tableName, List<String> indexDdlList, String useDbSql,
+                                   Queue<String> failedDdl) {
+        Connection conn = null;
+        Statement stmt = null;
+        try {
+            conn = dataSource.getConnection();
+            stmt = conn.createStatement();
+            if (useDbSql != null) {
+                stmt.execute(useDbSql);
+            }
+            for (String indexDdl : indexDdlList) {
+                long startTime = System.currentTimeMillis();
+                logger.info("表 {} 正在创建索引: {}", tableName, indexDdl);
+                try {
+                    stmt.execute(indexDdl);
+                    logger.info("表 {} 索引创建成功, 耗时 {} 毫秒", tableName,
+                        System.currentTimeMillis() - startTime);
+                } catch (SQLException e) {
+                    logger.error("表 {} 索引创建失败: {}", tableName, e.getMessage());
+                    failedDdl.add(indexDdl);
+                }
+            }
+        } catch (SQLException e) {
+            logger.error("表 {} 索引创建失败: {}", tableName, e.getMessage());
+            failedDdl.addAll(indexDdlList);
+        } finally {
+            JdbcUtils.close(stmt);
+            JdbcUtils.close(conn);
+        }
+    }
+
+    /**
+     * 按顶层逗号拆分括号内的定义 忽略引号与嵌套括号中的逗号
+     *
+     * @return 匹配的右括号位置 语句不完整时返回 -1
+     */
+    private static int splitDefinitions(String sql, int openIndex, List<String> definitions) {
+        int depth = 0;
+        char quote = 0;
+        int start = openIndex + 1;
+        for (int i = start; i < sql.length(); i++) {
+            char c = sql.charAt(i);
+            if (quote != 0) {
+                if (c == '\\' && quote != '`') {
+                    i++;
+                } else if (c == quote) {
+                    quote = 0;
+                }
+                continue;
+            }
+            switch (c) {
+            case '\'':
+            case '"':
+            case '`':
+                quote = c;
+                break;
+            case '(':
+                depth++;
+                break;
+            case ')':
+                if (depth == 0) {
+                    definitions.add(sql.substring(start, i).trim());
+                    return i;
+                }
+                depth--;
+                break;
+            case ',':
+                if (depth == 0) {
+                    definitions.add(sql.substring(start, i).trim());
+                    start = i + 1;
+                }
+                break;
+            default:
+                break;
+            }
+        }
+        return -1;
+    }
+
+    private static Set<String> getAutoIncrementColumns(List<String> definitions) {
+        Set<String> columns = new HashSet<>();
+        for (String definition : definitions) {
+            if (definition.startsWith("`")
+                && definition.toUpperCase(Locale.ROOT).contains(" AUTO_INCREMENT")) {
+                int end = definition.indexOf('`', 1);
+                if (end > 0) {
+                    columns.add(definition.substring(1, end).toLowerCase(Locale.ROOT));
+                }
+            }
+        }
+        return columns;
+    }
+
+    /**
+     * @return 索引的第一个字段名 小写
+     */
+    private static String getFirstIndexColumn(String definition) {
+        int begin = definition.indexOf('(');
+        if (begin < 0) {
+            return "";
+        }
+        int end = begin + 1;
+        while (end < definition.length() && ",()".indexOf(definition.charAt(end)) < 0) {
+            end++;
+        }
+        String column = definition.substring(begin + 1, end).trim();
+        if (column.startsWith("`") && column.endsWith("`") && column.length() >= 2) {
+            column = column.substring(1, column.length() - 1);
+        }
+        return column.toLowerCase(Locale.ROOT);
+    }
+
+    private static boolean isSystemIndex(String definition) {
+        int begin = definition.indexOf('`');
+        if (begin < 0) {
+            return false;
+        }
+        String indexName = definition.substring(begin + 1).toLowerCase(Locale.ROOT);
+        return startsWithAny(indexName, SYSTEM_INDEX_NAME_PREFIXES);
+    }
+
+    private static boolean startsWithAny(String value, String[] prefixes) {
+        for (String prefix : prefixes) {
+            if (value.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
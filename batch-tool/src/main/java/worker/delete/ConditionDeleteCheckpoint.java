@@ -0,0 +1,128 @@
+/*
+ * Copyright [2013-2021], Alibaba Group Holding Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package worker.delete;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+/**
+ * 按条件删除的断点
+ * 记录每个分片已删除到的最后一个主键 以及已完成的分片
+ * where条件变化时断点失效
+ */
+@ThreadSafe
+public class ConditionDeleteCheckpoint {
+    private static final Logger logger = LoggerFactory.getLogger(ConditionDeleteCheckpoint.class);
+
+    private static final String WHERE_KEY = "#where";
+    private static final String DONE_MARK = "#done";
+    /**
+     * 复合主键各列的分隔符
+     */
+    private static final String PK_SEP = "\u0001";
+
+    private final String filePath;
+    private final Properties checkpoint = new Properties();
+
+    public ConditionDeleteCheckpoint(String filePath, String where) {
+        this.filePath = filePath;
+        load(where);
+    }
+
+    private void load(String where) {
+        File file = new File(filePath);
+        if (file.exists()) {
+            try (InputStream in = new FileInputStream(file)) {
+                checkpoint.load(in);
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to load delete checkpoint " + filePath, e);
+            }
+            if (StringUtils.equals(where, checkpoint.getProperty(WHERE_KEY))) {
+                logger.info("从断点文件 {} 继续删除", filePath);
+            } else {
+                logger.warn("断点文件 {} 的删除条件不一致, 忽略该断点", filePath);
+                checkpoint.clear();
+            }
+        }
+        checkpoint.setProperty(WHERE_KEY, where);
+    }
+
+    public synchronized boolean isFinished(String shardName) {
+        return DONE_MARK.equals(checkpoint.getProperty(shardName));
+    }
+
+    /**
+     * @return 该分片上次删除到的主键 无断点时返回null
+     */
+    public synchronized String[] getLastKey(String shardName) {
+        String lastKey = checkpoint.getProperty(shardName);
+        if (lastKey == null || DONE_MARK.equals(lastKey)) {
+            return null;
+        }
+        return StringUtils.splitByWholeSeparatorPreserveAllTokens(lastKey, PK_SEP);
+    }
+
+    public synchronized void update(String shardName, String[] lastKey) {
+        checkpoint.setProperty(shardName, StringUtils.join(lastKey, PK_SEP));
+        save();
+    }
+
+    public synchronized void finish(String shardName) {
+        checkpoint.setProperty(shardName, DONE_MARK);
+        save();
+    }
+
+    /**
+     * 全部完成后删除断点文件
+     */
+    public synchronized void clear() {
+        File file = new File(filePath);
+        if (file.exists() && !file.delete()) {
+            logger.warn("Failed to delete checkpoint file {}", filePath);
+        }
+    }
+
+    /**
+     * 先写临时文件再替换 避免中断时断点文件不完整
+     */
+    private void save() {
+        File tmpFile = new File(filePath + ".tmp");
+        try (OutputStream out = new FileOutputStream(tmpFile)) {
+            checkpoint.store(out, null);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to save delete checkpoint " + filePath, e);
+        }
+        try {
+            Files.move(tmpFile.toPath(), new File(filePath).toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to save delete checkpoint " + filePath, e);
+        }
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright [2013-2021], Alibaba Group Holding Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package worker.delete;
+
+import com.alibaba.druid.util.JdbcUtils;
+import com.google.common.util.concurrent.RateLimiter;
+import model.ConsumerExecutionContext;
+import model.db.PrimaryKey;
+import model.db.TableTopology;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import worker.util.DeleteUtil;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * 按条件分批删除
+ * 从队列中领取分片 按主键顺序用 keyset 分页取出满足条件的一批主键
+ * 再按该批主键的范围删除 每批删除后记录断点
+ */
+public class ConditionDeleteWorker implements Runnable {
+    private static final Logger logger = LoggerFactory.getLogger(ConditionDeleteWorker.class);
+
+    private final DataSource dataSource;
+    private final ConsumerExecutionContext consumerContext;
+    private final String tableName;
+    private final Queue<TableTopology> shardQueue;
+    private final ConditionDeleteCheckpoint checkpoint;
+    /**
+     * 所有分片共享 按删除行数限流 为null时不限流
+     */
+    private final RateLimiter rateLimiter;
+    private final int batchSize;
+    private final CountDownLatch countDownLatch;
+
+    private final List<PrimaryKey> pkList;
+    private final String where;
+
+    public ConditionDeleteWorker(DataSource dataSource, ConsumerExecutionContext consumerContext,
+                                 String tableName, Queue<TableTopology> shardQueue,
+                                 ConditionDeleteCheckpoint checkpoint, RateLimiter rateLimiter,
+                                 int batchSize, CountDownLatch countDownLatch) {
+        this.dataSource = dataSource;
+        this.consumerContext = consumerContext;
+        this.tableName = tableName;
+        this.shardQueue = shardQueue;
+        this.checkpoint = checkpoint;
+        this.rateLimiter = rateLimiter;
+        this.batchSize = batchSize;
+        this.countDownLatch = countDownLatch;
+        this.pkList = consumerContext.getTablePkList(tableName);
+        this.where = consumerContext.getWhereCondition();
+    }
+
+    @Override
+    public void run() {
+        try {
+            TableTopology topology;
+            while ((topology = shardQueue.poll()) != null) {
+                if (consumerContext.getException() != null) {
+                    // 其他分片已失败
+                    break;
+                }
+                deleteShard(topology);
+            }
+        } catch (Exception e) {
+            logger.error("表 {} 按条件删除失败: {}", tableName, e.getMessage());
+            consumerContext.setException(e);
+        } finally {
+            countDownLatch.countDown();
+        }
+    }
+
+    private void deleteShard(TableTopology topology) throws SQLException {
+        String shardName = getShardName(topology);
+        if (checkpoint.isFinished(shardName)) {
+            logger.info("分片 {} 已删除完毕, 跳过", shardName);
+            return;
+        }
+        String nodeName = topology.getGroupName();
+        String physicalTableName = topology.getTableName();
+        String firstSelectSql = DeleteUtil.getKeysetSelectSql(nodeName, physicalTableName,
+            pkList, where, false, batchSize);
+        String nextSelectSql = DeleteUtil.getKeysetSelectSql(nodeName, physicalTableName,
+            pkList, where, true, batchSize);
+        String deleteSql = DeleteUtil.getDeleteByPkRangeSql(nodeName, physicalTableName, pkList, where);
+
+        int pkCount = pkList.size();
+        String[] lastKey = checkpoint.getLastKey(shardName);
+        String[] firstKey = new String[pkCount];
+        long totalDeleted = 0;
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement firstSelectStmt = conn.prepareStatement(firstSelectSql);
+             PreparedStatement nextSelectStmt = conn.prepareStatement(nextSelectSql);
+             PreparedStatement deleteStmt = conn.prepareStatement(deleteSql)) {
+            while (true) {
+                PreparedStatement selectStmt;
+                if (lastKey == null) {
+                    selectStmt = firstSelectStmt;
+                } else {
+                    selectStmt = nextSelectStmt;
+                    setKey(selectStmt, lastKey, 0);
+                }
+                int rowCount = 0;
+                String[] curKey = new String[pkCount];
+                ResultSet resultSet = null;
+                try {
+                    resultSet = selectStmt.executeQuery();
+                    while (resultSet.next()) {
+                        for (int i = 0; i < pkCount; i++) {
+                            curKey[i] = resultSet.getString(i + 1);
+                        }
+                        if (rowCount == 0) {
+                            System.arraycopy(curKey, 0, firstKey, 0, pkCount);
+                        }
+                        rowCount++;
+                    }
+                } finally {
+                    JdbcUtils.close(resultSet);
+                }
+                if (rowCount == 0) {
+                    break;
+                }
+                if (rateLimiter != null) {
+                    rateLimiter.acquire(rowCount);
+                }
+                setKey(deleteStmt, firstKey, 0);
+                setKey(deleteStmt, curKey, pkCount);
+                totalDeleted += deleteStmt.executeUpdate();
+                lastKey = curKey;
+                checkpoint.update(shardName, lastKey);
+                if (rowCount < batchSize) {
+                    break;
+                }
+            }
+        }
+        checkpoint.finish(shardName);
+        logger.info("分片 {} 删除完毕, 共删除 {} 行", shardName, totalDeleted);
+    }
+
+    private static void setKey(PreparedStatement stmt, String[] key, int offset) throws SQLException {
+        for (int i = 0; i < key.length; i++) {
+            stmt.setString(offset + i + 1, key[i]);
+        }
+    }
+
+    private String getShardName(TableTopology topology) {
+        if (topology.getGroupName() == null) {
+            return topology.getTableName();
+        }
+        return topology.getGroupName() + "." + topology.getTableName();
+    }
+}
@@ -31,12 +31,18 @@ public class DeleteInConsumer extends BaseDefaultConsumer {
     private List<PrimaryKey> pkList;
     private String[] pkValues;
     private List<FieldMetaInfo> fieldMetaInfoList;
+    /**
+     * 是否将有序的整型主键合并为范围条件
+     */
+    private boolean pkRangeEnabled;
 
     @Override
     protected void initLocalVars() {
+        super.initLocalVars();
         this.pkList = consumerContext.getTablePkList(tableName);
         this.pkValues = new String[pkList.size()];
         this.fieldMetaInfoList = consumerContext.getTableFieldMetaInfo(tableName).getFieldMetaInfoList();
+        this.pkRangeEnabled = DeleteUtil.isPkRangeSupported(pkList, fieldMetaInfoList);
     }
 
     @Override
@@ -53,7 +59,10 @@ public class DeleteInConsumer extends BaseDefaultConsumer {
     @Override
     protected String getSql(StringBuilder data) {
         data.setLength(data.length() - 1);
-        return DeleteUtil.getDeleteUsingIn(tableName, consumerContext.getTablePkName(tableName),
-            data.toString());
+        String pkName = consumerContext.getTablePkName(tableName);
+        String pkCondition = pkRangeEnabled ? DeleteUtil.formatPkRangeCondition(pkName, data.toString())
+            : DeleteUtil.formatPkInCondition(pkName, data.toString());
+        return DeleteUtil.getDeleteByConditionSql(tableName, pkCondition,
+            consumerContext.getWhereCondition());
     }
 }
@@ -31,11 +31,18 @@ public class ShardedDeleteInConsumer extends BaseShardedConsumer {
 
     private List<PrimaryKey> pkList;
     private String[] pkValues;
+    /**
+     * 是否将有序的整型主键合并为范围条件
+     */
+    private boolean pkRangeEnabled;
 
     @Override
     protected void initLocalVars() {
+        super.initLocalVars();
         pkList = consumerContext.getTablePkList(tableName);
         pkValues = new String[pkList.size()];
+        pkRangeEnabled = DeleteUtil.isPkRangeSupported(pkList,
+            consumerContext.getTableFieldMetaInfo(tableName).getFieldMetaInfoList());
     }
 
     /**
@@ -60,8 +67,13 @@ public class ShardedDeleteInConsumer extends BaseShardedConsumer {
     protected String getSqlWithHint(TableTopology topology, StringBuilder data) {
         // 去除最后的逗号
         data.setLength(data.length() - 1);
-        return DeleteUtil.getBatchDeleteSqlWithHint(topology.getGroupName(),
-            topology.getTableName(), consumerContext.getTablePkList(tableName), data.toString(),
-            consumerContext.getWhereCondition());
+        if (!pkRangeEnabled) {
+            return DeleteUtil.getBatchDeleteSqlWithHint(topology.getGroupName(),
+                topology.getTableName(), pkList, data.toString(),
+                consumerContext.getWhereCondition());
+        }
+        String pkCondition = DeleteUtil.formatPkRangeCondition(pkList.get(0).getName(), data.toString());
+        return DeleteUtil.getDeleteByConditionSqlWithHint(topology.getGroupName(),
+            topology.getTableName(), pkCondition, consumerContext.getWhereCondition());
     }
 }
@@ -22,14 +22,12 @@ import model.config.QuoteEncloseMode;
 import model.db.FieldMetaInfo;
 import model.db.TableFieldMetaInfo;
 import model.db.TableTopology;
-import util.FileUtil;
+import util.ByteBufferPool;
 
 import javax.sql.DataSource;
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
-import java.util.ArrayList;
+import java.nio.ByteBuffer;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.function.Consumer;
 
 public abstract class BaseExportWorker implements Runnable {
     protected final DataSource druid;
@@ -37,12 +35,14 @@ public abstract class BaseExportWorker implements Runnable {
     protected final TableFieldMetaInfo tableFieldMetaInfo;
     protected final byte[] separator;
 
-    protected final List<byte[]> specialCharList;
     protected final QuoteEncloseMode quoteEncloseMode;
     protected CompressMode compressMode;
     protected FileFormat fileFormat;
 
-    protected final List<Boolean> isStringTypeList;
+    /**
+     * 各字段是否为字符串类型
+     */
+    protected final boolean[] isStringTypes;
 
     protected BaseExportWorker(DataSource druid, TableTopology topology,
                                TableFieldMetaInfo tableFieldMetaInfo,
@@ -60,16 +60,13 @@ public abstract class BaseExportWorker implements Runnable {
         this.tableFieldMetaInfo = tableFieldMetaInfo;
 
         this.separator = separator.getBytes();
-        this.specialCharList = new ArrayList<>();
-        specialCharList.add(this.separator);
-        specialCharList.add(FileUtil.CR_BYTE);
-        specialCharList.add(FileUtil.LF_BYTE);
-        specialCharList.add(FileUtil.DOUBLE_QUOTE_BYTE);
 
         this.quoteEncloseMode = quoteEncloseMode;
-        this.isStringTypeList = tableFieldMetaInfo.getFieldMetaInfoList().stream()
-            .map(info -> (info.getType() == FieldMetaInfo.Type.STRING))
-            .collect(Collectors.toList());
+        List<FieldMetaInfo> fieldMetaInfoList = tableFieldMetaInfo.getFieldMetaInfoList();
+        this.isStringTypes = new boolean[fieldMetaInfoList.size()];
+        for (int i = 0; i < fieldMetaInfoList.size(); i++) {
+            isStringTypes[i] = fieldMetaInfoList.get(i).getType() == FieldMetaInfo.Type.STRING;
+        }
 
         switch (compressMode) {
         case NONE:
@@ -83,32 +80,26 @@ public abstract class BaseExportWorker implements Runnable {
     }
 
     /**
-     * 根据引号模式来写入字段值
-     * todo 字段值本身包含引号 还需要对引号重新转义
+     * 复制另一个工作线程的表信息与编码配置
      */
-    protected void writeFieldValue(ByteArrayOutputStream os, byte[] value, boolean isStringType) throws IOException {
-        switch (quoteEncloseMode) {
-        case NONE:
-            FileUtil.writeToByteArrayStream(os, value);
-            break;
-        case FORCE:
-            FileUtil.writeToByteArrayStreamWithQuote(os, value);
-            break;
-        case AUTO:
-            if (!isStringType) {
-                FileUtil.writeToByteArrayStream(os, value);
-            } else {
-                // 检查是否有特殊字符
-                boolean needQuote = FileUtil.containsSpecialBytes(value, specialCharList);
-
-                if (needQuote) {
-                    FileUtil.writeToByteArrayStreamWithQuote(os, value);
-                } else {
-                    FileUtil.writeToByteArrayStream(os, value);
-                }
-            }
-            break;
-        }
+    protected BaseExportWorker(BaseExportWorker other) {
+        this.druid = other.druid;
+        this.topology = other.topology;
+        this.tableFieldMetaInfo = other.tableFieldMetaInfo;
+        this.separator = other.separator;
+        this.quoteEncloseMode = other.quoteEncloseMode;
+        this.isStringTypes = other.isStringTypes;
+        this.compressMode = other.compressMode;
+        this.fileFormat = other.fileFormat;
+    }
+
+    /**
+     * 按当前的分隔符与引号模式编码数据行
+     *
+     * @param sink 接收写满的缓冲区 使用后需归还至 bufferPool
+     */
+    protected RowBufferEncoder createRowEncoder(ByteBufferPool bufferPool, Consumer<ByteBuffer> sink) {
+        return new RowBufferEncoder(bufferPool, sink, separator, isStringTypes, quoteEncloseMode);
     }
 
     public void setCompressMode(CompressMode compressMode) {
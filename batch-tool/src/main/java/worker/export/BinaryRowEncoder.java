@@ -0,0 +1,146 @@
+/*
+ * Copyright [2013-2021], Alibaba Group Holding Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package worker.export;
+
+import util.BinaryFormatUtil;
+import util.ByteBufferPool;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.nio.ByteBuffer;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.function.Consumer;
+
+import static util.BinaryFormatUtil.BLOCK_HEADER_LENGTH;
+import static util.BinaryFormatUtil.SYNC_MARKER_LENGTH;
+
+/**
+ * 按二进制行格式编码结果集
+ * 每个交给 sink 的缓冲区为一个完整的数据块
+ * 字段值为数据库返回的原始字节 无需引号与转义
+ */
+@NotThreadSafe
+public class BinaryRowEncoder implements IRowEncoder {
+
+    private final ByteBufferPool bufferPool;
+    private final Consumer<ByteBuffer> sink;
+    private final int nullBitmapLength;
+    /**
+     * 当前行的字段值 计算行长度后再写入
+     */
+    private final byte[][] rowValues;
+    private byte[] syncMarker;
+
+    private ByteBuffer buffer = null;
+    /**
+     * 当前数据块中的行数
+     */
+    private int bufferedRowCount = 0;
+
+    public BinaryRowEncoder(ByteBufferPool bufferPool, Consumer<ByteBuffer> sink,
+                            byte[] syncMarker, int columnCount) {
+        this.bufferPool = bufferPool;
+        this.sink = sink;
+        this.syncMarker = syncMarker;
+        this.nullBitmapLength = BinaryFormatUtil.getNullBitmapLength(columnCount);
+        this.rowValues = new byte[columnCount][];
+    }
+
+    @Override
+    public void appendRow(ResultSet resultSet, int colNum) throws SQLException {
+        int rowLength = nullBitmapLength;
+        for (int i = 0; i < colNum; i++) {
+            byte[] value = resultSet.getBytes(i + 1);
+            rowValues[i] = value;
+            if (value != null) {
+                rowLength += BinaryFormatUtil.getVarIntLength(value.length) + value.length;
+            }
+        }
+        ensureCapacity(rowLength);
+        int bitmapPos = buffer.position();
+        for (int i = 0; i < nullBitmapLength; i++) {
+            buffer.put((byte) 0);
+        }
+        for (int i = 0; i < colNum; i++) {
+            byte[] value = rowValues[i];
+            if (value == null) {
+                int bytePos = bitmapPos + (i >>> 3);
+                buffer.put(bytePos, (byte) (buffer.get(bytePos) | (1 << (i & 7))));
+            } else {
+                BinaryFormatUtil.putVarInt(buffer, value.length);
+                buffer.put(value);
+            }
+            rowValues[i] = null;
+        }
+        bufferedRowCount++;
+    }
+
+    /**
+     * 切换文件后使用新文件的同步标记
+     * 调用前需先 flush
+     */
+    public void setSyncMarker(byte[] syncMarker) {
+        this.syncMarker = syncMarker;
+    }
+
+    @Override
+    public void flush() {
+        if (buffer == null || bufferedRowCount == 0) {
+            return;
+        }
+        ByteBuffer fullBuffer = buffer;
+        for (int i = 0; i < SYNC_MARKER_LENGTH; i++) {
+            fullBuffer.put(i, syncMarker[i]);
+        }
+        fullBuffer.putInt(SYNC_MARKER_LENGTH, bufferedRowCount);
+        fullBuffer.putInt(SYNC_MARKER_LENGTH + 4, fullBuffer.position() - BLOCK_HEADER_LENGTH);
+        buffer = null;
+        bufferedRowCount = 0;
+        fullBuffer.flip();
+        sink.accept(fullBuffer);
+    }
+
+    @Override
+    public void close() {
+        bufferPool.release(buffer);
+        buffer = null;
+    }
+
+    /**
+     * 保证当前数据块能放下整行
+     * 空间不足时先交出当前数据块
+     */
+    private void ensureCapacity(int rowLength) {
+        if (buffer != null && buffer.remaining() >= rowLength) {
+            return;
+        }
+        if (bufferedRowCount > 0) {
+            flush();
+        } else {
+            bufferPool.release(buffer);
+            buffer = null;
+        }
+        if (BLOCK_HEADER_LENGTH + rowLength <= bufferPool.getBufferSize()) {
+            buffer = bufferPool.acquire();
+        } else {
+            // 单行超过缓冲区大小 临时分配更大的缓冲区
+            buffer = ByteBuffer.allocateDirect(Integer.highestOneBit(BLOCK_HEADER_LENGTH + rowLength) << 1);
+        }
+        buffer.position(BLOCK_HEADER_LENGTH);
+    }
+}
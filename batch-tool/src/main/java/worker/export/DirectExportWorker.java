@@ -26,22 +26,30 @@ import model.db.TableTopology;
 import model.encrypt.BaseCipher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import util.BinaryFormatUtil;
+import util.ByteBufferPool;
 import util.DataSourceUtil;
 import util.FileUtil;
+import worker.common.writer.AsyncFileWriter;
 import worker.common.writer.CipherLineFileWriter;
 import worker.common.writer.IFileWriter;
 import worker.common.writer.NioFileWriter;
+import worker.common.writer.ParquetFileWriter;
+import worker.common.writer.RollingFileWriter;
+import worker.common.writer.SharedFileWriter;
 import worker.common.writer.XlsxFileWriter;
 import worker.util.ExportUtil;
 
 import javax.sql.DataSource;
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Semaphore;
 
@@ -64,6 +72,10 @@ public class DirectExportWorker extends BaseExportWorker {
      * 单个文件最大行数
      */
     private final int maxLine;
+    /**
+     * 单个文件最大字节数
+     */
+    private final long maxFileBytes;
     /**
      * 当前写入文件的行数
      */
@@ -82,6 +94,27 @@ public class DirectExportWorker extends BaseExportWorker {
     private final boolean isWithHeader;
     private CountDownLatch countDownLatch;
     private Semaphore permitted;
+    /**
+     * 编码数据行的堆外缓冲区 未设置时单独创建
+     */
+    private ByteBufferPool bufferPool;
+    /**
+     * 二进制格式当前文件的同步标记
+     */
+    private byte[] syncMarker;
+    /**
+     * 是否已读完全部数据并成功关闭文件
+     */
+    private volatile boolean isSucceeded = false;
+    /**
+     * 打开文件的 worker 拆分后的子扫描为父 worker
+     * 文件在首次运行时才打开 避免大量排队的任务同时占用文件句柄与压缩缓冲区
+     */
+    private final DirectExportWorker fileOwner;
+    /**
+     * 由 fileOwner 的锁保护
+     */
+    private boolean fileOpened = false;
 
     public DirectExportWorker(DataSource dataSource,
                               TableTopology topology,
@@ -113,23 +146,79 @@ public class DirectExportWorker extends BaseExportWorker {
                               FileFormat fileFormat,
                               Charset charset,
                               BaseCipher cipher) {
+        this(dataSource, topology, tableFieldMetaInfo, maxLine, 0,
+            filename, separator, isWithHeader, quoteEncloseMode,
+            compressMode, fileFormat, charset, cipher);
+    }
+
+    /**
+     * @param maxLine 单个文件最大行数
+     * @param maxFileBytes 单个文件最大字节数 按落盘后的大小计算
+     */
+    public DirectExportWorker(DataSource dataSource, TableTopology topology,
+                              TableFieldMetaInfo tableFieldMetaInfo,
+                              int maxLine,
+                              long maxFileBytes,
+                              String filename,
+                              String separator,
+                              boolean isWithHeader,
+                              QuoteEncloseMode quoteEncloseMode,
+                              CompressMode compressMode,
+                              FileFormat fileFormat,
+                              Charset charset,
+                              BaseCipher cipher) {
         super(dataSource, topology, tableFieldMetaInfo, separator, quoteEncloseMode, compressMode, fileFormat);
+        if (maxLine != 0 && maxFileBytes != 0) {
+            throw new IllegalArgumentException("Max line and max file size cannot be both limited");
+        }
         this.maxLine = maxLine;
+        this.maxFileBytes = maxFileBytes;
         this.filename = filename;
         this.isWithHeader = isWithHeader;
         this.cipher = cipher;
         initFileSeq();
         this.fileWriter = initFileWriter(charset);
-        createNewFile();
+        this.fileOwner = this;
     }
 
-    private void initFileSeq() {
+    /**
+     * 共享父线程已打开文件的子扫描
+     */
+    private DirectExportWorker(DirectExportWorker parent, IFileWriter fileWriter, String whereCondition) {
+        super(parent);
+        this.maxLine = parent.maxLine;
+        this.maxFileBytes = parent.maxFileBytes;
+        this.filename = parent.filename;
+        this.isWithHeader = parent.isWithHeader;
+        this.cipher = parent.cipher;
+        this.curFileSeq = parent.curFileSeq;
+        this.fileWriter = fileWriter;
+        this.whereCondition = whereCondition;
+        this.bufferPool = parent.bufferPool;
+        this.fileOwner = parent;
+    }
+
+    /**
+     * 按范围条件拆分为多个子扫描 并行写入当前文件
+     * 当前 worker 仅负责创建文件与写入header 由最先运行的子扫描触发 拆分后不再运行
+     * 每个子扫描需单独设置 countDownLatch 与 permitted
+     */
+    public List<DirectExportWorker> splitByRange(List<String> rangeConditions) {
         if (isLimitLine()) {
+            throw new UnsupportedOperationException("Do not support split export when max line is limited");
+        }
+        SharedFileWriter sharedFileWriter = new SharedFileWriter(fileWriter, rangeConditions.size());
+        List<DirectExportWorker> subWorkers = new ArrayList<>(rangeConditions.size());
+        for (String rangeCondition : rangeConditions) {
+            subWorkers.add(new DirectExportWorker(this, sharedFileWriter,
+                ExportUtil.combineWhereCondition(whereCondition, rangeCondition)));
+        }
+        return subWorkers;
+    }
+
+    private void initFileSeq() {
+        if (isLimitLine() || isLimitBytes()) {
             this.curFileSeq = 0;
-            if (maxLine < GlobalVar.EMIT_BATCH_SIZE) {
-                throw new IllegalArgumentException("Max line should be greater than batch size: "
-                    + GlobalVar.EMIT_BATCH_SIZE);
-            }
         } else {
             this.curFileSeq = NO_FILE_SEQ;
         }
@@ -140,14 +229,47 @@ public class DirectExportWorker extends BaseExportWorker {
         case XLSX:
         case XLS:
         case ET:
-            return new XlsxFileWriter();
+            // 字段名由 XlsxFileWriter 写入每个工作表的首行
+            String[] headerValues = isWithHeader ? tableFieldMetaInfo.getFieldMetaInfoList().stream()
+                .map(FieldMetaInfo::getName).toArray(String[]::new) : null;
+            return new XlsxFileWriter(tableFieldMetaInfo.getFieldMetaInfoList(), headerValues);
+        case BIN:
+            // 字段值已是原始字节 不再转码
+            return new AsyncFileWriter(new NioFileWriter(compressMode, StandardCharsets.UTF_8));
+        case PARQUET:
+            return new ParquetFileWriter(tableFieldMetaInfo.getFieldMetaInfoList());
         }
         if (cipher == null || cipher.supportBlock()) {
-            return new NioFileWriter(compressMode, charset);
+            IFileWriter nioFileWriter = new NioFileWriter(compressMode, charset);
+            if (isLimitBytes()) {
+                // 在写线程中按落盘大小切换文件
+                byte[] header = isWithHeader ?
+                    FileUtil.getHeaderBytes(tableFieldMetaInfo.getFieldMetaInfoList(), separator) : null;
+                nioFileWriter = new RollingFileWriter(nioFileWriter, maxFileBytes, this::getTmpFilename, header);
+            }
+            // 由写线程压缩与落盘 与读取数据库并行
+            return new AsyncFileWriter(nioFileWriter);
+        }
+        if (isLimitBytes()) {
+            throw new UnsupportedOperationException(cipher.getClass().getSimpleName()
+                + " does not support export with max file size");
         }
         return new CipherLineFileWriter(cipher, separator, quoteEncloseMode);
     }
 
+    /**
+     * 首次运行时打开文件 共享文件的子扫描只打开一次
+     */
+    private void openFileIfAbsent() {
+        synchronized (fileOwner) {
+            if (!fileOwner.fileOpened) {
+                fileOwner.createNewFile();
+                fileOwner.fileOpened = true;
+            }
+            this.syncMarker = fileOwner.syncMarker;
+        }
+    }
+
     /**
      * 创建一个新的空文件
      * 会覆盖同名文件
@@ -156,7 +278,16 @@ public class DirectExportWorker extends BaseExportWorker {
     private void createNewFile() {
         String tmpFileName = getTmpFilename();
         fileWriter.nextFile(tmpFileName);
-        if (isWithHeader) {
+        if (fileFormat == FileFormat.BIN) {
+            // 二进制格式总是写入字段信息
+            syncMarker = BinaryFormatUtil.newSyncMarker();
+            fileWriter.write(BinaryFormatUtil.getFileHeaderBytes(
+                tableFieldMetaInfo.getFieldMetaInfoList(), syncMarker));
+        } else if (isWithHeader && fileFormat != FileFormat.PARQUET
+            && !(fileWriter instanceof XlsxFileWriter) && !isLimitBytes()) {
+            // parquet 的字段名已记录在元数据中
+            // 表格文件由 XlsxFileWriter 在每个工作表中写入header
+            // 按大小切换文件时由 RollingFileWriter 写入每个文件的header
             appendHeader();
         }
     }
@@ -165,14 +296,21 @@ public class DirectExportWorker extends BaseExportWorker {
      * 获取写入当前文件名
      */
     private String getTmpFilename() {
-        if (this.curFileSeq == -1 && this.compressMode == CompressMode.NONE
+        return getTmpFilename(curFileSeq);
+    }
+
+    /**
+     * 获取指定序号的文件名
+     */
+    private String getTmpFilename(int fileSeq) {
+        if (fileSeq == -1 && this.compressMode == CompressMode.NONE
             && this.fileFormat == FileFormat.NONE) {
             return this.filename;
         }
         StringBuilder filenameBuilder = new StringBuilder(this.filename.length() + 6);
         filenameBuilder.append(this.filename);
-        if (curFileSeq != -1) {
-            filenameBuilder.append('-').append(curFileSeq);
+        if (fileSeq != -1) {
+            filenameBuilder.append('-').append(fileSeq);
         }
         if (this.fileFormat != FileFormat.NONE) {
             filenameBuilder.append(fileFormat.getSuffix());
@@ -198,6 +336,7 @@ public class DirectExportWorker extends BaseExportWorker {
     public void run() {
         beforeRun();
         try {
+            openFileIfAbsent();
             if (this.fileWriter.produceByBlock()) {
                 produceData();
             } else {
@@ -217,15 +356,34 @@ public class DirectExportWorker extends BaseExportWorker {
     }
 
     private void afterRun() {
-        countDownLatch.countDown();
-        if (permitted != null) {
-            permitted.release();
+        try {
+            fileWriter.close();
+        } catch (Exception e) {
+            isSucceeded = false;
+            logger.error("{} 关闭文件失败: {}", topology, e.getMessage());
+        } finally {
+            if (countDownLatch != null) {
+                countDownLatch.countDown();
+            }
+            if (permitted != null) {
+                permitted.release();
+            }
         }
-        fileWriter.close();
     }
 
     private void produceData() {
         String sql = getExportSql();
+        if (bufferPool == null) {
+            bufferPool = new ByteBufferPool(AsyncFileWriter.MAX_HELD_BUFFERS + 1,
+                GlobalVar.DEFAULT_EXPORT_BUFFER_SIZE);
+        }
+        IRowEncoder encoder;
+        if (fileFormat == FileFormat.BIN) {
+            encoder = new BinaryRowEncoder(bufferPool, this::writeToFile, syncMarker,
+                tableFieldMetaInfo.getFieldMetaInfoList().size());
+        } else {
+            encoder = createRowEncoder(bufferPool, this::writeToFile);
+        }
 
         try (Connection conn = druid.getConnection();
             Statement stmt = DataSourceUtil.createStreamingStatement(conn);
@@ -233,64 +391,48 @@ public class DirectExportWorker extends BaseExportWorker {
 
             logger.info("{} 开始导出", topology);
             // 字段数
-            int colNum;
-            // 已经缓存的行数
-            int bufferedRowNum = 0;
-            byte[] value;
-            ByteArrayOutputStream os = new ByteArrayOutputStream();
-            colNum = resultSet.getMetaData().getColumnCount();
+            int colNum = resultSet.getMetaData().getColumnCount();
             while (resultSet.next()) {
-                for (int i = 1; i < colNum; i++) {
-                    value = resultSet.getBytes(i);
-                    writeFieldValue(os, value, isStringTypeList.get(i - 1));
-                    // 附加分隔符
-                    os.write(separator);
-                }
-                value = resultSet.getBytes(colNum);
-                writeFieldValue(os, value, isStringTypeList.get(colNum - 1));
-                // 附加换行符
-                os.write(FileUtil.SYS_NEW_LINE_BYTE);
-
-                bufferedRowNum++;
-                if (bufferedRowNum == GlobalVar.EMIT_BATCH_SIZE) {
-                    if (isLimitLine() && curLineNum + bufferedRowNum > maxLine) {
-                        // 超过了行数
-                        // 新建文件
-                        createNewPartFile();
-                    }
-                    writeToFile(os);
-                    curLineNum += bufferedRowNum;
-                    bufferedRowNum = 0;
-                }
-            }
-            if (bufferedRowNum != 0) {
-                // 最后剩余的元组
-                if (isLimitLine() && curLineNum + bufferedRowNum > maxLine) {
-                    // 超过了行数
-                    // 新建文件
+                if (isLimitLine() && curLineNum == maxLine) {
+                    // 当前文件已写满 新建文件
+                    encoder.flush();
                     createNewPartFile();
+                    if (encoder instanceof BinaryRowEncoder) {
+                        ((BinaryRowEncoder) encoder).setSyncMarker(syncMarker);
+                    }
                 }
-                writeToFile(os);
-                bufferedRowNum = 0;
+                encoder.appendRow(resultSet, colNum);
+                curLineNum++;
             }
+            encoder.flush();
+            isSucceeded = true;
             logger.info("{} 导出完成", topology);
-        } catch (SQLException | IOException e) {
+        } catch (SQLException e) {
             e.printStackTrace();
+        } finally {
+            encoder.close();
         }
     }
 
-    private void writeToFile(ByteArrayOutputStream os) {
-        byte[] data = os.toByteArray();
-        if (cipher != null) {
-            try {
-                data = cipher.encrypt(data);
-            } catch (Exception e) {
-                logger.error(e.getMessage());
-                throw new RuntimeException(e);
-            }
+    /**
+     * 写入一个缓冲区的完整行 并归还缓冲区
+     */
+    private void writeToFile(ByteBuffer buffer) {
+        if (cipher == null) {
+            // 缓冲区交给写入方 写完后归还
+            fileWriter.writeAndRelease(buffer, bufferPool::release);
+            return;
+        }
+        byte[] data = new byte[buffer.remaining()];
+        buffer.get(data);
+        bufferPool.release(buffer);
+        try {
+            data = cipher.encrypt(data);
+        } catch (Exception e) {
+            logger.error(e.getMessage());
+            throw new RuntimeException(e);
         }
         fileWriter.write(data);
-        os.reset();
     }
 
     /**
@@ -307,14 +449,14 @@ public class DirectExportWorker extends BaseExportWorker {
                 line++;
                 String[] values = new String[colNum];
                 for (int i = 1; i < colNum + 1; i++) {
-                    String value = rs.getString(i);
-                    values[i - 1] = value != null ? value : FileUtil.NULL_ESC_STR;
+                    values[i - 1] = rs.getString(i);
                 }
                 fileWriter.writeLine(values);
                 if (line % 1000 == 0) {
                     logger.info("{} 当前已写入行数: {} ", filename, line);
                 }
             }
+            isSucceeded = true;
         } catch (SQLException e) {
             e.printStackTrace();
         }
@@ -329,12 +471,23 @@ public class DirectExportWorker extends BaseExportWorker {
         return maxLine != 0;
     }
 
+    private boolean isLimitBytes() {
+        return maxFileBytes != 0;
+    }
+
     private void createNewPartFile() {
         curFileSeq++;
         createNewFile();
         curLineNum = 0;
     }
 
+    /**
+     * 运行结束后调用
+     */
+    public boolean isSucceeded() {
+        return isSucceeded;
+    }
+
     public String getWhereCondition() {
         return whereCondition;
     }
@@ -354,4 +507,8 @@ public class DirectExportWorker extends BaseExportWorker {
     public void setPermitted(Semaphore permitted) {
         this.permitted = permitted;
     }
+
+    public void setBufferPool(ByteBufferPool bufferPool) {
+        this.bufferPool = bufferPool;
+    }
 }
@@ -20,10 +20,12 @@ import com.lmax.disruptor.WorkHandler;
 import model.config.CompressMode;
 import model.db.TableFieldMetaInfo;
 import model.encrypt.BaseCipher;
+import util.ByteBufferPool;
 import util.FileUtil;
 import worker.common.writer.IFileWriter;
 import worker.common.writer.NioFileWriter;
 
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -38,6 +40,8 @@ public class ExportConsumer implements WorkHandler<ExportEvent> {
 
     private BaseCipher cipher = null;
 
+    private ByteBufferPool bufferPool = null;
+
     public ExportConsumer(String filename, AtomicInteger emittedDataCounter,
                           boolean isWithHeader, byte[] separator,
                           TableFieldMetaInfo tableFieldMetaInfo,
@@ -66,7 +70,36 @@ public class ExportConsumer implements WorkHandler<ExportEvent> {
 
     @Override
     public void onEvent(ExportEvent exportEvent) {
-        writeEvent(exportEvent.getData());
+        ByteBuffer buffer = exportEvent.getBuffer();
+        if (buffer != null) {
+            exportEvent.setBuffer(null);
+            writeEvent(buffer);
+        } else {
+            writeEvent(exportEvent.getData());
+        }
+    }
+
+    /**
+     * 写入池化的缓冲区后归还
+     */
+    public void writeEvent(ByteBuffer buffer) {
+        try {
+            if (cipher != null) {
+                byte[] data = new byte[buffer.remaining()];
+                buffer.get(data);
+                writeEvent(data);
+                return;
+            }
+            try {
+                fileWriter.write(buffer);
+            } finally {
+                emittedDataCounter.getAndDecrement();
+            }
+        } finally {
+            if (bufferPool != null) {
+                bufferPool.release(buffer);
+            }
+        }
     }
 
     public void writeEvent(byte[] data) {
@@ -89,6 +122,10 @@ public class ExportConsumer implements WorkHandler<ExportEvent> {
         this.cipher = cipher;
     }
 
+    public void setBufferPool(ByteBufferPool bufferPool) {
+        this.bufferPool = bufferPool;
+    }
+
     public void close() {
         fileWriter.close();
     }
@@ -17,9 +17,14 @@
 package worker.export;
 
 import java.io.Serializable;
+import java.nio.ByteBuffer;
 
 public class ExportEvent implements Serializable {
     private byte[] data;
+    /**
+     * 来自缓冲区池的数据 消费后需归还
+     */
+    private transient ByteBuffer buffer;
 
     public ExportEvent(byte[] data) {
         this.data = data;
@@ -35,4 +40,12 @@ public class ExportEvent implements Serializable {
     public byte[] getData() {
         return data;
     }
+
+    public ByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    public void setBuffer(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
 }
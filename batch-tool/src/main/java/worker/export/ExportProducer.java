@@ -24,19 +24,17 @@ import model.db.TableFieldMetaInfo;
 import model.db.TableTopology;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import util.ByteBufferPool;
 import util.DataSourceUtil;
-import util.FileUtil;
 import worker.util.ExportUtil;
 
 import javax.sql.DataSource;
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.List;
-import java.util.Queue;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -51,25 +49,22 @@ public class ExportProducer extends BaseExportWorker {
     private final CountDownLatch countDownLatch;
     private final AtomicInteger emittedDataCounter;
 
-    private final boolean collectFragmentEnabled;
-
-    private Queue<ExportEvent> fragmentQueue;
     private String whereCondition;
 
     private Semaphore permitted;
 
+    private ByteBufferPool bufferPool;
+
     public ExportProducer(DataSource druid, TableTopology topology,
                           TableFieldMetaInfo tableFieldMetaInfo,
                           RingBuffer<ExportEvent> ringBuffer,
                           String separator, CountDownLatch countDownLatch,
                           AtomicInteger emittedDataCounter,
-                          boolean collectFragmentEnabled,
                           QuoteEncloseMode quoteEncloseMode) {
         super(druid, topology, tableFieldMetaInfo, separator, quoteEncloseMode);
         this.ringBuffer = ringBuffer;
         this.countDownLatch = countDownLatch;
         this.emittedDataCounter = emittedDataCounter;
-        this.collectFragmentEnabled = collectFragmentEnabled;
     }
 
     @Override
@@ -104,11 +99,7 @@ public class ExportProducer extends BaseExportWorker {
 
         // 字段数
         int colNum;
-        // 已经缓存的行数
-        int bufferedRowNum = 0;
-        byte[] value;
-        // 字段数过多可考虑增加os的初始长度
-        ByteArrayOutputStream os = new ByteArrayOutputStream(metaInfoList.size() * 8);
+        RowBufferEncoder encoder = createRowEncoder(bufferPool, this::emitData);
         Connection conn = null;
         Statement stmt = null;
         ResultSet resultSet = null;
@@ -119,36 +110,19 @@ public class ExportProducer extends BaseExportWorker {
             resultSet = stmt.executeQuery(sql);
             colNum = resultSet.getMetaData().getColumnCount();
             while (resultSet.next()) {
-                for (int i = 1; i < colNum; i++) {
-                    value = resultSet.getBytes(i);
-                    writeFieldValue(os, value, isStringTypeList.get(i - 1));
-                    // 附加分隔符
-                    os.write(separator);
-                }
-                value = resultSet.getBytes(colNum);
-                writeFieldValue(os, value, isStringTypeList.get(colNum - 1));
-                // 附加换行符
-                os.write(FileUtil.SYS_NEW_LINE_BYTE);
-                bufferedRowNum++;
-                if (bufferedRowNum == EMIT_BATCH_SIZE) {
-                    emitData(os.toByteArray());
-                    os.reset();
-                    bufferedRowNum = 0;
-                }
-            }
-            if (bufferedRowNum != 0) {
-                // 最后剩余的元组
-                if (collectFragmentEnabled) {
-                    emitRemainData(os.toByteArray());
-                } else {
-                    emitData(os.toByteArray());
+                encoder.appendRow(resultSet, colNum);
+                if (encoder.getBufferedRowCount() == EMIT_BATCH_SIZE) {
+                    encoder.flush();
                 }
             }
+            // 最后剩余的元组
+            encoder.flush();
             logger.info("{} 发送完成", topology);
-        } catch (SQLException | IOException e) {
+        } catch (SQLException e) {
             e.printStackTrace();
             logger.error(e.getMessage());
         } finally {
+            encoder.close();
             JdbcUtils.close(resultSet);
             JdbcUtils.close(stmt);
             JdbcUtils.close(conn);
@@ -158,28 +132,22 @@ public class ExportProducer extends BaseExportWorker {
     /**
      * 发送数据给消费者
      *
-     * @param data 以字节数组方式发送
+     * @param buffer 池化的缓冲区 由消费者写入后归还
      */
-    private void emitData(byte[] data) {
+    private void emitData(ByteBuffer buffer) {
         long sequence;
         sequence = ringBuffer.next();
         try {
             // 给Event填充数据
             ExportEvent event = ringBuffer.get(sequence);
-            event.setData(data);
+            event.setData(null);
+            event.setBuffer(buffer);
         } finally {
             emittedDataCounter.getAndIncrement();
             ringBuffer.publish(sequence);
         }
     }
 
-    /**
-     * 发送剩余的数据给消费者
-     */
-    private void emitRemainData(byte[] data) {
-        fragmentQueue.add(new ExportEvent(data));
-    }
-
     public String getWhereCondition() {
         return whereCondition;
     }
@@ -188,15 +156,11 @@ public class ExportProducer extends BaseExportWorker {
         this.whereCondition = whereCondition;
     }
 
-    public Queue<ExportEvent> getFragmentQueue() {
-        return fragmentQueue;
-    }
-
-    public void setFragmentQueue(Queue<ExportEvent> fragmentQueue) {
-        this.fragmentQueue = fragmentQueue;
-    }
-
     public void setPermitted(Semaphore permitted) {
         this.permitted = permitted;
     }
+
+    public void setBufferPool(ByteBufferPool bufferPool) {
+        this.bufferPool = bufferPool;
+    }
 }
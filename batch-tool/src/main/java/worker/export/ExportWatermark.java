@@ -0,0 +1,105 @@
+/*
+ * Copyright [2013-2021], Alibaba Group Holding Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package worker.export;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+/**
+ * 增量导出的水位
+ * 记录每个分片已导出的水位列最大值 下次只导出不小于该值的数据
+ * 水位列变化时原有水位失效
+ */
+@ThreadSafe
+public class ExportWatermark {
+    private static final Logger logger = LoggerFactory.getLogger(ExportWatermark.class);
+
+    private static final String COLUMN_KEY = "#column";
+
+    private final String filePath;
+    private final Properties watermark = new Properties();
+
+    public ExportWatermark(String filePath, String columnName) {
+        this.filePath = filePath;
+        load(columnName);
+    }
+
+    private void load(String columnName) {
+        File file = new File(filePath);
+        if (file.exists()) {
+            try (InputStream in = new FileInputStream(file)) {
+                watermark.load(in);
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to load export watermark " + filePath, e);
+            }
+            if (StringUtils.equalsIgnoreCase(columnName, watermark.getProperty(COLUMN_KEY))) {
+                logger.info("从水位文件 {} 继续增量导出", filePath);
+            } else {
+                logger.warn("水位文件 {} 的水位列不一致, 将全量导出", filePath);
+                watermark.clear();
+            }
+        } else {
+            logger.info("水位文件 {} 不存在, 将全量导出", filePath);
+        }
+        watermark.setProperty(COLUMN_KEY, columnName);
+    }
+
+    /**
+     * @return 该分片上次导出的水位 无记录时返回null
+     */
+    public synchronized String get(String shardName) {
+        return watermark.getProperty(shardName);
+    }
+
+    /**
+     * 分片导出成功后更新水位并保存
+     */
+    public synchronized void update(String shardName, String value) {
+        watermark.setProperty(shardName, value);
+        save();
+    }
+
+    /**
+     * 先写临时文件再替换 避免中断时水位文件不完整
+     */
+    private void save() {
+        File tmpFile = new File(filePath + ".tmp");
+        try (OutputStream out = new FileOutputStream(tmpFile)) {
+            watermark.store(out, null);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to save export watermark " + filePath, e);
+        }
+        try {
+            Files.move(tmpFile.toPath(), new File(filePath).toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to save export watermark " + filePath, e);
+        }
+    }
+}
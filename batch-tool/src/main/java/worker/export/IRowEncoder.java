@@ -0,0 +1,42 @@
+/*
+ * Copyright [2013-2021], Alibaba Group Holding Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package worker.export;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * 将结果集的行编码至缓冲区 写满后交给调用方指定的 sink
+ */
+public interface IRowEncoder {
+
+    /**
+     * 编码结果集的当前行
+     */
+    void appendRow(ResultSet resultSet, int colNum) throws SQLException;
+
+    /**
+     * 将缓冲的完整行交给 sink
+     */
+    void flush();
+
+    /**
+     * 归还未交出的缓冲区
+     */
+    void close();
+}
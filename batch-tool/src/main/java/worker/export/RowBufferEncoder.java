@@ -0,0 +1,307 @@
+/*
+ * Copyright [2013-2021], Alibaba Group Holding Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package worker.export;
+
+import model.config.QuoteEncloseMode;
+import util.ByteBufferPool;
+import util.FileUtil;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.nio.ByteBuffer;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.function.Consumer;
+
+/**
+ * 将结果集的行直接编码至池化的堆外缓冲区
+ * 交给 sink 的缓冲区只包含完整的行 由 sink 负责归还缓冲区
+ * 字段值按字节查表分类 一次扫描同时确定是否加引号与首个需转义的位置 无需转义的片段整段写入
+ */
+@NotThreadSafe
+public class RowBufferEncoder implements IRowEncoder {
+    private static final byte QUOTE_BYTE = FileUtil.DOUBLE_QUOTE_BYTE[0];
+    private static final byte BACK_SLASH_BYTE = FileUtil.BACK_SLASH_BYTE[0];
+
+    /**
+     * 引号内外都需转义
+     */
+    private static final byte ESCAPE = 1;
+    /**
+     * 仅在引号内需转义
+     */
+    private static final byte ESCAPE_IN_QUOTE = 2;
+    /**
+     * 出现时需加引号
+     */
+    private static final byte NEED_QUOTE = 4;
+    /**
+     * 多字节分隔符的首字节 需继续比较后续字节
+     */
+    private static final byte SEPARATOR_HEAD = 8;
+
+    private static final int NO_QUOTE = -2;
+
+    private final ByteBufferPool bufferPool;
+    private final Consumer<ByteBuffer> sink;
+    private final byte[] separator;
+    private final boolean[] isStringTypes;
+    private final QuoteEncloseMode quoteEncloseMode;
+    /**
+     * 每个字节值对应的分类标记
+     */
+    private final byte[] byteClasses = new byte[256];
+
+    private ByteBuffer buffer = null;
+    /**
+     * 当前行在缓冲区中的起始位置
+     */
+    private int rowStart = 0;
+    /**
+     * 当前缓冲区中的完整行数
+     */
+    private int bufferedRowCount = 0;
+
+    public RowBufferEncoder(ByteBufferPool bufferPool, Consumer<ByteBuffer> sink, byte[] separator,
+                            boolean[] isStringTypes, QuoteEncloseMode quoteEncloseMode) {
+        this.bufferPool = bufferPool;
+        this.sink = sink;
+        this.separator = separator;
+        this.isStringTypes = isStringTypes;
+        this.quoteEncloseMode = quoteEncloseMode;
+        initByteClasses();
+    }
+
+    private void initByteClasses() {
+        byteClasses[QUOTE_BYTE & 0xFF] |= ESCAPE | ESCAPE_IN_QUOTE | NEED_QUOTE;
+        byteClasses[BACK_SLASH_BYTE & 0xFF] |= ESCAPE_IN_QUOTE;
+        byteClasses[FileUtil.CR_BYTE[0] & 0xFF] |= NEED_QUOTE;
+        byteClasses[FileUtil.LF_BYTE[0] & 0xFF] |= NEED_QUOTE;
+        if (separator.length == 1) {
+            byteClasses[separator[0] & 0xFF] |= NEED_QUOTE;
+        } else if (separator.length > 1) {
+            byteClasses[separator[0] & 0xFF] |= SEPARATOR_HEAD;
+        }
+    }
+
+    @Override
+    public void appendRow(ResultSet resultSet, int colNum) throws SQLException {
+        ensureCapacity(0);
+        rowStart = buffer.position();
+        for (int i = 1; i < colNum; i++) {
+            writeFieldValue(resultSet.getBytes(i), isStringTypes[i - 1]);
+            // 附加分隔符
+            put(separator);
+        }
+        writeFieldValue(resultSet.getBytes(colNum), isStringTypes[colNum - 1]);
+        // 附加换行符
+        put(FileUtil.SYS_NEW_LINE_BYTE);
+        bufferedRowCount++;
+    }
+
+    public int getBufferedRowCount() {
+        return bufferedRowCount;
+    }
+
+    @Override
+    public void flush() {
+        if (buffer == null || bufferedRowCount == 0) {
+            return;
+        }
+        ByteBuffer fullBuffer = buffer;
+        buffer = null;
+        rowStart = 0;
+        bufferedRowCount = 0;
+        fullBuffer.flip();
+        sink.accept(fullBuffer);
+    }
+
+    @Override
+    public void close() {
+        bufferPool.release(buffer);
+        buffer = null;
+    }
+
+    /**
+     * 根据引号模式来写入字段值
+     */
+    private void writeFieldValue(byte[] value, boolean isStringType) {
+        switch (quoteEncloseMode) {
+        case NONE:
+            writeValue(value);
+            break;
+        case FORCE:
+            writeValueWithQuote(value);
+            break;
+        case AUTO:
+            if (!isStringType || value == null) {
+                writeValue(value);
+                break;
+            }
+            int firstEscape = scanForQuote(value);
+            if (firstEscape == NO_QUOTE) {
+                // 不含引号 无需转义
+                put(value);
+            } else {
+                writeQuoted(value, firstEscape);
+            }
+            break;
+        }
+    }
+
+    /**
+     * 单次扫描字段值
+     *
+     * @return 无需加引号时返回 NO_QUOTE
+     * 否则返回引号内首个需转义字节的位置 没有则返回 value.length
+     */
+    private int scanForQuote(byte[] value) {
+        boolean needQuote = false;
+        int firstEscape = -1;
+        for (int i = 0; i < value.length; i++) {
+            byte byteClass = byteClasses[value[i] & 0xFF];
+            if (byteClass == 0) {
+                continue;
+            }
+            if (firstEscape < 0 && (byteClass & ESCAPE_IN_QUOTE) != 0) {
+                firstEscape = i;
+            }
+            if ((byteClass & NEED_QUOTE) != 0
+                || ((byteClass & SEPARATOR_HEAD) != 0 && matchesSeparator(value, i))) {
+                needQuote = true;
+            }
+            if (needQuote && firstEscape >= 0) {
+                return firstEscape;
+            }
+        }
+        if (!needQuote) {
+            return NO_QUOTE;
+        }
+        return firstEscape < 0 ? value.length : firstEscape;
+    }
+
+    private boolean matchesSeparator(byte[] value, int start) {
+        if (start + separator.length > value.length) {
+            return false;
+        }
+        for (int k = 1; k < separator.length; k++) {
+            if (value[start + k] != separator[k]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 如果value中包含`"`
+     * 则用`""`进行转义
+     */
+    private void writeValue(byte[] value) {
+        if (value == null) {
+            put(FileUtil.NULL_ESC_BYTE);
+            return;
+        }
+        putEscaped(value, 0, ESCAPE);
+    }
+
+    /**
+     * 如果value中包含`"` `\`
+     * 则用`""` `\\`进行转义
+     */
+    private void writeValueWithQuote(byte[] value) {
+        if (value == null) {
+            put(FileUtil.DOUBLE_QUOTE_BYTE);
+            put(FileUtil.NULL_ESC_BYTE_IN_QUOTE);
+            put(FileUtil.DOUBLE_QUOTE_BYTE);
+            return;
+        }
+        writeQuoted(value, 0);
+    }
+
+    /**
+     * @param from 此前的字节均无需转义
+     */
+    private void writeQuoted(byte[] value, int from) {
+        ensureCapacity(value.length + 2);
+        buffer.put(QUOTE_BYTE);
+        putEscaped(value, from, ESCAPE_IN_QUOTE);
+        ensureCapacity(1);
+        buffer.put(QUOTE_BYTE);
+    }
+
+    /**
+     * 将属于 escapeMask 的字节写两次 其余片段整段写入
+     *
+     * @param from 此前的字节均无需转义
+     */
+    private void putEscaped(byte[] value, int from, byte escapeMask) {
+        int runStart = 0;
+        for (int i = from; i < value.length; i++) {
+            if ((byteClasses[value[i] & 0xFF] & escapeMask) != 0) {
+                // 转义多占一个字节 同时为剩余部分预留空间
+                ensureCapacity(value.length - runStart + 1);
+                buffer.put(value, runStart, i + 1 - runStart);
+                buffer.put(value[i]);
+                runStart = i + 1;
+            }
+        }
+        ensureCapacity(value.length - runStart);
+        buffer.put(value, runStart, value.length - runStart);
+    }
+
+    private void put(byte[] bytes) {
+        ensureCapacity(bytes.length);
+        buffer.put(bytes);
+    }
+
+    /**
+     * 保证缓冲区剩余空间不小于 required
+     * 空间不足时将已完整的行交给 sink 未完成的行移至新的缓冲区
+     */
+    private void ensureCapacity(int required) {
+        if (buffer == null) {
+            buffer = bufferPool.acquire();
+            rowStart = 0;
+        }
+        if (buffer.remaining() >= required) {
+            return;
+        }
+        int rowLength = buffer.position() - rowStart;
+        ByteBuffer nextBuffer;
+        if (rowLength + required <= bufferPool.getBufferSize()) {
+            nextBuffer = bufferPool.acquire();
+        } else {
+            // 单行超过缓冲区大小 临时分配更大的缓冲区
+            nextBuffer = ByteBuffer.allocateDirect(Integer.highestOneBit(rowLength + required) << 1);
+        }
+        ByteBuffer partialRow = buffer.duplicate();
+        partialRow.limit(buffer.position());
+        partialRow.position(rowStart);
+        nextBuffer.put(partialRow);
+
+        ByteBuffer fullBuffer = buffer;
+        fullBuffer.position(rowStart);
+        buffer = nextBuffer;
+        rowStart = 0;
+        if (bufferedRowCount > 0) {
+            bufferedRowCount = 0;
+            fullBuffer.flip();
+            sink.accept(fullBuffer);
+        } else {
+            bufferPool.release(fullBuffer);
+        }
+    }
+}
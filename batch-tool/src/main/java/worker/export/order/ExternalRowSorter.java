@@ -0,0 +1,298 @@
+/*
+ * Copyright [2013-2021], Alibaba Group Holding Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package worker.export.order;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import util.FileUtil;
+import util.IOUtil;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * 内存受限的外部排序
+ * 缓冲区超出内存预算时排序并溢写为本地临时文件中的有序段
+ * 读取时对各有序段与内存中剩余的数据流式归并
+ * 非线程安全 写入与读取需在同一线程或经由外部同步
+ */
+public class ExternalRowSorter implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(ExternalRowSorter.class);
+
+    private static final int IO_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * 估算内存占用时 行数组与每个字段数组的对象头开销
+     */
+    private static final int ROW_OVERHEAD = 24;
+    private static final int FIELD_OVERHEAD = 24;
+
+    private final Comparator<OrderByExportEvent> comparator;
+    private final long memoryBudget;
+    private final File tmpDir;
+
+    private List<OrderByExportEvent> buffer = new ArrayList<>();
+    private long bufferedBytes = 0;
+
+    private final List<RunFile> runFiles = new ArrayList<>();
+    /**
+     * 仍可追加写入的有序段
+     */
+    private RunFile lastRun = null;
+    private OutputStream lastRunOutput = null;
+    private OrderByExportEvent lastSpilledRow = null;
+
+    private long rowCount = 0;
+
+    public ExternalRowSorter(Comparator<OrderByExportEvent> comparator, long memoryBudget, File tmpDir) {
+        this.comparator = comparator;
+        this.memoryBudget = memoryBudget;
+        this.tmpDir = tmpDir;
+    }
+
+    public void add(OrderByExportEvent row) throws IOException {
+        buffer.add(row);
+        rowCount++;
+        bufferedBytes += estimateSize(row);
+        if (bufferedBytes >= memoryBudget) {
+            spill();
+        }
+    }
+
+    /**
+     * 数据库已按相同字段排序返回时 相邻两次溢写的数据首尾衔接
+     * 此时直接追加到上一个有序段 归并时每个分片只需一路
+     */
+    private void spill() throws IOException {
+        if (buffer.isEmpty()) {
+            return;
+        }
+        buffer.sort(comparator);
+        if (lastRun == null || comparator.compare(lastSpilledRow, buffer.get(0)) > 0) {
+            finishLastRun();
+            lastRun = new RunFile(File.createTempFile("batch-tool-sort-", ".run", tmpDir));
+            lastRun.file.deleteOnExit();
+            runFiles.add(lastRun);
+            lastRunOutput = new BufferedOutputStream(new FileOutputStream(lastRun.file), IO_BUFFER_SIZE);
+        }
+        for (OrderByExportEvent row : buffer) {
+            writeRow(lastRunOutput, row);
+        }
+        lastRun.rowCount += buffer.size();
+        lastSpilledRow = buffer.get(buffer.size() - 1);
+        logger.debug("溢写 {} 行至 {}", buffer.size(), lastRun.file.getPath());
+        buffer = new ArrayList<>();
+        bufferedBytes = 0;
+    }
+
+    private void finishLastRun() throws IOException {
+        if (lastRunOutput != null) {
+            lastRunOutput.close();
+            lastRunOutput = null;
+        }
+    }
+
+    /**
+     * 结束写入 返回全部数据的有序流
+     */
+    public RowIterator sortedIterator() throws IOException {
+        finishLastRun();
+        lastRun = null;
+        lastSpilledRow = null;
+        buffer.sort(comparator);
+        if (runFiles.isEmpty()) {
+            return new MemoryRowIterator(buffer);
+        }
+        logger.debug("共 {} 行, 有序段 {} 个", rowCount, runFiles.size());
+        List<RowIterator> sources = new ArrayList<>(runFiles.size() + 1);
+        for (RunFile runFile : runFiles) {
+            sources.add(new RunFileIterator(runFile));
+        }
+        if (!buffer.isEmpty()) {
+            sources.add(new MemoryRowIterator(buffer));
+        }
+        return new LoserTreeMerger(sources, comparator);
+    }
+
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    public int getRunCount() {
+        return runFiles.size();
+    }
+
+    /**
+     * 删除临时文件
+     */
+    @Override
+    public void close() {
+        IOUtil.close(lastRunOutput);
+        lastRunOutput = null;
+        for (RunFile runFile : runFiles) {
+            if (!runFile.file.delete()) {
+                logger.warn("删除临时文件 {} 失败", runFile.file.getPath());
+            }
+        }
+        runFiles.clear();
+        buffer = new ArrayList<>();
+    }
+
+    private static long estimateSize(OrderByExportEvent row) {
+        long size = ROW_OVERHEAD + FIELD_OVERHEAD + row.getSortKey().length;
+        for (byte[] field : row.getData()) {
+            size += FIELD_OVERHEAD + field.length;
+        }
+        return size;
+    }
+
+    /**
+     * 行格式: 排序键长度与排序键, 字段数, 之后每个字段为 长度+1 与内容
+     * 长度+1 为 0 表示 NULL
+     * 整数均为 varint 编码
+     */
+    private static void writeRow(OutputStream out, OrderByExportEvent row) throws IOException {
+        byte[] sortKey = row.getSortKey();
+        writeVarInt(out, sortKey.length);
+        out.write(sortKey);
+        byte[][] data = row.getData();
+        writeVarInt(out, data.length);
+        for (byte[] field : data) {
+            if (field == FileUtil.NULL_ESC_BYTE) {
+                writeVarInt(out, 0);
+            } else {
+                writeVarInt(out, field.length + 1);
+                out.write(field);
+            }
+        }
+    }
+
+    private static OrderByExportEvent readRow(InputStream in) throws IOException {
+        byte[] sortKey = new byte[readVarInt(in)];
+        readFully(in, sortKey);
+        int colNum = readVarInt(in);
+        byte[][] row = new byte[colNum][];
+        for (int i = 0; i < colNum; i++) {
+            int len = readVarInt(in);
+            if (len == 0) {
+                row[i] = FileUtil.NULL_ESC_BYTE;
+                continue;
+            }
+            byte[] field = new byte[len - 1];
+            readFully(in, field);
+            row[i] = field;
+        }
+        return new OrderByExportEvent(0, row, sortKey);
+    }
+
+    private static void writeVarInt(OutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int readVarInt(InputStream in) throws IOException {
+        int value = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = in.read();
+            if (b < 0) {
+                throw new EOFException("Unexpected end of sort run file");
+            }
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    private static void readFully(InputStream in, byte[] data) throws IOException {
+        int offset = 0;
+        while (offset < data.length) {
+            int n = in.read(data, offset, data.length - offset);
+            if (n < 0) {
+                throw new EOFException("Unexpected end of sort run file");
+            }
+            offset += n;
+        }
+    }
+
+    private static class RunFile {
+        final File file;
+        long rowCount = 0;
+
+        RunFile(File file) {
+            this.file = file;
+        }
+    }
+
+    private static class RunFileIterator implements RowIterator {
+        private final InputStream in;
+        private long remaining;
+
+        RunFileIterator(RunFile runFile) throws IOException {
+            this.in = new BufferedInputStream(new FileInputStream(runFile.file), IO_BUFFER_SIZE);
+            this.remaining = runFile.rowCount;
+        }
+
+        @Override
+        public OrderByExportEvent next() throws IOException {
+            if (remaining == 0) {
+                return null;
+            }
+            remaining--;
+            return readRow(in);
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    private static class MemoryRowIterator implements RowIterator {
+        private final List<OrderByExportEvent> rows;
+        private int index = 0;
+
+        MemoryRowIterator(List<OrderByExportEvent> rows) {
+            this.rows = rows;
+        }
+
+        @Override
+        public OrderByExportEvent next() {
+            if (index == rows.size()) {
+                return null;
+            }
+            // 释放已输出的行
+            return rows.set(index++, null);
+        }
+    }
+}
@@ -26,11 +26,11 @@ import util.FileUtil;
 import worker.util.ExportUtil;
 
 import javax.sql.DataSource;
+import java.io.IOException;
 import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
 
@@ -42,11 +42,12 @@ public class LocalOrderByExportProducer implements Runnable {
     private static final Logger logger = LoggerFactory.getLogger(LocalOrderByExportProducer.class);
 
     private String whereCondition;
-    private final LinkedList<ParallelOrderByExportEvent> orderByExportEventList;
+    private final ExternalRowSorter sorter;
     private final DataSource druid;
     private final TableTopology topology;
     private final TableFieldMetaInfo tableFieldMetaInfo;
     private final List<String> orderByColumnName;
+    private final SortKeyEncoder sortKeyEncoder;
 
     private final CountDownLatch countDownLatch;
 
@@ -56,12 +57,14 @@ public class LocalOrderByExportProducer implements Runnable {
     private boolean isAscending = true;
 
     public LocalOrderByExportProducer(DataSource druid, TableTopology topology, TableFieldMetaInfo tableFieldMetaInfo,
-                                      LinkedList<ParallelOrderByExportEvent> orderByExportEventList,
-                                      List<String> orderByColumnName, CountDownLatch countDownLatch) {
+                                      ExternalRowSorter sorter,
+                                      List<String> orderByColumnName, SortKeyEncoder sortKeyEncoder,
+                                      CountDownLatch countDownLatch) {
         this.tableFieldMetaInfo = tableFieldMetaInfo;
-        this.orderByExportEventList = orderByExportEventList;
+        this.sorter = sorter;
         this.druid = druid;
         this.orderByColumnName = orderByColumnName;
+        this.sortKeyEncoder = sortKeyEncoder;
         this.topology = topology;
         this.countDownLatch = countDownLatch;
     }
@@ -80,11 +83,12 @@ public class LocalOrderByExportProducer implements Runnable {
             colNum = resultSet.getMetaData().getColumnCount();
             while (resultSet.next()) {
                 byte[][] data = getRowBytes(resultSet, colNum);
-                orderByExportEventList.add(new ParallelOrderByExportEvent(data));
+                sorter.add(new OrderByExportEvent(0, data, sortKeyEncoder.encode(data)));
             }
             long endTime = System.currentTimeMillis();
-            logger.debug("{} 发送至缓冲区完毕，耗时 {} s", topology, (endTime - startTime) / 1000F);
-        } catch (SQLException e) {
+            logger.debug("{} 发送至排序缓冲区完毕，共 {} 行，溢写有序段 {} 个，耗时 {} s", topology,
+                sorter.getRowCount(), sorter.getRunCount(), (endTime - startTime) / 1000F);
+        } catch (SQLException | IOException e) {
             logger.error(e.getMessage());
         } finally {
             countDownLatch.countDown();
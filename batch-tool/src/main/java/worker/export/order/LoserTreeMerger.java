@@ -0,0 +1,118 @@
+/*
+ * Copyright [2013-2021], Alibaba Group Holding Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package worker.export.order;
+
+import util.IOUtil;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * 基于败者树的多路有序行数据流式归并
+ * 每输出一行只需沿叶子到根比较 log2(k) 次 路数不要求是2的整次幂
+ * 比较相等时按来源序号输出 保证稳定
+ */
+public class LoserTreeMerger implements RowIterator {
+
+    private final RowIterator[] sources;
+    private final Comparator<OrderByExportEvent> comparator;
+    private final int k;
+    /**
+     * tree[0] 为当前胜者 其余节点记录该处比赛的败者
+     */
+    private final int[] tree;
+    /**
+     * 每一路的当前行 为 null 表示该路已读完
+     */
+    private final OrderByExportEvent[] heads;
+
+    public LoserTreeMerger(List<? extends RowIterator> sources,
+                           Comparator<OrderByExportEvent> comparator) throws IOException {
+        this.sources = sources.toArray(new RowIterator[0]);
+        this.comparator = comparator;
+        this.k = this.sources.length;
+        this.tree = new int[Math.max(k, 1)];
+        this.heads = new OrderByExportEvent[k];
+        for (int i = 0; i < k; i++) {
+            heads[i] = this.sources[i].next();
+        }
+        // 以虚拟的最小值 k 填充 自底向上依次调整各叶子后即可建成
+        Arrays.fill(tree, k);
+        for (int i = k - 1; i >= 0; i--) {
+            adjust(i);
+        }
+    }
+
+    @Override
+    public OrderByExportEvent next() throws IOException {
+        if (k == 0) {
+            return null;
+        }
+        int winner = tree[0];
+        OrderByExportEvent row = heads[winner];
+        if (row == null) {
+            return null;
+        }
+        heads[winner] = sources[winner].next();
+        adjust(winner);
+        return row;
+    }
+
+    /**
+     * 叶子 leaf 的值变化后 沿路径向上重赛
+     */
+    private void adjust(int leaf) {
+        int winner = leaf;
+        for (int node = (leaf + k) >> 1; node > 0; node >>= 1) {
+            if (beats(tree[node], winner)) {
+                int loser = winner;
+                winner = tree[node];
+                tree[node] = loser;
+            }
+        }
+        tree[0] = winner;
+    }
+
+    private boolean beats(int a, int b) {
+        if (a == k) {
+            return true;
+        }
+        if (b == k) {
+            return false;
+        }
+        OrderByExportEvent rowA = heads[a];
+        OrderByExportEvent rowB = heads[b];
+        if (rowA == null) {
+            return false;
+        }
+        if (rowB == null) {
+            return true;
+        }
+        int res = comparator.compare(rowA, rowB);
+        return res < 0 || (res == 0 && a < b);
+    }
+
+    @Override
+    public void close() {
+        for (RowIterator source : sources) {
+            IOUtil.close(source);
+        }
+    }
+}
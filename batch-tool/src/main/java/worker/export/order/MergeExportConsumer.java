@@ -22,6 +22,7 @@ import util.FileUtil;
 import util.IOUtil;
 import worker.common.writer.IFileWriter;
 import worker.common.writer.NioFileWriter;
+import worker.util.ExportUtil;
 
 import java.io.ByteArrayOutputStream;
 import java.io.File;
@@ -40,10 +41,6 @@ public abstract class MergeExportConsumer {
      * 排序字段的信息
      */
     protected final List<FieldMetaInfo> orderByColumnInfoList;
-    /**
-     * 默认升序
-     */
-    protected final boolean isAscending = true;
     /**
      * 当前写入文件的行数
      */
@@ -66,7 +63,10 @@ public abstract class MergeExportConsumer {
     protected final String filePath;
     protected final byte[] separator;
     protected final IFileWriter fileWriter;
-    protected Comparator comparator;
+    /**
+     * 升降序已编码在排序键中
+     */
+    protected final Comparator<OrderByExportEvent> comparator = ExportUtil.getSortKeyComparator();
 
     protected MergeExportConsumer(List<FieldMetaInfo> orderByColumnInfoList, int maxLine,
                                   String filePath, byte[] separator) {
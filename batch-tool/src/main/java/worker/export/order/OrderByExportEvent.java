@@ -21,12 +21,22 @@ import java.io.Serializable;
 public class OrderByExportEvent implements Serializable {
     private int queueIndex;
     private byte[][] data;
+    /**
+     * 见 SortKeyEncoder
+     */
+    private byte[] sortKey;
 
     public OrderByExportEvent(int queueIndex, byte[][] data) {
         this.queueIndex = queueIndex;
         this.data = data;
     }
 
+    public OrderByExportEvent(int queueIndex, byte[][] data, byte[] sortKey) {
+        this.queueIndex = queueIndex;
+        this.data = data;
+        this.sortKey = sortKey;
+    }
+
     public OrderByExportEvent(int queueIndex) {
         this.queueIndex = queueIndex;
     }
@@ -42,6 +52,10 @@ public class OrderByExportEvent implements Serializable {
         return data;
     }
 
+    public byte[] getSortKey() {
+        return sortKey;
+    }
+
     public int getQueueIndex() {
         return queueIndex;
     }
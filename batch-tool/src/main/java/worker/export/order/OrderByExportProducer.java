@@ -31,20 +31,18 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.List;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.atomic.AtomicBoolean;
 
 public class OrderByExportProducer implements Runnable {
     private static final Logger logger = LoggerFactory.getLogger(OrderByExportProducer.class);
 
     private String whereCondition;
     private final int queueIndex;
-    private final LinkedBlockingQueue<OrderByExportEvent> orderByExportEventQueue;
+    private final SpscBatchQueue orderByExportEventQueue;
     private final DataSource druid;
     private final TableTopology topology;
     private final TableFieldMetaInfo tableFieldMetaInfo;
     private final List<String> orderByColumnName;
-    private final AtomicBoolean finished;
+    private final SortKeyEncoder sortKeyEncoder;
 
     /**
      * 默认升序
@@ -52,15 +50,15 @@ public class OrderByExportProducer implements Runnable {
     private boolean isAscending = true;
 
     public OrderByExportProducer(DataSource druid, TableTopology topology, TableFieldMetaInfo tableFieldMetaInfo,
-                                 LinkedBlockingQueue<OrderByExportEvent> orderByExportEventQueue, int queueIndex,
-                                 List<String> orderByColumnName, AtomicBoolean finished) {
+                                 SpscBatchQueue orderByExportEventQueue, int queueIndex,
+                                 List<String> orderByColumnName, SortKeyEncoder sortKeyEncoder) {
         this.tableFieldMetaInfo = tableFieldMetaInfo;
         this.queueIndex = queueIndex;
         this.orderByExportEventQueue = orderByExportEventQueue;
         this.druid = druid;
         this.orderByColumnName = orderByColumnName;
+        this.sortKeyEncoder = sortKeyEncoder;
         this.topology = topology;
-        this.finished = finished;
     }
 
     public void produceData() {
@@ -81,7 +79,7 @@ public class OrderByExportProducer implements Runnable {
             while (resultSet.next()) {
                 byte[][] data = LocalOrderByExportProducer.getRowBytes(resultSet, colNum);
                 exportEvent = new OrderByExportEvent(queueIndex,
-                    data);
+                    data, sortKeyEncoder.encode(data));
                 orderByExportEventQueue.put(exportEvent);
             }
             long endTime = System.currentTimeMillis();
@@ -89,10 +87,11 @@ public class OrderByExportProducer implements Runnable {
         } catch (SQLException | InterruptedException e) {
             e.printStackTrace();
         } finally {
-            finished.set(true);
-            // 写入一条空消息, 保证设置 finished 标志后队列不空。
-            orderByExportEventQueue.offer(
-                new OrderByExportEvent(queueIndex));
+            try {
+                orderByExportEventQueue.finish();
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
             JdbcUtils.close(resultSet);
             JdbcUtils.close(stmt);
             JdbcUtils.close(conn);
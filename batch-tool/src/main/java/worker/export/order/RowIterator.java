@@ -14,25 +14,23 @@
  * limitations under the License.
  */
 
-package worker.export.order;
-
-import java.io.Serializable;
 
-public class ParallelOrderByExportEvent implements Serializable {
-    private byte[][] data;
+package worker.export.order;
 
-    public ParallelOrderByExportEvent(byte[][] data) {
-        this.data = data;
-    }
+import java.io.Closeable;
+import java.io.IOException;
 
-    public ParallelOrderByExportEvent() {
-    }
+/**
+ * 按序逐行读取的行数据来源
+ */
+public interface RowIterator extends Closeable {
 
-    public void setData(byte[][] data) {
-        this.data = data;
-    }
+    /**
+     * @return 下一行 读取完毕时返回 null
+     */
+    OrderByExportEvent next() throws IOException;
 
-    public byte[][] getData() {
-        return data;
+    @Override
+    default void close() throws IOException {
     }
 }
@@ -0,0 +1,202 @@
+/*
+ * Copyright [2013-2021], Alibaba Group Holding Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package worker.export.order;
+
+import model.db.FieldMetaInfo;
+import util.FileUtil;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 由排序字段生成可直接按无符号字节比较的排序键
+ * 每行只生成一次 排序与归并时不再解析字段值
+ * 非线程安全 每个生产者各自持有一个实例
+ *
+ * 每个字段的编码: NULL 为 0x00, 非 NULL 为 0x01 加上字段值编码
+ * 降序时该字段的全部字节取反 NULL 因此在升序时最小、降序时最大 与 MySQL 一致
+ */
+public class SortKeyEncoder {
+
+    private static final byte NULL_FLAG = 0x00;
+    private static final byte NOT_NULL_FLAG = 0x01;
+
+    /**
+     * 数值编码的类别 负数 < 零 < 正数 < 无法解析为数值的值
+     */
+    private static final byte NUMBER_NEGATIVE = 0x01;
+    private static final byte NUMBER_ZERO = 0x02;
+    private static final byte NUMBER_POSITIVE = 0x03;
+    private static final byte NUMBER_INVALID = 0x04;
+
+    private final FieldMetaInfo[] orderByColumns;
+    private final boolean isAscending;
+
+    private byte[] buf = new byte[64];
+    private int len = 0;
+
+    public SortKeyEncoder(List<FieldMetaInfo> orderByColumnInfoList, boolean isAscending) {
+        this.orderByColumns = orderByColumnInfoList.toArray(new FieldMetaInfo[0]);
+        this.isAscending = isAscending;
+    }
+
+    public byte[] encode(byte[][] row) {
+        len = 0;
+        for (FieldMetaInfo column : orderByColumns) {
+            int start = len;
+            byte[] value = row[column.getIndex()];
+            if (value == FileUtil.NULL_ESC_BYTE) {
+                put(NULL_FLAG);
+            } else {
+                put(NOT_NULL_FLAG);
+                switch (column.getType()) {
+                case INT:
+                case FLOAT:
+                    if (!putNumber(value)) {
+                        put(NUMBER_INVALID);
+                        putString(value);
+                    }
+                    break;
+                default:
+                    putString(value);
+                    break;
+                }
+            }
+            if (!isAscending) {
+                for (int i = start; i < len; i++) {
+                    buf[i] = (byte) ~buf[i];
+                }
+            }
+        }
+        return Arrays.copyOf(buf, len);
+    }
+
+    /**
+     * 0x00 转义为 0x00 0xFF, 以 0x00 0x01 结尾
+     * 保证较短的前缀排在前面
+     */
+    private void putString(byte[] value) {
+        for (byte b : value) {
+            put(b);
+            if (b == 0) {
+                put((byte) 0xFF);
+            }
+        }
+        put((byte) 0x00);
+        put((byte) 0x01);
+    }
+
+    /**
+     * 十进制文本按 0.d1d2...dn * 10^E 编码 (d1 不为 0)
+     * 正数: 类别, E(4字节 翻转符号位), 有效数字, 0x00
+     * 负数: 类别, 以及 E、有效数字与结尾按位取反
+     * 不经过 long/double 转换 BIGINT UNSIGNED 与 DECIMAL 均保持精确
+     *
+     * @return 是否为合法的十进制数
+     */
+    private boolean putNumber(byte[] value) {
+        int pos = 0;
+        int end = value.length;
+        boolean negative = false;
+        if (pos < end && (value[pos] == '-' || value[pos] == '+')) {
+            negative = value[pos] == '-';
+            pos++;
+        }
+        int intStart = pos;
+        while (pos < end && isDigit(value[pos])) {
+            pos++;
+        }
+        int intEnd = pos;
+        int fracStart = pos;
+        int fracEnd = pos;
+        if (pos < end && value[pos] == '.') {
+            fracStart = ++pos;
+            while (pos < end && isDigit(value[pos])) {
+                pos++;
+            }
+            fracEnd = pos;
+        }
+        if (intStart == intEnd && fracStart == fracEnd) {
+            return false;
+        }
+        if (pos < end) {
+            if (value[pos] == 'e' || value[pos] == 'E') {
+                // 科学计数法 如 double 的 1.5E-7 转为普通小数再编码
+                try {
+                    return putNumber(new BigDecimal(new String(value, StandardCharsets.US_ASCII))
+                        .toPlainString().getBytes(StandardCharsets.US_ASCII));
+                } catch (NumberFormatException e) {
+                    return false;
+                }
+            }
+            return false;
+        }
+        // 去掉前导零
+        while (intStart < intEnd && value[intStart] == '0') {
+            intStart++;
+        }
+        int exponent;
+        int digitStart;
+        if (intStart < intEnd) {
+            exponent = intEnd - intStart;
+            digitStart = intStart;
+        } else {
+            digitStart = fracStart;
+            while (digitStart < fracEnd && value[digitStart] == '0') {
+                digitStart++;
+            }
+            exponent = fracStart - digitStart;
+            if (digitStart == fracEnd) {
+                put(NUMBER_ZERO);
+                return true;
+            }
+        }
+        // 去掉末尾的零
+        int digitEnd = fracEnd > fracStart ? fracEnd : intEnd;
+        while (value[digitEnd - 1] == '0' || value[digitEnd - 1] == '.') {
+            digitEnd--;
+        }
+        int mask = negative ? 0xFF : 0x00;
+        put(negative ? NUMBER_NEGATIVE : NUMBER_POSITIVE);
+        int biasedExponent = exponent ^ 0x80000000;
+        put((byte) ((biasedExponent >>> 24) ^ mask));
+        put((byte) ((biasedExponent >>> 16) ^ mask));
+        put((byte) ((biasedExponent >>> 8) ^ mask));
+        put((byte) (biasedExponent ^ mask));
+        for (int i = digitStart; i < digitEnd; i++) {
+            if (value[i] != '.') {
+                put((byte) (value[i] ^ mask));
+            }
+        }
+        put((byte) mask);
+        return true;
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    private void put(byte b) {
+        if (len == buf.length) {
+            buf = Arrays.copyOf(buf, buf.length * 2);
+        }
+        buf[len++] = b;
+    }
+}
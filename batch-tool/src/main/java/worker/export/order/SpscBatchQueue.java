@@ -0,0 +1,151 @@
+/*
+ * Copyright [2013-2021], Alibaba Group Holding Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package worker.export.order;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 单生产者单消费者的分片行队列
+ * 生产者攒满一批后整体发布到环形数组 消费者按批取出后逐行读取
+ * 每批只需一次有序写与一次有序读 避免逐行加锁与分配链表节点
+ */
+public class SpscBatchQueue implements RowIterator {
+
+    private static final int SPIN_TRIES = 100;
+    private static final long PARK_TIME = 50 * 1000L;
+
+    private final OrderByExportEvent[][] ring;
+    private final int mask;
+    private final int batchSize;
+
+    /**
+     * 消费者已取出的批次数
+     */
+    private final AtomicLong head = new AtomicLong(0);
+    /**
+     * 生产者已发布的批次数
+     */
+    private final AtomicLong tail = new AtomicLong(0);
+    private volatile boolean finished = false;
+
+    /**
+     * 仅由生产者访问
+     */
+    private OrderByExportEvent[] producingBatch;
+    private int producingSize = 0;
+
+    /**
+     * 仅由消费者访问
+     */
+    private OrderByExportEvent[] consumingBatch = null;
+    private int consumingIndex = 0;
+
+    /**
+     * @param capacity 可缓存的批次数 向上取整为2的整次幂
+     */
+    public SpscBatchQueue(int capacity, int batchSize) {
+        int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        this.ring = new OrderByExportEvent[size][];
+        this.mask = size - 1;
+        this.batchSize = batchSize;
+        this.producingBatch = new OrderByExportEvent[batchSize];
+    }
+
+    public void put(OrderByExportEvent row) throws InterruptedException {
+        producingBatch[producingSize++] = row;
+        if (producingSize == batchSize) {
+            publish();
+        }
+    }
+
+    /**
+     * 发布剩余的数据并标记结束
+     * 生产者异常退出时也需调用 否则消费者会一直等待
+     */
+    public void finish() throws InterruptedException {
+        try {
+            if (producingSize > 0) {
+                publish();
+            }
+        } finally {
+            finished = true;
+        }
+    }
+
+    private void publish() throws InterruptedException {
+        long curTail = tail.get();
+        int tries = 0;
+        while (curTail - head.get() == ring.length) {
+            tries = idle(tries);
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+        OrderByExportEvent[] batch = producingBatch;
+        if (producingSize < batchSize) {
+            OrderByExportEvent[] lastBatch = new OrderByExportEvent[producingSize];
+            System.arraycopy(batch, 0, lastBatch, 0, producingSize);
+            batch = lastBatch;
+        }
+        ring[(int) (curTail & mask)] = batch;
+        tail.lazySet(curTail + 1);
+        producingBatch = new OrderByExportEvent[batchSize];
+        producingSize = 0;
+    }
+
+    @Override
+    public OrderByExportEvent next() throws InterruptedIOException {
+        if (consumingBatch != null && consumingIndex < consumingBatch.length) {
+            return consumingBatch[consumingIndex++];
+        }
+        long curHead = head.get();
+        int tries = 0;
+        while (true) {
+            // 先读结束标志再读 tail 结束前发布的批次一定可见
+            boolean isFinished = finished;
+            if (curHead < tail.get()) {
+                break;
+            }
+            if (isFinished) {
+                consumingBatch = null;
+                return null;
+            }
+            tries = idle(tries);
+            if (Thread.interrupted()) {
+                throw new InterruptedIOException();
+            }
+        }
+        int slot = (int) (curHead & mask);
+        consumingBatch = ring[slot];
+        ring[slot] = null;
+        head.lazySet(curHead + 1);
+        consumingIndex = 1;
+        return consumingBatch[0];
+    }
+
+    private static int idle(int tries) {
+        if (tries < SPIN_TRIES) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(PARK_TIME);
+        }
+        return tries + 1;
+    }
+}
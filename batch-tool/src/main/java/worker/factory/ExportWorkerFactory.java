@@ -50,6 +50,15 @@ public class ExportWorkerFactory {
                 config.getQuoteEncloseMode(), config.getCompressMode(),
                 config.getFileFormat(), config.getCharset(), cipher);
             break;
+        case MAX_BYTES_IN_SINGLE_FILE:
+            directExportWorker = new DirectExportWorker(druid,
+                topology, tableFieldMetaInfo,
+                0, config.getMaxFileBytes(),
+                filename,
+                config.getSeparator(), config.isWithHeader(),
+                config.getQuoteEncloseMode(), config.getCompressMode(),
+                config.getFileFormat(), config.getCharset(), cipher);
+            break;
         case DEFAULT:
             directExportWorker = new DirectExportWorker(druid,
                 topology, tableFieldMetaInfo,
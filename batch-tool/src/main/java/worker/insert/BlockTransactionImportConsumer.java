@@ -0,0 +1,147 @@
+/*
+ * Copyright [2013-2021], Alibaba Group Holding Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package worker.insert;
+
+import com.alibaba.druid.util.JdbcUtils;
+import com.alibaba.druid.util.StringUtils;
+import exception.DatabaseException;
+import model.db.FieldMetaInfo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import worker.common.BaseWorkHandler;
+import worker.common.BatchLineEvent;
+import worker.util.ImportUtil;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+import static model.config.ConfigConstant.END_OF_BATCH_LINES;
+import static model.config.GlobalVar.EMIT_BATCH_SIZE;
+
+/**
+ * 每个事件为一个完整的数据块
+ * 数据块与进度表中的标记在同一事务中提交
+ * 保证每个数据块恰好导入一次
+ */
+public class BlockTransactionImportConsumer extends BaseWorkHandler {
+    private static final Logger logger = LoggerFactory.getLogger(BlockTransactionImportConsumer.class);
+
+    private List<FieldMetaInfo> fieldMetaInfoList;
+
+    @Override
+    protected void initLocalVars() {
+        super.initLocalVars();
+        this.fieldMetaInfoList = consumerContext.getTableFieldMetaInfo(tableName).getFieldMetaInfoList();
+    }
+
+    @Override
+    public void onProxyEvent(BatchLineEvent event) {
+        if (consumerContext.getException() != null) {
+            // fail fast on exception
+            return;
+        }
+        initLocalVars();
+        Connection conn = null;
+        Statement stmt = null;
+        try {
+            conn = consumerContext.getDataSource().getConnection();
+            conn.setAutoCommit(false);
+            stmt = conn.createStatement();
+
+            String[] lines = event.getBatchLines();
+            StringBuilder stringBuilder = new StringBuilder(EMIT_BATCH_SIZE * 16);
+            int bufferedLineCount = 0;
+            for (int i = 0; i < lines.length; i++) {
+                String line = lines[i];
+                if (StringUtils.isEmpty(line)) {
+                    continue;
+                }
+                if (line == END_OF_BATCH_LINES) {
+                    break;
+                }
+                int prevLength = stringBuilder.length();
+                try {
+                    String[] values = getLineValues(event, i);
+                    stringBuilder.append("(");
+                    ImportUtil.appendValuesByFieldMetaInfo(stringBuilder, fieldMetaInfoList,
+                        values, consumerContext.isSqlEscapeEnabled(), hasEscapedQuote);
+                    stringBuilder.append("),");
+                } catch (Exception | DatabaseException e) {
+                    stringBuilder.setLength(prevLength);
+                    handleBrokenLine(event, i, e);
+                    continue;
+                }
+                if (++bufferedLineCount == EMIT_BATCH_SIZE) {
+                    insertData(stmt, stringBuilder);
+                    bufferedLineCount = 0;
+                }
+            }
+            if (bufferedLineCount > 0) {
+                insertData(stmt, stringBuilder);
+            }
+            stmt.execute(ImportUtil.getBlockProgressInsertSql(tableName, getFileKey(event),
+                getBlockSize(), event.getLocalProcessingBlockIndex()));
+            conn.commit();
+        } catch (Exception e) {
+            rollback(conn);
+            consumerContext.setException(e);
+            logger.error("Failed in table [{}] at block {} of file {}, due to {}", tableName,
+                event.getLocalProcessingBlockIndex(), getFileKey(event), e.getMessage());
+            throw new RuntimeException(e);
+        } finally {
+            JdbcUtils.close(stmt);
+            // 归还连接池时会重置autocommit
+            JdbcUtils.close(conn);
+            consumerContext.getEmittedDataCounter().getAndDecrement();
+            if (consumerContext.isUseBlock()) {
+                consumerContext.getEventCounter().get(event.getLocalProcessingFileIndex()).
+                    get(event.getLocalProcessingBlockIndex()).getAndDecrement();
+            }
+        }
+    }
+
+    private void insertData(Statement stmt, StringBuilder data) throws SQLException {
+        // 去除最后一个逗号
+        data.setLength(data.length() - 1);
+        stmt.execute(ImportUtil.getBatchInsertSql(tableName,
+            data.toString(), consumerContext.isInsertIgnoreAndResumeEnabled()));
+        data.setLength(0);
+    }
+
+    private void rollback(Connection conn) {
+        if (conn == null) {
+            return;
+        }
+        try {
+            conn.rollback();
+        } catch (SQLException e) {
+            logger.error("Failed to rollback: {}", e.getMessage());
+        }
+    }
+
+    private String getFileKey(BatchLineEvent event) {
+        return ImportUtil.getBlockProgressFileKey(
+            new File(consumerContext.getFilePath(event.getLocalProcessingFileIndex())));
+    }
+
+    private long getBlockSize() {
+        return consumerContext.getReadBlockSizeInMb() * 1024L * 1024;
+    }
+}
@@ -31,6 +31,7 @@ import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import util.DbUtil;
+import util.FileUtil;
 import util.IOUtil;
 import worker.util.ImportUtil;
 
@@ -106,6 +107,7 @@ public class DirectImportWorker implements Runnable {
                     .withCSVParser(parser).build();
                 reader.skip(startLine - 1);
                 for (String[] values; (values = reader.readNext()) != null; ) {
+                    FileUtil.replaceNullEscape(values);
                     try {
                         ImportUtil.getDirectImportSql(insertSqlBuilder, tableName,
                             fieldMetaInfoList, values, sqlEscapeEnabled, true);
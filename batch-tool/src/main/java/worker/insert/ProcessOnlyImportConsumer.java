@@ -22,7 +22,6 @@ import exception.DatabaseException;
 import model.db.FieldMetaInfo;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import util.FileUtil;
 import worker.common.BaseWorkHandler;
 import worker.common.BatchLineEvent;
 import worker.util.ImportUtil;
@@ -43,20 +42,21 @@ public class ProcessOnlyImportConsumer extends BaseWorkHandler {
 
     @Override
     public void onProxyEvent(BatchLineEvent event) {
+        initLocalVars();
         try {
             String[] lines = event.getBatchLines();
             StringBuilder stringBuilder = new StringBuilder();
             List<FieldMetaInfo> fieldMetaInfoList = consumerContext.getTableFieldMetaInfo(tableName)
                 .getFieldMetaInfoList();
-            for (String line : lines) {
+            for (int i = 0; i < lines.length; i++) {
+                String line = lines[i];
                 if (StringUtils.isEmpty(line)) {
                     continue;
                 }
                 if (line == END_OF_BATCH_LINES) {
                     break;
                 }
-                String[] values = FileUtil.split(line, consumerContext.getSeparator(),
-                    consumerContext.isWithLastSep(), hasEscapedQuote);
+                String[] values = getLineValues(event, i);
                 stringBuilder.append("(");
                 try {
                     ImportUtil.appendValuesByFieldMetaInfo(stringBuilder, fieldMetaInfoList,
@@ -0,0 +1,116 @@
+/*
+ * Copyright [2013-2021], Alibaba Group Holding Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package worker.migrate;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+/**
+ * 迁移的断点
+ * 记录一张表已完整写入目标端的源端分片 未完成的分片重新迁移
+ * 源端变化时断点失效
+ */
+@ThreadSafe
+public class MigrateCheckpoint {
+    private static final Logger logger = LoggerFactory.getLogger(MigrateCheckpoint.class);
+
+    private static final String SOURCE_KEY = "#source";
+    private static final String DONE_MARK = "#done";
+
+    private final String filePath;
+    private final Properties checkpoint = new Properties();
+
+    public MigrateCheckpoint(String filePath, String source) {
+        this.filePath = filePath;
+        load(source);
+    }
+
+    private void load(String source) {
+        File file = new File(filePath);
+        if (file.exists()) {
+            try (InputStream in = new FileInputStream(file)) {
+                checkpoint.load(in);
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to load migrate checkpoint " + filePath, e);
+            }
+            if (StringUtils.equals(source, checkpoint.getProperty(SOURCE_KEY))) {
+                logger.info("从断点文件 {} 继续迁移", filePath);
+            } else {
+                logger.warn("断点文件 {} 的源端不一致, 忽略该断点", filePath);
+                checkpoint.clear();
+            }
+        }
+        checkpoint.setProperty(SOURCE_KEY, source);
+    }
+
+    public synchronized boolean isFinished(String shardName) {
+        return DONE_MARK.equals(checkpoint.getProperty(shardName));
+    }
+
+    /**
+     * @return 已完成的分片数
+     */
+    public synchronized int getFinishedCount() {
+        return checkpoint.size() - 1;
+    }
+
+    public synchronized void finish(String shardName) {
+        checkpoint.setProperty(shardName, DONE_MARK);
+        save();
+    }
+
+    /**
+     * 全部完成后删除断点文件
+     */
+    public synchronized void clear() {
+        File file = new File(filePath);
+        if (file.exists() && !file.delete()) {
+            logger.warn("Failed to delete checkpoint file {}", filePath);
+        }
+    }
+
+    /**
+     * 先写临时文件再替换 避免中断时断点文件不完整
+     */
+    private void save() {
+        File tmpFile = new File(filePath + ".tmp");
+        try (OutputStream out = new FileOutputStream(tmpFile)) {
+            checkpoint.store(out, null);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to save migrate checkpoint " + filePath, e);
+        }
+        try {
+            Files.move(tmpFile.toPath(), new File(filePath).toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to save migrate checkpoint " + filePath, e);
+        }
+    }
+}
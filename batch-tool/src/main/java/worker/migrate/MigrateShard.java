@@ -0,0 +1,110 @@
+/*
+ * Copyright [2013-2021], Alibaba Group Holding Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package worker.migrate;
+
+import model.db.TableTopology;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 迁移时源端的一个物理分片
+ */
+public class MigrateShard {
+
+    private final String tableName;
+    private final TableTopology topology;
+    /**
+     * 在本次迁移所有分片中的序号 作为批次的文件序号
+     */
+    private final int index;
+    private volatile boolean readFinished = false;
+
+    public MigrateShard(String tableName, TableTopology topology, int index) {
+        this.tableName = tableName;
+        this.topology = topology;
+        this.index = index;
+    }
+
+    public static String getShardName(TableTopology topology) {
+        if (StringUtils.isEmpty(topology.getGroupName())) {
+            return topology.getTableName();
+        }
+        return topology.getGroupName() + "." + topology.getTableName();
+    }
+
+    public String getShardName() {
+        return getShardName(topology);
+    }
+
+    public String getTableName() {
+        return tableName;
+    }
+
+    public TableTopology getTopology() {
+        return topology;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public boolean isReadFinished() {
+        return readFinished;
+    }
+
+    public void setReadFinished(boolean readFinished) {
+        this.readFinished = readFinished;
+    }
+
+    /**
+     * 读取完毕且发出的批次均已写入
+     *
+     * @param eventCounter 按分片序号排列的批次计数
+     */
+    public boolean isWriteFinished(List<ConcurrentHashMap<Long, AtomicInteger>> eventCounter) {
+        return readFinished && eventCounter.get(index).get(0L).get() == 0;
+    }
+
+    /**
+     * @return 尚未记入断点的分片名
+     */
+    public static List<String> getUnfinishedShards(List<MigrateShard> shards,
+                                                   Map<String, MigrateCheckpoint> checkpoints) {
+        List<String> unfinishedShards = new ArrayList<>();
+        for (MigrateShard shard : shards) {
+            MigrateCheckpoint checkpoint = checkpoints.get(shard.getTableName());
+            if (checkpoint == null || !checkpoint.isFinished(shard.getShardName())) {
+                unfinishedShards.add(shard.getShardName());
+            }
+        }
+        return unfinishedShards;
+    }
+
+    @Override
+    public String toString() {
+        return "MigrateShard{" +
+            "tableName='" + tableName + '\'' +
+            ", topology=" + topology +
+            '}';
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright [2013-2021], Alibaba Group Holding Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package worker.migrate;
+
+import com.lmax.disruptor.RingBuffer;
+import model.ConsumerExecutionContext;
+import model.ProducerExecutionContext;
+import model.config.ConfigConstant;
+import model.db.FieldMetaInfo;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import util.DataSourceUtil;
+import worker.common.BatchLineEvent;
+import worker.util.ExportUtil;
+import worker.util.ImportUtil;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.List;
+
+import static model.config.GlobalVar.EMIT_BATCH_SIZE;
+
+/**
+ * 流式读取源端的一个分片 按批次直接发送给写入目标端的消费者
+ * 环形缓冲区写满时 ringBuffer.next() 阻塞 读取随之暂停
+ * NULL 以 null 传递 二进制字段按字节读取并转为十六进制字面量
+ */
+public class MigrateShardReader implements Runnable {
+    private static final Logger logger = LoggerFactory.getLogger(MigrateShardReader.class);
+
+    private final ProducerExecutionContext context;
+    private final ConsumerExecutionContext consumerContext;
+    private final RingBuffer<BatchLineEvent> ringBuffer;
+    private final DataSource sourceDataSource;
+    private final MigrateShard shard;
+    /**
+     * 按目标表的字段顺序读取
+     */
+    private final List<FieldMetaInfo> fieldMetaInfoList;
+
+    private String[] lineBuffer;
+    private String[][] valuesBuffer;
+    private int bufferedLineCount = 0;
+    private long readLineCount = 0;
+
+    public MigrateShardReader(ProducerExecutionContext context,
+                              ConsumerExecutionContext consumerContext,
+                              RingBuffer<BatchLineEvent> ringBuffer,
+                              DataSource sourceDataSource,
+                              MigrateShard shard,
+                              List<FieldMetaInfo> fieldMetaInfoList) {
+        this.context = context;
+        this.consumerContext = consumerContext;
+        this.ringBuffer = ringBuffer;
+        this.sourceDataSource = sourceDataSource;
+        this.shard = shard;
+        this.fieldMetaInfoList = fieldMetaInfoList;
+        resetBuffer();
+    }
+
+    @Override
+    public void run() {
+        String sql = getSelectSql();
+        int columnCount = fieldMetaInfoList.size();
+        boolean[] isBinary = new boolean[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            isBinary[i] = fieldMetaInfoList.get(i).isBinary();
+        }
+        try (Connection conn = sourceDataSource.getConnection();
+            Statement stmt = DataSourceUtil.createStreamingStatement(conn);
+            ResultSet resultSet = stmt.executeQuery(sql)) {
+            while (resultSet.next()) {
+                String[] values = new String[columnCount];
+                for (int i = 0; i < columnCount; i++) {
+                    values[i] = isBinary[i] ? ImportUtil.toHexLiteral(resultSet.getBytes(i + 1))
+                        : resultSet.getString(i + 1);
+                }
+                lineBuffer[bufferedLineCount] = ConfigConstant.DECODED_LINE;
+                valuesBuffer[bufferedLineCount] = values;
+                bufferedLineCount++;
+                if (bufferedLineCount == EMIT_BATCH_SIZE) {
+                    if (isAborted()) {
+                        logger.warn("分片 {} 因其他任务失败停止读取", shard.getShardName());
+                        return;
+                    }
+                    emitBuffer();
+                }
+            }
+            emitBuffer();
+            shard.setReadFinished(true);
+            logger.info("分片 {} 读取完毕, 共 {} 行", shard.getShardName(), readLineCount);
+        } catch (Throwable t) {
+            // 任何异常都需记录 否则分片既不会完成也不会使迁移失败
+            context.setException(t instanceof Exception ? (Exception) t : new RuntimeException(t));
+            logger.error("读取分片 {} 失败：{}", shard.getShardName(), t.getMessage(), t);
+        }
+    }
+
+    private String getSelectSql() {
+        if (StringUtils.isEmpty(shard.getTopology().getGroupName())) {
+            // 源端为单机库
+            return String.format("select %s from `%s`",
+                ExportUtil.formatFieldWithDateType(fieldMetaInfoList), shard.getTopology().getTableName());
+        }
+        return ExportUtil.getDirectSql(shard.getTopology(), fieldMetaInfoList, null);
+    }
+
+    private boolean isAborted() {
+        return context.getException() != null || consumerContext.getException() != null;
+    }
+
+    private void emitBuffer() {
+        if (bufferedLineCount == 0) {
+            return;
+        }
+        context.getTableInFlightLimiter().acquire(shard.getTableName());
+        long sequence = ringBuffer.next();
+        try {
+            BatchLineEvent event = ringBuffer.get(sequence);
+            if (bufferedLineCount < lineBuffer.length) {
+                // 插入结束标志
+                lineBuffer[bufferedLineCount] = ConfigConstant.END_OF_BATCH_LINES;
+            }
+            event.setBatchLines(lineBuffer);
+            event.setBatchValues(valuesBuffer);
+            event.setLocalProcessingFileIndex(shard.getIndex());
+            event.setLocalProcessingBlockIndex(0);
+            event.setStartLineIndex(readLineCount);
+            event.setTableName(shard.getTableName());
+        } finally {
+            context.getEmittedDataCounter().getAndIncrement();
+            context.getEventCounter().get(shard.getIndex()).get(0L).getAndIncrement();
+            ringBuffer.publish(sequence);
+        }
+        readLineCount += bufferedLineCount;
+        resetBuffer();
+    }
+
+    private void resetBuffer() {
+        this.lineBuffer = new String[EMIT_BATCH_SIZE];
+        this.valuesBuffer = new String[EMIT_BATCH_SIZE][];
+        this.bufferedLineCount = 0;
+    }
+}
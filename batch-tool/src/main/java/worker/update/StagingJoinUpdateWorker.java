@@ -0,0 +1,103 @@
+/*
+ * Copyright [2013-2021], Alibaba Group Holding Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package worker.update;
+
+import model.ConsumerExecutionContext;
+import model.db.PrimaryKey;
+import model.db.TableTopology;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import worker.util.UpdateUtil;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 按物理分片关联中间表更新目标表
+ * 目标表与中间表的分片按下标一一对应 各线程依次领取未处理的分片
+ */
+public class StagingJoinUpdateWorker implements Runnable {
+    private static final Logger logger = LoggerFactory.getLogger(StagingJoinUpdateWorker.class);
+
+    private final DataSource dataSource;
+    private final ConsumerExecutionContext consumerContext;
+    private final String tableName;
+    private final List<TableTopology> targetShards;
+    private final List<TableTopology> stagingShards;
+    private final String setClause;
+    private final AtomicInteger nextShardIndex;
+    private final AtomicInteger finishedShardCount;
+    private final AtomicLong updatedRowCount;
+    private final CountDownLatch countDownLatch;
+
+    private final List<PrimaryKey> pkList;
+
+    public StagingJoinUpdateWorker(DataSource dataSource, ConsumerExecutionContext consumerContext,
+                                   String tableName, List<TableTopology> targetShards,
+                                   List<TableTopology> stagingShards, String setClause,
+                                   AtomicInteger nextShardIndex, AtomicInteger finishedShardCount,
+                                   AtomicLong updatedRowCount, CountDownLatch countDownLatch) {
+        this.dataSource = dataSource;
+        this.consumerContext = consumerContext;
+        this.tableName = tableName;
+        this.targetShards = targetShards;
+        this.stagingShards = stagingShards;
+        this.setClause = setClause;
+        this.nextShardIndex = nextShardIndex;
+        this.finishedShardCount = finishedShardCount;
+        this.updatedRowCount = updatedRowCount;
+        this.countDownLatch = countDownLatch;
+        this.pkList = consumerContext.getTablePkList(tableName);
+    }
+
+    @Override
+    public void run() {
+        try {
+            int shardIndex;
+            while ((shardIndex = nextShardIndex.getAndIncrement()) < targetShards.size()) {
+                if (consumerContext.getException() != null) {
+                    break;
+                }
+                updateShard(targetShards.get(shardIndex), stagingShards.get(shardIndex));
+            }
+        } catch (Exception e) {
+            logger.error("表 {} 关联中间表更新失败: {}", tableName, e.getMessage());
+            consumerContext.setException(e);
+        } finally {
+            countDownLatch.countDown();
+        }
+    }
+
+    private void updateShard(TableTopology target, TableTopology staging) throws SQLException {
+        String sql = UpdateUtil.getUpdateJoinSql(target.getGroupName(), target.getTableName(),
+            staging.getTableName(), pkList, setClause);
+        int affectedRows;
+        try (Connection conn = dataSource.getConnection();
+             Statement stmt = conn.createStatement()) {
+            affectedRows = stmt.executeUpdate(sql);
+        }
+        updatedRowCount.addAndGet(affectedRows);
+        logger.info("表 {} 分片 {} 更新 {} 行, 进度 {}/{}", tableName, target,
+            affectedRows, finishedShardCount.incrementAndGet(), targetShards.size());
+    }
+}
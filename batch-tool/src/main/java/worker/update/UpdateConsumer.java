@@ -21,22 +21,64 @@ import model.db.PrimaryKey;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import worker.common.BaseDefaultConsumer;
+import worker.util.DeleteUtil;
 import worker.util.UpdateUtil;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 
+/**
+ * 将一批数据合并为一条基于 CASE WHEN 的 update 语句
+ * 支持附加的where条件
+ */
 public class UpdateConsumer extends BaseDefaultConsumer {
     private static final Logger logger = LoggerFactory.getLogger(UpdateConsumer.class);
 
     private List<PrimaryKey> pkList;
     private String[] pkValues;
+    private String pkNames;
     private List<FieldMetaInfo> fieldMetaInfoList;
+    /**
+     * 非主键字段
+     */
+    private List<FieldMetaInfo> updateFieldList;
+    private String[] updatedValues;
+    /**
+     * 各非主键字段的 WHEN ... THEN ... 子句
+     */
+    private List<List<String>> caseWhenClauses;
 
     @Override
     protected void initLocalVars() {
+        super.initLocalVars();
+        if (updateFieldList != null) {
+            // 上一批次在生成语句前失败时 不能残留其子句
+            clearCaseWhenClauses();
+            return;
+        }
         this.pkList = consumerContext.getTablePkList(tableName);
         this.pkValues = new String[pkList.size()];
+        this.pkNames = DeleteUtil.formatPkList(pkList);
         this.fieldMetaInfoList = consumerContext.getTableFieldMetaInfo(tableName).getFieldMetaInfoList();
+        Set<Integer> pkIndexSet = consumerContext.getTablePkIndexSet(tableName);
+        this.updateFieldList = new ArrayList<>(fieldMetaInfoList.size());
+        for (FieldMetaInfo fieldMetaInfo : fieldMetaInfoList) {
+            if (!pkIndexSet.contains(fieldMetaInfo.getIndex())) {
+                updateFieldList.add(fieldMetaInfo);
+            }
+        }
+        this.updatedValues = new String[updateFieldList.size()];
+        this.caseWhenClauses = new ArrayList<>(updateFieldList.size());
+        for (int i = 0; i < updateFieldList.size(); i++) {
+            caseWhenClauses.add(new ArrayList<>());
+        }
+    }
+
+    private void clearCaseWhenClauses() {
+        for (List<String> clauses : caseWhenClauses) {
+            clauses.clear();
+        }
     }
 
     @Override
@@ -44,15 +86,32 @@ public class UpdateConsumer extends BaseDefaultConsumer {
         for (int i = 0; i < pkList.size(); i++) {
             pkValues[i] = values[pkList.get(i).getOrdinalPosition() - 1];
         }
-        stringBuilder.append(UpdateUtil.getUpdateSql(tableName,
-            pkList, consumerContext.getTablePkIndexSet(tableName),
-            fieldMetaInfoList, values,
-            consumerContext.getWhereCondition()));
+        // 先计算出整行的值 出错时不会留下部分数据
+        for (int i = 0; i < updateFieldList.size(); i++) {
+            FieldMetaInfo fieldMetaInfo = updateFieldList.get(i);
+            updatedValues[i] = UpdateUtil.formatUpdatedValue(fieldMetaInfo, values[fieldMetaInfo.getIndex()]);
+        }
+        int pkStart = stringBuilder.length();
+        stringBuilder.append("(");
+        DeleteUtil.appendPkValuesByFieldMetaInfo(stringBuilder, fieldMetaInfoList,
+            pkList, pkValues);
+        stringBuilder.append(")");
+        String whenClause = " WHEN (" + pkNames + ")=" + stringBuilder.substring(pkStart) + " THEN ";
+        stringBuilder.append(",");
+        for (int i = 0; i < updatedValues.length; i++) {
+            if (updatedValues[i] != null) {
+                caseWhenClauses.get(i).add(whenClause + updatedValues[i]);
+            }
+        }
     }
 
     @Override
     protected String getSql(StringBuilder data) {
-        return data.toString();
+        // 去除最后一个逗号
+        data.setLength(data.length() - 1);
+        String sql = UpdateUtil.getBatchUpdateSql(tableName, pkNames, updateFieldList,
+            caseWhenClauses, data.toString(), consumerContext.getWhereCondition());
+        clearCaseWhenClauses();
+        return sql;
     }
-
 }
@@ -22,6 +22,8 @@ import org.apache.commons.lang.StringEscapeUtils;
 import org.apache.commons.lang.StringUtils;
 import util.DbUtil;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import static worker.util.PolarxHint.DIRECT_NODE_HINT;
@@ -33,7 +35,20 @@ public class DeleteUtil {
 
     private static final String BATCH_DELETE_WHERE_HINT_SQL_PATTERN =
         DIRECT_NODE_HINT + "DELETE FROM `%s` WHERE (%s) IN (%s) "
-            + "AND %s";
+            + "AND (%s)";
+
+    private static final String DELETE_BY_CONDITION_HINT_SQL_PATTERN =
+        DIRECT_NODE_HINT + "DELETE FROM `%s` WHERE %s";
+
+    private static final String DELETE_BY_CONDITION_SQL_PATTERN = "DELETE FROM `%s` WHERE %s";
+
+    private static final String SELECT_PK_BY_CONDITION_SQL_PATTERN =
+        "SELECT %s FROM `%s` WHERE %s ORDER BY %s LIMIT %d";
+
+    /**
+     * 连续主键个数达到该值才合并为 BETWEEN 条件
+     */
+    private static final int MIN_PK_RANGE_LENGTH = 3;
 
     /**
      * 批量删除Sql语句
@@ -60,7 +75,7 @@ public class DeleteUtil {
         if (StringUtils.isEmpty(where)) {
             return getBatchDeleteSql(tableName, pkList, values);
         }
-        String sqlPattern = "DELETE FROM `%s` WHERE (%s) IN (%s) AND %s;";
+        String sqlPattern = "DELETE FROM `%s` WHERE (%s) IN (%s) AND (%s);";
         String pkSet = formatPkList(pkList);
         return String.format(sqlPattern, tableName, pkSet, values, where);
     }
@@ -73,7 +88,7 @@ public class DeleteUtil {
         if (StringUtils.isEmpty(where)) {
             return getDeleteSqlWithHint(nodeName, tableName, pkList, values);
         }
-        String sqlPattern = DIRECT_NODE_HINT + "DELETE FROM `%s` WHERE %s AND %s;";
+        String sqlPattern = DIRECT_NODE_HINT + "DELETE FROM `%s` WHERE %s AND (%s);";
         String[] pkConditions = new String[pkList.size()];
         for (int i = 0; i < pkList.size(); i++) {
             pkConditions[i] = pkList.get(i).getName() + "='" + values[i] + "'";
@@ -103,7 +118,7 @@ public class DeleteUtil {
         if (StringUtils.isEmpty(where)) {
             return getDeleteSql(tableName, pkList, values);
         }
-        String sqlPattern = "DELETE FROM `%s` WHERE %s AND %s;";
+        String sqlPattern = "DELETE FROM `%s` WHERE %s AND (%s);";
         String pkCondition = DbUtil.formatPkConditions(pkList, values);
         return String.format(sqlPattern, tableName, pkCondition, where);
     }
@@ -162,4 +177,143 @@ public class DeleteUtil {
         String deleteSqlPattern = "delete from %s where (%s) in (%s)";
         return String.format(deleteSqlPattern, tableName, pkNames, inPkValues);
     }
+
+    /**
+     * 单一整型主键时 可将有序的主键合并为范围条件
+     */
+    public static boolean isPkRangeSupported(List<PrimaryKey> pkList, List<FieldMetaInfo> fieldMetaInfoList) {
+        if (pkList.size() != 1) {
+            return false;
+        }
+        int idx = pkList.get(0).getOrdinalPosition() - 1;
+        return fieldMetaInfoList.get(idx).getType() == FieldMetaInfo.Type.INT;
+    }
+
+    /**
+     * 将 (1),(2),(3),(5) 形式的整型主键值排序去重后
+     * 连续的区间合并为 BETWEEN 条件 其余使用 IN 列表
+     * 如 (id BETWEEN 1 AND 3 OR id IN (5))
+     * 无法解析为整数时使用原有的 IN 列表
+     */
+    public static String formatPkRangeCondition(String pkName, String inPkValues) {
+        String[] tokens = StringUtils.split(inPkValues, ',');
+        long[] pkValues = new long[tokens.length];
+        try {
+            for (int i = 0; i < tokens.length; i++) {
+                pkValues[i] = Long.parseLong(StringUtils.strip(tokens[i], "() "));
+            }
+        } catch (NumberFormatException e) {
+            return formatPkInCondition(pkName, inPkValues);
+        }
+        Arrays.sort(pkValues);
+
+        List<String> conditionList = new ArrayList<>();
+        StringBuilder inValues = new StringBuilder();
+        int start = 0;
+        while (start < pkValues.length) {
+            // 找出 [start, end] 的连续区间 跳过重复值
+            int end = start;
+            int distinctCount = 1;
+            while (end + 1 < pkValues.length
+                && (pkValues[end + 1] == pkValues[end] || pkValues[end + 1] == pkValues[end] + 1)) {
+                if (pkValues[end + 1] != pkValues[end]) {
+                    distinctCount++;
+                }
+                end++;
+            }
+            if (distinctCount >= MIN_PK_RANGE_LENGTH) {
+                conditionList.add(pkName + " BETWEEN " + pkValues[start] + " AND " + pkValues[end]);
+            } else {
+                for (int i = start; i <= end; i++) {
+                    if (i == start || pkValues[i] != pkValues[i - 1]) {
+                        inValues.append(pkValues[i]).append(',');
+                    }
+                }
+            }
+            start = end + 1;
+        }
+        if (inValues.length() > 0) {
+            inValues.setLength(inValues.length() - 1);
+            conditionList.add(pkName + " IN (" + inValues + ")");
+        }
+        return "(" + StringUtils.join(conditionList, " OR ") + ")";
+    }
+
+    public static String formatPkInCondition(String pkNames, String inPkValues) {
+        return "(" + pkNames + ") IN (" + inPkValues + ")";
+    }
+
+    /**
+     * @param where 用户指定的条件 加括号后再与 condition 组合 避免其中的 OR 扩大删除范围
+     */
+    public static String getDeleteByConditionSql(String tableName, String condition, String where) {
+        if (!StringUtils.isEmpty(where)) {
+            condition = condition + " AND (" + where + ")";
+        }
+        return String.format(DELETE_BY_CONDITION_SQL_PATTERN, tableName, condition);
+    }
+
+    public static String getDeleteByConditionSqlWithHint(String nodeName, String tableName,
+                                                         String condition, String where) {
+        if (!StringUtils.isEmpty(where)) {
+            condition = condition + " AND (" + where + ")";
+        }
+        return String.format(DELETE_BY_CONDITION_HINT_SQL_PATTERN, nodeName, tableName, condition);
+    }
+
+    /**
+     * 按主键顺序取下一批满足条件的主键
+     * 主键值使用 ? 占位
+     *
+     * @param nodeName 物理分库名 为空时直接查询逻辑表
+     * @param withLastKey 是否从上一批的最后一个主键之后开始
+     */
+    public static String getKeysetSelectSql(String nodeName, String tableName, List<PrimaryKey> pkList,
+                                            String where, boolean withLastKey, int limit) {
+        String pkNames = formatPkList(pkList);
+        String condition = "(" + where + ")";
+        if (withLastKey) {
+            condition = formatPkTuple(pkList) + " > " + formatPkPlaceholders(pkList.size())
+                + " AND " + condition;
+        }
+        String sql = String.format(SELECT_PK_BY_CONDITION_SQL_PATTERN,
+            pkNames, tableName, condition, pkNames, limit);
+        if (StringUtils.isEmpty(nodeName)) {
+            return sql;
+        }
+        return String.format(DIRECT_NODE_HINT, nodeName) + sql;
+    }
+
+    /**
+     * 删除主键在 [?, ?] 范围内且满足条件的行
+     *
+     * @param nodeName 物理分库名 为空时直接删除逻辑表
+     */
+    public static String getDeleteByPkRangeSql(String nodeName, String tableName, List<PrimaryKey> pkList,
+                                               String where) {
+        String pkTuple = formatPkTuple(pkList);
+        String placeholders = formatPkPlaceholders(pkList.size());
+        String condition = pkTuple + " >= " + placeholders + " AND " + pkTuple + " <= " + placeholders;
+        if (StringUtils.isEmpty(nodeName)) {
+            return getDeleteByConditionSql(tableName, condition, where);
+        }
+        return getDeleteByConditionSqlWithHint(nodeName, tableName, condition, where);
+    }
+
+    /**
+     * 复合主键使用行构造器比较
+     */
+    private static String formatPkTuple(List<PrimaryKey> pkList) {
+        if (pkList.size() == 1) {
+            return pkList.get(0).getName();
+        }
+        return "(" + formatPkList(pkList) + ")";
+    }
+
+    private static String formatPkPlaceholders(int pkCount) {
+        if (pkCount == 1) {
+            return "?";
+        }
+        return "(" + StringUtils.repeat("?", ",", pkCount) + ")";
+    }
 }
@@ -16,15 +16,17 @@
 
 package worker.util;
 
+import com.google.common.primitives.UnsignedBytes;
 import model.db.FieldMetaInfo;
 import model.db.TableTopology;
 import org.apache.commons.lang.StringUtils;
-import util.FileUtil;
 import worker.export.order.OrderByExportEvent;
-import worker.export.order.ParallelOrderByExportEvent;
 
+import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
+import java.util.regex.Pattern;
 
 import static model.config.ConfigConstant.ORDER_BY_TYPE_ASC;
 import static model.config.ConfigConstant.ORDER_BY_TYPE_DESC;
@@ -32,6 +34,19 @@ import static worker.util.PolarxHint.DIRECT_NODE_HINT;
 
 public class ExportUtil {
 
+    private static final String PK_MIN_MAX_SQL_PATTERN =
+        DIRECT_NODE_HINT + "select min(`%s`), max(`%s`) from %s;";
+
+    private static final String MAX_VALUE_SQL_PATTERN =
+        DIRECT_NODE_HINT + "select max(`%s`) from %s;";
+
+    private static final Pattern NUMERIC_PATTERN = Pattern.compile("-?\\d+(\\.\\d+)?");
+
+    private static final Comparator<byte[]> UNSIGNED_BYTES_COMPARATOR = UnsignedBytes.lexicographicalComparator();
+
+    private static final Comparator<OrderByExportEvent> SORT_KEY_COMPARATOR =
+        (o1, o2) -> UNSIGNED_BYTES_COMPARATOR.compare(o1.getSortKey(), o2.getSortKey());
+
     public static String getDirectSql(TableTopology topology,
                                       List<FieldMetaInfo> fieldMetaInfoList,
                                       String whereCondition) {
@@ -52,6 +67,99 @@ public class ExportUtil {
             topology.getTableName());
     }
 
+    /**
+     * 查询物理表主键的最小值与最大值
+     * 不附加 where 条件 只需读取主键索引的两端
+     */
+    public static String getPkMinMaxSql(TableTopology topology, String pkName) {
+        return String.format(PK_MIN_MAX_SQL_PATTERN, topology.getGroupName(),
+            pkName, pkName, topology.getTableName());
+    }
+
+    /**
+     * 查询物理表中水位列的当前最大值
+     */
+    public static String getMaxValueSql(TableTopology topology, String columnName) {
+        return String.format(MAX_VALUE_SQL_PATTERN, topology.getGroupName(), columnName, topology.getTableName());
+    }
+
+    /**
+     * 增量导出的闭区间范围条件
+     * 上界为导出开始时的最大值 大于上界的数据留到下次导出
+     * 下界为上次的上界 重新导出等于上次上界的数据 以包含上次读取最大值之后才提交的同值数据
+     * 因此相邻两次导出的结果在边界值上可能重复
+     *
+     * @param lower 为 null 时为首次导出 不设下界 并包含水位列为 NULL 的数据
+     */
+    public static String getWatermarkCondition(String columnName, String lower, String upper) {
+        if (lower == null) {
+            return String.format("(`%s` <= %s or `%s` is null)", columnName, toSqlLiteral(upper), columnName);
+        }
+        return String.format("`%s` >= %s and `%s` <= %s", columnName, toSqlLiteral(lower),
+            columnName, toSqlLiteral(upper));
+    }
+
+    /**
+     * 数值按大小比较 其余按字符串比较
+     */
+    public static int compareWatermark(String value1, String value2) {
+        if (NUMERIC_PATTERN.matcher(value1).matches() && NUMERIC_PATTERN.matcher(value2).matches()) {
+            return new BigDecimal(value1).compareTo(new BigDecimal(value2));
+        }
+        return value1.compareTo(value2);
+    }
+
+    /**
+     * 数值直接比较 避免大整数按浮点数比较时丢失精度
+     * 其余值如时间按字符串比较
+     */
+    private static String toSqlLiteral(String value) {
+        if (NUMERIC_PATTERN.matcher(value).matches()) {
+            return value;
+        }
+        return "'" + value.replace("\\", "\\\\").replace("'", "\\'") + "'";
+    }
+
+    /**
+     * 将 [min, max] 按值均分为 splitNum 个左闭右开的主键范围条件
+     * 首尾两段不设边界 以覆盖导出期间新写入的数据
+     * 范围过小时减少拆分数
+     */
+    public static List<String> splitPkRange(String pkName, long min, long max, int splitNum) {
+        List<String> conditions = new ArrayList<>(splitNum);
+        long span = max - min;
+        if (span < 0) {
+            // min 与 max 跨度超出 long 范围时不拆分
+            splitNum = 1;
+        } else if (span < splitNum) {
+            splitNum = (int) Math.max(span, 1);
+        }
+        if (splitNum == 1) {
+            conditions.add("1=1");
+            return conditions;
+        }
+        long step = span / splitNum;
+        long lower = min + step;
+        conditions.add(String.format("`%s` < %d", pkName, lower));
+        for (int i = 2; i < splitNum; i++) {
+            long upper = lower + step;
+            conditions.add(String.format("`%s` >= %d and `%s` < %d", pkName, lower, pkName, upper));
+            lower = upper;
+        }
+        conditions.add(String.format("`%s` >= %d", pkName, lower));
+        return conditions;
+    }
+
+    /**
+     * 在原有 where 条件上附加范围条件
+     */
+    public static String combineWhereCondition(String whereCondition, String rangeCondition) {
+        if (StringUtils.isEmpty(whereCondition)) {
+            return rangeCondition;
+        }
+        return "(" + whereCondition + ") and (" + rangeCondition + ")";
+    }
+
     /**
      * select 语句中的字段列表
      */
@@ -94,10 +202,9 @@ public class ExportUtil {
                                        List<FieldMetaInfo> fieldMetaInfoList,
                                        List<String> columnNameList, boolean isAscending) {
         String orderType = isAscending ? "asc" : "desc";
-        return String.format(DIRECT_NODE_HINT + "select %s from %s order by %s " + orderType,
+        return String.format(DIRECT_NODE_HINT + "select %s from %s order by %s",
             topology.getGroupName(), formatFieldWithDateType(fieldMetaInfoList),
-            topology.getTableName(),
-            StringUtils.join(columnNameList, ","));
+            topology.getTableName(), getOrderByColumns(columnNameList, orderType));
     }
 
     public static String getOrderBySql(TableTopology topology,
@@ -121,10 +228,9 @@ public class ExportUtil {
             return getOrderBySql(topology, fieldMetaInfoList, columnNameList, isAscending);
         }
         String orderType = isAscending ? "asc" : "desc";
-        return String.format(DIRECT_NODE_HINT + "select %s from %s where %s order by %s " + orderType,
+        return String.format(DIRECT_NODE_HINT + "select %s from %s where %s order by %s",
             topology.getGroupName(), formatFieldWithDateType(fieldMetaInfoList),
-            topology.getTableName(), whereCondition,
-            StringUtils.join(columnNameList, ","));
+            topology.getTableName(), whereCondition, getOrderByColumns(columnNameList, orderType));
     }
 
     public static String getDirectOrderBySql(String tableName,
@@ -135,9 +241,9 @@ public class ExportUtil {
             return getDirectOrderBySql(tableName, fieldMetaInfoList, columnNameList, isAscending);
         }
         String orderType = isAscending ? ORDER_BY_TYPE_ASC : ORDER_BY_TYPE_DESC;
-        String columnNames = StringUtils.join(columnNameList, ",");
+        String columnNames = getOrderByColumns(columnNameList, orderType);
         return String
-            .format("select %s from %s where %s order by %s " + orderType, formatFieldWithDateType(fieldMetaInfoList),
+            .format("select %s from %s where %s order by %s", formatFieldWithDateType(fieldMetaInfoList),
                 tableName, whereCondition, columnNames);
     }
 
@@ -145,89 +251,23 @@ public class ExportUtil {
                                              List<FieldMetaInfo> fieldMetaInfoList,
                                              List<String> columnNameList, boolean isAscending) {
         String orderType = isAscending ? ORDER_BY_TYPE_ASC : ORDER_BY_TYPE_DESC;
-        String columnNames = StringUtils.join(columnNameList, ",");
-        return String.format("select %s from %s order by %s " + orderType, formatFieldWithDateType(fieldMetaInfoList),
+        String columnNames = getOrderByColumns(columnNameList, orderType);
+        return String.format("select %s from %s order by %s", formatFieldWithDateType(fieldMetaInfoList),
             tableName, columnNames);
     }
 
-    public static Comparator<OrderByExportEvent> getCombinedComparator(List<FieldMetaInfo> orderByColumnInfoList) {
-        Comparator<OrderByExportEvent> comparator = (o1, o2) -> {
-            String val1, val2;
-            int res;
-            for (FieldMetaInfo fieldMetaInfo : orderByColumnInfoList) {
-                val1 = new String(o1.getData()[fieldMetaInfo.getIndex()]);
-                val2 = new String(o2.getData()[fieldMetaInfo.getIndex()]);
-                // NULL值先默认最小
-                if (val1.equals(FileUtil.NULL_ESC_STR)) {
-                    if (val2.equals(FileUtil.NULL_ESC_STR)) {
-                        return 0;
-                    } else {
-                        return -1;
-                    }
-                }
-                if (val2.equals(FileUtil.NULL_ESC_STR)) {
-                    return 1;
-                }
-                switch (fieldMetaInfo.getType()) {
-                case STRING:
-                case OTHER:
-                default:
-                    res = val1.compareTo(val2);
-                    break;
-                case INT:
-                    res = Integer.compare(Integer.parseInt(val1), Integer.parseInt(val2));
-                    break;
-                case FLOAT:
-                    res = Double.compare(Double.parseDouble(val1), Double.parseDouble(val2));
-                    break;
-                }
-                if (res != 0) {
-                    return res;
-                }
-            }
-            return 0;
-        };
-        return comparator;
-    }
-
-    public static Comparator<ParallelOrderByExportEvent> getCombinedParallelOrderComparator(
-        List<FieldMetaInfo> orderByColumnInfoList) {
-        Comparator<ParallelOrderByExportEvent> comparator = (o1, o2) -> {
-            String val1, val2;
-            int res;
-            for (FieldMetaInfo fieldMetaInfo : orderByColumnInfoList) {
-                val1 = new String(o1.getData()[fieldMetaInfo.getIndex()]);
-                val2 = new String(o2.getData()[fieldMetaInfo.getIndex()]);
-                // NULL值先默认最小
-                if (val1.equals(FileUtil.NULL_ESC_STR)) {
-                    if (val2.equals(FileUtil.NULL_ESC_STR)) {
-                        return 0;
-                    } else {
-                        return -1;
-                    }
-                }
-                if (val2.equals(FileUtil.NULL_ESC_STR)) {
-                    return 1;
-                }
-                switch (fieldMetaInfo.getType()) {
-                case STRING:
-                case OTHER:
-                default:
-                    res = val1.compareTo(val2);
-                    break;
-                case INT:
-                    res = Integer.compare(Integer.parseInt(val1), Integer.parseInt(val2));
-                    break;
-                case FLOAT:
-                    res = Double.compare(Double.parseDouble(val1), Double.parseDouble(val2));
-                    break;
-                }
-                if (res != 0) {
-                    return res;
-                }
-            }
-            return 0;
-        };
-        return comparator;
+    /**
+     * 每个排序字段都指定排序方向
+     * 否则多个字段降序时只有最后一个字段生效
+     */
+    private static String getOrderByColumns(List<String> columnNameList, String orderType) {
+        return StringUtils.join(columnNameList, " " + orderType + ",") + " " + orderType;
+    }
+
+    /**
+     * 按 SortKeyEncoder 生成的排序键进行无符号字节比较
+     */
+    public static Comparator<OrderByExportEvent> getSortKeyComparator() {
+        return SORT_KEY_COMPARATOR;
     }
 }
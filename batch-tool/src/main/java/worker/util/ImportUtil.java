@@ -16,13 +16,19 @@
 
 package worker.util;
 
+import com.google.common.hash.Hashing;
+import com.google.common.io.BaseEncoding;
 import exception.DatabaseException;
 import model.db.FieldMetaInfo;
+import org.apache.commons.lang.StringEscapeUtils;
 import org.apache.commons.lang.StringUtils;
-import util.FileUtil;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 
+import static model.config.ConfigConstant.BLOCK_PROGRESS_TABLE_NAME;
 import static worker.util.PolarxHint.DIRECT_NODE_HINT;
 
 public class ImportUtil {
@@ -39,6 +45,15 @@ public class ImportUtil {
     private static final String BATCH_INSERT_IGNORE_HINT_SQL_PATTERN =
         DIRECT_NODE_HINT + "INSERT IGNORE INTO `%s` VALUES %s;";
 
+    private static final String BLOCK_PROGRESS_INSERT_SQL_PATTERN =
+        "INSERT INTO `" + BLOCK_PROGRESS_TABLE_NAME + "`(table_name,file_name,block_size,block_index) "
+            + "VALUES ('%s','%s',%d,%d);";
+
+    /**
+     * 进度表 file_name 字段的长度
+     */
+    private static final int BLOCK_PROGRESS_FILE_NAME_LENGTH = 255;
+
     public static String getBatchInsertSql(String tableName, String values, boolean insertIgnoreEnabled) {
         if (insertIgnoreEnabled) {
             return String.format(BATCH_INSERT_IGNORE_SQL_PATTERN, tableName, values);
@@ -49,7 +64,7 @@ public class ImportUtil {
 
     public static void appendInsertStrValue(StringBuilder sqlStringBuilder, String rawValue,
                                             boolean sqlEscapeEnabled, boolean hasEscapedQuote) {
-        if (rawValue.equals(FileUtil.NULL_ESC_STR)) {
+        if (rawValue == null) {
             // NULL字段处理
             sqlStringBuilder.append("NULL");
         } else {
@@ -84,9 +99,19 @@ public class ImportUtil {
         return sqlValue;
     }
 
+    /**
+     * @return 二进制值的十六进制字面量 NULL 时返回 null
+     */
+    public static String toHexLiteral(byte[] value) {
+        if (value == null) {
+            return null;
+        }
+        return "X'" + BaseEncoding.base16().encode(value) + "'";
+    }
+
     public static void appendInsertNonStrValue(StringBuilder sqlStringBuilder, String rawValue,
                                                boolean hasEscapedQuote) {
-        if (rawValue.equals(FileUtil.NULL_ESC_STR)) {
+        if (rawValue == null) {
             // NULL字段处理
             sqlStringBuilder.append("NULL");
         } else {
@@ -139,4 +164,29 @@ public class ImportUtil {
         }
     }
 
+    /**
+     * 进度表中文件的标识 使用规范路径 不同目录下的同名文件互不影响
+     * 路径超出字段长度时使用其摘要
+     */
+    public static String getBlockProgressFileKey(File file) {
+        String path;
+        try {
+            path = file.getCanonicalPath();
+        } catch (IOException e) {
+            path = file.getAbsolutePath();
+        }
+        if (path.length() <= BLOCK_PROGRESS_FILE_NAME_LENGTH) {
+            return path;
+        }
+        return "sha256:" + Hashing.sha256().hashString(path, StandardCharsets.UTF_8).toString();
+    }
+
+    /**
+     * 记录数据块已提交的标记
+     */
+    public static String getBlockProgressInsertSql(String tableName, String fileName,
+                                                   long blockSize, long blockIndex) {
+        return String.format(BLOCK_PROGRESS_INSERT_SQL_PATTERN, StringEscapeUtils.escapeSql(tableName),
+            StringEscapeUtils.escapeSql(fileName), blockSize, blockIndex);
+    }
 }
@@ -39,6 +39,14 @@ public class UpdateUtil {
     private static final String BATCH_REPLACE_PATTERN = " REPLACE INTO `%s`(%s) "
         + "VALUES %s;";
 
+    private static final String UPDATE_JOIN_PATTERN = "UPDATE `%s` t JOIN `%s` s ON %s SET %s;";
+
+    /**
+     * 关联更新时目标表与中间表的别名
+     */
+    private static final String TARGET_ALIAS = "t.";
+    private static final String STAGING_ALIAS = "s.";
+
     public static String getPreparedUpdateSql(String tableName, TableFieldMetaInfo tableFieldMetaInfo) {
         String sqlPattern = "UPDATE `%s` SET %s WHERE %s;";
         String wherePk = tableFieldMetaInfo.getPrimaryKey().getName() + "=?";
@@ -106,7 +114,7 @@ public class UpdateUtil {
                 }
                 continue;
             }
-            if (fieldValue.equals(FileUtil.NULL_ESC_STR)) {
+            if (fieldValue == null) {
                 // NULL值不变
                 updatedValueList.add(FileUtil.NULL_STR);
                 continue;
@@ -180,45 +188,88 @@ public class UpdateUtil {
                                                 List<FieldMetaInfo> fieldMetaInfoList,
                                                 String[] values) {
         List<String> updatedValueList = new ArrayList<>(fieldMetaInfoList.size() - pkIndexSet.size());
-        String fieldValue;
-        int fieldIntValue;
-        float fieldFloatValue;
+        String updatedValue;
         for (FieldMetaInfo fieldMetaInfo : fieldMetaInfoList) {
-            fieldValue = values[fieldMetaInfo.getIndex()];
             if (pkIndexSet.contains(fieldMetaInfo.getIndex())) {
                 // 主键不在set的值里面
                 continue;
             }
-            if (fieldValue.equals(FileUtil.NULL_ESC_STR)) {
-                // NULL值不变
-                updatedValueList.add(fieldMetaInfo.getName() + "=" + FileUtil.NULL_STR);
+            updatedValue = formatUpdatedValue(fieldMetaInfo, values[fieldMetaInfo.getIndex()]);
+            if (updatedValue != null) {
+                updatedValueList.add(fieldMetaInfo.getName() + "=" + updatedValue);
+            }
+        }
+        return StringUtils.join(updatedValueList, ",");
+    }
+
+    /**
+     * 根据字段类型得到更新后的值
+     *
+     * @return 为null时该字段不更新
+     */
+    public static String formatUpdatedValue(FieldMetaInfo fieldMetaInfo, String fieldValue) {
+        if (fieldValue == null) {
+            // NULL值不变
+            return FileUtil.NULL_STR;
+        }
+        // 更新数据
+        switch (fieldMetaInfo.getType()) {
+        case STRING:
+            // 反转字符串
+            return "'" + StringUtils.reverse(fieldValue) + "'";
+        case INT:
+            // 整型直接乘2 不考虑溢出
+            return String.valueOf(Integer.parseInt(fieldValue) * INT_UPDATE_MULTIPLICAND);
+        case FLOAT:
+            // 使用float 不用BigDecimal
+            return String.valueOf(Float.parseFloat(fieldValue) * FLOAT_UPDATE_MULTIPLICAND);
+        default:
+            // 默认不变
+            return null;
+        }
+    }
+
+    /**
+     * 多行数据合并为一条update语句
+     * UPDATE tb SET col1 = CASE WHEN (pk)=(1) THEN v1 WHEN (pk)=(2) THEN v2 ELSE col1 END, ...
+     * WHERE (pk) IN ((1),(2)) AND where;
+     *
+     * @param updateFieldList 非主键字段
+     * @param caseWhenClauses 各字段按行序排列的 WHEN ... THEN ... 子句
+     * 逆序拼接 同一主键出现多次时 与逐行更新一样以最后一行为准
+     * @param pkValues 主键值列表 如 (1),(2)
+     */
+    public static String getBatchUpdateSql(String tableName, String pkNames,
+                                           List<FieldMetaInfo> updateFieldList,
+                                           List<List<String>> caseWhenClauses,
+                                           String pkValues, String where) {
+        StringBuilder sqlBuilder = new StringBuilder(pkValues.length() * 4);
+        sqlBuilder.append("UPDATE `").append(tableName).append("` SET ");
+        boolean hasSetValue = false;
+        for (int i = 0; i < updateFieldList.size(); i++) {
+            List<String> clauses = caseWhenClauses.get(i);
+            if (clauses.isEmpty()) {
                 continue;
             }
-            // 更新数据
-            switch (fieldMetaInfo.getType()) {
-            case STRING:
-                // 反转字符串
-                updatedValueList.add(fieldMetaInfo.getName() + "='"
-                    + StringUtils.reverse(fieldValue) + "'");
-                break;
-            case INT:
-                // 整型直接乘2 不考虑溢出
-                fieldIntValue = Integer.parseInt(fieldValue);
-                updatedValueList.add(fieldMetaInfo.getName() + "=" +
-                    fieldIntValue * INT_UPDATE_MULTIPLICAND);
-                break;
-            case FLOAT:
-                // 使用float 不用BigDecimal
-                fieldFloatValue = Float.parseFloat(fieldValue);
-                updatedValueList.add(fieldMetaInfo.getName() + "=" +
-                    fieldFloatValue * FLOAT_UPDATE_MULTIPLICAND);
-                break;
-            default:
-                // 默认不变
-                break;
+            String fieldName = updateFieldList.get(i).getName();
+            if (hasSetValue) {
+                sqlBuilder.append(",");
             }
+            sqlBuilder.append(fieldName).append("=CASE");
+            for (int j = clauses.size() - 1; j >= 0; j--) {
+                sqlBuilder.append(clauses.get(j));
+            }
+            sqlBuilder.append(" ELSE ").append(fieldName).append(" END");
+            hasSetValue = true;
         }
-        return StringUtils.join(updatedValueList, ",");
+        if (!hasSetValue) {
+            return null;
+        }
+        sqlBuilder.append(" WHERE (").append(pkNames).append(") IN (").append(pkValues).append(")");
+        if (!StringUtils.isEmpty(where)) {
+            sqlBuilder.append(" AND (").append(where).append(")");
+        }
+        return sqlBuilder.append(";").toString();
     }
 
     public static String getUpdateWithFuncSql(String updateWithFuncPattern, List<PrimaryKey> pkList,
@@ -238,14 +289,22 @@ public class UpdateUtil {
                                                      List<FieldMetaInfo> fieldMetaInfoList,
                                                      Set<Integer> pkIndexSet) {
         String basePattern = "UPDATE %s SET %s WHERE";
-        String updateWithFunc = getUpdateFunction(fieldMetaInfoList, pkIndexSet);
+        String updateWithFunc = getUpdateFunction(fieldMetaInfoList, pkIndexSet, "", "");
         String formattedPattern = String.format(basePattern, tableName, updateWithFunc);
 
         return formattedPattern + " %s;";
     }
 
+    /**
+     * 与 formatUpdatedValue 相同的变换 在 SQL 中执行
+     *
+     * @param columnPrefix 被更新字段的前缀 关联更新时为目标表别名
+     * @param valuePrefix 原值字段的前缀 关联更新时为目标表或中间表别名
+     */
     private static String getUpdateFunction(List<FieldMetaInfo> fieldMetaInfoList,
-                                            Set<Integer> pkIndexSet) {
+                                            Set<Integer> pkIndexSet,
+                                            String columnPrefix,
+                                            String valuePrefix) {
         List<String> updatedValueList = new ArrayList<>(fieldMetaInfoList.size() - pkIndexSet.size());
         for (FieldMetaInfo fieldMetaInfo : fieldMetaInfoList) {
             if (pkIndexSet.contains(fieldMetaInfo.getIndex())) {
@@ -256,13 +315,13 @@ public class UpdateUtil {
             switch (fieldMetaInfo.getType()) {
             case STRING:
                 // 反转字符串
-                updatedValueList.add(fieldMetaInfo.getName() + "=REVERSE("
-                    + fieldMetaInfo.getName() + ")");
+                updatedValueList.add(columnPrefix + fieldMetaInfo.getName() + "=REVERSE("
+                    + valuePrefix + fieldMetaInfo.getName() + ")");
                 break;
             case INT:
             case FLOAT:
-                updatedValueList.add(fieldMetaInfo.getName() + "=2*"
-                    + fieldMetaInfo.getName());
+                updatedValueList.add(columnPrefix + fieldMetaInfo.getName() + "=2*"
+                    + valuePrefix + fieldMetaInfo.getName());
                 break;
             default:
                 // 默认不变
@@ -271,4 +330,37 @@ public class UpdateUtil {
         }
         return StringUtils.join(updatedValueList, ",");
     }
+
+    /**
+     * 关联中间表更新时的 SET 子句
+     * 与逐行更新相同 按字段类型变换后写入 其他类型的字段不更新
+     *
+     * @param withFunc 为true时变换目标表原值 否则变换中间表中导入的文件值
+     */
+    public static String getUpdateJoinSetClause(List<FieldMetaInfo> fieldMetaInfoList,
+                                                Set<Integer> pkIndexSet,
+                                                boolean withFunc) {
+        return getUpdateFunction(fieldMetaInfoList, pkIndexSet, TARGET_ALIAS,
+            withFunc ? TARGET_ALIAS : STAGING_ALIAS);
+    }
+
+    /**
+     * 按主键关联中间表更新目标表
+     *
+     * @param nodeName 物理分库名 为空时更新逻辑表
+     */
+    public static String getUpdateJoinSql(String nodeName, String tableName, String stagingTableName,
+                                          List<PrimaryKey> pkList, String setClause) {
+        String[] pkConditions = new String[pkList.size()];
+        for (int i = 0; i < pkList.size(); i++) {
+            String pkName = pkList.get(i).getName();
+            pkConditions[i] = TARGET_ALIAS + pkName + "=" + STAGING_ALIAS + pkName;
+        }
+        String sql = String.format(UPDATE_JOIN_PATTERN, tableName, stagingTableName,
+            StringUtils.join(pkConditions, " AND "), setClause);
+        if (StringUtils.isEmpty(nodeName)) {
+            return sql;
+        }
+        return String.format(DIRECT_NODE_HINT, nodeName) + sql;
+    }
 }
@@ -0,0 +1,70 @@
+/*
+ * Copyright [2013-2021], Alibaba Group Holding Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package cmd;
+
+import org.apache.commons.cli.CommandLine;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+
+public class DeleteArgsTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private static BaseOperateCommand parse(String... args) {
+        String[] baseArgs = {"-h", "127.0.0.1", "-u", "root", "-p", "pwd", "-D", "db", "-o", "delete", "-s", ","};
+        String[] allArgs = new String[baseArgs.length + args.length];
+        System.arraycopy(baseArgs, 0, allArgs, 0, baseArgs.length);
+        System.arraycopy(args, 0, allArgs, baseArgs.length, args.length);
+        CommandLine commandLine = CommandUtil.parseStartUpCommand(allArgs);
+        return CommandUtil.getOperateCommandFromCmd(commandLine);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void whereWithoutFileTest() {
+        parse("-t", "t1", "-w", "a=1");
+    }
+
+    @Test
+    public void whereWithFileTest() throws IOException {
+        String filePath = tempFolder.newFile("t1_0").getAbsolutePath();
+        DeleteCommand command = (DeleteCommand) parse("-t", "t1", "-w", "a=1", "-f", filePath);
+        Assert.assertFalse(command.getConsumerExecutionContext().isDeleteByConditionEnabled());
+        Assert.assertEquals("a=1", command.getConsumerExecutionContext().getWhereCondition());
+    }
+
+    @Test
+    public void deleteByWhereTest() {
+        DeleteCommand command = (DeleteCommand) parse("-t", "t1", "-w", "a=1", "-byWhere");
+        Assert.assertTrue(command.getConsumerExecutionContext().isDeleteByConditionEnabled());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void deleteByWhereWithoutWhereTest() {
+        parse("-t", "t1", "-byWhere");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void deleteByWhereWithFileTest() {
+        parse("-t", "t1", "-w", "a=1", "-byWhere", "-f", "t1_0");
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright [2013-2021], Alibaba Group Holding Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package cmd;
+
+import org.apache.commons.cli.CommandLine;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ExportArgsTest {
+
+    private static BaseOperateCommand parse(String... args) {
+        String[] baseArgs = {"-h", "127.0.0.1", "-u", "root", "-p", "pwd", "-D", "db", "-o", "export", "-s", ","};
+        String[] allArgs = new String[baseArgs.length + args.length];
+        System.arraycopy(baseArgs, 0, allArgs, 0, baseArgs.length);
+        System.arraycopy(args, 0, allArgs, baseArgs.length, args.length);
+        CommandLine commandLine = CommandUtil.parseStartUpCommand(allArgs);
+        return CommandUtil.getOperateCommandFromCmd(commandLine);
+    }
+
+    @Test
+    public void splitTest() {
+        ExportCommand command = (ExportCommand) parse("-t", "t1", "-split", "4");
+        Assert.assertEquals(4, command.getExportConfig().getSplitNum());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void splitWithMaxLineTest() {
+        parse("-t", "t1", "-split", "4", "-L", "100000");
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright [2013-2021], Alibaba Group Holding Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package model.db;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import util.DbUtil;
+import util.SchemaCatalogCache;
+
+import javax.sql.DataSource;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class SchemaCatalogTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void saveAndLoadTest() throws IOException {
+        SchemaCatalog catalog = new SchemaCatalog("db1");
+        catalog.setVersion("v1");
+        catalog.addTable("Orders");
+        catalog.addTable("t_single");
+        catalog.addColumn("Orders", "user_id", "bigint", 2, false, true);
+        catalog.addColumn("Orders", "id", "int", 1, true, false);
+        catalog.addColumn("t_single", "name", "varchar", 1, false, false);
+        catalog.addRule("Orders", false, "user_id", 4, 2);
+        catalog.addRule("t_single", false, null, 1, 1);
+        catalog.sortColumns();
+        File file = tempFolder.newFile("catalog_db1");
+        catalog.save(file);
+
+        SchemaCatalog loaded = SchemaCatalog.load(file);
+        Assert.assertNotNull(loaded);
+        Assert.assertEquals("db1", loaded.getSchemaName());
+        Assert.assertEquals("v1", loaded.getVersion());
+        Assert.assertEquals(Arrays.asList("Orders", "t_single"), loaded.getTableNames());
+        Assert.assertTrue(loaded.containsTable("orders"));
+
+        List<String> columnNames = loaded.getTableFieldMetaInfo("ORDERS").getFieldMetaInfoList().stream()
+            .map(FieldMetaInfo::getName).collect(Collectors.toList());
+        Assert.assertEquals(Arrays.asList("id", "user_id"), columnNames);
+        List<FieldMetaInfo> columns = loaded.getTableFieldMetaInfo("orders").getFieldMetaInfoList();
+        Assert.assertFalse(columns.get(0).isUnsigned());
+        Assert.assertTrue(columns.get(1).isUnsigned());
+        Assert.assertEquals(1, loaded.getPkList("orders").size());
+        Assert.assertEquals("id", loaded.getPkList("orders").get(0).getName());
+        Assert.assertTrue(loaded.getPkList("t_single").isEmpty());
+
+        Assert.assertFalse(loaded.isBroadcast("orders"));
+        PartitionKey partitionKey = loaded.getPartitionKey("orders");
+        Assert.assertEquals("user_id", partitionKey.getFieldMetaInfo().getName());
+        Assert.assertEquals(4, partitionKey.getDbPartitionCount());
+        Assert.assertEquals(2, partitionKey.getTbPartitionCount());
+        Assert.assertNull(loaded.getPartitionKey("t_single"));
+        Assert.assertFalse(new File(file.getPath() + ".tmp").exists());
+    }
+
+    @Test
+    public void loadInvalidFileTest() throws IOException {
+        Assert.assertNull(SchemaCatalog.load(new File(tempFolder.getRoot(), "missing")));
+
+        File file = tempFolder.newFile("catalog_broken");
+        Files.write(file.toPath(), "V\tdb1\tv1\nC\tt1\tid\tint\tx\t1\t0\n".getBytes(StandardCharsets.UTF_8));
+        Assert.assertNull(SchemaCatalog.load(file));
+
+        // 旧版本缓存的字段行没有 unsigned 标记
+        Files.write(file.toPath(), "V\tdb1\tv1\nC\tt1\tid\tint\t1\t1\n".getBytes(StandardCharsets.UTF_8));
+        Assert.assertNull(SchemaCatalog.load(file));
+
+        Files.write(file.toPath(), "T\tt1\n".getBytes(StandardCharsets.UTF_8));
+        Assert.assertNull(SchemaCatalog.load(file));
+    }
+
+    private static String digest(String columnName, String columnType, String columnKey) {
+        Hasher hasher = Hashing.sha256().newHasher();
+        DbUtil.putColumnDigest(hasher, "t1", "id", "int(11)", 1, "PRI");
+        DbUtil.putColumnDigest(hasher, "t1", columnName, columnType, 2, columnKey);
+        return hasher.hash().toString();
+    }
+
+    @Test
+    public void columnDigestTest() {
+        String digest = digest("ab", "varchar(10)", "");
+        Assert.assertEquals(digest, digest("ab", "varchar(10)", ""));
+        // 等长的改名、改类型与主键变更
+        Assert.assertNotEquals(digest, digest("ba", "varchar(10)", ""));
+        Assert.assertNotEquals(digest, digest("ab", "varchar(20)", ""));
+        Assert.assertNotEquals(digest, digest("ab", "varchar(10)", "PRI"));
+        Assert.assertNotEquals(digest, digest("abv", "archar(10)", ""));
+    }
+
+    @Test
+    public void bulkQueryFailureTest() {
+        DataSource dataSource = (DataSource) Proxy.newProxyInstance(getClass().getClassLoader(),
+            new Class<?>[] {DataSource.class}, (proxy, method, args) -> {
+                throw new SQLException("information_schema is not accessible");
+            });
+        SchemaCatalog catalog = SchemaCatalogCache.getCatalog(dataSource, "db1");
+        Assert.assertTrue(catalog.getTableNames().isEmpty());
+        Assert.assertNull(catalog.getTableFieldMetaInfo("t1"));
+        Assert.assertNull(catalog.getPkList("t1"));
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright [2013-2021], Alibaba Group Holding Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package worker;
+
+import com.google.common.collect.Lists;
+import model.db.FieldMetaInfo;
+import org.junit.Assert;
+import org.junit.Test;
+import worker.util.UpdateUtil;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class BatchUpdateSqlTest {
+
+    @Test
+    public void lastRowWinsTest() {
+        FieldMetaInfo k = new FieldMetaInfo();
+        k.setName("k");
+        List<List<String>> clauses = Collections.singletonList(
+            Lists.newArrayList(" WHEN (id)=(1) THEN 10", " WHEN (id)=(2) THEN 20", " WHEN (id)=(1) THEN 11"));
+        String sql = UpdateUtil.getBatchUpdateSql("t", "id", Collections.singletonList(k), clauses,
+            "(1),(2),(1)", "k > 0");
+        Assert.assertEquals("UPDATE `t` SET k=CASE WHEN (id)=(1) THEN 11 WHEN (id)=(2) THEN 20 "
+            + "WHEN (id)=(1) THEN 10 ELSE k END WHERE (id) IN ((1),(2),(1)) AND (k > 0);", sql);
+    }
+
+    @Test
+    public void noUpdatedValueTest() {
+        FieldMetaInfo k = new FieldMetaInfo();
+        k.setName("k");
+        List<List<String>> clauses = Collections.singletonList(new ArrayList<>());
+        Assert.assertNull(UpdateUtil.getBatchUpdateSql("t", "id", Collections.singletonList(k), clauses,
+            "(1)", null));
+    }
+
+    @Test
+    public void stagingSetClauseTest() {
+        List<FieldMetaInfo> fieldMetaInfoList = Lists.newArrayList(
+            newField("id", "bigint", 0), newField("name", "varchar", 1),
+            newField("k", "int", 2), newField("gmt", "datetime", 3));
+        // 与逐行更新相同: 字符串反转, 数值乘2, 其他类型不更新
+        Assert.assertEquals("t.name=REVERSE(s.name),t.k=2*s.k",
+            UpdateUtil.getUpdateJoinSetClause(fieldMetaInfoList, Collections.singleton(0), false));
+        Assert.assertEquals("t.name=REVERSE(t.name),t.k=2*t.k",
+            UpdateUtil.getUpdateJoinSetClause(fieldMetaInfoList, Collections.singleton(0), true));
+    }
+
+    private static FieldMetaInfo newField(String name, String type, int index) {
+        FieldMetaInfo fieldMetaInfo = new FieldMetaInfo();
+        fieldMetaInfo.setName(name);
+        fieldMetaInfo.setType(type);
+        fieldMetaInfo.setIndex(index);
+        return fieldMetaInfo;
+    }
+}
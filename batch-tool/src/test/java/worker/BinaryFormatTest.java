@@ -0,0 +1,159 @@
+/*
+ * Copyright [2013-2021], Alibaba Group Holding Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package worker;
+
+import exception.DatabaseException;
+import model.db.FieldMetaInfo;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import util.BinaryFormatUtil;
+import util.ByteBufferPool;
+import worker.export.BinaryRowEncoder;
+import worker.util.ImportUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static util.BinaryFormatUtil.BLOCK_HEADER_LENGTH;
+import static util.BinaryFormatUtil.SYNC_MARKER_LENGTH;
+
+public class BinaryFormatTest {
+
+    private static final Charset GBK = Charset.forName("GBK");
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    /**
+     * 仅支持 getBytes 的结果集
+     */
+    private static ResultSet resultSet(byte[][] row) {
+        return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(),
+            new Class<?>[] {ResultSet.class}, (proxy, method, args) -> {
+                if ("getBytes".equals(method.getName())) {
+                    return row[(Integer) args[0] - 1];
+                }
+                throw new UnsupportedOperationException(method.getName());
+            });
+    }
+
+    private static List<FieldMetaInfo> columns(String... names) {
+        List<FieldMetaInfo> columns = new ArrayList<>(names.length);
+        for (int i = 0; i < names.length; i++) {
+            FieldMetaInfo column = new FieldMetaInfo();
+            column.setName(names[i]);
+            column.setType("varchar");
+            column.setIndex(i);
+            columns.add(column);
+        }
+        return columns;
+    }
+
+    @Test
+    public void nullAndEmptyRoundTripTest() throws SQLException, DatabaseException {
+        byte[][] row = {null, new byte[0], "\\N".getBytes(GBK), "中文".getBytes(GBK)};
+        List<ByteBuffer> blocks = new ArrayList<>();
+        byte[] syncMarker = BinaryFormatUtil.newSyncMarker();
+        BinaryRowEncoder encoder = new BinaryRowEncoder(new ByteBufferPool(1, 1024), blocks::add,
+            syncMarker, row.length);
+        encoder.appendRow(resultSet(row), row.length);
+        encoder.flush();
+        Assert.assertEquals(1, blocks.size());
+
+        ByteBuffer block = blocks.get(0);
+        byte[] data = new byte[block.remaining()];
+        block.get(data);
+        Assert.assertEquals(0, BinaryFormatUtil.indexOfSyncMarker(data, 0, data.length, syncMarker));
+        Assert.assertEquals(1, ByteBuffer.wrap(data, SYNC_MARKER_LENGTH, 4).getInt());
+        int[] pos = {BLOCK_HEADER_LENGTH};
+        String[] values = BinaryFormatUtil.decodeRow(data, pos, row.length, GBK, null);
+        Assert.assertEquals(data.length, pos[0]);
+        Assert.assertArrayEquals(new String[] {null, "", "\\N", "中文"}, values);
+
+        StringBuilder sql = new StringBuilder();
+        ImportUtil.appendValuesByFieldMetaInfo(sql, columns("a", "b", "c", "d"), values, true, false);
+        Assert.assertEquals("NULL,'','\\\\N','中文'", sql.toString());
+    }
+
+    @Test
+    public void binaryColumnRoundTripTest() throws SQLException, DatabaseException {
+        byte[][] row = {"中文".getBytes(GBK), {0x00, (byte) 0xFF, (byte) 0x80, 0x27}, null, new byte[0]};
+        List<ByteBuffer> blocks = new ArrayList<>();
+        BinaryRowEncoder encoder = new BinaryRowEncoder(new ByteBufferPool(1, 1024), blocks::add,
+            BinaryFormatUtil.newSyncMarker(), row.length);
+        encoder.appendRow(resultSet(row), row.length);
+        encoder.flush();
+        ByteBuffer block = blocks.get(0);
+        byte[] data = new byte[block.remaining()];
+        block.get(data);
+
+        List<FieldMetaInfo> columns = columns("name", "b1", "b2", "b3");
+        for (int i = 1; i < columns.size(); i++) {
+            columns.get(i).setType("varbinary");
+            columns.get(i).setSqlLiteral(true);
+        }
+        boolean[] binaryColumns = BinaryFormatUtil.getBinaryColumns(columns);
+        Assert.assertArrayEquals(new boolean[] {false, true, true, true}, binaryColumns);
+        Assert.assertNull(BinaryFormatUtil.getBinaryColumns(columns("a", "b")));
+
+        int[] pos = {BLOCK_HEADER_LENGTH};
+        String[] values = BinaryFormatUtil.decodeRow(data, pos, row.length, GBK, binaryColumns);
+        Assert.assertEquals(data.length, pos[0]);
+        Assert.assertArrayEquals(new String[] {"中文", "X'00FF8027'", null, "X''"}, values);
+
+        StringBuilder sql = new StringBuilder();
+        ImportUtil.appendValuesByFieldMetaInfo(sql, columns, values, true, false);
+        Assert.assertEquals("'中文',X'00FF8027',NULL,X''", sql.toString());
+    }
+
+    @Test
+    public void headerColumnsTest() throws IOException {
+        List<FieldMetaInfo> columns = columns("id", "name");
+        File file = tempFolder.newFile("t1_0.bin");
+        Files.write(file.toPath(), BinaryFormatUtil.getFileHeaderBytes(columns, BinaryFormatUtil.newSyncMarker()));
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            BinaryFormatUtil.FileHeader header = BinaryFormatUtil.readFileHeader(raf);
+            Assert.assertEquals(file.length(), header.getHeaderLength());
+            BinaryFormatUtil.checkColumns(header, columns("ID", "Name"), file.getPath());
+            try {
+                BinaryFormatUtil.checkColumns(header, columns("id", "name", "age"), file.getPath());
+                Assert.fail("Column count mismatch should be rejected");
+            } catch (IllegalArgumentException e) {
+                Assert.assertTrue(e.getMessage().contains(Arrays.toString(new String[] {"id", "name"})));
+            }
+            try {
+                BinaryFormatUtil.checkColumns(header, columns("name", "id"), file.getPath());
+                Assert.fail("Column order mismatch should be rejected");
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+}
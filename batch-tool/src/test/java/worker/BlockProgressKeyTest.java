@@ -0,0 +1,57 @@
+/*
+ * Copyright [2013-2021], Alibaba Group Holding Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package worker;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import worker.util.ImportUtil;
+
+import java.io.File;
+import java.io.IOException;
+
+public class BlockProgressKeyTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void sameFileNameTest() throws IOException {
+        File file1 = new File(tempFolder.newFolder("a"), "t1_0");
+        File file2 = new File(tempFolder.newFolder("b"), "t1_0");
+        Assert.assertNotEquals(ImportUtil.getBlockProgressFileKey(file1), ImportUtil.getBlockProgressFileKey(file2));
+
+        File sameFile = new File(file1.getParentFile(), "../a/./t1_0");
+        Assert.assertEquals(ImportUtil.getBlockProgressFileKey(file1), ImportUtil.getBlockProgressFileKey(sameFile));
+    }
+
+    @Test
+    public void longPathTest() {
+        StringBuilder name = new StringBuilder();
+        for (int i = 0; i < 30; i++) {
+            name.append("0123456789/");
+        }
+        File file1 = new File(tempFolder.getRoot(), name + "t1_0");
+        File file2 = new File(tempFolder.getRoot(), name + "t1_1");
+        String key = ImportUtil.getBlockProgressFileKey(file1);
+        Assert.assertTrue(key.length() <= 255);
+        Assert.assertEquals(key, ImportUtil.getBlockProgressFileKey(file1));
+        Assert.assertNotEquals(key, ImportUtil.getBlockProgressFileKey(file2));
+    }
+}
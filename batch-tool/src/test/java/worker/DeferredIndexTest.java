@@ -0,0 +1,127 @@
+/*
+ * Copyright [2013-2021], Alibaba Group Holding Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package worker;
+
+import org.junit.Assert;
+import org.junit.Test;
+import worker.ddl.DeferredIndexBuilder;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+public class DeferredIndexTest {
+
+    @Test
+    public void localIndexTest() {
+        DeferredIndexBuilder builder = new DeferredIndexBuilder(null, 1);
+        String sql = builder.stripIndexes("CREATE TABLE `t1` (\n"
+            + "  `id` bigint NOT NULL AUTO_INCREMENT,\n"
+            + "  `name` varchar(32) DEFAULT 'a,b' COMMENT 'x, (y',\n"
+            + "  `code` varchar(16),\n"
+            + "  PRIMARY KEY (`id`),\n"
+            + "  UNIQUE KEY `uk_code` (`code`),\n"
+            + "  KEY `idx_name` (`name`, `code`),\n"
+            + "  INDEX `idx_code` (`code`(8))\n"
+            + ") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='a,b'");
+        Assert.assertEquals("CREATE TABLE `t1` (\n"
+            + "  `id` bigint NOT NULL AUTO_INCREMENT,\n"
+            + "  `name` varchar(32) DEFAULT 'a,b' COMMENT 'x, (y',\n"
+            + "  `code` varchar(16),\n"
+            + "  PRIMARY KEY (`id`),\n"
+            + "  UNIQUE KEY `uk_code` (`code`)\n"
+            + ") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='a,b'", sql);
+        Assert.assertEquals(Collections.singletonList("ALTER TABLE `t1` ADD KEY `idx_name` (`name`, `code`),\n"
+            + "  ADD INDEX `idx_code` (`code`(8));"), builder.getPendingDdl());
+    }
+
+    @Test
+    public void autoIncrementIndexTest() {
+        DeferredIndexBuilder builder = new DeferredIndexBuilder(null, 1);
+        String ddl = "CREATE TABLE `t2` (\n"
+            + "  `id` bigint NOT NULL AUTO_INCREMENT,\n"
+            + "  `seq` int,\n"
+            + "  KEY `idx_id` (`id`, `seq`)\n"
+            + ")";
+        Assert.assertEquals(ddl, builder.stripIndexes(ddl));
+        Assert.assertTrue(builder.isEmpty());
+    }
+
+    @Test
+    public void globalIndexTest() {
+        DeferredIndexBuilder builder = new DeferredIndexBuilder(null, 1);
+        String sql = builder.stripIndexes("CREATE PARTITION TABLE `t3` (\n"
+            + "  `id` bigint NOT NULL,\n"
+            + "  `buyer` bigint,\n"
+            + "  `seller` bigint,\n"
+            + "  PRIMARY KEY (`id`),\n"
+            + "  GLOBAL INDEX `g_i_seller` (`seller`) COVERING (`buyer`) DBPARTITION BY HASH(`seller`),\n"
+            + "  UNIQUE GLOBAL KEY `g_u_buyer` (`buyer`) DBPARTITION BY HASH(`buyer`),\n"
+            + "  KEY `auto_shard_key_buyer` (`buyer`),\n"
+            + "  LOCAL KEY `_local_g_i_seller` (`seller`)\n"
+            + ") ENGINE=InnoDB dbpartition by hash(`buyer`) tbpartition by hash(`buyer`) tbpartitions 4");
+        Assert.assertEquals("CREATE PARTITION TABLE `t3` (\n"
+            + "  `id` bigint NOT NULL,\n"
+            + "  `buyer` bigint,\n"
+            + "  `seller` bigint,\n"
+            + "  PRIMARY KEY (`id`),\n"
+            + "  UNIQUE GLOBAL KEY `g_u_buyer` (`buyer`) DBPARTITION BY HASH(`buyer`),\n"
+            + "  KEY `auto_shard_key_buyer` (`buyer`),\n"
+            + "  LOCAL KEY `_local_g_i_seller` (`seller`)\n"
+            + ") ENGINE=InnoDB dbpartition by hash(`buyer`) tbpartition by hash(`buyer`) tbpartitions 4", sql);
+        Assert.assertEquals(Collections.singletonList("ALTER TABLE `t3` ADD GLOBAL INDEX `g_i_seller` (`seller`) "
+            + "COVERING (`buyer`) DBPARTITION BY HASH(`seller`);"), builder.getPendingDdl());
+    }
+
+    @Test
+    public void partitionClauseTest() {
+        DeferredIndexBuilder builder = new DeferredIndexBuilder(null, 1);
+        String sql = builder.stripIndexes("CREATE TABLE IF NOT EXISTS `t4` (\n"
+            + "  `id` bigint NOT NULL,\n"
+            + "  `k` int,\n"
+            + "  PRIMARY KEY (`id`),\n"
+            + "  KEY `idx_k` (`k`)\n"
+            + ") PARTITION BY RANGE (`id`) (PARTITION p0 VALUES LESS THAN (100), "
+            + "PARTITION p1 VALUES LESS THAN MAXVALUE)");
+        Assert.assertEquals("CREATE TABLE IF NOT EXISTS `t4` (\n"
+            + "  `id` bigint NOT NULL,\n"
+            + "  `k` int,\n"
+            + "  PRIMARY KEY (`id`)\n"
+            + ") PARTITION BY RANGE (`id`) (PARTITION p0 VALUES LESS THAN (100), "
+            + "PARTITION p1 VALUES LESS THAN MAXVALUE)", sql);
+        Assert.assertEquals(Collections.singletonList("ALTER TABLE `t4` ADD KEY `idx_k` (`k`);"),
+            builder.getPendingDdl());
+    }
+
+    @Test
+    public void fulltextIndexTest() {
+        DeferredIndexBuilder builder = new DeferredIndexBuilder(null, 1);
+        builder.stripIndexes("CREATE TABLE `t5` (\n"
+            + "  `id` bigint NOT NULL,\n"
+            + "  `title` varchar(64),\n"
+            + "  `body` text,\n"
+            + "  PRIMARY KEY (`id`),\n"
+            + "  KEY `idx_title` (`title`),\n"
+            + "  FULLTEXT KEY `ft_title` (`title`),\n"
+            + "  FULLTEXT KEY `ft_body` (`body`) WITH PARSER ngram\n"
+            + ")");
+        Assert.assertEquals(Arrays.asList(
+            "ALTER TABLE `t5` ADD KEY `idx_title` (`title`);",
+            "ALTER TABLE `t5` ADD FULLTEXT KEY `ft_title` (`title`);",
+            "ALTER TABLE `t5` ADD FULLTEXT KEY `ft_body` (`body`) WITH PARSER ngram;"), builder.getPendingDdl());
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright [2013-2021], Alibaba Group Holding Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package worker;
+
+import model.config.CompressMode;
+import model.config.FileFormat;
+import model.config.QuoteEncloseMode;
+import model.db.FieldMetaInfo;
+import model.db.TableFieldMetaInfo;
+import model.db.TableTopology;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import worker.export.DirectExportWorker;
+
+import javax.sql.DataSource;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+
+public class LazyExportFileTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void openOnRunTest() throws IOException {
+        File file = new File(tempFolder.getRoot(), "t1_0");
+        DirectExportWorker worker = newWorker(file);
+        // 构造时不打开文件
+        Assert.assertFalse(file.exists());
+
+        List<DirectExportWorker> subWorkers = worker.splitByRange(Arrays.asList("`id` < 10", "`id` >= 10"));
+        Assert.assertFalse(file.exists());
+        for (DirectExportWorker subWorker : subWorkers) {
+            subWorker.run();
+        }
+        // 共享的文件只创建一次 header 只写入一次
+        Assert.assertEquals("id,name\n", new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8)
+            .replace("\r\n", "\n"));
+    }
+
+    private static DirectExportWorker newWorker(File file) {
+        FieldMetaInfo id = new FieldMetaInfo();
+        id.setName("id");
+        id.setType("bigint");
+        FieldMetaInfo name = new FieldMetaInfo();
+        name.setName("name");
+        name.setType("varchar");
+        name.setIndex(1);
+        TableFieldMetaInfo tableFieldMetaInfo = new TableFieldMetaInfo();
+        tableFieldMetaInfo.setFieldMetaInfoList(Arrays.asList(id, name));
+        DataSource dataSource = (DataSource) Proxy.newProxyInstance(LazyExportFileTest.class.getClassLoader(),
+            new Class<?>[] {DataSource.class}, (proxy, method, args) -> {
+                throw new SQLException("no database");
+            });
+        return new DirectExportWorker(dataSource, new TableTopology("t1"), tableFieldMetaInfo,
+            file.getPath(), ",", true, QuoteEncloseMode.AUTO, CompressMode.NONE, FileFormat.NONE,
+            StandardCharsets.UTF_8, null);
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright [2013-2021], Alibaba Group Holding Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package worker;
+
+import exception.DatabaseException;
+import model.db.FieldMetaInfo;
+import model.db.TableTopology;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import worker.migrate.MigrateCheckpoint;
+import worker.migrate.MigrateShard;
+import worker.util.ImportUtil;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class MigrateTest {
+
+    private static final String SOURCE = "127.0.0.1:3306/src";
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void checkpointResumeTest() {
+        String filePath = new File(tempFolder.getRoot(), "migrate_t1").getPath();
+        MigrateCheckpoint checkpoint = new MigrateCheckpoint(filePath, SOURCE);
+        Assert.assertEquals(0, checkpoint.getFinishedCount());
+        checkpoint.finish("group_0.t1_0");
+
+        MigrateCheckpoint resumed = new MigrateCheckpoint(filePath, SOURCE);
+        Assert.assertTrue(resumed.isFinished("group_0.t1_0"));
+        Assert.assertFalse(resumed.isFinished("group_1.t1_1"));
+        Assert.assertEquals(1, resumed.getFinishedCount());
+
+        resumed.clear();
+        Assert.assertFalse(new File(filePath).exists());
+        Assert.assertEquals(0, new MigrateCheckpoint(filePath, SOURCE).getFinishedCount());
+    }
+
+    @Test
+    public void checkpointSourceMismatchTest() {
+        String filePath = new File(tempFolder.getRoot(), "migrate_t1").getPath();
+        new MigrateCheckpoint(filePath, SOURCE).finish("group_0.t1_0");
+
+        MigrateCheckpoint other = new MigrateCheckpoint(filePath, "127.0.0.1:3306/other");
+        Assert.assertFalse(other.isFinished("group_0.t1_0"));
+        Assert.assertEquals(0, other.getFinishedCount());
+
+        // 新源端记录后覆盖原断点
+        other.finish("group_1.t1_1");
+        Assert.assertFalse(new MigrateCheckpoint(filePath, SOURCE).isFinished("group_1.t1_1"));
+        Assert.assertTrue(new MigrateCheckpoint(filePath, "127.0.0.1:3306/other").isFinished("group_1.t1_1"));
+    }
+
+    @Test
+    public void shardCompletionTest() {
+        MigrateShard shard0 = new MigrateShard("t1", new TableTopology("group_0", "t1_0"), 0);
+        MigrateShard shard1 = new MigrateShard("t1", new TableTopology("group_1", "t1_1"), 1);
+        List<ConcurrentHashMap<Long, AtomicInteger>> eventCounter = Arrays.asList(
+            newCounter(0), newCounter(2));
+
+        Assert.assertFalse(shard0.isWriteFinished(eventCounter));
+        shard0.setReadFinished(true);
+        shard1.setReadFinished(true);
+        Assert.assertTrue(shard0.isWriteFinished(eventCounter));
+        // 读取完毕但仍有批次未写入
+        Assert.assertFalse(shard1.isWriteFinished(eventCounter));
+        eventCounter.get(1).get(0L).set(0);
+        Assert.assertTrue(shard1.isWriteFinished(eventCounter));
+
+        MigrateCheckpoint checkpoint = new MigrateCheckpoint(
+            new File(tempFolder.getRoot(), "migrate_t1").getPath(), SOURCE);
+        Map<String, MigrateCheckpoint> checkpoints = new HashMap<>();
+        checkpoints.put("t1", checkpoint);
+        List<MigrateShard> shards = Arrays.asList(shard0, shard1);
+        checkpoint.finish(shard0.getShardName());
+        Assert.assertEquals(Collections.singletonList("group_1.t1_1"),
+            MigrateShard.getUnfinishedShards(shards, checkpoints));
+        checkpoint.finish(shard1.getShardName());
+        Assert.assertTrue(MigrateShard.getUnfinishedShards(shards, checkpoints).isEmpty());
+    }
+
+    @Test
+    public void binaryLiteralTest() throws DatabaseException {
+        FieldMetaInfo id = new FieldMetaInfo();
+        id.setType("int");
+        FieldMetaInfo data = new FieldMetaInfo();
+        data.setType("VARBINARY");
+        Assert.assertTrue(data.isBinary());
+        data.setSqlLiteral(true);
+
+        StringBuilder sql = new StringBuilder();
+        ImportUtil.appendValuesByFieldMetaInfo(sql, Arrays.asList(id, data),
+            new String[] {"1", ImportUtil.toHexLiteral(new byte[] {0x00, 0x27, (byte) 0xFF})}, true, false);
+        Assert.assertEquals("1,X'0027FF'", sql.toString());
+
+        sql.setLength(0);
+        ImportUtil.appendValuesByFieldMetaInfo(sql, Arrays.asList(id, data),
+            new String[] {"2", ImportUtil.toHexLiteral(null)}, true, false);
+        Assert.assertEquals("2,NULL", sql.toString());
+        Assert.assertEquals("X''", ImportUtil.toHexLiteral(new byte[0]));
+    }
+
+    private static ConcurrentHashMap<Long, AtomicInteger> newCounter(int value) {
+        ConcurrentHashMap<Long, AtomicInteger> counter = new ConcurrentHashMap<>(1);
+        counter.put(0L, new AtomicInteger(value));
+        return counter;
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright [2013-2021], Alibaba Group Holding Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package worker;
+
+import model.db.FieldMetaInfo;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import worker.common.parquet.ParquetColumnReader;
+import worker.common.parquet.ParquetMetadata;
+import worker.common.writer.ParquetFileWriter;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+public class ParquetFormatTest {
+
+    /**
+     * 最后一个字段为 bigint unsigned
+     */
+    private static final String[] TYPES = {"bigint", "float", "double", "decimal", "date", "datetime", "varchar",
+        "bigint"};
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private static List<FieldMetaInfo> columns(String... types) {
+        List<FieldMetaInfo> columns = new ArrayList<>(types.length);
+        for (int i = 0; i < types.length; i++) {
+            FieldMetaInfo column = new FieldMetaInfo();
+            column.setName("c" + i);
+            column.setType(types[i]);
+            column.setIndex(i);
+            columns.add(column);
+        }
+        return columns;
+    }
+
+    /**
+     * 写出后按行组读回各行的值
+     */
+    private List<String[]> roundTrip(List<String[]> rows, ParquetMetadata.FileMeta[] fileMetaHolder)
+        throws IOException {
+        File file = new File(tempFolder.getRoot(), "t1_0.parquet");
+        List<FieldMetaInfo> columns = columns(TYPES);
+        columns.get(TYPES.length - 1).setUnsigned("bigint(20) unsigned");
+        ParquetFileWriter writer = new ParquetFileWriter(columns, 64);
+        writer.nextFile(file.getPath());
+        for (String[] row : rows) {
+            writer.writeLine(row);
+        }
+        writer.close();
+
+        List<String[]> result = new ArrayList<>();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            byte[] tail = new byte[8];
+            raf.seek(raf.length() - tail.length);
+            raf.readFully(tail);
+            byte[] footer = new byte[ByteBuffer.wrap(tail).order(ByteOrder.LITTLE_ENDIAN).getInt()];
+            raf.seek(raf.length() - tail.length - footer.length);
+            raf.readFully(footer);
+            ParquetMetadata.FileMeta fileMeta = ParquetMetadata.parseFileMeta(footer);
+            fileMetaHolder[0] = fileMeta;
+            for (ParquetMetadata.RowGroup rowGroup : fileMeta.rowGroups) {
+                int rowCount = (int) rowGroup.numRows;
+                String[][] columnValues = new String[TYPES.length][];
+                for (int i = 0; i < TYPES.length; i++) {
+                    ParquetMetadata.ColumnChunk columnChunk = rowGroup.columns.get(i);
+                    byte[] chunk = new byte[(int) columnChunk.totalSize];
+                    raf.seek(columnChunk.getStartOffset());
+                    raf.readFully(chunk);
+                    columnValues[i] = ParquetColumnReader.readColumnChunk(chunk, fileMeta.columns.get(i),
+                        columnChunk, rowCount);
+                }
+                for (int row = 0; row < rowCount; row++) {
+                    String[] values = new String[TYPES.length];
+                    for (int i = 0; i < TYPES.length; i++) {
+                        values[i] = columnValues[i][row];
+                    }
+                    result.add(values);
+                }
+            }
+        }
+        return result;
+    }
+
+    @Test
+    public void roundTripTest() throws IOException {
+        List<String[]> rows = new ArrayList<>();
+        rows.add(new String[] {"-9223372036854775808", "3.14", "0.1", "12345678901234567890.123456789",
+            "2024-02-29", "2024-02-29 23:59:59", "中文", "18446744073709551615"});
+        rows.add(new String[] {null, null, null, null, null, null, null, null});
+        rows.add(new String[] {"0", "-1.5E-7", "1.7976931348623157E308", "-0.00",
+            "1969-12-31", "1969-12-31 23:59:59.123456", "", "9223372036854775808"});
+        rows.add(new String[] {"42", "0", "-0.5", "1", "1000-01-01", "9999-12-31 00:00:00.5", "\\N",
+            "9223372036854775807"});
+
+        ParquetMetadata.FileMeta[] fileMeta = new ParquetMetadata.FileMeta[1];
+        List<String[]> result = roundTrip(rows, fileMeta);
+        Assert.assertTrue("Expected several row groups", fileMeta[0].rowGroups.size() > 1);
+        Assert.assertEquals(rows.size(), result.size());
+
+        Assert.assertArrayEquals(new String[] {"-9223372036854775808", "3.14", "0.1",
+            "12345678901234567890.123456789", "2024-02-29", "2024-02-29 23:59:59", "中文", "18446744073709551615"},
+            result.get(0));
+        Assert.assertArrayEquals(new String[] {null, null, null, null, null, null, null, null}, result.get(1));
+        Assert.assertArrayEquals(new String[] {"0", "-1.5E-7", "1.7976931348623157E308", "-0.00",
+            "1969-12-31", "1969-12-31 23:59:59.123456", "", "9223372036854775808"}, result.get(2));
+        Assert.assertArrayEquals(new String[] {"42", "0.0", "-0.5", "1",
+            "1000-01-01", "9999-12-31 00:00:00.5", "\\N", "9223372036854775807"}, result.get(3));
+    }
+
+    @Test
+    public void logicalTypeTest() throws IOException {
+        List<String[]> rows = new ArrayList<>();
+        rows.add(new String[] {"1", "1", "1", "1", "2024-01-01", "2024-01-01 00:00:00", "a", "1"});
+        ParquetMetadata.FileMeta[] fileMeta = new ParquetMetadata.FileMeta[1];
+        roundTrip(rows, fileMeta);
+        List<ParquetMetadata.SchemaColumn> columns = fileMeta[0].columns;
+        Assert.assertEquals(ParquetMetadata.TYPE_INT64, columns.get(0).type);
+        Assert.assertEquals(ParquetMetadata.TYPE_FLOAT, columns.get(1).type);
+        Assert.assertEquals(ParquetMetadata.TYPE_DOUBLE, columns.get(2).type);
+        Assert.assertEquals(ParquetMetadata.TYPE_BYTE_ARRAY, columns.get(3).type);
+        Assert.assertEquals(ParquetMetadata.CONVERTED_TYPE_UTF8, columns.get(3).convertedType);
+        Assert.assertEquals(ParquetMetadata.TYPE_INT32, columns.get(4).type);
+        Assert.assertEquals(ParquetMetadata.CONVERTED_TYPE_DATE, columns.get(4).convertedType);
+        Assert.assertEquals(ParquetMetadata.TYPE_INT64, columns.get(5).type);
+        Assert.assertEquals(ParquetMetadata.CONVERTED_TYPE_TIMESTAMP_MICROS, columns.get(5).convertedType);
+        Assert.assertEquals(-1, columns.get(0).convertedType);
+        Assert.assertEquals(ParquetMetadata.TYPE_INT64, columns.get(7).type);
+        Assert.assertEquals(ParquetMetadata.CONVERTED_TYPE_UINT_64, columns.get(7).convertedType);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unsignedOverflowTest() throws IOException {
+        List<String[]> rows = new ArrayList<>();
+        rows.add(new String[] {"1", "1", "1", "1", "2024-01-01", "2024-01-01 00:00:00", "a",
+            "18446744073709551616"});
+        roundTrip(rows, new ParquetMetadata.FileMeta[1]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidDateTest() throws IOException {
+        List<String[]> rows = new ArrayList<>();
+        rows.add(new String[] {"1", "1", "1", "1", "0000-00-00", "2024-01-01 00:00:00", "a", "1"});
+        roundTrip(rows, new ParquetMetadata.FileMeta[1]);
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright [2013-2021], Alibaba Group Holding Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package worker;
+
+import org.junit.Assert;
+import org.junit.Test;
+import worker.util.DeleteUtil;
+
+public class PkRangeTest {
+
+    private static final String PK_NAME = "id";
+
+    @Test
+    public void rangeAndInTest() {
+        String condition = DeleteUtil.formatPkRangeCondition(PK_NAME, "(5),(1),(2),(3),(3),(9),(4),(11),(12)");
+        Assert.assertEquals("(id BETWEEN 1 AND 5 OR id IN (9,11,12))", condition);
+    }
+
+    @Test
+    public void onlyRangeTest() {
+        String condition = DeleteUtil.formatPkRangeCondition(PK_NAME, "(-1),(0),(1)");
+        Assert.assertEquals("(id BETWEEN -1 AND 1)", condition);
+    }
+
+    @Test
+    public void onlyInTest() {
+        String condition = DeleteUtil.formatPkRangeCondition(PK_NAME, "(7),(7),(3)");
+        Assert.assertEquals("(id IN (3,7))", condition);
+    }
+
+    @Test
+    public void notIntegerTest() {
+        String condition = DeleteUtil.formatPkRangeCondition(PK_NAME, "(1),('a')");
+        Assert.assertEquals("(id) IN ((1),('a'))", condition);
+    }
+
+    @Test
+    public void whereWithOrTest() {
+        String condition = DeleteUtil.formatPkRangeCondition(PK_NAME, "(1),(2)");
+        Assert.assertEquals("DELETE FROM `t` WHERE " + condition + " AND (a=1 OR b=2)",
+            DeleteUtil.getDeleteByConditionSql("t", condition, "a=1 OR b=2"));
+        Assert.assertTrue(DeleteUtil.getDeleteByConditionSqlWithHint("g0", "t_0", condition, "a=1 OR b=2")
+            .endsWith("DELETE FROM `t_0` WHERE " + condition + " AND (a=1 OR b=2)"));
+        Assert.assertEquals("DELETE FROM `t` WHERE " + condition,
+            DeleteUtil.getDeleteByConditionSql("t", condition, null));
+    }
+}
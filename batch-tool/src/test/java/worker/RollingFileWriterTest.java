@@ -0,0 +1,75 @@
+/*
+ * Copyright [2013-2021], Alibaba Group Holding Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package worker;
+
+import model.config.CompressMode;
+import org.apache.commons.io.IOUtils;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import worker.common.writer.NioFileWriter;
+import worker.common.writer.RollingFileWriter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+public class RollingFileWriterTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    /**
+     * 不可压缩的数据 压缩器中缓存的块远大于文件大小限制
+     */
+    @Test
+    public void gzipFileSizeLimitTest() throws IOException {
+        final long maxFileBytes = 100 * 1024;
+        File dir = tempFolder.getRoot();
+        RollingFileWriter writer = new RollingFileWriter(new NioFileWriter(CompressMode.GZIP), maxFileBytes,
+            seq -> new File(dir, "t1_" + seq + ".gz").getPath(), null);
+        writer.nextFile(new File(dir, "t1_0.gz").getPath());
+        Random random = new Random(1);
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        for (int i = 0; i < 100; i++) {
+            byte[] data = new byte[10 * 1024];
+            random.nextBytes(data);
+            writer.write(data);
+            expected.write(data);
+        }
+        writer.close();
+
+        ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        int fileCount = 0;
+        File file;
+        while ((file = new File(dir, "t1_" + fileCount + ".gz")).exists()) {
+            Assert.assertTrue(file.getName() + " has " + file.length() + " bytes", file.length() <= maxFileBytes);
+            try (InputStream in = new GZIPInputStream(new FileInputStream(file))) {
+                IOUtils.copy(in, actual);
+            }
+            fileCount++;
+        }
+        Assert.assertTrue("Expected several files", fileCount > 5);
+        Assert.assertArrayEquals(expected.toByteArray(), actual.toByteArray());
+    }
+}
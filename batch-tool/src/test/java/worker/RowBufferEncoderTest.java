@@ -0,0 +1,195 @@
+/*
+ * Copyright [2013-2021], Alibaba Group Holding Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package worker;
+
+import model.config.QuoteEncloseMode;
+import org.junit.Assert;
+import org.junit.Test;
+import util.ByteBufferPool;
+import util.FileUtil;
+import worker.export.RowBufferEncoder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Random;
+
+public class RowBufferEncoderTest {
+
+    private static final String NEW_LINE = System.lineSeparator();
+
+    /**
+     * 随机字段值的组成部分 包括引号、反斜杠、换行、各分隔符的片段与多字节字符
+     */
+    private static final String[] PIECES = {"a", "bc", "\"", "\\", "\n", "\r", ",", "|", "||", "\t", "中文", " "};
+
+    /**
+     * 仅支持 getBytes 的结果集
+     */
+    private static ResultSet resultSet(byte[][] row) {
+        return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(),
+            new Class<?>[] {ResultSet.class}, (proxy, method, args) -> {
+                if ("getBytes".equals(method.getName())) {
+                    return row[(Integer) args[0] - 1];
+                }
+                throw new UnsupportedOperationException(method.getName());
+            });
+    }
+
+    private static byte[] bytes(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 使用小缓冲区编码 使行跨越缓冲区或超出缓冲区大小
+     */
+    private static byte[] encode(byte[][][] rows, String separator, boolean[] isStringTypes,
+                                 QuoteEncloseMode mode, int bufferSize) throws SQLException {
+        ByteBufferPool bufferPool = new ByteBufferPool(2, bufferSize);
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        RowBufferEncoder encoder = new RowBufferEncoder(bufferPool, buffer -> {
+            byte[] data = new byte[buffer.remaining()];
+            buffer.get(data);
+            os.write(data, 0, data.length);
+            bufferPool.release(buffer);
+        }, bytes(separator), isStringTypes, mode);
+        for (byte[][] row : rows) {
+            encoder.appendRow(resultSet(row), row.length);
+        }
+        encoder.flush();
+        encoder.close();
+        return os.toByteArray();
+    }
+
+    /**
+     * 逐字段判断与转义的参照实现
+     */
+    private static byte[] encodeByReference(byte[][][] rows, String separator, boolean[] isStringTypes,
+                                            QuoteEncloseMode mode) throws IOException {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        for (byte[][] row : rows) {
+            for (int i = 0; i < row.length; i++) {
+                if (i > 0) {
+                    os.write(bytes(separator));
+                }
+                byte[] value = row[i];
+                boolean quote = mode == QuoteEncloseMode.FORCE
+                    || (mode == QuoteEncloseMode.AUTO && isStringTypes[i] && value != null
+                    && containsAny(new String(value, StandardCharsets.UTF_8), "\"", "\r", "\n", separator));
+                if (quote) {
+                    FileUtil.writeToByteArrayStreamWithQuote(os, value);
+                } else {
+                    FileUtil.writeToByteArrayStream(os, value);
+                }
+            }
+            os.write(FileUtil.SYS_NEW_LINE_BYTE);
+        }
+        return os.toByteArray();
+    }
+
+    private static boolean containsAny(String value, String... targets) {
+        for (String target : targets) {
+            if (value.contains(target)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String encodeRow(String separator, QuoteEncloseMode mode, String... values) throws SQLException {
+        byte[][] row = new byte[values.length][];
+        boolean[] isStringTypes = new boolean[values.length];
+        for (int i = 0; i < values.length; i++) {
+            row[i] = bytes(values[i]);
+            isStringTypes[i] = true;
+        }
+        return new String(encode(new byte[][][] {row}, separator, isStringTypes, mode, 1024),
+            StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void quoteModeTest() throws SQLException {
+        String[] values = {"a\"b", "a\\b", "a\nb", "a,b", "", null, "中文"};
+        Assert.assertEquals("a\"\"b,a\\b,a\nb,a,b,,\\N,中文" + NEW_LINE,
+            encodeRow(",", QuoteEncloseMode.NONE, values));
+        Assert.assertEquals("\"a\"\"b\",\"a\\\\b\",\"a\nb\",\"a,b\",\"\",\"\\\\N\",\"中文\"" + NEW_LINE,
+            encodeRow(",", QuoteEncloseMode.FORCE, values));
+        Assert.assertEquals("\"a\"\"b\",a\\b,\"a\nb\",\"a,b\",,\\N,中文" + NEW_LINE,
+            encodeRow(",", QuoteEncloseMode.AUTO, values));
+        Assert.assertEquals("\"a\rb\"" + NEW_LINE, encodeRow(",", QuoteEncloseMode.AUTO, "a\rb"));
+    }
+
+    @Test
+    public void multiByteSeparatorTest() throws SQLException {
+        // 只有完整的分隔符才需加引号 包括位于末尾的分隔符首字节
+        Assert.assertEquals("a|b||\"a||b\"||a,b||a|" + NEW_LINE,
+            encodeRow("||", QuoteEncloseMode.AUTO, "a|b", "a||b", "a,b", "a|"));
+        Assert.assertEquals("\"a\\\\|\"\"||\"||b" + NEW_LINE,
+            encodeRow("||", QuoteEncloseMode.AUTO, "a\\|\"||", "b"));
+    }
+
+    @Test
+    public void nonStringTypeTest() throws SQLException {
+        byte[][][] rows = {{bytes("1,5"), bytes("a,b"), null}};
+        Assert.assertEquals("1,5,\"a,b\",\\N" + NEW_LINE, new String(encode(rows, ",",
+            new boolean[] {false, true, false}, QuoteEncloseMode.AUTO, 1024), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void randomRowsTest() throws SQLException, IOException {
+        Random random = new Random(46);
+        for (String separator : new String[] {",", "||", "\t|"}) {
+            for (QuoteEncloseMode mode : QuoteEncloseMode.values()) {
+                for (int round = 0; round < 20; round++) {
+                    int colNum = 1 + random.nextInt(5);
+                    boolean[] isStringTypes = new boolean[colNum];
+                    for (int i = 0; i < colNum; i++) {
+                        isStringTypes[i] = random.nextInt(4) != 0;
+                    }
+                    byte[][][] rows = new byte[1 + random.nextInt(20)][colNum][];
+                    for (byte[][] row : rows) {
+                        for (int i = 0; i < colNum; i++) {
+                            row[i] = randomValue(random);
+                        }
+                    }
+                    int bufferSize = 16 + random.nextInt(64);
+                    Assert.assertArrayEquals(String.format("separator %s, mode %s, round %d",
+                            separator, mode, round),
+                        encodeByReference(rows, separator, isStringTypes, mode),
+                        encode(rows, separator, isStringTypes, mode, bufferSize));
+                }
+            }
+        }
+    }
+
+    private static byte[] randomValue(Random random) {
+        if (random.nextInt(8) == 0) {
+            return null;
+        }
+        StringBuilder value = new StringBuilder();
+        int pieceCount = random.nextInt(12);
+        for (int i = 0; i < pieceCount; i++) {
+            value.append(PIECES[random.nextInt(PIECES.length)]);
+        }
+        return bytes(value.toString());
+    }
+}
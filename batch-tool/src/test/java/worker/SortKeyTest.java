@@ -0,0 +1,95 @@
+/*
+ * Copyright [2013-2021], Alibaba Group Holding Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package worker;
+
+import com.google.common.primitives.UnsignedBytes;
+import model.db.FieldMetaInfo;
+import org.junit.Assert;
+import org.junit.Test;
+import util.FileUtil;
+import worker.export.order.SortKeyEncoder;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class SortKeyTest {
+
+    private static int compare(SortKeyEncoder encoder, byte[][] row1, byte[][] row2) {
+        return Integer.signum(UnsignedBytes.lexicographicalComparator()
+            .compare(encoder.encode(row1), encoder.encode(row2)));
+    }
+
+    private static byte[][] row(String... values) {
+        byte[][] row = new byte[values.length][];
+        for (int i = 0; i < values.length; i++) {
+            row[i] = values[i] == null ? FileUtil.NULL_ESC_BYTE : values[i].getBytes();
+        }
+        return row;
+    }
+
+    private static List<FieldMetaInfo> columns(String... types) {
+        FieldMetaInfo[] columns = new FieldMetaInfo[types.length];
+        for (int i = 0; i < types.length; i++) {
+            columns[i] = new FieldMetaInfo();
+            columns[i].setType(types[i]);
+            columns[i].setIndex(i);
+        }
+        return Arrays.asList(columns);
+    }
+
+    @Test
+    public void bigintTest() {
+        SortKeyEncoder encoder = new SortKeyEncoder(columns("bigint"), true);
+        Assert.assertEquals(-1, compare(encoder, row("9223372036854775807"), row("18446744073709551615")));
+        Assert.assertEquals(-1, compare(encoder, row("-9223372036854775808"), row("-1")));
+        Assert.assertEquals(1, compare(encoder, row("100"), row("99")));
+        Assert.assertEquals(0, compare(encoder, row("007"), row("7")));
+    }
+
+    @Test
+    public void decimalTest() {
+        SortKeyEncoder encoder = new SortKeyEncoder(columns("decimal"), true);
+        Assert.assertEquals(-1, compare(encoder, row("-10.5"), row("-2.25")));
+        Assert.assertEquals(-1, compare(encoder, row("-0.001"), row("0.000")));
+        Assert.assertEquals(-1, compare(encoder, row("0.05"), row("0.5")));
+        Assert.assertEquals(0, compare(encoder, row("1.50"), row("1.5")));
+        Assert.assertEquals(-1, compare(encoder, row("1.5E-7"), row("0.01")));
+    }
+
+    @Test
+    public void nullOrderTest() {
+        SortKeyEncoder ascEncoder = new SortKeyEncoder(columns("int"), true);
+        Assert.assertEquals(-1, compare(ascEncoder, row((String) null), row("-1")));
+        SortKeyEncoder descEncoder = new SortKeyEncoder(columns("int"), false);
+        Assert.assertEquals(1, compare(descEncoder, row((String) null), row("-1")));
+        Assert.assertEquals(-1, compare(descEncoder, row("2"), row("1")));
+    }
+
+    @Test
+    public void multiColumnTest() {
+        SortKeyEncoder encoder = new SortKeyEncoder(columns("varchar", "int"), true);
+        Assert.assertEquals(-1, compare(encoder, row("a", "9"), row("ab", "1")));
+        Assert.assertEquals(-1, compare(encoder, row("a", "2"), row("a", "10")));
+        Assert.assertEquals(-1, compare(encoder, row("a", "1"), row("a\0", "0")));
+
+        SortKeyEncoder singleEncoder = new SortKeyEncoder(
+            Collections.singletonList(columns("varchar", "int").get(1)), true);
+        Assert.assertEquals(1, compare(singleEncoder, row("a", "2"), row("b", "1")));
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright [2013-2021], Alibaba Group Holding Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package worker;
+
+import org.junit.Assert;
+import org.junit.Test;
+import worker.common.BaseWorkHandler;
+
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+
+public class TransientErrorTest {
+
+    @Test
+    public void transientErrorTest() {
+        Assert.assertTrue(BaseWorkHandler.isTransientError(new SQLException("link failure", "08S01", 0)));
+        Assert.assertTrue(BaseWorkHandler.isTransientError(new SQLException("serialization", "40001", 0)));
+        Assert.assertTrue(BaseWorkHandler.isTransientError(new SQLException("lock wait", "HY000", 1205)));
+        Assert.assertTrue(BaseWorkHandler.isTransientError(new SQLException("deadlock", "HY000", 1213)));
+        Assert.assertTrue(BaseWorkHandler.isTransientError(new SQLTransientConnectionException("closed")));
+    }
+
+    @Test
+    public void dataErrorTest() {
+        Assert.assertFalse(BaseWorkHandler.isTransientError(new SQLException("duplicate", "23000", 1062)));
+        Assert.assertFalse(BaseWorkHandler.isTransientError(new SQLException("too long", "22001", 1406)));
+        Assert.assertFalse(BaseWorkHandler.isTransientError(new SQLException("no state")));
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright [2013-2021], Alibaba Group Holding Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package worker;
+
+import org.junit.Assert;
+import org.junit.Test;
+import worker.util.ExportUtil;
+
+public class WatermarkTest {
+
+    @Test
+    public void firstExportTest() {
+        Assert.assertEquals("(`gmt_modified` <= '2024-01-01 00:00:00' or `gmt_modified` is null)",
+            ExportUtil.getWatermarkCondition("gmt_modified", null, "2024-01-01 00:00:00"));
+    }
+
+    @Test
+    public void incrementalExportTest() {
+        Assert.assertEquals("`id` >= 100 and `id` <= 200",
+            ExportUtil.getWatermarkCondition("id", "100", "200"));
+        Assert.assertEquals("`gmt_modified` >= '2024-01-01' and `gmt_modified` <= '2024-01-02'",
+            ExportUtil.getWatermarkCondition("gmt_modified", "2024-01-01", "2024-01-02"));
+    }
+}
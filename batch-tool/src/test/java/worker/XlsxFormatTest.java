@@ -0,0 +1,98 @@
+/*
+ * Copyright [2013-2021], Alibaba Group Holding Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package worker;
+
+import com.alibaba.excel.context.AnalysisContext;
+import com.alibaba.excel.event.AnalysisEventListener;
+import model.config.ConfigConstant;
+import model.db.FieldMetaInfo;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import util.FileUtil;
+import worker.common.reader.XlsxReader;
+import worker.common.writer.XlsxFileWriter;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+public class XlsxFormatTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private static List<FieldMetaInfo> columns(String... types) {
+        List<FieldMetaInfo> columns = new ArrayList<>(types.length);
+        for (int i = 0; i < types.length; i++) {
+            FieldMetaInfo column = new FieldMetaInfo();
+            column.setName("c" + i);
+            column.setType(types[i]);
+            column.setIndex(i);
+            columns.add(column);
+        }
+        return columns;
+    }
+
+    /**
+     * 按导入时的方式读回各行的字段值
+     */
+    private static List<String[]> readBack(File file) throws IOException {
+        List<String[]> rows = new ArrayList<>();
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+            XlsxReader.readAll(in, new AnalysisEventListener<Map<Integer, String>>() {
+                @Override
+                public void invoke(Map<Integer, String> map, AnalysisContext analysisContext) {
+                    String line = XlsxReader.toLine(map.values());
+                    rows.add(FileUtil.replaceNullEscape(
+                        FileUtil.split(line, ConfigConstant.MAGIC_CSV_SEP, false, true)));
+                }
+
+                @Override
+                public void doAfterAllAnalysed(AnalysisContext analysisContext) {
+                }
+            });
+        }
+        return rows;
+    }
+
+    @Test
+    public void nullAndEmptyRoundTripTest() throws IOException {
+        File file = tempFolder.newFile("t1_0.xlsx");
+        XlsxFileWriter writer = new XlsxFileWriter(columns("varchar", "varchar", "int", "varchar"),
+            new String[] {"c0", "c1", "c2", "c3"});
+        writer.nextFile(file.getPath());
+        writer.writeLine(new String[] {null, "", "1", ""});
+        writer.writeLine(new String[] {" a ", "\\N", null, null});
+        writer.writeLine(new String[] {"", "", "", ""});
+        writer.close();
+
+        List<String[]> rows = readBack(file);
+        Assert.assertEquals(3, rows.size());
+        Assert.assertArrayEquals(new String[] {null, "", "1", ""}, rows.get(0));
+        // 与文本格式相同 内容为 \N 的字符串导入为 NULL
+        Assert.assertArrayEquals(new String[] {" a ", null, null, null}, rows.get(1));
+        Assert.assertArrayEquals(new String[] {"", "", "", ""}, rows.get(2));
+    }
+}